@@ -0,0 +1,301 @@
+package com.jiggy.base.controller;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import com.jiggy.base.entity.Entity;
+import com.jiggy.base.exception.Error;
+import com.jiggy.base.exception.UnavailableException;
+import com.jiggy.base.filter.ContextCallable;
+
+/**
+ * AbstractAsyncController.java
+ * 
+ * <p>
+ * Controller layer facade base class processing the requests of DBController asynchronously, under the same request mappings. The work of each
+ * request is done by a DBController, typically an AbstractController with the extension points of the descendant, on the bounded I/O executor of
+ * the application, with the Shiro subject, the logging context and the trace of the request; the container thread is released as soon as the work
+ * is handed over. The work reads a copy of the request taken before it is handed over, and returns the headers of its response with its result,
+ * as it may outlive the request. When the executor is full the request fails at once with 503 Service Unavailable, and so does a request whose work
+ * does not complete before the async timeout; work still waiting for a thread then is not run at all.
+ * 
+ * @author jmalkan
+ * 
+ * @param <T> The Entity object used for transformation.
+ * 
+ * @see com.jiggy.base.controller.AsyncDBController
+ */
+public abstract class AbstractAsyncController<T extends Entity> implements AsyncDBController<T> {
+  private static final String SPAN_PREFIX = "async.";
+  
+  protected final Logger logger = LoggerFactory.getLogger(this.getClass());
+  
+  private final DBController<T> controller;
+  
+  @Autowired private AsyncTaskExecutor executor;
+  
+  /**
+   * Creates a new instance of com.jiggy.base.controller.AbstractAsyncController.java and Performs Initialization
+   * 
+   * @param controller The controller that does the work of the requests, not itself mapped to requests.
+   */
+  public AbstractAsyncController(final DBController<T> controller) {
+    super();
+    this.controller = controller;
+  }
+  
+  /**
+   * Getter of the property <tt>controller</tt>
+   * 
+   * @return the controller
+   */
+  public DBController<T> getController() {
+    return this.controller;
+  }
+  
+  /**
+   * Setter of the property <tt>executor</tt>
+   * 
+   * @param executor The bounded executor the work of the requests runs on.
+   */
+  public void setExecutor(final AsyncTaskExecutor executor) {
+    this.executor = executor;
+  }
+  
+  @Override
+  @RequestMapping(value = "/{id}", method = RequestMethod.GET)
+  public DeferredResult<ResponseEntity<T>> findById(@PathVariable final Long id, final HttpServletRequest request,
+                                                    final HttpServletResponse response) {
+    return this.submit("findById", request, new RequestWork<T>() {
+      @Override
+      public T call(final HttpServletRequest detachedRequest, final HttpServletResponse detachedResponse) {
+        return AbstractAsyncController.this.controller.findById(id, detachedRequest, detachedResponse);
+      }
+    });
+  }
+  
+  @Override
+  @ResponseBody
+  @RequestMapping(method = RequestMethod.GET, params = "ids")
+  public DeferredResult<List<T>> findByIds(@RequestParam("ids") final String ids) {
+    return this.submit("findByIds", new Callable<List<T>>() {
+      @Override
+      public List<T> call() {
+        return AbstractAsyncController.this.controller.findByIds(ids);
+      }
+    });
+  }
+  
+  @Override
+  @RequestMapping(method = RequestMethod.GET)
+  public DeferredResult<ResponseEntity<List<T>>> findAll(final HttpServletRequest request, final HttpServletResponse response) {
+    return this.submit("findAll", request, new RequestWork<List<T>>() {
+      @Override
+      public List<T> call(final HttpServletRequest detachedRequest, final HttpServletResponse detachedResponse) {
+        return AbstractAsyncController.this.controller.findAll(detachedRequest, detachedResponse);
+      }
+    });
+  }
+  
+  @Override
+  @RequestMapping(value = "/find", method = RequestMethod.GET)
+  public DeferredResult<ResponseEntity<List<T>>> find(final HttpServletRequest request, final HttpServletResponse response) {
+    return this.submit("find", request, new RequestWork<List<T>>() {
+      @Override
+      public List<T> call(final HttpServletRequest detachedRequest, final HttpServletResponse detachedResponse) {
+        return AbstractAsyncController.this.controller.find(detachedRequest, detachedResponse);
+      }
+    });
+  }
+  
+  @Override
+  @ResponseBody
+  @RequestMapping(value = "/findOne", method = RequestMethod.GET)
+  public DeferredResult<T> findOne(final HttpServletRequest request) {
+    final HttpServletRequest detachedRequest = new DetachedServletRequest(request);
+    
+    return this.submit("findOne", new Callable<T>() {
+      @Override
+      public T call() {
+        return AbstractAsyncController.this.controller.findOne(detachedRequest);
+      }
+    });
+  }
+  
+  @Override
+  @ResponseBody
+  @RequestMapping(value = "/rowCount", method = RequestMethod.GET)
+  public DeferredResult<Integer> getRowCount() {
+    return this.submit("getRowCount", new Callable<Integer>() {
+      @Override
+      public Integer call() {
+        return Integer.valueOf(AbstractAsyncController.this.controller.getRowCount());
+      }
+    });
+  }
+  
+  @Override
+  @ResponseBody
+  @RequestMapping(value = "/rowcount", method = RequestMethod.GET)
+  public DeferredResult<Integer> getRowCount(final HttpServletRequest request) {
+    final HttpServletRequest detachedRequest = new DetachedServletRequest(request);
+    
+    return this.submit("getRowCount", new Callable<Integer>() {
+      @Override
+      public Integer call() {
+        return Integer.valueOf(AbstractAsyncController.this.controller.getRowCount(detachedRequest));
+      }
+    });
+  }
+  
+  @Override
+  @ResponseBody
+  @RequestMapping(method = RequestMethod.POST)
+  public DeferredResult<T> create(@RequestBody final T entity) {
+    return this.submit("create", new Callable<T>() {
+      @Override
+      public T call() {
+        return AbstractAsyncController.this.controller.create(entity);
+      }
+    });
+  }
+  
+  @Override
+  @RequestMapping(value = "/{id}", method = RequestMethod.PUT)
+  public DeferredResult<ResponseEntity<T>> modify(@PathVariable final Long id, @RequestBody final T entity, final HttpServletRequest request,
+                                                  final HttpServletResponse response) {
+    return this.submit("modify", request, new RequestWork<T>() {
+      @Override
+      public T call(final HttpServletRequest detachedRequest, final HttpServletResponse detachedResponse) {
+        return AbstractAsyncController.this.controller.modify(id, entity, detachedRequest, detachedResponse);
+      }
+    });
+  }
+  
+  @Override
+  @ResponseBody
+  @RequestMapping(value = "/{id}", method = RequestMethod.DELETE)
+  public DeferredResult<Void> remove(@PathVariable final Long id, final HttpServletRequest request) {
+    final HttpServletRequest detachedRequest = new DetachedServletRequest(request);
+    
+    return this.submit("remove", new Callable<Void>() {
+      @Override
+      public Void call() {
+        AbstractAsyncController.this.controller.remove(id, detachedRequest);
+        return null;
+      }
+    });
+  }
+  
+  @Override
+  @ResponseBody
+  @RequestMapping(method = RequestMethod.DELETE)
+  public DeferredResult<Void> remove(@PathVariable final Long id, @RequestBody final T entity) {
+    return this.submit("remove", new Callable<Void>() {
+      @Override
+      public Void call() {
+        AbstractAsyncController.this.controller.remove(id, entity);
+        return null;
+      }
+    });
+  }
+  
+  /**
+   * Hands the work of a request over to the executor, as {@link #submit(String, Callable)} does. The work reads a copy of the request taken here, on
+   * the container thread, and sets the status and headers of its response in memory; they are returned with its result, to be set on the response
+   * of the container on the async dispatch. The work may still be running when the request times out, after the container recycled the request and
+   * response, so it never touches them.
+   * 
+   * @param operation The name of the operation, for the span of the work in the trace of the request.
+   * @param request The Http request, read on the container thread only.
+   * @param work The work of the request.
+   * @return The result of the request with its status and headers, to return from the handler.
+   * @throws UnavailableException If the executor is full, answered with 503 Service Unavailable.
+   */
+  protected <V> DeferredResult<ResponseEntity<V>> submit(final String operation, final HttpServletRequest request, final RequestWork<V> work) {
+    final HttpServletRequest detachedRequest = new DetachedServletRequest(request);
+    
+    return this.submit(operation, new Callable<ResponseEntity<V>>() {
+      @Override
+      public ResponseEntity<V> call() {
+        DetachedServletResponse detachedResponse = new DetachedServletResponse();
+        V body = work.call(detachedRequest, detachedResponse);
+        
+        return detachedResponse.toResponseEntity(body);
+      }
+    });
+  }
+  
+  /**
+   * Hands the work of a request over to the executor, with the context of the request thread. The result is set when the work completes; an
+   * exception of the work is resolved as if the handler had thrown it.
+   * 
+   * @param operation The name of the operation, for the span of the work in the trace of the request.
+   * @param callable The work of the request.
+   * @return The result of the request, to return from the handler.
+   * @throws UnavailableException If the executor is full, answered with 503 Service Unavailable.
+   */
+  protected <V> DeferredResult<V> submit(final String operation, final Callable<V> callable) {
+    final DeferredResult<V> result = new DeferredResult<V>();
+    final Callable<V> task = new ContextCallable<V>(callable, SPAN_PREFIX + this.getClass().getSimpleName() + "." + operation);
+    final Future<?> future;
+    
+    try {
+      future = this.executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            result.setResult(task.call());
+          } catch (Exception e) {
+            result.setErrorResult(e);
+          }
+        }
+      });
+    } catch (RejectedExecutionException ree) {
+      logger.warn("{} rejected, the executor is full", operation);
+      throw new UnavailableException(Error.ERROR_BUSY, ree);
+    }
+    
+    result.onTimeout(new Runnable() {
+      @Override
+      public void run() {
+        future.cancel(false);
+        result.setErrorResult(new UnavailableException(Error.ERROR_BUSY));
+      }
+    });
+    
+    return result;
+  }
+  
+  /**
+   * The work of a request that reads the request or sets headers on the response, given copies of them that are detached from the container.
+   * 
+   * @param <V> The result of the work.
+   */
+  protected interface RequestWork<V> {
+    /**
+     * @param request The copy of the request.
+     * @param response The response the work sets its status and headers on.
+     * @return The result of the work, the body of the response.
+     */
+    V call(HttpServletRequest request, HttpServletResponse response);
+  }
+}
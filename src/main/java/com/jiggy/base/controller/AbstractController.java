@@ -1,23 +1,33 @@
 package com.jiggy.base.controller;
 
+import java.io.IOException;
 import java.util.Enumeration;
 import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 import com.jiggy.base.entity.Entity;
+import com.jiggy.base.entity.EntityVersion;
+import com.jiggy.base.exception.Error;
+import com.jiggy.base.exception.ValidationException;
 import com.jiggy.base.searchengine.DefaultSearchCriteria;
 import com.jiggy.base.searchengine.FilterExpression.FilterTerm;
 import com.jiggy.base.searchengine.SearchCriteria;
+import com.jiggy.base.searchengine.SearchCriteria.CountMode;
 import com.jiggy.base.service.DBService;
+import com.jiggy.base.web.ConditionalRequest;
+import com.jiggy.base.web.JsonEntityWriter;
 
 /**
  * AbstractResource.java
@@ -35,6 +45,10 @@ import com.jiggy.base.service.DBService;
  * @see com.jiggy.base.controller.DBController
  */
 public abstract class AbstractController<T extends Entity> implements DBController<T> {
+  public static final String NEXT_PAGE_TOKEN_HEADER = "X-Next-Page-Token";
+  public static final String NEXT_PAGE_AVAILABLE_HEADER = "X-Next-Page-Available";
+  private static final String SEARCH_CRITERIA_ATTRIBUTE = AbstractController.class.getName() + ".searchCriteria";
+  
   protected final Logger logger = LoggerFactory.getLogger(this.getClass());
   
   private DBService<T> service = null;
@@ -58,20 +72,49 @@ public abstract class AbstractController<T extends Entity> implements DBControll
     return this.service;
   }
   
+  @Override
+  public T findById(final Long id) {
+    this.beforeFindById(id);
+    T foundEntity = this.implementFindById(id);
+    this.afterFindById(id, foundEntity);
+    
+    return foundEntity;
+  }
+  
   @Override
   @ResponseBody
   @RequestMapping(value = "/{id}", method = RequestMethod.GET)
-  public T findById(@PathVariable final Long id) {
+  public T findById(@PathVariable final Long id, final HttpServletRequest request, final HttpServletResponse response) {
     this.beforeFindById(id);
+    
+    if (ConditionalRequest.isConditionalGet(request)) {
+      EntityVersion version = this.getService().findVersion(id);
+      
+      if (version != null && this.isNotModified(request, response, version.getETag(), version.getLastModifiedDate()))
+        return null;
+    }
+    
     T foundEntity = this.implementFindById(id);
     this.afterFindById(id, foundEntity);
+    ConditionalRequest.setValidators(response, EntityVersion.of(foundEntity));
     
     return foundEntity;
   }
   
   @Override
   @ResponseBody
-  @RequestMapping(method = RequestMethod.GET)
+  @RequestMapping(method = RequestMethod.GET, params = "ids")
+  public List<T> findByIds(@RequestParam("ids") final String ids) {
+    List<Long> idList = this.parseIds(ids);
+    
+    this.beforeFindByIds(idList);
+    List<T> foundEntities = this.implementFindByIds(idList);
+    this.afterFindByIds(idList, foundEntities);
+    
+    return foundEntities;
+  }
+  
+  @Override
   public List<T> findAll() {
     this.beforeFindAll();
     List<T> foundEntities = this.implementFindAll();
@@ -80,9 +123,32 @@ public abstract class AbstractController<T extends Entity> implements DBControll
     return foundEntities;
   }
   
+  @Override
+  @ResponseBody
+  @RequestMapping(method = RequestMethod.GET)
+  public List<T> findAll(final HttpServletRequest request, final HttpServletResponse response) {
+    List<T> foundEntities = this.findAll();
+    
+    return this.isNotModified(request, response, foundEntities) ? null : foundEntities;
+  }
+  
   @Override
   @ResponseBody
   @RequestMapping(value = "/find", method = RequestMethod.GET)
+  public List<T> find(final HttpServletRequest request, final HttpServletResponse response) {
+    List<T> foundEntities = this.find(request);
+    SearchCriteria searchCriteria = (SearchCriteria) request.getAttribute(SEARCH_CRITERIA_ATTRIBUTE);
+    
+    if (searchCriteria != null && searchCriteria.getNextPageToken() != null)
+      response.setHeader(NEXT_PAGE_TOKEN_HEADER, searchCriteria.getNextPageToken());
+    
+    if (searchCriteria != null && searchCriteria.isPaginationEnabled())
+      response.setHeader(NEXT_PAGE_AVAILABLE_HEADER, String.valueOf(searchCriteria.isNextPageAvailable()));
+    
+    return this.isNotModified(request, response, foundEntities) ? null : foundEntities;
+  }
+  
+  @Override
   public List<T> find(final HttpServletRequest request) {
     this.beforeFind(request);
     List<T> foundEntities = this.implementFind(request);
@@ -91,6 +157,13 @@ public abstract class AbstractController<T extends Entity> implements DBControll
     return foundEntities;
   }
   
+  @Override
+  @RequestMapping(value = "/stream", method = RequestMethod.GET)
+  public void stream(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+    this.beforeFind(request);
+    this.implementStream(request, response);
+  }
+  
   @Override
   @ResponseBody
   @RequestMapping(value = "/findOne", method = RequestMethod.GET)
@@ -128,9 +201,7 @@ public abstract class AbstractController<T extends Entity> implements DBControll
   }
   
   @Override
-  @ResponseBody
-  @RequestMapping(value = "/{id}", method = RequestMethod.PUT)
-  public T modify(@PathVariable final Long id, @RequestBody final T entity) {
+  public T modify(final Long id, final T entity) {
     this.beforeModify(id, entity);
     T modifiedEntity = this.implementModify(id, entity);
     this.afterModify(modifiedEntity);
@@ -138,15 +209,42 @@ public abstract class AbstractController<T extends Entity> implements DBControll
     return modifiedEntity;
   }
   
+  /**
+   * Modifies the entity as the next version of the stored one, whatever version the client sent, so that a stale body can not take the version
+   * back. The version is read from the entity cache or by a projection of the data store.
+   */
   @Override
   @ResponseBody
-  @RequestMapping(value = "/{id}", method = RequestMethod.DELETE)
-  public void remove(@PathVariable final Long id) {
+  @RequestMapping(value = "/{id}", method = RequestMethod.PUT)
+  public T modify(@PathVariable final Long id, @RequestBody final T entity, final HttpServletRequest request, final HttpServletResponse response) {
+    EntityVersion version = this.checkVersion(id, request);
+    
+    if (version != null && entity != null)
+      entity.setVersion(version.getVersion());
+    
+    T modifiedEntity = this.modify(id, entity);
+    ConditionalRequest.setValidators(response, EntityVersion.of(modifiedEntity));
+    
+    return modifiedEntity;
+  }
+  
+  @Override
+  public void remove(final Long id) {
     this.beforeRemove(id);
     this.implementRemove(id);
     this.afterRemove(id);
   }
   
+  @Override
+  @ResponseBody
+  @RequestMapping(value = "/{id}", method = RequestMethod.DELETE)
+  public void remove(@PathVariable final Long id, final HttpServletRequest request) {
+    if (ConditionalRequest.isConditionalWrite(request))
+      this.checkVersion(id, request);
+    
+    this.remove(id);
+  }
+  
   @Override
   @ResponseBody
   @RequestMapping(method = RequestMethod.DELETE)
@@ -157,6 +255,52 @@ public abstract class AbstractController<T extends Entity> implements DBControll
     this.afterRemove(id, entity);
   }
   
+  /**
+   * Sets the ETag and Last-Modified of a list of entities on the response, and answers a conditional GET with 304 Not Modified when the list did not
+   * change since the client read it. The list has been read, but it is not written.
+   * 
+   * @param request The Http request.
+   * @param response The Http response.
+   * @param entities The entities found, null if none.
+   * @return true if the response is 304 Not Modified.
+   */
+  protected boolean isNotModified(final HttpServletRequest request, final HttpServletResponse response, final List<T> entities) {
+    if (entities == null)
+      return false;
+    
+    return this.isNotModified(request, response, EntityVersion.eTagOf(entities), EntityVersion.lastModifiedOf(entities));
+  }
+  
+  private boolean isNotModified(final HttpServletRequest request, final HttpServletResponse response, final String eTag, final Long lastModified) {
+    ConditionalRequest.setValidators(response, eTag, lastModified);
+    
+    if (!ConditionalRequest.isNotModified(request, eTag, lastModified))
+      return false;
+    
+    response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    
+    return true;
+  }
+  
+  /**
+   * Reads the stored version of the entity and checks the If-Match of the request against it.
+   * 
+   * @param id The id of the entity about to be written.
+   * @param request The Http request.
+   * @return The stored version of the entity, null if it does not exist.
+   * @throws ValidationException If the request has an If-Match that does not match the stored version, answered with 412 Precondition Failed.
+   */
+  protected EntityVersion checkVersion(final Long id, final HttpServletRequest request) {
+    EntityVersion version = this.getService().findVersion(id);
+    
+    if (!ConditionalRequest.isMatched(request, version)) {
+      logger.debug("If-Match {} does not match {}", request.getHeader(ConditionalRequest.IF_MATCH), version);
+      throw new ValidationException(Error.ERROR_VERSION);
+    }
+    
+    return version;
+  }
+  
   /**
    * Implements non-business/non-data validation logic, typically a security access check before entity is accessed.
    * 
@@ -186,6 +330,78 @@ public abstract class AbstractController<T extends Entity> implements DBControll
     return;
   }
   
+  /**
+   * Parses the comma separated ids received from the client, ignoring whitespace.
+   * 
+   * @param ids The comma separated ids.
+   * @return The ids.
+   */
+  protected List<Long> parseIds(final String ids) {
+    try {
+      return new FilterTerm(Entity.ID_COLUMN_NAME, StringUtils.deleteWhitespace(StringUtils.defaultString(ids))).getLongValues();
+    } catch (NumberFormatException nfe) {
+      throw new ValidationException(Error.ERROR_INVALID);
+    }
+  }
+  
+  /**
+   * Adds the filter string received from the client to the search criteria.
+   * 
+   * @param searchCriteria The search criteria.
+   * @param where The filter string, in the grammar of the FilterParser.
+   */
+  protected void addWhere(final SearchCriteria searchCriteria, final String where) {
+    try {
+      searchCriteria.addFilter(where);
+    } catch (IllegalArgumentException iae) {
+      logger.debug("Invalid filter {}", iae.getMessage());
+      throw new ValidationException(Error.ERROR_INVALID);
+    }
+  }
+  
+  /**
+   * Parses the count mode received from the client, ignoring case.
+   * 
+   * @param countMode The name of the count mode.
+   * @return The count mode.
+   */
+  protected CountMode parseCountMode(final String countMode) {
+    try {
+      return CountMode.valueOf(StringUtils.upperCase(StringUtils.trim(countMode)));
+    } catch (RuntimeException re) {
+      throw new ValidationException(Error.ERROR_INVALID);
+    }
+  }
+  
+  /**
+   * Implements non-business/non-data validation logic, typically a security access check before entities are accessed.
+   * 
+   * @param ids The ids of the entities that are about to be accessed.
+   */
+  protected void beforeFindByIds(final List<Long> ids) {
+    return;
+  }
+  
+  /**
+   * The extending class may provide the implementation.
+   * 
+   * @param ids The ids of the entities to be searched for
+   * @return The list of the entities found, in the order of the given ids.
+   */
+  protected List<T> implementFindByIds(final List<Long> ids) {
+    return this.getService().findByIds(ids);
+  }
+  
+  /**
+   * Implements business (non-data) validation logic after finding entities by ids.
+   * 
+   * @param ids The ids received from the client.
+   * @param foundEntities The entities found.
+   */
+  protected void afterFindByIds(final List<Long> ids, final List<T> foundEntities) {
+    return;
+  }
+  
   /**
    * Implements non-business/non-data validation logic, typically a security access check before entity is accessed.
    */
@@ -231,6 +447,7 @@ public abstract class AbstractController<T extends Entity> implements DBControll
     
     if (searchCriteria != null) {
       entities = this.getService().find(searchCriteria);
+      request.setAttribute(SEARCH_CRITERIA_ATTRIBUTE, searchCriteria);
       
       //int rowCount = (searchCriteria.getRowCount() < entities.size() ? entities.size() : searchCriteria.getRowCount());
     }
@@ -238,6 +455,28 @@ public abstract class AbstractController<T extends Entity> implements DBControll
     return entities;
   }
   
+  /**
+   * The extending class may over-ride the implementation. Writes the entities as a JSON array while they are read from the data store, flushing the
+   * response every few rows so the container sends it chunked.
+   * 
+   * @param request The Http request.
+   * @param response The Http response.
+   * @throws IOException If the response cannot be written.
+   */
+  protected void implementStream(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+    response.setContentType(JsonEntityWriter.CONTENT_TYPE);
+    response.setCharacterEncoding(JsonEntityWriter.ENCODING);
+    
+    JsonEntityWriter<T> writer = new JsonEntityWriter<T>(response.getOutputStream());
+    
+    writer.writeStartArray();
+    long count = this.getService().stream(this.buildSearchCriteria(request), writer);
+    writer.writeEndArray();
+    writer.close();
+    
+    logger.debug("Streamed {} entities.", count);
+  }
+  
   /**
    * Builds Search Criteria from the Query param.
    * 
@@ -264,6 +503,14 @@ public abstract class AbstractController<T extends Entity> implements DBControll
           defaultSearchCriteria.setOffset(Integer.parseInt(paramValues[0]));
         else if ("limit".equalsIgnoreCase(paramName))
           defaultSearchCriteria.setLimit(Integer.parseInt(paramValues[0]));
+        else if ("after".equalsIgnoreCase(paramName))
+          defaultSearchCriteria.setAfter(paramValues[0]);
+        else if ("count".equalsIgnoreCase(paramName))
+          defaultSearchCriteria.setCountMode(this.parseCountMode(paramValues[0]));
+        else if ("where".equalsIgnoreCase(paramName))
+          this.addWhere(defaultSearchCriteria, paramValues[0]);
+        else if ("q".equalsIgnoreCase(paramName))
+          defaultSearchCriteria.setQuery(paramValues[0]);
         else
           defaultSearchCriteria.addFilter(new FilterTerm(paramName, paramValues[0]));
       }
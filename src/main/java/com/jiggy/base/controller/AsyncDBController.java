@@ -0,0 +1,80 @@
+package com.jiggy.base.controller;
+
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import com.jiggy.base.entity.Entity;
+
+/**
+ * Defines the REST data access CRUD operations of DBController, processed asynchronously. Each operation returns as soon as its work is handed over
+ * to the I/O executor, freeing the container thread while the data store is called; the response is written when the result is set. The work never
+ * touches the request and response of the container: the operations whose response has conditional or paging headers return them with the result,
+ * in a ResponseEntity.
+ * 
+ * @param <T> An Object that implements Entity interface.
+ * 
+ * @author jmalkan
+ * 
+ * @see com.jiggy.base.controller.DBController
+ */
+public interface AsyncDBController<T extends Entity> extends Controller {
+  /**
+   * @see DBController#findById(Long, HttpServletRequest, HttpServletResponse)
+   */
+  DeferredResult<ResponseEntity<T>> findById(Long id, HttpServletRequest request, HttpServletResponse response);
+  
+  /**
+   * @see DBController#findByIds(String)
+   */
+  DeferredResult<List<T>> findByIds(String ids);
+  
+  /**
+   * @see DBController#findAll(HttpServletRequest, HttpServletResponse)
+   */
+  DeferredResult<ResponseEntity<List<T>>> findAll(HttpServletRequest request, HttpServletResponse response);
+  
+  /**
+   * @see DBController#find(HttpServletRequest, HttpServletResponse)
+   */
+  DeferredResult<ResponseEntity<List<T>>> find(HttpServletRequest request, HttpServletResponse response);
+  
+  /**
+   * @see DBController#findOne(HttpServletRequest)
+   */
+  DeferredResult<T> findOne(HttpServletRequest request);
+  
+  /**
+   * @see DBController#getRowCount()
+   */
+  DeferredResult<Integer> getRowCount();
+  
+  /**
+   * @see DBController#getRowCount(HttpServletRequest)
+   */
+  DeferredResult<Integer> getRowCount(HttpServletRequest request);
+  
+  /**
+   * @see DBController#create(Entity)
+   */
+  DeferredResult<T> create(final T entity);
+  
+  /**
+   * @see DBController#modify(Long, Entity, HttpServletRequest, HttpServletResponse)
+   */
+  DeferredResult<ResponseEntity<T>> modify(final Long id, T entity, HttpServletRequest request, HttpServletResponse response);
+  
+  /**
+   * @see DBController#remove(Long, HttpServletRequest)
+   */
+  DeferredResult<Void> remove(final Long id, HttpServletRequest request);
+  
+  /**
+   * @see DBController#remove(Long, Entity)
+   */
+  DeferredResult<Void> remove(final Long id, final T entity);
+}
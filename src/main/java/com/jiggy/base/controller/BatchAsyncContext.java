@@ -0,0 +1,166 @@
+package com.jiggy.base.controller;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * BatchAsyncContext.java The asynchronous processing of a sub-request of a batch whose handler, such as an AbstractAsyncController, returns before
+ * its result is set. The thread of the sub-request waits for the handler to dispatch, then the BatchDispatcher dispatches the sub-request again for
+ * its result to be written, as the container does a request; the batch request is never put in asynchronous mode.
+ * 
+ * @author jmalkan
+ */
+final class BatchAsyncContext implements AsyncContext {
+  static final long DEFAULT_TIMEOUT = 30000;
+  
+  private static final Logger logger = LoggerFactory.getLogger(BatchAsyncContext.class);
+  
+  private final ServletRequest request;
+  private final ServletResponse response;
+  private final List<AsyncListener> listeners = new ArrayList<AsyncListener>();
+  private final CountDownLatch done = new CountDownLatch(1);
+  private volatile boolean dispatched;
+  private volatile long timeout = DEFAULT_TIMEOUT;
+  
+  /**
+   * Creates a new instance of com.jiggy.base.controller.BatchAsyncContext.java and Performs Initialization
+   * 
+   * @param request The sub-request.
+   * @param response The response of the sub-request.
+   */
+  BatchAsyncContext(final ServletRequest request, final ServletResponse response) {
+    super();
+    this.request = request;
+    this.response = response;
+  }
+  
+  /**
+   * Waits for the handler to dispatch or complete the sub-request. When the timeout elapses first, the listeners are told, so that the handler can
+   * still dispatch a timeout result.
+   * 
+   * @return true if the sub-request was dispatched, to dispatch again for its result.
+   * @throws InterruptedException If the batch gave up on the sub-request.
+   */
+  boolean await() throws InterruptedException {
+    if (!this.done.await(this.timeout, TimeUnit.MILLISECONDS)) {
+      for (AsyncListener listener : this.getListeners()) {
+        this.fire(listener, true);
+      }
+    }
+    
+    return this.dispatched;
+  }
+  
+  /**
+   * Tells the listeners the asynchronous processing completed, once the sub-request was dispatched again or given up.
+   */
+  void completed() {
+    for (AsyncListener listener : this.getListeners()) {
+      this.fire(listener, false);
+    }
+  }
+  
+  private synchronized List<AsyncListener> getListeners() {
+    return new ArrayList<AsyncListener>(this.listeners);
+  }
+  
+  private void fire(final AsyncListener listener, final boolean timedOut) {
+    AsyncEvent event = new AsyncEvent(this, this.request, this.response);
+    
+    try {
+      if (timedOut)
+        listener.onTimeout(event);
+      else
+        listener.onComplete(event);
+    } catch (IOException ioe) {
+      logger.error("fire(): listener failed", ioe);
+    }
+  }
+  
+  @Override
+  public ServletRequest getRequest() {
+    return this.request;
+  }
+  
+  @Override
+  public ServletResponse getResponse() {
+    return this.response;
+  }
+  
+  @Override
+  public boolean hasOriginalRequestAndResponse() {
+    return true;
+  }
+  
+  @Override
+  public void dispatch() {
+    this.dispatched = true;
+    this.done.countDown();
+  }
+  
+  /**
+   * The sub-request is dispatched again to its own handler, whatever the path.
+   */
+  @Override
+  public void dispatch(final String path) {
+    this.dispatch();
+  }
+  
+  @Override
+  public void dispatch(final ServletContext context, final String path) {
+    this.dispatch();
+  }
+  
+  @Override
+  public void complete() {
+    this.done.countDown();
+  }
+  
+  @Override
+  public void start(final Runnable runnable) {
+    runnable.run();
+  }
+  
+  @Override
+  public synchronized void addListener(final AsyncListener listener) {
+    this.listeners.add(listener);
+  }
+  
+  @Override
+  public void addListener(final AsyncListener listener, final ServletRequest servletRequest, final ServletResponse servletResponse) {
+    this.addListener(listener);
+  }
+  
+  @Override
+  public <T extends AsyncListener> T createListener(final Class<T> listenerClass) throws ServletException {
+    try {
+      return listenerClass.newInstance();
+    } catch (Exception e) {
+      throw new ServletException(e);
+    }
+  }
+  
+  @Override
+  public void setTimeout(final long timeout) {
+    this.timeout = timeout > 0 ? timeout : Long.MAX_VALUE;
+  }
+  
+  @Override
+  public long getTimeout() {
+    return this.timeout;
+  }
+}
@@ -0,0 +1,444 @@
+package com.jiggy.base.controller;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.StringUtils;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.type.TypeReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.OrderComparator;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerAdapter;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+import org.springframework.web.servlet.HandlerExecutionChain;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.ModelAndView;
+
+import com.jiggy.base.exception.Error;
+import com.jiggy.base.exception.ValidationException;
+import com.jiggy.base.filter.ContextCallable;
+import com.jiggy.security.HttpMethodPermissionFilter;
+
+/**
+ * BatchDispatcher.java Dispatches the sub-requests of a batch to the handlers of the DispatcherServlet, so that a screen that needs many small
+ * resources pays for the filter chain, the session lookup and the logging context once. Every sub-request is authorized on its own by the
+ * HttpMethodPermissionFilter, as if it came alone, and runs in its own transaction.
+ * 
+ * <p>
+ * The reads, GET and HEAD, run at the same time on a bounded executor, each with the subject, logging context and span of the batch. A write is a
+ * barrier: it runs on the request thread once every sub-request before it completed, so the sub-requests after it see what it wrote. The responses
+ * are written in the order of the sub-requests, as a JSON array of status, headers and body; a sub-request that does not complete before the
+ * timeout of the batch is answered with 504, and so is a write that would start after it. The sub-requests read a copy of the batch request, so
+ * one that is still running once the batch is answered never touches it. A handler that processes its sub-request asynchronously, such as an
+ * AbstractAsyncController, is waited for on the thread of the sub-request.
+ * 
+ * @author jmalkan
+ */
+public class BatchDispatcher {
+  public static final int DEFAULT_THREADS = 8;
+  public static final int DEFAULT_QUEUE_SIZE = 64;
+  public static final int DEFAULT_MAX_REQUESTS = 50;
+  public static final long DEFAULT_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+  
+  private static final Logger logger = LoggerFactory.getLogger(BatchDispatcher.class);
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+  private static final Charset CHARSET = Charset.forName(BatchServletRequest.ENCODING);
+  private static final String BATCH_PATH = "/batch";
+  private static final String STATUS_FIELD = "status";
+  private static final String HEADERS_FIELD = "headers";
+  private static final String BODY_FIELD = "body";
+  
+  @Autowired private List<HandlerMapping> handlerMappings;
+  @Autowired private List<HandlerAdapter> handlerAdapters;
+  @Autowired(required = false) private List<HandlerExceptionResolver> handlerExceptionResolvers;
+  @Autowired private HttpMethodPermissionFilter permissionFilter;
+  
+  private int threads = DEFAULT_THREADS;
+  private int queueSize = DEFAULT_QUEUE_SIZE;
+  private int maxRequests = DEFAULT_MAX_REQUESTS;
+  private long timeout = DEFAULT_TIMEOUT;
+  private ThreadPoolExecutor executor;
+  
+  /**
+   * Setter of the property <tt>threads</tt>
+   * 
+   * @param threads The number of threads the reads of all the batches share.
+   */
+  public void setThreads(final int threads) {
+    this.threads = threads;
+  }
+  
+  /**
+   * Setter of the property <tt>queueSize</tt>
+   * 
+   * @param queueSize The number of reads waiting for a thread beyond which a batch runs its reads on the request thread.
+   */
+  public void setQueueSize(final int queueSize) {
+    this.queueSize = queueSize;
+  }
+  
+  /**
+   * Setter of the property <tt>maxRequests</tt>
+   * 
+   * @param maxRequests The maximum number of sub-requests of a batch.
+   */
+  public void setMaxRequests(final int maxRequests) {
+    this.maxRequests = maxRequests;
+  }
+  
+  /**
+   * Setter of the property <tt>timeout</tt>
+   * 
+   * @param timeout The time a batch waits for its sub-requests in milliseconds.
+   */
+  public void setTimeout(final long timeout) {
+    this.timeout = timeout;
+  }
+  
+  /**
+   * Called by Spring once the bean is set up. Orders the handlers as the DispatcherServlet does and starts the executor of the reads.
+   */
+  public void init() {
+    OrderComparator.sort(this.handlerMappings);
+    OrderComparator.sort(this.handlerAdapters);
+    
+    if (this.handlerExceptionResolvers == null)
+      this.handlerExceptionResolvers = new ArrayList<HandlerExceptionResolver>();
+    else
+      OrderComparator.sort(this.handlerExceptionResolvers);
+    
+    ThreadFactory threadFactory = new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+      
+      @Override
+      public Thread newThread(final Runnable runnable) {
+        Thread thread = new Thread(runnable, "batch-" + this.count.incrementAndGet());
+        thread.setDaemon(true);
+        
+        return thread;
+      }
+    };
+    
+    this.executor = new ThreadPoolExecutor(this.threads, this.threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(this.queueSize),
+                                           threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+    this.executor.allowCoreThreadTimeOut(true);
+  }
+  
+  /**
+   * Called by Spring when the context closes. Stops the executor of the reads.
+   */
+  public void cleanUp() {
+    if (this.executor != null)
+      this.executor.shutdownNow();
+  }
+  
+  /**
+   * Reads the sub-requests from the body of the batch, dispatches them and writes their responses.
+   * 
+   * @param request The batch request, whose body is a JSON array of method, path, headers and body.
+   * @param response The batch response.
+   * @throws IOException If the batch can not be read or the responses can not be written.
+   */
+  public void dispatch(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+    List<BatchRequest> batchRequests = OBJECT_MAPPER.readValue(request.getInputStream(), new TypeReference<List<BatchRequest>>() {});
+    
+    this.validate(batchRequests);
+    
+    long deadline = System.currentTimeMillis() + this.timeout;
+    HttpServletRequest batchCopy = new DetachedServletRequest(request);
+    List<Future<BatchServletResponse>> futures = new ArrayList<Future<BatchServletResponse>>(batchRequests.size());
+    List<BatchServletResponse> subResponses = new ArrayList<BatchServletResponse>(batchRequests.size());
+    
+    for (BatchRequest batchRequest : batchRequests) {
+      byte[] body = batchRequest.getBody() == null ? null : OBJECT_MAPPER.writeValueAsBytes(batchRequest.getBody());
+      final BatchServletRequest subRequest = new BatchServletRequest(batchCopy, batchRequest, body);
+      final BatchServletResponse subResponse = new BatchServletResponse(response);
+      Callable<BatchServletResponse> callable = new ContextCallable<BatchServletResponse>(new Callable<BatchServletResponse>() {
+        @Override
+        public BatchServletResponse call() {
+          return BatchDispatcher.this.execute(subRequest, subResponse);
+        }
+      }, "batch " + batchRequest);
+      
+      if (subRequest.isRead()) {
+        futures.add(this.executor.submit(callable));
+        subResponses.add(null);
+      } else {
+        this.awaitAll(futures, subResponses, response, deadline);
+        
+        if (System.currentTimeMillis() < deadline) {
+          FutureTask<BatchServletResponse> task = new FutureTask<BatchServletResponse>(callable);
+          task.run();
+          futures.add(task);
+          subResponses.add(null);
+        } else {
+          logger.debug("dispatch(): {} not run, the batch timed out", subRequest);
+          futures.add(null);
+          subResponses.add(this.failed(response, HttpServletResponse.SC_GATEWAY_TIMEOUT));
+        }
+      }
+    }
+    
+    this.awaitAll(futures, subResponses, response, deadline);
+    this.write(response, subResponses);
+  }
+  
+  /**
+   * Records the response of every sub-request that has none yet, in the same position. The future of a sub-request is waited for once only, since
+   * one that timed out is cancelled.
+   */
+  private void awaitAll(final List<Future<BatchServletResponse>> futures, final List<BatchServletResponse> subResponses,
+                        final HttpServletResponse response, final long deadline) {
+    for (int i = 0; i < futures.size(); i++) {
+      if (subResponses.get(i) == null)
+        subResponses.set(i, this.await(futures.get(i), response, deadline));
+    }
+  }
+  
+  private void validate(final List<BatchRequest> batchRequests) {
+    if (batchRequests == null || batchRequests.isEmpty() || batchRequests.size() > this.maxRequests)
+      throw new ValidationException(Error.ERROR_INVALID);
+    
+    for (BatchRequest batchRequest : batchRequests) {
+      String path = batchRequest.getPath();
+      
+      if (StringUtils.isBlank(batchRequest.getMethod()) || StringUtils.isBlank(path) || !path.startsWith("/"))
+        throw new ValidationException(Error.ERROR_INVALID);
+      
+      if (path.equals(BATCH_PATH) || path.startsWith(BATCH_PATH + "/") || path.startsWith(BATCH_PATH + "?"))
+        throw new ValidationException(Error.ERROR_INVALID);
+    }
+  }
+  
+  /**
+   * @return The response of the sub-request, or a response with the status of its failure if it failed or did not complete before the deadline.
+   */
+  private BatchServletResponse await(final Future<BatchServletResponse> future, final HttpServletResponse response, final long deadline) {
+    int status;
+    
+    try {
+      return future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    } catch (TimeoutException te) {
+      future.cancel(true);
+      status = HttpServletResponse.SC_GATEWAY_TIMEOUT;
+    } catch (CancellationException ce) {
+      status = HttpServletResponse.SC_GATEWAY_TIMEOUT;
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      future.cancel(true);
+      status = HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+    } catch (ExecutionException ee) {
+      logger.error("await(): sub-request failed", ee.getCause());
+      status = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+    }
+    
+    return this.failed(response, status);
+  }
+  
+  private BatchServletResponse failed(final HttpServletResponse response, final int status) {
+    BatchServletResponse failed = new BatchServletResponse(response);
+    failed.setStatus(status);
+    
+    return failed;
+  }
+  
+  /**
+   * Dispatches a sub-request as the DispatcherServlet does a request: authorizes it, finds its handler and runs it through the interceptors, and
+   * resolves its exception.
+   */
+  private BatchServletResponse execute(final BatchServletRequest request, final BatchServletResponse response) {
+    RequestAttributes previousAttributes = RequestContextHolder.getRequestAttributes();
+    ServletRequestAttributes attributes = new ServletRequestAttributes(request);
+    HandlerExecutionChain chain = null;
+    
+    RequestContextHolder.setRequestAttributes(attributes);
+    
+    try {
+      if (!this.permissionFilter.isAccessAllowed(request, response, null)) {
+        response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+        return response;
+      }
+      
+      chain = this.getHandler(request);
+      
+      if (chain == null) {
+        response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+        return response;
+      }
+      
+      this.handle(request, response, chain);
+      
+      if (request.isAsyncStarted())
+        this.handleAsync(request, response, chain);
+    } catch (Exception e) {
+      this.resolveException(request, response, chain == null ? null : chain.getHandler(), e);
+    } finally {
+      attributes.requestCompleted();
+      
+      if (previousAttributes == null)
+        RequestContextHolder.resetRequestAttributes();
+      else
+        RequestContextHolder.setRequestAttributes(previousAttributes);
+    }
+    
+    return response;
+  }
+  
+  private HandlerExecutionChain getHandler(final HttpServletRequest request) throws Exception {
+    for (HandlerMapping handlerMapping : this.handlerMappings) {
+      HandlerExecutionChain chain = handlerMapping.getHandler(request);
+      
+      if (chain != null)
+        return chain;
+    }
+    
+    return null;
+  }
+  
+  private void handle(final HttpServletRequest request, final HttpServletResponse response, final HandlerExecutionChain chain) throws Exception {
+    Object handler = chain.getHandler();
+    HandlerInterceptor[] interceptors = chain.getInterceptors() == null ? new HandlerInterceptor[0] : chain.getInterceptors();
+    int preHandled = 0;
+    boolean asyncStarted = false;
+    Exception failure = null;
+    
+    try {
+      for (; preHandled < interceptors.length; preHandled++) {
+        if (!interceptors[preHandled].preHandle(request, response, handler))
+          return;
+      }
+      
+      ModelAndView modelAndView = this.getHandlerAdapter(handler).handle(request, response, handler);
+      
+      if (request.isAsyncStarted()) {
+        asyncStarted = true;
+        
+        for (HandlerInterceptor interceptor : interceptors) {
+          if (interceptor instanceof AsyncHandlerInterceptor)
+            ((AsyncHandlerInterceptor) interceptor).afterConcurrentHandlingStarted(request, response, handler);
+        }
+        
+        return;
+      }
+      
+      for (int i = interceptors.length - 1; i >= 0; i--) {
+        interceptors[i].postHandle(request, response, handler, modelAndView);
+      }
+    } catch (Exception e) {
+      failure = e;
+      throw e;
+    } finally {
+      for (int i = preHandled - 1; !asyncStarted && i >= 0; i--) {
+        try {
+          interceptors[i].afterCompletion(request, response, handler, failure);
+        } catch (Exception e) {
+          logger.error("handle(): afterCompletion failed", e);
+        }
+      }
+    }
+  }
+  
+  /**
+   * Waits for the handler that started the asynchronous processing of a sub-request to dispatch it, then dispatches it again for its result to be
+   * written, as the container does. A sub-request that is not dispatched before its timeout is answered with 503.
+   */
+  private void handleAsync(final BatchServletRequest request, final BatchServletResponse response, final HandlerExecutionChain chain)
+      throws Exception {
+    BatchAsyncContext asyncContext = request.getBatchAsyncContext();
+    
+    try {
+      if (asyncContext.await()) {
+        request.setAsyncDispatch();
+        this.handle(request, response, chain);
+      } else {
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      }
+    } finally {
+      asyncContext.completed();
+    }
+  }
+  
+  private HandlerAdapter getHandlerAdapter(final Object handler) {
+    for (HandlerAdapter handlerAdapter : this.handlerAdapters) {
+      if (handlerAdapter.supports(handler))
+        return handlerAdapter;
+    }
+    
+    throw new IllegalStateException("No adapter for handler " + handler);
+  }
+  
+  private void resolveException(final HttpServletRequest request, final HttpServletResponse response, final Object handler, final Exception e) {
+    for (HandlerExceptionResolver resolver : this.handlerExceptionResolvers) {
+      if (resolver.resolveException(request, response, handler, e) != null)
+        return;
+    }
+    
+    logger.error("resolveException(): " + request, e);
+    response.reset();
+    response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+  }
+  
+  /**
+   * Writes the responses of the sub-requests in their order. A JSON body is written as it is, any other body as a string.
+   */
+  private void write(final HttpServletResponse response, final List<BatchServletResponse> subResponses) throws IOException {
+    response.setContentType(BatchServletRequest.JSON_CONTENT_TYPE);
+    JsonGenerator generator = OBJECT_MAPPER.getJsonFactory().createJsonGenerator(response.getOutputStream(), JsonEncoding.UTF8);
+    generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    
+    generator.writeStartArray();
+    
+    for (BatchServletResponse subResponse : subResponses) {
+      byte[] body = subResponse.getBody();
+      
+      generator.writeStartObject();
+      generator.writeNumberField(STATUS_FIELD, subResponse.getStatus());
+      generator.writeObjectFieldStart(HEADERS_FIELD);
+      
+      for (Map.Entry<String, List<String>> header : subResponse.getHeaderMap().entrySet()) {
+        generator.writeStringField(header.getKey(), StringUtils.join(header.getValue(), ", "));
+      }
+      
+      generator.writeEndObject();
+      generator.writeFieldName(BODY_FIELD);
+      
+      if (body.length == 0)
+        generator.writeNull();
+      else if (StringUtils.containsIgnoreCase(subResponse.getContentType(), "json"))
+        generator.writeRawValue(new String(body, CHARSET));
+      else
+        generator.writeString(new String(body, CHARSET));
+      
+      generator.writeEndObject();
+    }
+    
+    generator.writeEndArray();
+    generator.close();
+  }
+}
@@ -0,0 +1,95 @@
+package com.jiggy.base.controller;
+
+import java.util.Map;
+
+import org.codehaus.jackson.JsonNode;
+
+/**
+ * BatchRequest.java One sub-request of a batch, as the client sends it: the Http method, the path under the service such as "/todo/1?fields=name",
+ * the headers of its own such as If-None-Match, and the JSON body of a write.
+ * 
+ * @author jmalkan
+ */
+public class BatchRequest {
+  private String method;
+  private String path;
+  private Map<String, String> headers;
+  private JsonNode body;
+  
+  /**
+   * Getter of the property <tt>method</tt>
+   * 
+   * @return The Http method.
+   */
+  public String getMethod() {
+    return this.method;
+  }
+  
+  /**
+   * Setter of the property <tt>method</tt>
+   * 
+   * @param method The Http method.
+   */
+  public void setMethod(final String method) {
+    this.method = method;
+  }
+  
+  /**
+   * Getter of the property <tt>path</tt>
+   * 
+   * @return The path under the service, with its query string.
+   */
+  public String getPath() {
+    return this.path;
+  }
+  
+  /**
+   * Setter of the property <tt>path</tt>
+   * 
+   * @param path The path under the service, with its query string.
+   */
+  public void setPath(final String path) {
+    this.path = path;
+  }
+  
+  /**
+   * Getter of the property <tt>headers</tt>
+   * 
+   * @return The headers of the sub-request, null if none.
+   */
+  public Map<String, String> getHeaders() {
+    return this.headers;
+  }
+  
+  /**
+   * Setter of the property <tt>headers</tt>
+   * 
+   * @param headers The headers of the sub-request.
+   */
+  public void setHeaders(final Map<String, String> headers) {
+    this.headers = headers;
+  }
+  
+  /**
+   * Getter of the property <tt>body</tt>
+   * 
+   * @return The JSON body, null if none.
+   */
+  public JsonNode getBody() {
+    return this.body;
+  }
+  
+  /**
+   * Setter of the property <tt>body</tt>
+   * 
+   * @param body The JSON body.
+   */
+  public void setBody(final JsonNode body) {
+    this.body = body;
+  }
+  
+  @Override
+  public String toString() {
+    return this.method + " " + this.path;
+  }
+}
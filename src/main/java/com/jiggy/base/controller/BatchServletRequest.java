@@ -0,0 +1,413 @@
+package com.jiggy.base.controller;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.web.servlet.DispatcherServlet;
+
+/**
+ * BatchServletRequest.java A sub-request of a batch, dispatched to the controllers as if it came on its own. It has its own method, URI, query
+ * parameters, body and attributes, so that several of them can be dispatched at once on different threads. The session, the user and the headers
+ * the client sent with the batch, such as Accept and Cookie, are those of the batch request, read from a DetachedServletRequest copy of it; its
+ * conditional and content headers are not, and neither are its attributes, but for those of the DispatcherServlet the handlers look up. A
+ * handler that processes it asynchronously gets a BatchAsyncContext of its own, and the batch request is never put in asynchronous mode.
+ * 
+ * @author jmalkan
+ */
+final class BatchServletRequest extends HttpServletRequestWrapper {
+  static final String ENCODING = "UTF-8";
+  static final String JSON_CONTENT_TYPE = "application/json;charset=UTF-8";
+  static final String DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+  
+  private static final String CONTENT_TYPE = "content-type";
+  private static final String CONTENT_LENGTH = "content-length";
+  private static final String CONDITIONAL_PREFIX = "if-";
+  private static final String CONTENT_PREFIX = "content-";
+  
+  private final String method;
+  private final String requestURI;
+  private final String pathInfo;
+  private final String queryString;
+  private final Map<String, String[]> parameters = new LinkedHashMap<String, String[]>();
+  private final Map<String, String> headers = new LinkedHashMap<String, String>();
+  private final Map<String, Object> attributes = new HashMap<String, Object>();
+  private final byte[] body;
+  private volatile BatchAsyncContext asyncContext;
+  private volatile boolean asyncStarted;
+  private volatile DispatcherType dispatcherType = DispatcherType.REQUEST;
+  
+  /**
+   * Creates a new instance of com.jiggy.base.controller.BatchServletRequest.java and Performs Initialization
+   * 
+   * @param request The copy of the batch request.
+   * @param batchRequest The sub-request as the client sent it.
+   * @param body The JSON body of the sub-request, null if none.
+   */
+  BatchServletRequest(final HttpServletRequest request, final BatchRequest batchRequest, final byte[] body) {
+    super(request);
+    String path = batchRequest.getPath();
+    int queryStart = path.indexOf('?');
+    
+    this.method = StringUtils.upperCase(StringUtils.trim(batchRequest.getMethod()));
+    this.pathInfo = queryStart == -1 ? path : path.substring(0, queryStart);
+    this.queryString = queryStart == -1 ? null : path.substring(queryStart + 1);
+    this.requestURI = request.getContextPath() + request.getServletPath() + this.pathInfo;
+    this.body = body;
+    
+    if (batchRequest.getHeaders() != null) {
+      for (Map.Entry<String, String> header : batchRequest.getHeaders().entrySet()) {
+        this.headers.put(StringUtils.lowerCase(header.getKey()), header.getValue());
+      }
+    }
+    
+    if (body != null) {
+      this.headers.put(CONTENT_TYPE, JSON_CONTENT_TYPE);
+      this.headers.put(CONTENT_LENGTH, String.valueOf(body.length));
+    }
+    
+    this.parseQueryString();
+  }
+  
+  private void parseQueryString() {
+    Map<String, List<String>> values = new LinkedHashMap<String, List<String>>();
+    
+    for (String pair : StringUtils.split(StringUtils.defaultString(this.queryString), '&')) {
+      int separator = pair.indexOf('=');
+      String name = decode(separator == -1 ? pair : pair.substring(0, separator));
+      List<String> list = values.get(name);
+      
+      if (list == null) {
+        list = new ArrayList<String>();
+        values.put(name, list);
+      }
+      
+      list.add(separator == -1 ? StringUtils.EMPTY : decode(pair.substring(separator + 1)));
+    }
+    
+    for (Map.Entry<String, List<String>> entry : values.entrySet()) {
+      this.parameters.put(entry.getKey(), entry.getValue().toArray(new String[entry.getValue().size()]));
+    }
+  }
+  
+  private static String decode(final String text) {
+    try {
+      return URLDecoder.decode(text, ENCODING);
+    } catch (UnsupportedEncodingException uee) {
+      throw new IllegalStateException(uee);
+    } catch (IllegalArgumentException iae) {
+      return text;
+    }
+  }
+  
+  /**
+   * @return true if the sub-request only reads, and can run at the same time as the other reads of the batch.
+   */
+  boolean isRead() {
+    return "GET".equals(this.method) || "HEAD".equals(this.method);
+  }
+  
+  @Override
+  public String getMethod() {
+    return this.method;
+  }
+  
+  @Override
+  public String getRequestURI() {
+    return this.requestURI;
+  }
+  
+  @Override
+  public StringBuffer getRequestURL() {
+    StringBuffer requestURL = new StringBuffer();
+    
+    requestURL.append(this.getScheme()).append("://").append(this.getServerName()).append(':').append(this.getServerPort());
+    
+    return requestURL.append(this.requestURI);
+  }
+  
+  @Override
+  public String getPathInfo() {
+    return this.pathInfo;
+  }
+  
+  @Override
+  public String getPathTranslated() {
+    return null;
+  }
+  
+  @Override
+  public String getQueryString() {
+    return this.queryString;
+  }
+  
+  @Override
+  public String getParameter(final String name) {
+    String[] values = this.parameters.get(name);
+    
+    return values == null ? null : values[0];
+  }
+  
+  @Override
+  public String[] getParameterValues(final String name) {
+    String[] values = this.parameters.get(name);
+    
+    return values == null ? null : values.clone();
+  }
+  
+  @Override
+  @SuppressWarnings("rawtypes")
+  public Map getParameterMap() {
+    return Collections.unmodifiableMap(this.parameters);
+  }
+  
+  @Override
+  @SuppressWarnings("rawtypes")
+  public Enumeration getParameterNames() {
+    return Collections.enumeration(this.parameters.keySet());
+  }
+  
+  /**
+   * The header of the sub-request, else the header of the batch request unless it is a conditional or content header.
+   */
+  @Override
+  public String getHeader(final String name) {
+    String key = StringUtils.lowerCase(name);
+    
+    if (this.headers.containsKey(key))
+      return this.headers.get(key);
+    
+    return this.isInherited(key) ? super.getHeader(name) : null;
+  }
+  
+  @Override
+  @SuppressWarnings("rawtypes")
+  public Enumeration getHeaders(final String name) {
+    String key = StringUtils.lowerCase(name);
+    
+    if (this.headers.containsKey(key))
+      return Collections.enumeration(Collections.singletonList(this.headers.get(key)));
+    
+    return this.isInherited(key) ? super.getHeaders(name) : Collections.enumeration(Collections.emptyList());
+  }
+  
+  @Override
+  @SuppressWarnings("rawtypes")
+  public Enumeration getHeaderNames() {
+    Set<String> names = new LinkedHashSet<String>(this.headers.keySet());
+    
+    for (Enumeration headerNames = super.getHeaderNames(); headerNames != null && headerNames.hasMoreElements();) {
+      String name = (String) headerNames.nextElement();
+      
+      if (this.isInherited(StringUtils.lowerCase(name)) && !this.headers.containsKey(StringUtils.lowerCase(name)))
+        names.add(name);
+    }
+    
+    return Collections.enumeration(names);
+  }
+  
+  private boolean isInherited(final String key) {
+    return !key.startsWith(CONDITIONAL_PREFIX) && !key.startsWith(CONTENT_PREFIX);
+  }
+  
+  @Override
+  public int getIntHeader(final String name) {
+    String value = this.getHeader(name);
+    
+    return value == null ? -1 : Integer.parseInt(value);
+  }
+  
+  @Override
+  public long getDateHeader(final String name) {
+    String value = this.getHeader(name);
+    
+    if (value == null)
+      return -1;
+    
+    SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT, Locale.US);
+    dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+    
+    try {
+      return dateFormat.parse(value).getTime();
+    } catch (ParseException pe) {
+      throw new IllegalArgumentException("Invalid date header " + name + ": " + value);
+    }
+  }
+  
+  @Override
+  public String getContentType() {
+    return this.headers.get(CONTENT_TYPE);
+  }
+  
+  @Override
+  public int getContentLength() {
+    return this.body == null ? -1 : this.body.length;
+  }
+  
+  @Override
+  public String getCharacterEncoding() {
+    return ENCODING;
+  }
+  
+  @Override
+  public void setCharacterEncoding(final String encoding) {
+    return;
+  }
+  
+  @Override
+  public ServletInputStream getInputStream() {
+    final ByteArrayInputStream input = new ByteArrayInputStream(this.body == null ? new byte[0] : this.body);
+    
+    return new ServletInputStream() {
+      @Override
+      public int read() {
+        return input.read();
+      }
+      
+      @Override
+      public int read(final byte[] b, final int off, final int len) {
+        return input.read(b, off, len);
+      }
+    };
+  }
+  
+  @Override
+  public BufferedReader getReader() throws IOException {
+    return new BufferedReader(new InputStreamReader(this.getInputStream(), ENCODING));
+  }
+  
+  /**
+   * The attribute of the sub-request, else the attribute the DispatcherServlet set on the batch request for its handlers.
+   */
+  @Override
+  public Object getAttribute(final String name) {
+    if (this.attributes.containsKey(name))
+      return this.attributes.get(name);
+    
+    return isDispatcherAttribute(name) ? super.getAttribute(name) : null;
+  }
+  
+  @Override
+  @SuppressWarnings("rawtypes")
+  public Enumeration getAttributeNames() {
+    Set<String> names = new LinkedHashSet<String>();
+    
+    for (Map.Entry<String, Object> attribute : this.attributes.entrySet()) {
+      if (attribute.getValue() != null)
+        names.add(attribute.getKey());
+    }
+    
+    for (Enumeration attributeNames = super.getAttributeNames(); attributeNames.hasMoreElements();) {
+      String name = (String) attributeNames.nextElement();
+      
+      if (isDispatcherAttribute(name) && !this.attributes.containsKey(name))
+        names.add(name);
+    }
+    
+    return Collections.enumeration(names);
+  }
+  
+  @Override
+  public void setAttribute(final String name, final Object value) {
+    if (value == null)
+      this.removeAttribute(name);
+    else
+      this.attributes.put(name, value);
+  }
+  
+  /**
+   * Removes the attribute from the sub-request only; an attribute of the DispatcherServlet reads as null afterwards.
+   */
+  @Override
+  public void removeAttribute(final String name) {
+    this.attributes.put(name, null);
+  }
+  
+  /**
+   * @return The asynchronous processing of the sub-request, null if its handler did not start one.
+   */
+  BatchAsyncContext getBatchAsyncContext() {
+    return this.asyncContext;
+  }
+  
+  /**
+   * Makes the sub-request an asynchronous dispatch, for the handler to write the result it was dispatched with.
+   */
+  void setAsyncDispatch() {
+    this.asyncStarted = false;
+    this.dispatcherType = DispatcherType.ASYNC;
+  }
+  
+  @Override
+  public boolean isAsyncSupported() {
+    return true;
+  }
+  
+  /**
+   * The sub-request has no response of its own to start with: the handlers start it with the response they were given.
+   */
+  @Override
+  public AsyncContext startAsync() {
+    throw new IllegalStateException("The sub-request of a batch is started with its request and response");
+  }
+  
+  @Override
+  public AsyncContext startAsync(final ServletRequest servletRequest, final ServletResponse servletResponse) {
+    this.asyncContext = new BatchAsyncContext(servletRequest, servletResponse);
+    this.asyncStarted = true;
+    
+    return this.asyncContext;
+  }
+  
+  @Override
+  public boolean isAsyncStarted() {
+    return this.asyncStarted;
+  }
+  
+  @Override
+  public AsyncContext getAsyncContext() {
+    if (!this.asyncStarted)
+      throw new IllegalStateException("The sub-request is not in asynchronous mode");
+    
+    return this.asyncContext;
+  }
+  
+  @Override
+  public DispatcherType getDispatcherType() {
+    return this.dispatcherType;
+  }
+  
+  private static boolean isDispatcherAttribute(final String name) {
+    return name.startsWith(DispatcherServlet.class.getName());
+  }
+  
+  @Override
+  public String toString() {
+    return this.method + " " + this.requestURI + (this.queryString == null ? StringUtils.EMPTY : "?" + this.queryString);
+  }
+}
@@ -0,0 +1,270 @@
+package com.jiggy.base.controller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * BatchServletResponse.java The response of a sub-request of a batch. The status, headers and body the handler writes are kept in memory to be
+ * written in the response of the batch; the response of the batch itself is never touched, nor committed.
+ * 
+ * @author jmalkan
+ */
+final class BatchServletResponse extends HttpServletResponseWrapper {
+  private static final String LOCATION = "Location";
+  private static final String CONTENT_TYPE = "Content-Type";
+  
+  private final Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+  private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+  private int status = SC_OK;
+  private String contentType;
+  private String characterEncoding = BatchServletRequest.ENCODING;
+  private ServletOutputStream outputStream;
+  private PrintWriter writer;
+  
+  /**
+   * Creates a new instance of com.jiggy.base.controller.BatchServletResponse.java and Performs Initialization
+   * 
+   * @param response The response of the batch.
+   */
+  BatchServletResponse(final HttpServletResponse response) {
+    super(response);
+  }
+  
+  @Override
+  public int getStatus() {
+    return this.status;
+  }
+  
+  /**
+   * @return The headers of the sub-request, by name.
+   */
+  Map<String, List<String>> getHeaderMap() {
+    return this.headers;
+  }
+  
+  /**
+   * @return The body of the sub-request, flushed from the writer.
+   */
+  byte[] getBody() {
+    if (this.writer != null)
+      this.writer.flush();
+    
+    return this.body.toByteArray();
+  }
+  
+  @Override
+  public void setStatus(final int status) {
+    this.status = status;
+  }
+  
+  @Override
+  @Deprecated
+  public void setStatus(final int status, final String message) {
+    this.status = status;
+  }
+  
+  @Override
+  public void sendError(final int status) {
+    this.status = status;
+  }
+  
+  @Override
+  public void sendError(final int status, final String message) {
+    this.status = status;
+  }
+  
+  @Override
+  public void sendRedirect(final String location) {
+    this.status = SC_FOUND;
+    this.setHeader(LOCATION, location);
+  }
+  
+  @Override
+  public boolean containsHeader(final String name) {
+    return this.headers.containsKey(name);
+  }
+  
+  @Override
+  public String getHeader(final String name) {
+    List<String> values = this.headers.get(name);
+    
+    return values == null ? null : values.get(0);
+  }
+  
+  @Override
+  public Collection<String> getHeaders(final String name) {
+    List<String> values = this.headers.get(name);
+    
+    return values == null ? Collections.<String>emptyList() : new ArrayList<String>(values);
+  }
+  
+  @Override
+  public Collection<String> getHeaderNames() {
+    return new ArrayList<String>(this.headers.keySet());
+  }
+  
+  @Override
+  public void setHeader(final String name, final String value) {
+    List<String> values = new ArrayList<String>();
+    
+    values.add(value);
+    this.headers.put(name, values);
+    
+    if (CONTENT_TYPE.equalsIgnoreCase(name))
+      this.contentType = value;
+  }
+  
+  @Override
+  public void addHeader(final String name, final String value) {
+    List<String> values = this.headers.get(name);
+    
+    if (values == null)
+      this.setHeader(name, value);
+    else
+      values.add(value);
+  }
+  
+  @Override
+  public void setIntHeader(final String name, final int value) {
+    this.setHeader(name, String.valueOf(value));
+  }
+  
+  @Override
+  public void addIntHeader(final String name, final int value) {
+    this.addHeader(name, String.valueOf(value));
+  }
+  
+  @Override
+  public void setDateHeader(final String name, final long date) {
+    this.setHeader(name, formatDate(date));
+  }
+  
+  @Override
+  public void addDateHeader(final String name, final long date) {
+    this.addHeader(name, formatDate(date));
+  }
+  
+  private static String formatDate(final long date) {
+    SimpleDateFormat dateFormat = new SimpleDateFormat(BatchServletRequest.DATE_FORMAT, Locale.US);
+    dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+    
+    return dateFormat.format(new Date(date));
+  }
+  
+  /**
+   * The cookies of a sub-request are dropped: the session is that of the batch.
+   */
+  @Override
+  public void addCookie(final Cookie cookie) {
+    return;
+  }
+  
+  @Override
+  public String getContentType() {
+    return this.contentType;
+  }
+  
+  @Override
+  public void setContentType(final String contentType) {
+    this.setHeader(CONTENT_TYPE, contentType);
+  }
+  
+  @Override
+  public void setContentLength(final int length) {
+    return;
+  }
+  
+  @Override
+  public String getCharacterEncoding() {
+    return this.characterEncoding;
+  }
+  
+  @Override
+  public void setCharacterEncoding(final String characterEncoding) {
+    if (StringUtils.isNotBlank(characterEncoding))
+      this.characterEncoding = characterEncoding;
+  }
+  
+  @Override
+  public ServletOutputStream getOutputStream() {
+    if (this.outputStream == null) {
+      this.outputStream = new ServletOutputStream() {
+        @Override
+        public void write(final int b) {
+          BatchServletResponse.this.body.write(b);
+        }
+        
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+          BatchServletResponse.this.body.write(b, off, len);
+        }
+      };
+    }
+    
+    return this.outputStream;
+  }
+  
+  @Override
+  public PrintWriter getWriter() throws IOException {
+    if (this.writer == null)
+      this.writer = new PrintWriter(new OutputStreamWriter(this.body, this.characterEncoding));
+    
+    return this.writer;
+  }
+  
+  @Override
+  public void setLocale(final Locale locale) {
+    return;
+  }
+  
+  @Override
+  public void setBufferSize(final int size) {
+    return;
+  }
+  
+  @Override
+  public void flushBuffer() {
+    if (this.writer != null)
+      this.writer.flush();
+  }
+  
+  @Override
+  public boolean isCommitted() {
+    return false;
+  }
+  
+  @Override
+  public void reset() {
+    this.resetBuffer();
+    this.headers.clear();
+    this.status = SC_OK;
+    this.contentType = null;
+  }
+  
+  @Override
+  public void resetBuffer() {
+    if (this.writer != null)
+      this.writer.flush();
+    
+    this.body.reset();
+  }
+}
@@ -1,8 +1,10 @@
 package com.jiggy.base.controller;
 
+import java.io.IOException;
 import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import com.jiggy.base.entity.Entity;
 
@@ -22,6 +24,27 @@ public interface DBController<T extends Entity> extends Controller {
    */
   T findById(Long id);
   
+  /**
+   * Finds the entity for the given Id, with its version in the {@code ETag} and {@code Last-Modified} response headers. When the
+   * {@code If-None-Match} or {@code If-Modified-Since} header of the request matches the current version, the response is 304 Not Modified and the
+   * entity is neither loaded nor written.
+   * 
+   * @param id The id for the entity to be searched for.
+   * @param request The Http request.
+   * @param response The Http response.
+   * @return An instance of the entity object, null if not modified.
+   */
+  T findById(Long id, HttpServletRequest request, HttpServletResponse response);
+  
+  /**
+   * Finds the entities for the given comma separated Ids, in one call instead of one call per id.
+   * Example : http://localhost:8080/service/todo?ids=1,2,3
+   * 
+   * @param ids The comma separated ids of the entities to be searched for.
+   * @return List of the entity objects found, in the order of the given ids.
+   */
+  List<T> findByIds(String ids);
+  
   /**
    * Finds all the entity objects.
    * 
@@ -29,6 +52,16 @@ public interface DBController<T extends Entity> extends Controller {
    */
   List<T> findAll();
   
+  /**
+   * Finds all the entity objects, with the {@code ETag} and {@code Last-Modified} of the list in the response headers. When the request matches
+   * them, the response is 304 Not Modified.
+   * 
+   * @param request The Http request.
+   * @param response The Http response.
+   * @return List of all the entity objects, null if not modified.
+   */
+  List<T> findAll(HttpServletRequest request, HttpServletResponse response);
+  
   /**
    * Finds all the entities that matches the given search criteria with any user input for filter, sort, pagination.
    * User input is expected as name=value pairs seperated by "&"
@@ -40,6 +73,31 @@ public interface DBController<T extends Entity> extends Controller {
    */
   List<T> find(HttpServletRequest request);
   
+  /**
+   * Finds all the entities that matches the given search criteria. When the request carries an "after" cursor and a limit, the page is fetched by
+   * keyset pagination and the token of the next page is returned in the {@code X-Next-Page-Token} response header.
+   * Example : http://localhost:8080/service/../find?sort=name&limit=50&after=TGRvIGRpc2hlc3wy
+   * 
+   * The {@code ETag} and {@code Last-Modified} of the page are returned in the response headers, and the response is 304 Not Modified when the
+   * request matches them.
+   * 
+   * @param request The Http request.
+   * @param response The Http response.
+   * 
+   * @return List of entity objects that matches the search criteria, null if not modified.
+   */
+  List<T> find(HttpServletRequest request, HttpServletResponse response);
+  
+  /**
+   * Streams all the entities that matches the given search criteria as a JSON array. The rows are written as they are read from the data store, so
+   * the size of the result is not bounded by the heap. Example : http://localhost:8080/service/../stream?sort=name
+   * 
+   * @param request The Http request.
+   * @param response The Http response the entities are written to.
+   * @throws IOException If the response cannot be written.
+   */
+  void stream(HttpServletRequest request, HttpServletResponse response) throws IOException;
+  
   /**
    * Convenient method when one result is expected from the Search.
    * 
@@ -80,6 +138,18 @@ public interface DBController<T extends Entity> extends Controller {
    */
   T modify(final Long id, T entity);
   
+  /**
+   * Runs business logic and persists the entity object, as a new version of the stored entity. When the request has an {@code If-Match} header
+   * that does not match the stored version, the entity was modified since the client read it and the request fails with 412 Precondition Failed.
+   * 
+   * @param id The id of the entity to be modified.
+   * @param entity An instance of the entity object.
+   * @param request The Http request.
+   * @param response The Http response, which gets the {@code ETag} of the new version.
+   * @return The modified entity.
+   */
+  T modify(final Long id, T entity, HttpServletRequest request, HttpServletResponse response);
+  
   /**
    * Runs business logic and deletes the entity from the data store. Cascades if configured.
    * 
@@ -93,4 +163,13 @@ public interface DBController<T extends Entity> extends Controller {
    * @param id An id of the entity object that needs to be deleted.
    */
   void remove(final Long id);
+  
+  /**
+   * Runs business logic and deletes the entity from the data store. When the request has an {@code If-Match} header that does not match the stored
+   * version, the request fails with 412 Precondition Failed.
+   * 
+   * @param id An id of the entity object that needs to be deleted.
+   * @param request The Http request.
+   */
+  void remove(final Long id, HttpServletRequest request);
 }
\ No newline at end of file
@@ -0,0 +1,338 @@
+package com.jiggy.base.controller;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.security.Principal;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpSession;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * DetachedServletRequest.java A copy of a request, taken on the container thread, for work that may outlive the request: the work of an
+ * AbstractAsyncController, or a sub-request of a batch, that still runs after a timeout answered the request. It has the method, URI, parameters,
+ * headers, attributes, client, user and session the request had when it was copied; the container request itself is not referenced, so the work
+ * never reads it after the container recycled it. Anything else fails with an IllegalStateException.
+ * 
+ * @author jmalkan
+ */
+final class DetachedServletRequest extends HttpServletRequestWrapper {
+  private final String method;
+  private final String requestURI;
+  private final String contextPath;
+  private final String servletPath;
+  private final String pathInfo;
+  private final String queryString;
+  private final String characterEncoding;
+  private final Locale locale;
+  private final String scheme;
+  private final String serverName;
+  private final int serverPort;
+  private final boolean secure;
+  private final String remoteAddr;
+  private final String remoteHost;
+  private final String remoteUser;
+  private final Principal userPrincipal;
+  private final String authType;
+  private final Cookie[] cookies;
+  private final HttpSession session;
+  private final String requestedSessionId;
+  private final Map<String, String[]> parameters = new LinkedHashMap<String, String[]>();
+  private final Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+  private final Map<String, Object> attributes = new HashMap<String, Object>();
+  
+  /**
+   * Creates a new instance of com.jiggy.base.controller.DetachedServletRequest.java and Performs Initialization
+   * 
+   * @param request The request to copy, on the container thread.
+   */
+  @SuppressWarnings("unchecked")
+  DetachedServletRequest(final HttpServletRequest request) {
+    super(detached(HttpServletRequest.class));
+    this.method = request.getMethod();
+    this.requestURI = request.getRequestURI();
+    this.contextPath = request.getContextPath();
+    this.servletPath = request.getServletPath();
+    this.pathInfo = request.getPathInfo();
+    this.queryString = request.getQueryString();
+    this.characterEncoding = request.getCharacterEncoding();
+    this.locale = request.getLocale();
+    this.scheme = request.getScheme();
+    this.serverName = request.getServerName();
+    this.serverPort = request.getServerPort();
+    this.secure = request.isSecure();
+    this.remoteAddr = request.getRemoteAddr();
+    this.remoteHost = request.getRemoteHost();
+    this.remoteUser = request.getRemoteUser();
+    this.userPrincipal = request.getUserPrincipal();
+    this.authType = request.getAuthType();
+    this.cookies = request.getCookies();
+    this.session = request.getSession(false);
+    this.requestedSessionId = request.getRequestedSessionId();
+    
+    for (Map.Entry<String, String[]> parameter : ((Map<String, String[]>) request.getParameterMap()).entrySet()) {
+      this.parameters.put(parameter.getKey(), parameter.getValue().clone());
+    }
+    
+    for (Enumeration<String> names = request.getHeaderNames(); names != null && names.hasMoreElements();) {
+      String name = names.nextElement();
+      List<String> values = new ArrayList<String>();
+      
+      for (Enumeration<String> headerValues = request.getHeaders(name); headerValues != null && headerValues.hasMoreElements();) {
+        values.add(headerValues.nextElement());
+      }
+      
+      this.headers.put(StringUtils.lowerCase(name), values);
+    }
+    
+    for (Enumeration<String> names = request.getAttributeNames(); names != null && names.hasMoreElements();) {
+      String name = names.nextElement();
+      this.attributes.put(name, request.getAttribute(name));
+    }
+  }
+  
+  @Override
+  public String getMethod() {
+    return this.method;
+  }
+  
+  @Override
+  public String getRequestURI() {
+    return this.requestURI;
+  }
+  
+  @Override
+  public String getContextPath() {
+    return this.contextPath;
+  }
+  
+  @Override
+  public String getServletPath() {
+    return this.servletPath;
+  }
+  
+  @Override
+  public String getPathInfo() {
+    return this.pathInfo;
+  }
+  
+  @Override
+  public String getQueryString() {
+    return this.queryString;
+  }
+  
+  @Override
+  public String getCharacterEncoding() {
+    return this.characterEncoding;
+  }
+  
+  @Override
+  public Locale getLocale() {
+    return this.locale;
+  }
+  
+  @Override
+  public String getScheme() {
+    return this.scheme;
+  }
+  
+  @Override
+  public String getServerName() {
+    return this.serverName;
+  }
+  
+  @Override
+  public int getServerPort() {
+    return this.serverPort;
+  }
+  
+  @Override
+  public StringBuffer getRequestURL() {
+    StringBuffer requestURL = new StringBuffer();
+    
+    requestURL.append(this.scheme).append("://").append(this.serverName).append(':').append(this.serverPort);
+    
+    return requestURL.append(this.requestURI);
+  }
+  
+  @Override
+  public boolean isSecure() {
+    return this.secure;
+  }
+  
+  @Override
+  public String getRemoteAddr() {
+    return this.remoteAddr;
+  }
+  
+  @Override
+  public String getRemoteHost() {
+    return this.remoteHost;
+  }
+  
+  @Override
+  public String getRemoteUser() {
+    return this.remoteUser;
+  }
+  
+  @Override
+  public Principal getUserPrincipal() {
+    return this.userPrincipal;
+  }
+  
+  @Override
+  public String getAuthType() {
+    return this.authType;
+  }
+  
+  @Override
+  public Cookie[] getCookies() {
+    return this.cookies == null ? null : this.cookies.clone();
+  }
+  
+  /**
+   * The session of the request when it was copied; a new one can not be created once the request is detached.
+   */
+  @Override
+  public HttpSession getSession(final boolean create) {
+    return this.session != null || !create ? this.session : super.getSession(create);
+  }
+  
+  @Override
+  public HttpSession getSession() {
+    return this.getSession(true);
+  }
+  
+  @Override
+  public String getRequestedSessionId() {
+    return this.requestedSessionId;
+  }
+  
+  @Override
+  public String getParameter(final String name) {
+    String[] values = this.parameters.get(name);
+    
+    return values == null || values.length == 0 ? null : values[0];
+  }
+  
+  @Override
+  public String[] getParameterValues(final String name) {
+    String[] values = this.parameters.get(name);
+    
+    return values == null ? null : values.clone();
+  }
+  
+  @Override
+  @SuppressWarnings("rawtypes")
+  public Map getParameterMap() {
+    return Collections.unmodifiableMap(this.parameters);
+  }
+  
+  @Override
+  @SuppressWarnings("rawtypes")
+  public Enumeration getParameterNames() {
+    return Collections.enumeration(this.parameters.keySet());
+  }
+  
+  @Override
+  public String getHeader(final String name) {
+    List<String> values = this.headers.get(StringUtils.lowerCase(name));
+    
+    return values == null || values.isEmpty() ? null : values.get(0);
+  }
+  
+  @Override
+  @SuppressWarnings("rawtypes")
+  public Enumeration getHeaders(final String name) {
+    List<String> values = this.headers.get(StringUtils.lowerCase(name));
+    
+    return Collections.enumeration(values == null ? Collections.<String>emptyList() : values);
+  }
+  
+  @Override
+  @SuppressWarnings("rawtypes")
+  public Enumeration getHeaderNames() {
+    return Collections.enumeration(this.headers.keySet());
+  }
+  
+  @Override
+  public int getIntHeader(final String name) {
+    String value = this.getHeader(name);
+    
+    return value == null ? -1 : Integer.parseInt(value);
+  }
+  
+  @Override
+  public long getDateHeader(final String name) {
+    String value = this.getHeader(name);
+    
+    if (value == null)
+      return -1;
+    
+    SimpleDateFormat dateFormat = new SimpleDateFormat(BatchServletRequest.DATE_FORMAT, Locale.US);
+    dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+    
+    try {
+      return dateFormat.parse(value).getTime();
+    } catch (ParseException pe) {
+      throw new IllegalArgumentException("Invalid date header " + name + ": " + value);
+    }
+  }
+  
+  @Override
+  public Object getAttribute(final String name) {
+    return this.attributes.get(name);
+  }
+  
+  @Override
+  @SuppressWarnings("rawtypes")
+  public Enumeration getAttributeNames() {
+    return Collections.enumeration(new ArrayList<String>(this.attributes.keySet()));
+  }
+  
+  @Override
+  public void setAttribute(final String name, final Object value) {
+    if (value == null)
+      this.attributes.remove(name);
+    else
+      this.attributes.put(name, value);
+  }
+  
+  @Override
+  public void removeAttribute(final String name) {
+    this.attributes.remove(name);
+  }
+  
+  /**
+   * @param type The servlet interface.
+   * @return An instance of the interface that fails on any call, to wrap in place of the container object.
+   */
+  static <S> S detached(final Class<S> type) {
+    return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, new InvocationHandler() {
+      @Override
+      public Object invoke(final Object proxy, final Method method, final Object[] args) {
+        throw new IllegalStateException("Detached from the container, " + type.getSimpleName() + "." + method.getName() + " is not available");
+      }
+    }));
+  }
+  
+  @Override
+  public String toString() {
+    return this.method + " " + this.requestURI + (this.queryString == null ? StringUtils.EMPTY : "?" + this.queryString);
+  }
+}
@@ -0,0 +1,134 @@
+package com.jiggy.base.controller;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * DetachedServletResponse.java The response the work of an AbstractAsyncController sets its status and headers on, on a thread of the executor. They
+ * are kept in memory and returned with the result, in a ResponseEntity, to be set on the container response on the async dispatch; the body is the
+ * result itself, and writing one fails with an IllegalStateException.
+ * 
+ * @author jmalkan
+ */
+final class DetachedServletResponse extends HttpServletResponseWrapper {
+  private final HttpHeaders headers = new HttpHeaders();
+  private int status = SC_OK;
+  
+  /**
+   * Creates a new instance of com.jiggy.base.controller.DetachedServletResponse.java and Performs Initialization
+   */
+  DetachedServletResponse() {
+    super(DetachedServletRequest.detached(HttpServletResponse.class));
+  }
+  
+  /**
+   * @param body The result of the work.
+   * @return The result with the status and headers set by the work.
+   */
+  <V> ResponseEntity<V> toResponseEntity(final V body) {
+    return new ResponseEntity<V>(body, this.headers, HttpStatus.valueOf(this.status));
+  }
+  
+  @Override
+  public int getStatus() {
+    return this.status;
+  }
+  
+  @Override
+  public void setStatus(final int status) {
+    this.status = status;
+  }
+  
+  @Override
+  @Deprecated
+  public void setStatus(final int status, final String message) {
+    this.status = status;
+  }
+  
+  @Override
+  public void sendError(final int status) {
+    this.status = status;
+  }
+  
+  @Override
+  public void sendError(final int status, final String message) {
+    this.status = status;
+  }
+  
+  @Override
+  public boolean containsHeader(final String name) {
+    return this.headers.containsKey(name);
+  }
+  
+  @Override
+  public String getHeader(final String name) {
+    return this.headers.getFirst(name);
+  }
+  
+  @Override
+  public Collection<String> getHeaders(final String name) {
+    List<String> values = this.headers.get(name);
+    
+    return values == null ? Collections.<String>emptyList() : new ArrayList<String>(values);
+  }
+  
+  @Override
+  public Collection<String> getHeaderNames() {
+    return new ArrayList<String>(this.headers.keySet());
+  }
+  
+  @Override
+  public void setHeader(final String name, final String value) {
+    this.headers.set(name, value);
+  }
+  
+  @Override
+  public void addHeader(final String name, final String value) {
+    this.headers.add(name, value);
+  }
+  
+  @Override
+  public void setIntHeader(final String name, final int value) {
+    this.setHeader(name, String.valueOf(value));
+  }
+  
+  @Override
+  public void addIntHeader(final String name, final int value) {
+    this.addHeader(name, String.valueOf(value));
+  }
+  
+  @Override
+  public void setDateHeader(final String name, final long date) {
+    this.setHeader(name, formatDate(date));
+  }
+  
+  @Override
+  public void addDateHeader(final String name, final long date) {
+    this.addHeader(name, formatDate(date));
+  }
+  
+  private static String formatDate(final long date) {
+    SimpleDateFormat dateFormat = new SimpleDateFormat(BatchServletRequest.DATE_FORMAT, Locale.US);
+    dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+    
+    return dateFormat.format(new Date(date));
+  }
+  
+  @Override
+  public boolean isCommitted() {
+    return false;
+  }
+}
@@ -2,23 +2,41 @@ package com.jiggy.base.dao;
 
 import java.lang.reflect.ParameterizedType;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.shiro.util.ThreadContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.PropertyAccessorFactory;
 
+import com.jiggy.base.dao.FieldMetadata.FieldType;
 import com.jiggy.base.entity.Entity;
+import com.jiggy.base.entity.EntityVersion;
+import com.jiggy.base.exception.Error;
+import com.jiggy.base.exception.ValidationException;
+import com.jiggy.base.monitor.MetricsRegistry;
+import com.jiggy.base.monitor.MetricsReport;
+import com.jiggy.base.monitor.MetricsSource;
+import com.jiggy.base.searchengine.DefaultSearchCriteria;
 import com.jiggy.base.searchengine.FilterExpression.FilterAdvice;
 import com.jiggy.base.searchengine.FilterExpression.FilterTerm;
+import com.jiggy.base.searchengine.FilterExpression.Op;
+import com.jiggy.base.searchengine.FilterExpression.QueryMode;
 import com.jiggy.base.searchengine.FilterExpression;
+import com.jiggy.base.searchengine.FilterNode;
+import com.jiggy.base.searchengine.PageCursor;
 import com.jiggy.base.searchengine.SearchCriteria;
+import com.jiggy.base.searchengine.SearchCriteria.CountMode;
+import com.jiggy.base.searchengine.SortKey;
+import com.jiggy.base.searchengine.TextIndex;
+import com.jiggy.security.PermissionMatcher;
 import com.jiggy.security.Role;
 import com.jiggy.security.SessionUtil;
 import com.jiggy.security.UserProfile;
@@ -41,33 +59,307 @@ import com.jiggy.security.UserProfile;
  * @author jmalkan
  */
 public abstract class AbstractDBDAO<T extends Entity> implements DBDAO<T>, FilterAdvice {
+  /** The number of rows fetched from the data store per round trip while streaming. */
+  protected static final int STREAM_FETCH_SIZE = 100;
+  
+  /** The number of entities written to the data store per round trip by the batch operations, unless the descendant knows better. */
+  protected static final int DEFAULT_BATCH_SIZE = 50;
+  
+  /** The number of filters whose exact row count is kept for the CACHED count mode, and for how many milliseconds. */
+  private static final int COUNT_CACHE_SIZE = 256;
+  private static final long COUNT_CACHE_TIME_TO_LIVE = 10000;
+  
+  /** The operation of the permission whose row level filter applies to the searches. */
+  private static final String READ_OPERATION = "read";
+  
+  /** Set on the thread of a read of every entity for the application itself, such as the rebuild of the text index. */
+  private static final ThreadLocal<Boolean> UNFILTERED_READ = new ThreadLocal<Boolean>();
+  
+  /** The number of best matches of a full-text search that are fetched, filtered and paged. */
+  protected static final int MAX_TEXT_HITS = 1000;
+  
   protected final Logger logger = LoggerFactory.getLogger(this.getClass());
   private Class<T> persistentClass;
+  private final FieldMetadata fieldMetadata;
+  private EntityCache<T> entityCache;
+  private QueryCache<T> queryCache;
+  private final QueryCache<T> countCache = new QueryCache<T>(COUNT_CACHE_SIZE, COUNT_CACHE_TIME_TO_LIVE);
+  private TextIndex textIndex;
+  private final QueryProfiler queryProfiler = QueryProfiler.getInstance();
   
   @SuppressWarnings("unchecked")
   public AbstractDBDAO() {
     this.persistentClass = (Class<T>) ((ParameterizedType) getClass().getGenericSuperclass()).getActualTypeArguments()[0];
+    this.fieldMetadata = FieldMetadata.of(this.persistentClass);
   }
   
   public Class<T> getPersistentClass() {
     return persistentClass;
   }
   
+  /**
+   * Getter of the property <tt>fieldMetadata</tt>
+   * 
+   * @return Returns the filterable fields of the persistent class.
+   */
+  public FieldMetadata getFieldMetadata() {
+    return fieldMetadata;
+  }
+  
+  /**
+   * Getter of the property <tt>entityCache</tt>
+   * 
+   * @return Returns the entityCache, or null if findById and findAll always read the data store.
+   */
+  public EntityCache<T> getEntityCache() {
+    return this.entityCache;
+  }
+  
+  /**
+   * Setter of the property <tt>entityCache</tt>. Descendants enable the cache for entities that are read far more often than they are written.
+   * 
+   * @param entityCache The entityCache to set, null to disable it.
+   */
+  public void setEntityCache(final EntityCache<T> entityCache) {
+    this.entityCache = entityCache;
+  }
+  
+  /**
+   * Getter of the property <tt>queryCache</tt>
+   * 
+   * @return Returns the queryCache, or null if find and getRowCount always read the data store.
+   */
+  public QueryCache<T> getQueryCache() {
+    return this.queryCache;
+  }
+  
+  /**
+   * Setter of the property <tt>queryCache</tt>. Descendants enable the cache for entities whose lists are searched far more often than written.
+   * 
+   * @param queryCache The queryCache to set, null to disable it.
+   */
+  public void setQueryCache(final QueryCache<T> queryCache) {
+    this.queryCache = queryCache;
+  }
+  
+  /**
+   * Getter of the property <tt>textIndex</tt>
+   * 
+   * @return Returns the textIndex, or null if the entity can not be searched by words.
+   */
+  public TextIndex getTextIndex() {
+    return this.textIndex;
+  }
+  
+  /**
+   * Setter of the property <tt>textIndex</tt>. Descendants enable the index for entities searched by the words of their text fields.
+   * 
+   * @param textIndex The textIndex to set, null to disable it.
+   */
+  public void setTextIndex(final TextIndex textIndex) {
+    this.textIndex = textIndex;
+  }
+  
+  /**
+   * Called by Spring once the DAO is set up. Builds the text index, if any, and registers the counters of the caches with the MetricsRegistry.
+   */
+  public void init() {
+    if (this.textIndex != null)
+      this.rebuildTextIndex();
+    
+    MetricsRegistry.getInstance().register(new MetricsSource() {
+      @Override
+      public void report(final MetricsReport report) {
+        AbstractDBDAO.this.reportMetrics(report);
+      }
+    });
+  }
+  
+  /**
+   * Adds the hits, misses and sizes of the caches and the size of the text index of this DAO to the report, labeled by the persistent class.
+   * 
+   * @param report The report.
+   */
+  protected void reportMetrics(final MetricsReport report) {
+    String entity = this.persistentClass.getSimpleName();
+    
+    if (this.entityCache != null)
+      this.reportCache(report, entity, "entity", this.entityCache.getHits(), this.entityCache.getMisses(), this.entityCache.size());
+    
+    if (this.queryCache != null)
+      this.reportCache(report, entity, "query", this.queryCache.getHits(), this.queryCache.getMisses(), this.queryCache.size());
+    
+    this.reportCache(report, entity, "count", this.countCache.getHits(), this.countCache.getMisses(), this.countCache.size());
+    
+    if (this.entityCache != null) {
+      Long evictions = Long.valueOf(this.entityCache.getEvictions());
+      report.add("backend_cache_evictions_total", MetricsReport.COUNTER, "Entries evicted from the cache.", evictions, "entity", entity, "cache",
+                 "entity");
+    }
+    
+    if (this.textIndex != null) {
+      Integer documents = Integer.valueOf(this.textIndex.size());
+      report.add("backend_text_index_documents", MetricsReport.GAUGE, "Documents in the text index.", documents, "entity", entity);
+    }
+  }
+  
+  private void reportCache(final MetricsReport report, final String entity, final String cache, final long hits, final long misses, final int size) {
+    String[] labels = new String[] {"entity", entity, "cache", cache};
+    
+    report.add("backend_cache_hits_total", MetricsReport.COUNTER, "Lookups served by the cache.", Long.valueOf(hits), labels);
+    report.add("backend_cache_misses_total", MetricsReport.COUNTER, "Lookups missed by the cache.", Long.valueOf(misses), labels);
+    report.add("backend_cache_size", MetricsReport.GAUGE, "Entries in the cache.", Integer.valueOf(size), labels);
+  }
+  
+  /**
+   * Rebuilds the text index from every entity of the data store. The entities are streamed, so they are not all held at once. The index serves every
+   * user, whose searches apply the security filter to its matches, so the entities are read without the row level security filter of the caller.
+   */
+  public void rebuildTextIndex() {
+    final Map<Long, String> texts = new HashMap<Long, String>();
+    
+    UNFILTERED_READ.set(Boolean.TRUE);
+    
+    try {
+      this.implementStream(null, new EntityConsumer<T>() {
+        @Override
+        public void accept(final T entity) {
+          texts.put(entity.getId(), AbstractDBDAO.this.getIndexedText(entity));
+        }
+      });
+    } finally {
+      UNFILTERED_READ.remove();
+    }
+    
+    this.textIndex.rebuild(texts);
+    logger.info("Indexed the text of {} {} entities.", texts.size(), this.getPersistentClass().getSimpleName());
+  }
+  
   @Override
   public final T findById(final Long id) {
     if (id == null)
       return null;
     
-    T entity = this.implementFindById(id);
+    T entity = null;
+    
+    if (this.entityCache == null)
+      entity = this.implementFindById(id);
+    else {
+      entity = this.entityCache.get(id);
+      
+      if (entity == null) {
+        long readStamp = this.entityCache.begin();
+        entity = this.implementFindById(id);
+        this.entityCache.put(entity, readStamp);
+      }
+    }
     
     this.afterFind(entity);
     
     return entity;
   }
   
+  @Override
+  public final EntityVersion findVersion(final Long id) {
+    if (id == null)
+      return null;
+    
+    T entity = this.entityCache == null ? null : this.entityCache.get(id);
+    
+    if (entity != null)
+      return EntityVersion.of(entity);
+    
+    QueryProfiler.Profile profile = this.queryProfiler.start(this, "version", null);
+    EntityVersion version = null;
+    
+    try {
+      version = this.implementFindVersion(id);
+    } finally {
+      this.queryProfiler.end(profile, version == null ? 0 : 1);
+    }
+    
+    return version;
+  }
+  
+  @Override
+  public final List<T> findByIds(final Collection<Long> ids) {
+    if (ids == null || ids.isEmpty())
+      return new ArrayList<T>();
+    
+    List<T> entities = null;
+    
+    if (this.getSecurityFilter() == null)
+      entities = this.fetchByIds(ids);
+    else {
+      Set<Long> uniqueIds = new LinkedHashSet<Long>(ids);
+      uniqueIds.remove(null);
+      entities = uniqueIds.isEmpty() ? new ArrayList<T>() : this.findInIdOrder(new ArrayList<Long>(uniqueIds), null);
+    }
+    
+    for (final T entity : entities) {
+      this.afterFind(entity);
+    }
+    
+    return entities;
+  }
+  
+  /**
+   * Fetches the entities of the given ids in their order, from the entity cache first.
+   */
+  private List<T> fetchByIds(final Collection<Long> ids) {
+    Set<Long> uniqueIds = new LinkedHashSet<Long>(ids);
+    Map<Long, T> foundEntities = new HashMap<Long, T>();
+    List<Long> missingIds = new ArrayList<Long>();
+    
+    uniqueIds.remove(null);
+    
+    for (Long id : uniqueIds) {
+      T entity = this.entityCache == null ? null : this.entityCache.get(id);
+      
+      if (entity == null)
+        missingIds.add(id);
+      else
+        foundEntities.put(id, entity);
+    }
+    
+    if (!missingIds.isEmpty()) {
+      long readStamp = this.entityCache == null ? 0 : this.entityCache.begin();
+      
+      for (final T entity : this.implementFindByIds(missingIds)) {
+        foundEntities.put(entity.getId(), entity);
+        
+        if (this.entityCache != null)
+          this.entityCache.put(entity, readStamp);
+      }
+    }
+    
+    List<T> entities = new ArrayList<T>(foundEntities.size());
+    
+    for (Long id : uniqueIds) {
+      T entity = foundEntities.get(id);
+      
+      if (entity != null)
+        entities.add(entity);
+    }
+    
+    return entities;
+  }
+  
   @Override
   public final List<T> findAll() {
-    final List<T> entities = this.implementFindAll();
+    List<T> entities = null;
+    
+    if (this.entityCache == null)
+      entities = this.implementFindAll();
+    else {
+      entities = this.entityCache.getAll();
+      
+      if (entities == null) {
+        long readStamp = this.entityCache.begin();
+        entities = this.implementFindAll();
+        this.entityCache.putAll(entities, readStamp);
+      }
+    }
     
     if (entities != null) {
       for (final T entity : entities) {
@@ -80,7 +372,23 @@ public abstract class AbstractDBDAO<T extends Entity> implements DBDAO<T>, Filte
   
   @Override
   public final List<T> find(final SearchCriteria searchCriteria) {
-    final List<T> entities = this.implementFind(searchCriteria);
+    List<T> entities = null;
+    
+    if (this.isTextSearch(searchCriteria))
+      entities = this.findText(searchCriteria);
+    else if (this.queryCache == null)
+      entities = this.findPage(searchCriteria);
+    else {
+      SearchCriteria securedCriteria = this.withSecurityFilter(searchCriteria);
+      List<Object> key = QueryCache.keyOf(securedCriteria, this.getSecurityFilter(), false);
+      entities = this.queryCache.get(key, securedCriteria);
+      
+      if (entities == null) {
+        long readGeneration = this.queryCache.begin();
+        entities = this.findPage(securedCriteria);
+        this.queryCache.put(key, securedCriteria, entities, readGeneration);
+      }
+    }
     
     if (entities != null) {
       for (final T entity : entities) {
@@ -91,6 +399,176 @@ public abstract class AbstractDBDAO<T extends Entity> implements DBDAO<T>, Filte
     return entities;
   }
   
+  private List<T> findPage(final SearchCriteria searchCriteria) {
+    List<T> entities = this.profileFind(searchCriteria);
+    
+    if (searchCriteria != null && searchCriteria.isKeysetPaginationEnabled())
+      entities = this.applyNextPageToken(searchCriteria, entities);
+    else if (searchCriteria != null && searchCriteria.isPaginationEnabled())
+      entities = this.applyNextPageAvailable(searchCriteria, entities);
+    
+    return entities;
+  }
+  
+  /**
+   * Runs implementFind under the query profiler.
+   */
+  private List<T> profileFind(final SearchCriteria searchCriteria) {
+    QueryProfiler.Profile profile = this.queryProfiler.start(this, QueryProfiler.FIND, searchCriteria);
+    List<T> entities = null;
+    
+    try {
+      entities = this.implementFind(searchCriteria);
+    } finally {
+      this.queryProfiler.end(profile, entities == null ? 0 : entities.size());
+    }
+    
+    return entities;
+  }
+  
+  /**
+   * Runs implementRowCount under the query profiler.
+   */
+  private long profileRowCount(final SearchCriteria searchCriteria) {
+    QueryProfiler.Profile profile = this.queryProfiler.start(this, QueryProfiler.COUNT, searchCriteria);
+    long rowCount = 0;
+    
+    try {
+      rowCount = this.implementRowCount(searchCriteria);
+    } finally {
+      this.queryProfiler.end(profile, rowCount);
+    }
+    
+    return rowCount;
+  }
+  
+  /**
+   * Pages the full-text matches by offset. Ranked results have no stable sort key, so keyset pagination does not apply.
+   */
+  private List<T> findText(final SearchCriteria searchCriteria) {
+    List<T> entities = this.findRanked(searchCriteria);
+    
+    if (searchCriteria.getLimit() <= 0)
+      return entities;
+    
+    int fromIndex = Math.min(Math.max(searchCriteria.getOffset(), 0), entities.size());
+    int toIndex = Math.min(fromIndex + searchCriteria.getLimit(), entities.size());
+    
+    searchCriteria.setRowCount(entities.size());
+    searchCriteria.setNextPageToken(null);
+    searchCriteria.setNextPageAvailable(toIndex < entities.size());
+    
+    return new ArrayList<T>(entities.subList(fromIndex, toIndex));
+  }
+  
+  /**
+   * Searches the text index for the query of the search criteria and fetches the best matches. Without other filter, the matches are multi-fetched
+   * by id. Otherwise the filter is run with the matching ids added, so the security filter and the other terms still apply.
+   * 
+   * @param searchCriteria The SearchCriteria object with user input
+   * @return The matching entities, best match first.
+   */
+  private List<T> findRanked(final SearchCriteria searchCriteria) {
+    List<Long> ids = this.searchText(searchCriteria);
+    
+    if (!this.isFiltered(searchCriteria) && this.getSecurityFilter() == null)
+      return this.fetchByIds(ids);
+    
+    if (ids.isEmpty())
+      return new ArrayList<T>();
+    
+    return this.findInIdOrder(ids, searchCriteria.getFilter());
+  }
+  
+  /**
+   * Counts the full-text matches with one count of the filter with the matching ids added, without loading them.
+   * 
+   * @param searchCriteria The SearchCriteria object with user input
+   * @return The number of matching entities.
+   */
+  private long countText(final SearchCriteria searchCriteria) {
+    List<Long> ids = this.searchText(searchCriteria);
+    
+    return ids.isEmpty() ? 0 : this.profileRowCount(this.buildIdCriteria(ids, searchCriteria.getFilter()));
+  }
+  
+  /**
+   * @param searchCriteria The SearchCriteria object with user input
+   * @return The ids of the best matches of the query in the text index, restricted to the ids of the filter if it has some.
+   */
+  private List<Long> searchText(final SearchCriteria searchCriteria) {
+    if (this.textIndex == null) {
+      logger.debug("{} has no text index to search {}", this.getPersistentClass().getSimpleName(), searchCriteria.getQuery());
+      throw new ValidationException(Error.ERROR_INVALID);
+    }
+    
+    List<Long> ids = this.textIndex.search(searchCriteria.getQuery(), MAX_TEXT_HITS);
+    FilterTerm idTerm = searchCriteria.getFilter() == null ? null : searchCriteria.getFilter().getTerm(Entity.ID_COLUMN_NAME);
+    
+    if (idTerm != null)
+      ids.retainAll(idTerm.getLongValues());
+    
+    return ids;
+  }
+  
+  /**
+   * Runs the filter with the given ids added and the row level security filter applied, one query for all the ids.
+   * 
+   * @param ids The ids of the entities, without duplicates.
+   * @param filter The filter to run with the ids, may be null.
+   * @return The entities found, in the order of the ids.
+   */
+  private List<T> findInIdOrder(final List<Long> ids, final FilterExpression filter) {
+    Map<Long, T> foundEntities = new HashMap<Long, T>();
+    List<T> found = this.profileFind(this.buildIdCriteria(ids, filter));
+    
+    if (found != null) {
+      for (final T entity : found) {
+        foundEntities.put(entity.getId(), entity);
+      }
+    }
+    
+    List<T> entities = new ArrayList<T>(foundEntities.size());
+    
+    for (Long id : ids) {
+      T entity = foundEntities.get(id);
+      
+      if (entity != null)
+        entities.add(entity);
+    }
+    
+    return entities;
+  }
+  
+  /**
+   * @param ids The ids of the entities.
+   * @param filter The filter to add the ids to, may be null.
+   * @return A search of the filter with an INCLUDE term of the ids and the row level security filter.
+   */
+  private SearchCriteria buildIdCriteria(final List<Long> ids, final FilterExpression filter) {
+    DefaultSearchCriteria idCriteria = new DefaultSearchCriteria();
+    idCriteria.setFilter(new FilterExpression(filter == null ? QueryMode.JDO : filter.getMode()));
+    
+    if (filter != null) {
+      for (FilterNode node : filter.nodes()) {
+        idCriteria.getFilter().addNode(node);
+      }
+    }
+    
+    idCriteria.addFilter(new FilterTerm(Op.INCLUDE, Entity.ID_COLUMN_NAME, StringUtils.join(ids, ','), idCriteria.getFilter().getMode()));
+    this.applySecurityFilter(idCriteria);
+    
+    return idCriteria;
+  }
+  
+  /**
+   * @param searchCriteria The SearchCriteria object with user input
+   * @return true if the search has words to look up in the text index.
+   */
+  protected boolean isTextSearch(final SearchCriteria searchCriteria) {
+    return searchCriteria != null && StringUtils.isNotBlank(searchCriteria.getQuery());
+  }
+  
   @Override
   public final T findOne(final SearchCriteria searchCriteria) {
     T entity = this.implementFindOne(searchCriteria);
@@ -100,21 +578,86 @@ public abstract class AbstractDBDAO<T extends Entity> implements DBDAO<T>, Filte
     return entity;
   }
   
+  @Override
+  public final long stream(final SearchCriteria searchCriteria, final EntityConsumer<T> consumer) {
+    if (this.isTextSearch(searchCriteria))
+      return this.streamText(searchCriteria, consumer);
+    
+    return this.implementStream(this.withSecurityFilter(searchCriteria), new EntityConsumer<T>() {
+      @Override
+      public void accept(final T entity) {
+        AbstractDBDAO.this.afterFind(entity);
+        consumer.accept(entity);
+      }
+    });
+  }
+  
+  /**
+   * Streams the full-text matches, best match first. They are bounded by the hits of the text index, so they are fetched at once as find does.
+   */
+  private long streamText(final SearchCriteria searchCriteria, final EntityConsumer<T> consumer) {
+    long count = 0;
+    
+    for (final T entity : this.findRanked(searchCriteria)) {
+      this.afterFind(entity);
+      consumer.accept(entity);
+      count++;
+    }
+    
+    return count;
+  }
+  
   @Override
   public long getRowCount() {
-    return this.implementRowCount();
+    QueryProfiler.Profile profile = this.queryProfiler.start(this, QueryProfiler.COUNT, null);
+    long rowCount = 0;
+    
+    try {
+      rowCount = this.implementRowCount();
+    } finally {
+      this.queryProfiler.end(profile, rowCount);
+    }
+    
+    return rowCount;
   }
-
+  
   @Override
   public long getRowCount(final SearchCriteria searchCriteria) {
-    return this.implementRowCount(searchCriteria);
+    if (this.isTextSearch(searchCriteria))
+      return this.countText(searchCriteria);
+    
+    if (this.queryCache == null)
+      return this.profileRowCount(searchCriteria);
+    
+    SearchCriteria securedCriteria = this.withSecurityFilter(searchCriteria);
+    List<Object> key = QueryCache.keyOf(securedCriteria, this.getSecurityFilter(), true);
+    Long rowCount = this.queryCache.getCount(key);
+    
+    if (rowCount == null) {
+      long readGeneration = this.queryCache.begin();
+      rowCount = Long.valueOf(this.profileRowCount(securedCriteria));
+      this.queryCache.putCount(key, rowCount.longValue(), readGeneration);
+    }
+    
+    return rowCount.longValue();
   }
   
   @Override
   public final T insert(final T entity) {
     this.validateBeforeInsert(entity);
     this.beforeInsert(entity);
-    T newEntity = this.implementInsert(entity);
+    this.stamp(entity, true);
+    QueryProfiler.Profile profile = this.queryProfiler.start(this, "insert", null);
+    T newEntity = null;
+    
+    try {
+      newEntity = this.implementInsert(entity);
+    } finally {
+      this.queryProfiler.end(profile, 1);
+    }
+    
+    this.invalidate(newEntity);
+    this.indexText(newEntity);
     this.afterInsert(newEntity);
     this.validateAfterInsert(newEntity);
     
@@ -125,7 +668,19 @@ public abstract class AbstractDBDAO<T extends Entity> implements DBDAO<T>, Filte
   public final T update(final T entity) {
     this.validateBeforeUpdate(entity);
     this.beforeUpdate(entity);
-    T updatedEntity = this.implementUpdate(entity);
+    Long expectedVersion = entity != null ? entity.getVersion() : null;
+    this.stamp(entity, false);
+    QueryProfiler.Profile profile = this.queryProfiler.start(this, "update", null);
+    T updatedEntity = null;
+    
+    try {
+      updatedEntity = this.implementUpdate(entity, expectedVersion);
+    } finally {
+      this.queryProfiler.end(profile, 1);
+    }
+    
+    this.invalidate(updatedEntity != null ? updatedEntity : entity);
+    this.indexText(updatedEntity != null ? updatedEntity : entity);
     this.afterUpdate(entity);
     this.validateAfterUpdate(entity);
     
@@ -136,11 +691,206 @@ public abstract class AbstractDBDAO<T extends Entity> implements DBDAO<T>, Filte
   public final void delete(final T entity) {
     this.validateBeforeDelete(entity);
     this.beforeDelete(entity);
-    this.implementDelete(entity);
+    QueryProfiler.Profile profile = this.queryProfiler.start(this, "delete", null);
+    
+    try {
+      this.implementDelete(entity);
+    } finally {
+      this.queryProfiler.end(profile, 1);
+    }
+    
+    this.invalidate(entity);
+    this.unindexText(entity);
     this.afterDelete(entity);
     this.validateAfterDelete(entity);
   }
   
+  @Override
+  public final List<T> insertAll(final List<T> entities) {
+    if (entities == null || entities.isEmpty())
+      return entities;
+    
+    this.validateBeforeInsertAll(entities);
+    this.beforeInsertAll(entities);
+    this.stampAll(entities, true);
+    QueryProfiler.Profile profile = this.queryProfiler.start(this, "insertAll", null);
+    List<T> newEntities = null;
+    
+    try {
+      newEntities = this.implementInsertAll(entities);
+    } finally {
+      this.queryProfiler.end(profile, entities.size());
+    }
+    
+    this.invalidateAll(newEntities);
+    this.indexTextAll(newEntities);
+    this.afterInsertAll(newEntities);
+    this.validateAfterInsertAll(newEntities);
+    
+    return newEntities;
+  }
+  
+  @Override
+  public final List<T> updateAll(final List<T> entities) {
+    if (entities == null || entities.isEmpty())
+      return entities;
+    
+    this.validateBeforeUpdateAll(entities);
+    this.beforeUpdateAll(entities);
+    this.stampAll(entities, false);
+    QueryProfiler.Profile profile = this.queryProfiler.start(this, "updateAll", null);
+    List<T> updatedEntities = null;
+    
+    try {
+      updatedEntities = this.implementUpdateAll(entities);
+    } finally {
+      this.queryProfiler.end(profile, entities.size());
+    }
+    
+    this.invalidateAll(updatedEntities);
+    this.indexTextAll(updatedEntities);
+    this.afterUpdateAll(entities);
+    this.validateAfterUpdateAll(entities);
+    
+    return updatedEntities;
+  }
+  
+  @Override
+  public final void deleteAll(final List<T> entities) {
+    if (entities == null || entities.isEmpty())
+      return;
+    
+    this.validateBeforeDeleteAll(entities);
+    this.beforeDeleteAll(entities);
+    QueryProfiler.Profile profile = this.queryProfiler.start(this, "deleteAll", null);
+    
+    try {
+      this.implementDeleteAll(entities);
+    } finally {
+      this.queryProfiler.end(profile, entities.size());
+    }
+    
+    this.invalidateAll(entities);
+    
+    for (final T entity : entities) {
+      this.unindexText(entity);
+    }
+    this.afterDeleteAll(entities);
+    this.validateAfterDeleteAll(entities);
+  }
+  
+  /**
+   * Stamps the entity about to be written with its next version and the time of the write, which the ETag and Last-Modified of the responses are
+   * made of. An update increments the version the entity was read with, so the caller checking If-Match sets the current version on it first, and
+   * the write is conditional on the stored entity still being of that version.
+   * 
+   * @param entity The entity inserted or updated.
+   * @param inserted true for an insert, which starts the version at 1.
+   */
+  private void stamp(final T entity, final boolean inserted) {
+    if (entity == null)
+      return;
+    
+    Long now = Long.valueOf(System.currentTimeMillis());
+    Long version = entity.getVersion();
+    
+    if (inserted) {
+      if (version == null)
+        entity.setVersion(Long.valueOf(1));
+      
+      if (entity.getCreateDate() == null)
+        entity.setCreateDate(now);
+    } else
+      entity.setVersion(Long.valueOf(version == null ? 1 : version.longValue() + 1));
+    
+    entity.setLastModifiedDate(now);
+  }
+  
+  private void stampAll(final List<T> entities, final boolean inserted) {
+    for (final T entity : entities) {
+      this.stamp(entity, inserted);
+    }
+  }
+  
+  /**
+   * Drops the written entity from the entity cache and the cached search results, before the after hooks run so that descendants overriding them can
+   * not skip it.
+   * 
+   * @param entity The entity inserted, updated or deleted.
+   */
+  private void invalidate(final T entity) {
+    if (this.entityCache != null)
+      this.entityCache.invalidate(entity);
+    
+    if (this.queryCache != null)
+      this.queryCache.invalidate();
+    
+    this.countCache.invalidate();
+  }
+  
+  private void invalidateAll(final List<T> entities) {
+    if (this.queryCache != null)
+      this.queryCache.invalidate();
+    
+    this.countCache.invalidate();
+    
+    if (this.entityCache != null && entities != null) {
+      for (final T entity : entities) {
+        this.entityCache.invalidate(entity);
+      }
+    }
+  }
+  
+  /**
+   * Indexes the text of the written entity, next to the cache invalidation so that descendants overriding the after hooks can not skip it. An entity
+   * whose write is rolled back stays indexed until its next write; the multi-fetch of the matches skips it if it does not exist.
+   * 
+   * @param entity The entity inserted or updated.
+   */
+  private void indexText(final T entity) {
+    if (this.textIndex != null && entity != null && entity.getId() != null)
+      this.textIndex.index(entity.getId(), this.getIndexedText(entity));
+  }
+  
+  private void indexTextAll(final List<T> entities) {
+    if (this.textIndex != null && entities != null) {
+      for (final T entity : entities) {
+        this.indexText(entity);
+      }
+    }
+  }
+  
+  private void unindexText(final T entity) {
+    if (this.textIndex != null && entity != null && entity.getId() != null)
+      this.textIndex.remove(entity.getId());
+  }
+  
+  /**
+   * Joins the values of the indexed text fields of the entity.
+   * 
+   * @param entity An instance of the Entity.
+   * @return The text to index.
+   */
+  protected String getIndexedText(final T entity) {
+    StringBuilder text = new StringBuilder();
+    
+    for (String field : this.textIndex.getFields()) {
+      Object value = this.getPropertyValue(entity, field);
+      
+      if (value != null)
+        text.append(value).append(' ');
+    }
+    
+    return text.toString();
+  }
+  
+  /**
+   * @return The number of entities written to the data store per round trip by the batch operations.
+   */
+  protected int getBatchSize() {
+    return DEFAULT_BATCH_SIZE;
+  }
+  
   /**
    * Implements non-data/non-business validation logic after entity is retrieved from the data store.
    * 
@@ -160,6 +910,37 @@ public abstract class AbstractDBDAO<T extends Entity> implements DBDAO<T>, Filte
     return null;
   }
   
+  /**
+   * Implements logic to find the version and last modification of the entity for the given id. The descendants should read these two fields only;
+   * this default implementation loads the whole entity.
+   * 
+   * @param id The id of the entity being searched.
+   * @return The version of the entity, null if it does not exist.
+   */
+  protected EntityVersion implementFindVersion(final Long id) {
+    return EntityVersion.of(this.implementFindById(id));
+  }
+  
+  /**
+   * Implements logic to find the entities for the given ids, in any order. The descendants should fetch them in chunks with one query per chunk. This
+   * default implementation finds one entity at a time.
+   * 
+   * @param ids The distinct ids of the entities being searched, not null.
+   * @return List of the entities found.
+   */
+  protected List<T> implementFindByIds(final List<Long> ids) {
+    List<T> entities = new ArrayList<T>(ids.size());
+    
+    for (Long id : ids) {
+      T entity = this.implementFindById(id);
+      
+      if (entity != null)
+        entities.add(entity);
+    }
+    
+    return entities;
+  }
+  
   /**
    * Implements logic to find all the entities.
    * 
@@ -182,24 +963,233 @@ public abstract class AbstractDBDAO<T extends Entity> implements DBDAO<T>, Filte
   }
   
   /**
+   * Implements logic to stream all the entities that matches the given search criteria. The descendants should read through a forward-only cursor
+   * with a bounded fetch size, and must add the row level security filter of the user's role like implementFind does, as withSecurityFilter does for
+   * criteria that may be null. This default implementation materializes the result of implementFind and is only a fallback.
+   * 
+   * @param searchCriteria The SearchCriteria object with user input
+   * @param consumer The consumer receiving each entity.
+   * @return The number of entities streamed.
+   * 
+   * @see SearchCriteria
+   */
+  protected long implementStream(final SearchCriteria searchCriteria, final EntityConsumer<T> consumer) {
+    long count = 0;
+    final List<T> entities = this.implementFind(searchCriteria);
+    
+    if (entities != null) {
+      for (final T entity : entities) {
+        consumer.accept(entity);
+        count++;
+      }
+    }
+    
+    return count;
+  }
+  
+  /**
+   * Adds the compiled row level security filter of the read permission of the current user's role to the search criteria.
+   * 
    * @param searchCriteria
    */
   protected void applySecurityFilter(final SearchCriteria searchCriteria) {
+    Role role = searchCriteria == null ? null : this.getRole();
+    
+    if (role == null)
+      return;
+    
+    List<FilterNode> filterNodes = PermissionMatcher.of(role).getFilterNodes(this.getPersistentClass().getSimpleName(), READ_OPERATION);
+    
+    if (!filterNodes.isEmpty() && searchCriteria.getFilter() == null)
+      searchCriteria.setFilter(new FilterExpression());
+    
+    for (FilterNode filterNode : filterNodes) {
+      searchCriteria.getFilter().addNode(filterNode);
+    }
+  }
+  
+  /**
+   * Adds the row level security filter to the search criteria like applySecurityFilter, for the searches whose criteria may be null.
+   * 
+   * @param searchCriteria The SearchCriteria object with user input, may be null.
+   * @return The search criteria with the security filter, a new one if it was null and the role has a read filter.
+   */
+  protected SearchCriteria withSecurityFilter(final SearchCriteria searchCriteria) {
+    if (searchCriteria != null) {
+      this.applySecurityFilter(searchCriteria);
+      return searchCriteria;
+    }
+    
+    if (this.getSecurityFilter() == null)
+      return null;
+    
+    SearchCriteria securedCriteria = new DefaultSearchCriteria();
+    this.applySecurityFilter(securedCriteria);
+    
+    return securedCriteria;
+  }
+  
+  /**
+   * The row level security filter of the read permission of the current user's role on this entity, also part of the key of the cached searches.
+   * 
+   * @return The filter string, or null if the user is not logged in or the role has no read filter.
+   */
+  protected String getSecurityFilter() {
+    Role role = this.getRole();
+    
+    return role == null ? null : PermissionMatcher.of(role).getFilter(this.getPersistentClass().getSimpleName(), READ_OPERATION);
+  }
+  
+  /**
+   * @return The role of the current user, or null if the user is not logged in or has no role, or no subject is bound to the thread, such as when
+   *         the application starts, or the application reads every entity for itself.
+   */
+  private Role getRole() {
+    if (UNFILTERED_READ.get() != null || ThreadContext.getSubject() == null)
+      return null;
+    
     UserProfile userProfile = SessionUtil.getUserProfile();
     
-    if (userProfile != null) {
-      String resourceName = this.getPersistentClass().getSimpleName();
+    if (userProfile == null)
+      return null;
+    
+    final Role role = userProfile.getRole();
+    
+    if (role == null)
+      logger.warn("UserProfile {} does not have an associated role.", userProfile);
+    
+    return role;
+  }
+  
+  /**
+   * Decodes the keyset pagination cursor of the given search criteria.
+   * 
+   * @param searchCriteria The SearchCriteria object with user input
+   * @return The cursor to seek past, or null if the first page is requested.
+   */
+  protected PageCursor getPageCursor(final SearchCriteria searchCriteria) {
+    if (StringUtils.isBlank(searchCriteria.getAfter()))
+      return null;
+    
+    try {
+      return PageCursor.decode(searchCriteria.getAfter());
+    } catch (IllegalArgumentException iae) {
+      logger.debug("Invalid page cursor {}", searchCriteria.getAfter());
+      throw new ValidationException(Error.ERROR_INVALID);
+    }
+  }
+  
+  /**
+   * In keyset pagination mode the descendants fetch one row more than the limit. If that extra row is present, it is dropped and the position of the
+   * last row of the page is set as the next page token on the search criteria.
+   * 
+   * @param searchCriteria The SearchCriteria object with user input
+   * @param entities The entities found, at most limit + 1.
+   * @return The entities of the page.
+   */
+  protected List<T> applyNextPageToken(final SearchCriteria searchCriteria, final List<T> entities) {
+    searchCriteria.setNextPageToken(null);
+    searchCriteria.setNextPageAvailable(false);
+    
+    if (entities == null || entities.size() <= searchCriteria.getLimit())
+      return entities;
+    
+    List<T> page = new ArrayList<T>(entities.subList(0, searchCriteria.getLimit()));
+    T last = page.get(page.size() - 1);
+    SortKey sortKey = SortKey.parse(searchCriteria.getSortBy());
+    Object value = sortKey.isId() ? last.getId() : this.getPropertyValue(last, sortKey.getField());
+    
+    searchCriteria.setNextPageToken(new PageCursor(value, last.getId()).encode());
+    searchCriteria.setNextPageAvailable(true);
+    
+    return page;
+  }
+  
+  /**
+   * Tells if there is a page after the offset page. Under the NONE count mode the descendants fetch one row more than the limit, which is dropped if
+   * present. Otherwise the row count decides.
+   * 
+   * @param searchCriteria The SearchCriteria object with user input
+   * @param entities The entities found.
+   * @return The entities of the page.
+   */
+  protected List<T> applyNextPageAvailable(final SearchCriteria searchCriteria, final List<T> entities) {
+    if (searchCriteria.getCountMode() == CountMode.NONE) {
+      boolean nextPageAvailable = entities != null && entities.size() > searchCriteria.getLimit();
+      
+      searchCriteria.setNextPageAvailable(nextPageAvailable);
+      
+      return nextPageAvailable ? new ArrayList<T>(entities.subList(0, searchCriteria.getLimit())) : entities;
+    }
+    
+    int found = entities == null ? 0 : entities.size();
+    searchCriteria.setNextPageAvailable(searchCriteria.getOffset() + found < searchCriteria.getRowCount());
+    
+    return entities;
+  }
+  
+  /**
+   * Gets the row count of an offset paginated search the way its count mode asks for. Descendants call this instead of counting themselves.
+   * 
+   * @param searchCriteria The SearchCriteria object with user input
+   * @return The row count, or -1 under the NONE count mode.
+   */
+  protected long getPageRowCount(final SearchCriteria searchCriteria) {
+    CountMode countMode = searchCriteria.getCountMode();
+    
+    if (countMode == CountMode.NONE)
+      return -1;
+    
+    if (countMode == CountMode.ESTIMATED) {
+      long estimatedRowCount = this.implementEstimatedRowCount(searchCriteria);
+      
+      if (estimatedRowCount >= 0)
+        return estimatedRowCount;
       
-      final Role role = userProfile.getRole();
+      countMode = CountMode.CACHED;
+    }
+    
+    if (countMode == CountMode.CACHED) {
+      List<Object> key = QueryCache.keyOf(searchCriteria, this.getSecurityFilter(), true);
+      Long rowCount = this.countCache.getCount(key);
       
-      if (role == null) {
-        logger.warn("UserProfile {} does not have an associated role.", userProfile);
-        return;
+      if (rowCount == null) {
+        long readGeneration = this.countCache.begin();
+        rowCount = Long.valueOf(this.profileRowCount(searchCriteria));
+        this.countCache.putCount(key, rowCount.longValue(), readGeneration);
       }
       
-      String filterString = role.getPermissionFilter(resourceName, "read");
-      searchCriteria.addFilter(filterString);
+      return rowCount.longValue();
     }
+    
+    return this.profileRowCount(searchCriteria);
+  }
+  
+  /**
+   * @param searchCriteria The SearchCriteria object with user input
+   * @return The number of rows of the page to fetch: one more than the limit under the NONE count mode, to tell if there is a next page.
+   */
+  protected int getPageFetchSize(final SearchCriteria searchCriteria) {
+    return searchCriteria.getCountMode() == CountMode.NONE ? searchCriteria.getLimit() + 1 : searchCriteria.getLimit();
+  }
+  
+  /**
+   * @param searchCriteria The SearchCriteria object with user input
+   * @return true if the search has any filter term.
+   */
+  protected boolean isFiltered(final SearchCriteria searchCriteria) {
+    return searchCriteria != null && searchCriteria.getFilter() != null && !searchCriteria.getFilter().isEmpty();
+  }
+  
+  /**
+   * Reads the value of the given persistent field of the entity.
+   * 
+   * @param entity An instance of the Entity.
+   * @param propertyName The name of the field.
+   * @return The value of the field.
+   */
+  protected Object getPropertyValue(final T entity, final String propertyName) {
+    return PropertyAccessorFactory.forDirectFieldAccess(entity).getPropertyValue(propertyName);
   }
   
   /**
@@ -239,6 +1229,38 @@ public abstract class AbstractDBDAO<T extends Entity> implements DBDAO<T>, Filte
     return 0;
   }
   
+  /**
+   * Implements logic to estimate the count of rows that matches the given search criteria from the statistics the data store keeps, without counting
+   * them. Descendants typically only know the estimate of the unfiltered count.
+   * 
+   * @param searchCriteria The SearchCriteria object with user input
+   * @return The estimated row count, or -1 if there is no estimate.
+   */
+  protected long implementEstimatedRowCount(final SearchCriteria searchCriteria) {
+    return -1;
+  }
+  
+  /**
+   * Hands the query the data store runs to the query profiler. Descendants call this from implementFind and implementRowCount with their query, whose
+   * toString is only called if the query turns out slow.
+   * 
+   * @param query The query, rendered by its toString.
+   */
+  protected void profileQuery(final Object query) {
+    this.queryProfiler.setQuery(query);
+  }
+  
+  /**
+   * Implements logic to explain how the data store runs the query of the given search criteria, for the slow query log. Called outside of the
+   * transaction of the query, on demand.
+   * 
+   * @param searchCriteria The SearchCriteria object the query ran with, may be null.
+   * @return The lines of the plan, or null if the data store can not explain queries.
+   */
+  protected List<String> implementExplain(final SearchCriteria searchCriteria) {
+    return null;
+  }
+  
   /**
    * Implements data (non-business) validation logic before entity is inserted in the data store.
    * 
@@ -314,6 +1336,20 @@ public abstract class AbstractDBDAO<T extends Entity> implements DBDAO<T>, Filte
     return null;
   }
   
+  /**
+   * Implements logic to persist the modified entity only if the stored entity is still of the version it was read with, so that a write checked
+   * against an If-Match does not overwrite a write that committed after the check. The descendants that can write conditionally in one statement
+   * over-ride it; the default writes unconditionally.
+   * 
+   * @param entity An instance of the entity object, stamped with its next version.
+   * @param expectedVersion The version the entity was read with, null to write whatever the stored version is.
+   * @return The modified entity.
+   * @throws ValidationException If the stored entity is no longer of the expected version, answered with 412 Precondition Failed.
+   */
+  protected T implementUpdate(final T entity, final Long expectedVersion) {
+    return this.implementUpdate(entity);
+  }
+  
   /**
    * Implements non-data/non-business validation logic after entity is updated in the data store.
    * 
@@ -376,36 +1412,35 @@ public abstract class AbstractDBDAO<T extends Entity> implements DBDAO<T>, Filte
   protected void validateAfterDelete(final T entity) {
     return;
   }
-
-  @Override
-  public String getQueryString(final FilterTerm term) {
-    return term.toQueryString();
-  }
   
+  /**
+   * Converts the values of the filter term to the type of the field it filters on, from the field metadata of the persistent class. The value is split
+   * on commas for the operators taking several values. Terms on fields the class does not declare are bound as strings.
+   */
   @Override
   public List<Object> getParamValues(final FilterTerm term) {
-    
-    String key = term.getKey();
     String value = term.getValue();
+    List<Object> objectValues = new ArrayList<Object>(1);
     
-    List<Object> objectValues = new ArrayList<Object>();
-    if (value == null)
+    if (value == null) {
       objectValues.add(value);
-    else {
-      Set<String> longFields = new HashSet<String>(Arrays.asList("ID", "CREATEDATE", "CREATEDBY", "LASTMODIFIEDDATE", "LASTMODIFIEDBY"));
-      String[] values = value.split(",");
-      
-      for (String splitValue : values) {
-        if (longFields.contains(key.toUpperCase())) {
-          if (StringUtils.isNotBlank(splitValue))
-            objectValues.add(Long.valueOf(splitValue.trim()));
-          else
-            objectValues.add(-1);
-        } else {
-          objectValues.add(splitValue);
+      return objectValues;
+    }
+    
+    FieldType field = this.fieldMetadata.getField(term.getKey());
+    
+    try {
+      if (term.getOperator().isMultiValued()) {
+        for (String splitValue : value.split(",")) {
+          objectValues.add(field == null ? splitValue : field.convert(splitValue));
         }
-      }
+      } else
+        objectValues.add(field == null ? value : field.convert(value));
+    } catch (IllegalArgumentException iae) {
+      logger.debug("Invalid value {} for the field {}", value, field);
+      throw new ValidationException(Error.ERROR_INVALID);
     }
+    
     return objectValues;
   }
   
@@ -421,10 +1456,10 @@ public abstract class AbstractDBDAO<T extends Entity> implements DBDAO<T>, Filte
     String filter = null;
     
     if (queryFilter != null) {
-      filter = queryFilter.toQueryString(this);
+      Map<Object, Object> queryParams = new HashMap<Object, Object>();
+      filter = queryFilter.toQueryString(this, queryParams);
       
       if (filter.length() > 0) {
-        Map<Object, Object> queryParams = queryFilter.getQueryParams(this);
         filterMap = new HashMap<String, Map<Object, Object>>();
         filterMap.put(filter, queryParams);
       }
@@ -449,4 +1484,194 @@ public abstract class AbstractDBDAO<T extends Entity> implements DBDAO<T>, Filte
     
     return response;
   }
+  
+  /**
+   * Implements data (non-business) validation logic once before the batch of entities is inserted in the data store. Defaults to validating each
+   * entity.
+   * 
+   * @param entities The entities that are about to be created in the data store.
+   */
+  protected void validateBeforeInsertAll(final List<T> entities) {
+    for (final T entity : entities) {
+      this.validateBeforeInsert(entity);
+    }
+  }
+  
+  /**
+   * Implements non-data/non-business validation logic once before the batch of entities is inserted in the data store. Defaults to beforeInsert of
+   * each entity.
+   * 
+   * @param entities The entities that are about to be created in the data store.
+   */
+  protected void beforeInsertAll(final List<T> entities) {
+    for (final T entity : entities) {
+      this.beforeInsert(entity);
+    }
+  }
+  
+  /**
+   * Implements logic to persist the batch of entities to the underlying data store. The descendants should send them in chunks of the batch size.
+   * This default implementation inserts one entity at a time.
+   * 
+   * @param entities The list of entity objects.
+   * @return The list of the newly created entities.
+   */
+  protected List<T> implementInsertAll(final List<T> entities) {
+    List<T> newEntities = new ArrayList<T>(entities.size());
+    
+    for (final T entity : entities) {
+      newEntities.add(this.implementInsert(entity));
+    }
+    
+    return newEntities;
+  }
+  
+  /**
+   * Implements non-data/non-business validation logic once after the batch of entities is inserted in the data store. Defaults to afterInsert of
+   * each entity.
+   * 
+   * @param newEntities The entities created in the data store.
+   */
+  protected void afterInsertAll(final List<T> newEntities) {
+    for (final T newEntity : newEntities) {
+      this.afterInsert(newEntity);
+    }
+  }
+  
+  /**
+   * Implements business (non-data) validation logic once after the batch of entities is inserted in the data store. Defaults to validating each
+   * entity.
+   * 
+   * @param newEntities The entities created in the data store.
+   */
+  protected void validateAfterInsertAll(final List<T> newEntities) {
+    for (final T newEntity : newEntities) {
+      this.validateAfterInsert(newEntity);
+    }
+  }
+  
+  /**
+   * Implements data (non-business) validation logic once before the batch of entities is updated in the data store. Defaults to validating each
+   * entity.
+   * 
+   * @param entities The entities that are about to be updated in the data store.
+   */
+  protected void validateBeforeUpdateAll(final List<T> entities) {
+    for (final T entity : entities) {
+      this.validateBeforeUpdate(entity);
+    }
+  }
+  
+  /**
+   * Implements non-data/non-business validation logic once before the batch of entities is updated in the data store. Defaults to beforeUpdate of
+   * each entity.
+   * 
+   * @param entities The entities that are about to be updated in the data store.
+   */
+  protected void beforeUpdateAll(final List<T> entities) {
+    for (final T entity : entities) {
+      this.beforeUpdate(entity);
+    }
+  }
+  
+  /**
+   * Implements logic to persist the batch of modified entities to the underlying data store. The descendants should send them in chunks of the batch
+   * size. This default implementation updates one entity at a time.
+   * 
+   * @param entities The list of entity objects.
+   * @return The list of the modified entities.
+   */
+  protected List<T> implementUpdateAll(final List<T> entities) {
+    List<T> updatedEntities = new ArrayList<T>(entities.size());
+    
+    for (final T entity : entities) {
+      updatedEntities.add(this.implementUpdate(entity));
+    }
+    
+    return updatedEntities;
+  }
+  
+  /**
+   * Implements non-data/non-business validation logic once after the batch of entities is updated in the data store. Defaults to afterUpdate of
+   * each entity.
+   * 
+   * @param entities The entities updated in the data store.
+   */
+  protected void afterUpdateAll(final List<T> entities) {
+    for (final T entity : entities) {
+      this.afterUpdate(entity);
+    }
+  }
+  
+  /**
+   * Implements business (non-data) validation logic once after the batch of entities is updated in the data store. Defaults to validating each
+   * entity.
+   * 
+   * @param entities The entities updated in the data store.
+   */
+  protected void validateAfterUpdateAll(final List<T> entities) {
+    for (final T entity : entities) {
+      this.validateAfterUpdate(entity);
+    }
+  }
+  
+  /**
+   * Implements data (non-business) validation logic once before the batch of entities is deleted from the data store. Defaults to validating each
+   * entity.
+   * 
+   * @param entities The entities that are about to be deleted from the data store.
+   */
+  protected void validateBeforeDeleteAll(final List<T> entities) {
+    for (final T entity : entities) {
+      this.validateBeforeDelete(entity);
+    }
+  }
+  
+  /**
+   * Implements non-data/non-business validation logic once before the batch of entities is deleted from the data store. Defaults to beforeDelete of
+   * each entity.
+   * 
+   * @param entities The entities that are about to be deleted from the data store.
+   */
+  protected void beforeDeleteAll(final List<T> entities) {
+    for (final T entity : entities) {
+      this.beforeDelete(entity);
+    }
+  }
+  
+  /**
+   * Implements logic to delete the batch of entities from the underlying data store. The descendants should send them in chunks of the batch size.
+   * This default implementation deletes one entity at a time.
+   * 
+   * @param entities The list of entity objects that needs to be deleted.
+   */
+  protected void implementDeleteAll(final List<T> entities) {
+    for (final T entity : entities) {
+      this.implementDelete(entity);
+    }
+  }
+  
+  /**
+   * Implements non-data/non-business validation logic once after the batch of entities is deleted from the data store. Defaults to afterDelete of
+   * each entity.
+   * 
+   * @param entities The entities deleted from the data store.
+   */
+  protected void afterDeleteAll(final List<T> entities) {
+    for (final T entity : entities) {
+      this.afterDelete(entity);
+    }
+  }
+  
+  /**
+   * Implements business (non-data) validation logic once after the batch of entities is deleted from the data store. Defaults to validating each
+   * entity.
+   * 
+   * @param entities The entities deleted from the data store.
+   */
+  protected void validateAfterDeleteAll(final List<T> entities) {
+    for (final T entity : entities) {
+      this.validateAfterDelete(entity);
+    }
+  }
 }
\ No newline at end of file
@@ -1,12 +1,41 @@
 package com.jiggy.base.dao;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 
+import org.hibernate.Filter;
+import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.hql.spi.ParameterTranslations;
+import org.hibernate.hql.spi.QueryTranslator;
+import org.hibernate.jdbc.ReturningWork;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.persister.entity.AbstractEntityPersister;
 
 import com.jiggy.base.entity.Entity;
+import com.jiggy.base.entity.EntityVersion;
+import com.jiggy.base.exception.Error;
+import com.jiggy.base.exception.ValidationException;
+import com.jiggy.base.searchengine.FilterExpression;
+import com.jiggy.base.searchengine.FilterExpression.FilterTerm;
+import com.jiggy.base.searchengine.FilterExpression.Op;
+import com.jiggy.base.searchengine.PageCursor;
 import com.jiggy.base.searchengine.SearchCriteria;
+import com.jiggy.base.searchengine.SearchCriteria.CountMode;
+import com.jiggy.base.searchengine.SortKey;
 
 /**
  * <p>
@@ -17,7 +46,14 @@ import com.jiggy.base.searchengine.SearchCriteria;
  * @author jmalkan
  */
 public abstract class AbstractHibernateDBDAO<T extends Entity> extends AbstractDBDAO<T> {
+  private static final String IDS_PARAM = "ids";
+  private static final String TABLE_NAME_PARAM = "tableName";
+  private static final String EXPLAIN = "EXPLAIN ";
+  private static final String ESTIMATED_ROW_COUNT_SQL = "select table_rows from information_schema.tables where table_schema = database() and table_name = "
+      + ":" + TABLE_NAME_PARAM;
+  
   private SessionFactory sessionFactory;
+  private final HqlQueryCompiler queryCompiler;
   
   
   /**
@@ -28,6 +64,7 @@ public abstract class AbstractHibernateDBDAO<T extends Entity> extends AbstractD
   public AbstractHibernateDBDAO(final SessionFactory sessionFactory) {
     super();
     this.sessionFactory = sessionFactory;
+    this.queryCompiler = new HqlQueryCompiler(super.getPersistentClass().getName(), HqlQueryCompiler.DEFAULT_MAX_PLANS);
   }
   
   
@@ -50,22 +87,298 @@ public abstract class AbstractHibernateDBDAO<T extends Entity> extends AbstractD
   }
   
   /**
-   * Implements logic to find all the entities that matches the given search criteria.
+   * Implements logic to find the version of an entity for the given id, selecting its version and dates only.
+   * 
+   * @param id The id of the entity being searched.
+   * @return The version of the entity, null if it does not exist.
+   */
+  @Override
+  protected EntityVersion implementFindVersion(final Long id) {
+    String queryString = "select " + HqlQueryCompiler.ALIAS + ".version, " + HqlQueryCompiler.ALIAS + ".lastModifiedDate, " + HqlQueryCompiler.ALIAS
+        + ".createDate from " + super.getPersistentClass().getName() + " " + HqlQueryCompiler.ALIAS + " where " + HqlQueryCompiler.ALIAS + "."
+        + Entity.ID_COLUMN_NAME + " = :" + Entity.ID_COLUMN_NAME;
+    Object[] row = (Object[]) this.getCurrentSession().createQuery(queryString).setParameter(Entity.ID_COLUMN_NAME, id).uniqueResult();
+    
+    if (row == null)
+      return null;
+    
+    return new EntityVersion(id, (Long) row[0], (Long) (row[1] != null ? row[1] : row[2]));
+  }
+  
+  /**
+   * Implements logic to find the entities for the given ids with an IN query per chunk of hibernate.default_batch_fetch_size ids.
+   * 
+   * @param ids The distinct ids of the entities being searched.
+   * @return List of the entities found.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  protected List<T> implementFindByIds(final List<Long> ids) {
+    String queryString = "from " + super.getPersistentClass().getName() + " " + HqlQueryCompiler.ALIAS + " where " + HqlQueryCompiler.ALIAS + "."
+        + Entity.ID_COLUMN_NAME + " in (:" + IDS_PARAM + ")";
+    int chunkSize = this.getFetchBatchSize();
+    List<T> entities = new ArrayList<T>(ids.size());
+    
+    for (int fromIndex = 0; fromIndex < ids.size(); fromIndex += chunkSize) {
+      Query query = this.getCurrentSession().createQuery(queryString);
+      
+      query.setParameterList(IDS_PARAM, ids.subList(fromIndex, Math.min(fromIndex + chunkSize, ids.size())));
+      entities.addAll(query.list());
+    }
+    
+    return entities;
+  }
+  
+  /**
+   * Implements logic to find all the entities that matches the given search criteria. The criteria, with the row level security filter of the
+   * user's role added, is compiled to parameterized HQL, reusing the cached plan of criteria with the same shape.
    * 
    * @param searchCriteria The SearchCriteria object with user input
    * @return List of entity objects that matches the search criteria
    * 
    * @see SearchCriteria
+   * @see HqlQueryCompiler
    */
-  protected List<T> implementFind(SearchCriteria searchCriteria) {
-    List<T> result = null; //this.getCurrentSession().loadAll(this.getEntity());
+  @SuppressWarnings("unchecked")
+  protected List<T> implementFind(final SearchCriteria searchCriteria) {
+    SearchCriteria securedCriteria = super.withSecurityFilter(searchCriteria);
+    List<List<Object>> termValues = this.getTermValues(securedCriteria);
+    
+    if (securedCriteria != null && securedCriteria.isKeysetPaginationEnabled()) {
+      logger.debug("Keyset pagination is enabled, seek past the cursor.");
+      PageCursor pageCursor = super.getPageCursor(securedCriteria);
+      HqlQueryCompiler.Plan plan = this.queryCompiler.compile(securedCriteria, termValues, pageCursor);
+      super.profileQuery(plan);
+      Query query = this.bindParameters(plan, this.getCurrentSession().createQuery(plan.getQueryString()), termValues);
+      
+      if (pageCursor != null) {
+        if (!SortKey.parse(securedCriteria.getSortBy()).isId() && pageCursor.getValue() != null)
+          query.setParameter(HqlQueryCompiler.AFTER_VALUE_PARAM, pageCursor.getValue());
+        
+        query.setParameter(HqlQueryCompiler.AFTER_ID_PARAM, pageCursor.getId());
+      }
+      
+      return query.setMaxResults(securedCriteria.getLimit() + 1).list();
+    }
+    
+    HqlQueryCompiler.Plan plan = this.queryCompiler.compile(securedCriteria, termValues, null);
+    super.profileQuery(plan);
+    Query query = this.bindParameters(plan, this.getCurrentSession().createQuery(plan.getQueryString()), termValues);
+    
+    if (securedCriteria != null && securedCriteria.isPaginationEnabled()) {
+      logger.debug("Pagination is enabled, calculate range with the {} count mode.", securedCriteria.getCountMode());
+      
+      if (securedCriteria.getCountMode() == CountMode.EXACT) {
+        Long rowCount = (Long) this.bindParameters(plan, this.getCurrentSession().createQuery(plan.getCountQueryString()), termValues).uniqueResult();
+        securedCriteria.setRowCount(rowCount == null ? 0 : rowCount.longValue());
+      } else
+        securedCriteria.setRowCount(super.getPageRowCount(securedCriteria));
+      
+      query.setFirstResult(securedCriteria.getOffset());
+      query.setMaxResults(super.getPageFetchSize(securedCriteria));
+    }
     
-    return result;
+    return query.list();
   }
-
+  
+  @Override
+  @SuppressWarnings("unchecked")
+  protected long implementStream(final SearchCriteria searchCriteria, final EntityConsumer<T> consumer) {
+    long count = 0;
+    Session session = this.getCurrentSession();
+    SearchCriteria securedCriteria = super.withSecurityFilter(searchCriteria);
+    List<List<Object>> termValues = this.getTermValues(securedCriteria);
+    HqlQueryCompiler.Plan plan = this.queryCompiler.compile(securedCriteria, termValues, null);
+    Query query = this.bindParameters(plan, session.createQuery(plan.getQueryString()), termValues);
+    
+    query.setFetchSize(STREAM_FETCH_SIZE);
+    query.setReadOnly(true);
+    ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY);
+    
+    try {
+      while (results.next()) {
+        T entity = (T) results.get(0);
+        consumer.accept(entity);
+        count++;
+        
+        logger.trace("Evicting the streamed entity {} to keep the session bounded.", entity.getId());
+        session.evict(entity);
+      }
+    } finally {
+      results.close();
+    }
+    
+    return count;
+  }
+  
   @Override
   protected long implementRowCount(final SearchCriteria searchCriteria) {
-    return 0;
+    SearchCriteria securedCriteria = super.withSecurityFilter(searchCriteria);
+    List<List<Object>> termValues = this.getTermValues(securedCriteria);
+    HqlQueryCompiler.Plan plan = this.queryCompiler.compile(securedCriteria, termValues, null);
+    super.profileQuery(plan.getCountQueryString());
+    Long rowCount = (Long) this.bindParameters(plan, this.getCurrentSession().createQuery(plan.getCountQueryString()), termValues).uniqueResult();
+    
+    return rowCount == null ? 0 : rowCount.longValue();
+  }
+  
+  /**
+   * Estimates the unfiltered row count from the table statistics of MySQL, which are kept by the storage engine and may be off by a few percent on
+   * InnoDB. Other dialects, and roles whose read permission filters the rows, get no estimate, and the count falls back to the cached exact count.
+   */
+  @Override
+  protected long implementEstimatedRowCount(final SearchCriteria searchCriteria) {
+    if (super.isFiltered(searchCriteria) || super.getSecurityFilter() != null
+        || !(((SessionFactoryImplementor) this.sessionFactory).getDialect() instanceof MySQLDialect))
+      return -1;
+    
+    ClassMetadata classMetadata = this.sessionFactory.getClassMetadata(super.getPersistentClass());
+    
+    if (!(classMetadata instanceof AbstractEntityPersister))
+      return -1;
+    
+    String tableName = ((AbstractEntityPersister) classMetadata).getTableName();
+    Number tableRows = (Number) this.getCurrentSession().createSQLQuery(ESTIMATED_ROW_COUNT_SQL)
+        .setParameter(TABLE_NAME_PARAM, tableName.substring(tableName.lastIndexOf('.') + 1)).uniqueResult();
+    
+    return tableRows == null ? -1 : tableRows.longValue();
+  }
+  
+  /**
+   * Explains the SQL Hibernate translates the HQL of the compiled plan to with the EXPLAIN of MySQL, in a session of its own. The SQL parameters are
+   * bound by position: a list parameter is expanded by Hibernate only when the query runs, so it is explained with its first value. The keyset seek
+   * of a later page is left out. Other dialects are not explained.
+   */
+  @Override
+  protected List<String> implementExplain(final SearchCriteria searchCriteria) {
+    SessionFactoryImplementor sessionFactoryImplementor = (SessionFactoryImplementor) this.sessionFactory;
+    
+    if (!(sessionFactoryImplementor.getDialect() instanceof MySQLDialect))
+      return null;
+    
+    final List<List<Object>> termValues = this.getTermValues(searchCriteria);
+    final HqlQueryCompiler.Plan plan = this.queryCompiler.compile(searchCriteria, termValues, null);
+    QueryTranslator translator = sessionFactoryImplementor.getQueryPlanCache()
+        .getHQLQueryPlan(plan.getQueryString(), false, Collections.<String, Filter> emptyMap()).getTranslators()[0];
+    final String sql = translator.getSQLString();
+    final ParameterTranslations parameterTranslations = translator.getParameterTranslations();
+    Session session = this.sessionFactory.openSession();
+    
+    try {
+      return session.doReturningWork(new ReturningWork<List<String>>() {
+        @Override
+        public List<String> execute(final Connection connection) throws SQLException {
+          PreparedStatement statement = connection.prepareStatement(EXPLAIN + sql);
+          
+          try {
+            for (int index = 0; index < termValues.size(); index++) {
+              List<Object> values = termValues.get(index);
+              String name = HqlQueryCompiler.PARAM_PREFIX + index;
+              
+              if (HqlQueryCompiler.arityOf(values) > 0)
+                bindExplainParameter(statement, parameterTranslations, name, values.get(0));
+              
+              if (plan.isRange(index))
+                bindExplainParameter(statement, parameterTranslations, name + FilterExpression.UPPER_BOUND_SUFFIX, values.get(1));
+            }
+            
+            return explainRows(statement.executeQuery());
+          } finally {
+            statement.close();
+          }
+        }
+      });
+    } finally {
+      session.close();
+    }
+  }
+  
+  private static void bindExplainParameter(final PreparedStatement statement, final ParameterTranslations parameterTranslations, final String name,
+      final Object value) throws SQLException {
+    Object jdbcValue = value;
+    
+    if (value instanceof Date)
+      jdbcValue = new Timestamp(((Date) value).getTime());
+    else if (value instanceof Enum)
+      jdbcValue = ((Enum<?>) value).name();
+    
+    for (int location : parameterTranslations.getNamedParameterSqlLocations(name)) {
+      statement.setObject(location + 1, jdbcValue);
+    }
+  }
+  
+  /**
+   * Renders each row of the EXPLAIN of MySQL as its column names and values.
+   */
+  private static List<String> explainRows(final ResultSet resultSet) throws SQLException {
+    List<String> rows = new ArrayList<String>();
+    ResultSetMetaData metaData = resultSet.getMetaData();
+    
+    try {
+      while (resultSet.next()) {
+        StringBuilder row = new StringBuilder();
+        
+        for (int column = 1; column <= metaData.getColumnCount(); column++) {
+          if (column > 1)
+            row.append(", ");
+          
+          row.append(metaData.getColumnLabel(column)).append('=').append(resultSet.getObject(column));
+        }
+        
+        rows.add(row.toString());
+      }
+    } finally {
+      resultSet.close();
+    }
+    
+    return rows;
+  }
+  
+  /**
+   * Converts the values of each filter term of the search criteria through the FilterAdvice. Prefix terms are turned into LIKE patterns.
+   * 
+   * @param searchCriteria The SearchCriteria object with user input
+   * @return The parameter values of each filter term, in the order of the terms.
+   */
+  private List<List<Object>> getTermValues(final SearchCriteria searchCriteria) {
+    List<List<Object>> termValues = new ArrayList<List<Object>>();
+    
+    if (searchCriteria != null && searchCriteria.getFilter() != null) {
+      for (FilterTerm term : searchCriteria.getFilter().leaves()) {
+        List<Object> values = super.getParamValues(term);
+        
+        if (term.getOperator() == Op.PREFIX)
+          values.set(0, FilterExpression.toLikePattern(String.valueOf(values.get(0))));
+        
+        termValues.add(values);
+      }
+    }
+    
+    return termValues;
+  }
+  
+  /**
+   * Binds the values of the filter terms to the parameters of the compiled plan.
+   * 
+   * @param query The query created from the compiled plan.
+   * @param termValues The parameter values of each filter term, in the order of the terms.
+   * @return The query.
+   */
+  private Query bindParameters(final HqlQueryCompiler.Plan plan, final Query query, final List<List<Object>> termValues) {
+    for (int index = 0; index < termValues.size(); index++) {
+      List<Object> values = termValues.get(index);
+      int arity = HqlQueryCompiler.arityOf(values);
+      
+      if (plan.isRange(index)) {
+        query.setParameter(HqlQueryCompiler.PARAM_PREFIX + index, values.get(0));
+        query.setParameter(HqlQueryCompiler.PARAM_PREFIX + index + FilterExpression.UPPER_BOUND_SUFFIX, values.get(1));
+      } else if (arity > 1)
+        query.setParameterList(HqlQueryCompiler.PARAM_PREFIX + index, values);
+      else if (arity == 1)
+        query.setParameter(HqlQueryCompiler.PARAM_PREFIX + index, values.get(0));
+    }
+    
+    return query;
   }
   
   /**
@@ -75,9 +388,9 @@ public abstract class AbstractHibernateDBDAO<T extends Entity> extends AbstractD
    * 
    * @return The Id of the newly created entity.
    */
-  @SuppressWarnings("unchecked")
   protected T implementInsert(final T entity) {
-    return (T) this.getCurrentSession().save(entity);
+    this.getCurrentSession().save(entity);
+    return entity;
   }
   
   /**
@@ -91,6 +404,34 @@ public abstract class AbstractHibernateDBDAO<T extends Entity> extends AbstractD
     return entity;
   }
   
+  /**
+   * Moves the stored row to the next version with an update conditional on the expected one, which holds the row lock for the transaction, and then
+   * persists the entity. No row updated means the entity was modified, or removed, since it was read.
+   * 
+   * @param entity An instance of the entity object, stamped with its next version.
+   * @param expectedVersion The version the entity was read with, null to write whatever the stored version is.
+   * @return The modified entity.
+   * @throws ValidationException If the stored entity is no longer of the expected version.
+   */
+  @Override
+  protected T implementUpdate(final T entity, final Long expectedVersion) {
+    if (expectedVersion == null)
+      return this.implementUpdate(entity);
+    
+    String queryString = "update " + super.getPersistentClass().getName() + " " + HqlQueryCompiler.ALIAS + " set " + HqlQueryCompiler.ALIAS
+        + ".version = :version where " + HqlQueryCompiler.ALIAS + "." + Entity.ID_COLUMN_NAME + " = :" + Entity.ID_COLUMN_NAME + " and "
+        + HqlQueryCompiler.ALIAS + ".version = :expectedVersion";
+    int updatedRows = this.getCurrentSession().createQuery(queryString).setParameter("version", entity.getVersion())
+        .setParameter(Entity.ID_COLUMN_NAME, entity.getId()).setParameter("expectedVersion", expectedVersion).executeUpdate();
+    
+    if (updatedRows == 0) {
+      logger.debug("{} {} is no longer of version {}", super.getPersistentClass().getSimpleName(), entity.getId(), expectedVersion);
+      throw new ValidationException(Error.ERROR_VERSION);
+    }
+    
+    return this.implementUpdate(entity);
+  }
+  
   /**
    * Implements logic to delete an persisted entity and its mapped associations to the underlying data store.
    * 
@@ -99,4 +440,94 @@ public abstract class AbstractHibernateDBDAO<T extends Entity> extends AbstractD
   protected void implementDelete(final T entity) {
 	  this.getCurrentSession().delete(entity);
   }
+  
+  /**
+   * @return The hibernate.jdbc.batch_size of the session factory, or the default batch size if JDBC batching is not configured.
+   */
+  @Override
+  protected int getBatchSize() {
+    int batchSize = ((SessionFactoryImplementor) this.sessionFactory).getSettings().getJdbcBatchSize();
+    
+    return batchSize > 0 ? batchSize : super.getBatchSize();
+  }
+  
+  /**
+   * @return The hibernate.default_batch_fetch_size of the session factory, or the batch size if batch fetching is not configured.
+   */
+  protected int getFetchBatchSize() {
+    int fetchBatchSize = ((SessionFactoryImplementor) this.sessionFactory).getSettings().getDefaultBatchFetchSize();
+    
+    return fetchBatchSize > 1 ? fetchBatchSize : this.getBatchSize();
+  }
+  
+  @Override
+  protected List<T> implementInsertAll(final List<T> entities) {
+    Session session = this.getCurrentSession();
+    int batchSize = this.getBatchSize();
+    
+    for (int fromIndex = 0; fromIndex < entities.size(); fromIndex += batchSize) {
+      List<T> batch = entities.subList(fromIndex, Math.min(fromIndex + batchSize, entities.size()));
+      
+      for (final T entity : batch) {
+        session.save(entity);
+      }
+      
+      this.flushBatch(session, batch, true);
+    }
+    
+    return entities;
+  }
+  
+  @Override
+  protected List<T> implementUpdateAll(final List<T> entities) {
+    Session session = this.getCurrentSession();
+    int batchSize = this.getBatchSize();
+    
+    for (int fromIndex = 0; fromIndex < entities.size(); fromIndex += batchSize) {
+      List<T> batch = entities.subList(fromIndex, Math.min(fromIndex + batchSize, entities.size()));
+      
+      for (final T entity : batch) {
+        session.update(entity);
+      }
+      
+      this.flushBatch(session, batch, true);
+    }
+    
+    return entities;
+  }
+  
+  @Override
+  protected void implementDeleteAll(final List<T> entities) {
+    Session session = this.getCurrentSession();
+    int batchSize = this.getBatchSize();
+    
+    for (int fromIndex = 0; fromIndex < entities.size(); fromIndex += batchSize) {
+      List<T> batch = entities.subList(fromIndex, Math.min(fromIndex + batchSize, entities.size()));
+      
+      for (final T entity : batch) {
+        session.delete(entity);
+      }
+      
+      this.flushBatch(session, batch, false);
+    }
+  }
+  
+  /**
+   * Sends the pending statements of a batch to the database as one JDBC batch and evicts the entities of the batch, so the memory of the session
+   * does not grow with the number of entities written. The other entities of the session stay attached; a deleted entity leaves the session when it
+   * is flushed.
+   * 
+   * @param session The current session.
+   * @param batch The entities of the batch.
+   * @param evict Whether to evict the entities of the batch, which are still attached once saved or updated.
+   */
+  private void flushBatch(final Session session, final List<T> batch, final boolean evict) {
+    session.flush();
+    
+    if (evict) {
+      for (final T entity : batch) {
+        session.evict(entity);
+      }
+    }
+  }
 }
\ No newline at end of file
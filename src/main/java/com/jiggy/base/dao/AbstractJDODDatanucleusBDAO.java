@@ -1,5 +1,8 @@
 package com.jiggy.base.dao;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -9,7 +12,10 @@ import javax.jdo.Query;
 import org.apache.commons.lang3.StringUtils;
 
 import com.jiggy.base.entity.Entity;
+import com.jiggy.base.searchengine.PageCursor;
 import com.jiggy.base.searchengine.SearchCriteria;
+import com.jiggy.base.searchengine.SearchCriteria.CountMode;
+import com.jiggy.base.searchengine.SortKey;
 
 /**
  * <p>
@@ -20,6 +26,10 @@ import com.jiggy.base.searchengine.SearchCriteria;
  * @author jmalkan
  */
 public abstract class AbstractJDODDatanucleusBDAO<T extends Entity> extends AbstractDBDAO<T> {
+  private static final String AFTER_ID_PARAM = "afterId";
+  private static final String AFTER_VALUE_PARAM = "afterValue";
+  private static final String IDS_PARAM = "ids";
+  
   protected PersistenceManager persistenceManager;
   
   public AbstractJDODDatanucleusBDAO(final PersistenceManager persistenceManager) {
@@ -46,6 +56,27 @@ public abstract class AbstractJDODDatanucleusBDAO<T extends Entity> extends Abst
     return (T) this.getPersistenceManager().getObjectById(super.getPersistentClass(), id);
   }
   
+  /**
+   * Implements logic to find the entities for the given ids with a contains query per chunk of ids.
+   * 
+   * @param ids The distinct ids of the entities being searched.
+   * @return List of the entities found.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  protected List<T> implementFindByIds(final List<Long> ids) {
+    int batchSize = this.getBatchSize();
+    List<T> entities = new ArrayList<T>(ids.size());
+    
+    for (int fromIndex = 0; fromIndex < ids.size(); fromIndex += batchSize) {
+      Query query = this.getPersistenceManager().newQuery(super.getPersistentClass(), ":" + IDS_PARAM + ".contains(" + Entity.ID_COLUMN_NAME + ")");
+      
+      entities.addAll((Collection<T>) query.execute(new ArrayList<Long>(ids.subList(fromIndex, Math.min(fromIndex + batchSize, ids.size())))));
+    }
+    
+    return entities;
+  }
+  
   /**
    * Implements logic to find all the entities that matches the given search criteria.
    * 
@@ -60,21 +91,49 @@ public abstract class AbstractJDODDatanucleusBDAO<T extends Entity> extends Abst
     
     if (searchCriteria != null) {
       String filter = null;
+      String ordering = searchCriteria.getSortBy();
       Map<Object, Object> paramMap = null;
-      Map<String, Object> filterParamMap = super.getFilterParamMap(searchCriteria);
-      Query query = this.getPersistenceManager().newQuery(super.getPersistentClass());
       
       this.applySecurityFilter(searchCriteria);
       
+      Map<String, Object> filterParamMap = super.getFilterParamMap(searchCriteria);
+      Query query = this.getPersistenceManager().newQuery(super.getPersistentClass());
+      
       if (StringUtils.isNotBlank(searchCriteria.getQueryVariables()))
         query.declareVariables(searchCriteria.getQueryVariables());
       
       if (filterParamMap != null && !filterParamMap.isEmpty()) {
         filter = (String) filterParamMap.get("filter");
-        paramMap = (Map<Object, Object>) filterParamMap.get("filterMap");
+        paramMap = (Map<Object, Object>) filterParamMap.get("paramMap");
       }
       
-      if (searchCriteria.isPaginationEnabled()) {
+      if (searchCriteria.isKeysetPaginationEnabled()) {
+        logger.debug("Keyset pagination is enabled, seek past the cursor.");
+        SortKey sortKey = SortKey.parse(searchCriteria.getSortBy());
+        PageCursor pageCursor = super.getPageCursor(searchCriteria);
+        
+        if (pageCursor != null) {
+          String seekFilter = this.buildSeekFilter(sortKey, pageCursor.getValue() == null);
+          
+          if (paramMap == null)
+            paramMap = new HashMap<Object, Object>();
+          
+          if (pageCursor.getValue() != null)
+            paramMap.put(AFTER_VALUE_PARAM, pageCursor.getValue());
+          
+          paramMap.put(AFTER_ID_PARAM, pageCursor.getId());
+          filter = (filter == null ? seekFilter : "(" + filter + ") && " + seekFilter);
+        }
+        
+        ordering = sortKey.isId() ? sortKey.toString() : sortKey + ", " + Entity.ID_COLUMN_NAME + (sortKey.isAscending() ? " ascending" : " descending");
+        
+        logger.debug("Adding range of limit + 1 to the Main Search query to detect the next page.");
+        query.setRange(0, searchCriteria.getLimit() + 1);
+      } else if (searchCriteria.isPaginationEnabled() && searchCriteria.getCountMode() != CountMode.EXACT) {
+        logger.debug("Pagination is enabled with the {} count mode, range from the offset.", searchCriteria.getCountMode());
+        searchCriteria.setRowCount(super.getPageRowCount(searchCriteria));
+        query.setRange(searchCriteria.getOffset(), searchCriteria.getOffset() + super.getPageFetchSize(searchCriteria));
+      } else if (searchCriteria.isPaginationEnabled()) {
         logger.debug("Pagination is enabled, calculate range.");
         long rowCount = this.getRowcount(searchCriteria, filter, paramMap);
         
@@ -98,22 +157,87 @@ public abstract class AbstractJDODDatanucleusBDAO<T extends Entity> extends Abst
         query.setFilter(filter);
       
       logger.debug("Adding soring to the Main Search query.");
-      if (!StringUtils.isBlank(searchCriteria.getSortBy()))
-        query.setOrdering(searchCriteria.getSortBy());
+      if (!StringUtils.isBlank(ordering))
+        query.setOrdering(ordering);
       
       logger.debug("Executing the Main Search Query={}  with Param={}", query.toString(), paramMap);
+      super.profileQuery(query);
       result = (List<T>) query.executeWithMap(paramMap);
       
-      if (searchCriteria.getRowCount() < 0 && result != null)
+      if (searchCriteria.getRowCount() < 0 && result != null && !searchCriteria.isKeysetPaginationEnabled()
+          && !(searchCriteria.isPaginationEnabled() && searchCriteria.getCountMode() == CountMode.NONE))
         searchCriteria.setRowCount(result.size());
     }
     
     return result;
   }
-
+  
+  /**
+   * Builds the JDOQL predicate that seeks past the cursor position on the sort key, using the id as the tie breaker. Null sorts before every value,
+   * as on MySQL, so past a null only the nulls of greater ids follow ascending, then every value, and only the nulls of lesser ids follow
+   * descending; past a value descending, every null still follows.
+   * 
+   * @param sortKey The leading sort key.
+   * @param pastNull true if the sort value of the cursor is null.
+   * @return The seek filter.
+   */
+  private String buildSeekFilter(final SortKey sortKey, final boolean pastNull) {
+    String operator = sortKey.isAscending() ? " > :" : " < :";
+    String field = sortKey.getField();
+    
+    if (sortKey.isId())
+      return Entity.ID_COLUMN_NAME + operator + AFTER_ID_PARAM;
+    
+    if (pastNull) {
+      String nulls = "(" + field + " == null && " + Entity.ID_COLUMN_NAME + operator + AFTER_ID_PARAM + ")";
+      
+      return sortKey.isAscending() ? "(" + nulls + " || " + field + " != null)" : nulls;
+    }
+    
+    return "(" + field + operator + AFTER_VALUE_PARAM + " || (" + field + " == :" + AFTER_VALUE_PARAM + " && " + Entity.ID_COLUMN_NAME + operator
+        + AFTER_ID_PARAM + ")" + (sortKey.isAscending() ? ")" : " || " + field + " == null)");
+  }
+  
+  @Override
+  @SuppressWarnings("unchecked")
+  protected long implementStream(final SearchCriteria searchCriteria, final EntityConsumer<T> consumer) {
+    long count = 0;
+    SearchCriteria securedCriteria = super.withSecurityFilter(searchCriteria);
+    Map<Object, Object> paramMap = null;
+    Query query = this.getPersistenceManager().newQuery(super.getPersistentClass());
+    
+    if (securedCriteria != null) {
+      Map<String, Object> filterParamMap = super.getFilterParamMap(securedCriteria);
+      
+      if (filterParamMap != null && !filterParamMap.isEmpty()) {
+        query.setFilter((String) filterParamMap.get("filter"));
+        paramMap = (Map<Object, Object>) filterParamMap.get("paramMap");
+      }
+      
+      if (!StringUtils.isBlank(securedCriteria.getSortBy()))
+        query.setOrdering(securedCriteria.getSortBy());
+    }
+    
+    logger.debug("Streaming the Query={} with Param={} and fetch size {}", new Object[] { query.toString(), paramMap, STREAM_FETCH_SIZE });
+    query.getFetchPlan().setFetchSize(STREAM_FETCH_SIZE);
+    
+    try {
+      Collection<T> result = (Collection<T>) (paramMap == null ? query.execute() : query.executeWithMap(paramMap));
+      
+      for (T entity : result) {
+        consumer.accept(entity);
+        count++;
+      }
+    } finally {
+      query.closeAll();
+    }
+    
+    return count;
+  }
+  
   @Override
   protected long implementRowCount(final SearchCriteria searchCriteria) {
-    return this.getRowcount(searchCriteria, null, null);
+    return this.getRowcount(super.withSecurityFilter(searchCriteria), null, null);
   }
   
   
@@ -133,7 +257,7 @@ public abstract class AbstractJDODDatanucleusBDAO<T extends Entity> extends Abst
         
         if (filterParamMap != null && !filterParamMap.isEmpty()) {
           filter = (String) filterParamMap.get("filter");
-          paramMap = (Map<Object, Object>) filterParamMap.get("filterMap");
+          paramMap = (Map<Object, Object>) filterParamMap.get("paramMap");
         }
       }
       
@@ -146,6 +270,7 @@ public abstract class AbstractJDODDatanucleusBDAO<T extends Entity> extends Abst
         rowCountQuery.setFilter(filter);
       
       logger.debug("Executing the Row Count Query={}  with Param={}", rowCountQuery.toString(), paramMap);
+      super.profileQuery(rowCountQuery);
       rowCountResult = (Long) rowCountQuery.executeWithMap(paramMap);
     } else
       rowCountResult = (Long) rowCountQuery.execute();
@@ -187,4 +312,20 @@ public abstract class AbstractJDODDatanucleusBDAO<T extends Entity> extends Abst
   protected void implementDelete(final T entity) {
     this.getPersistenceManager().deletePersistent(entity);
   }
+  
+  @Override
+  protected List<T> implementInsertAll(final List<T> entities) {
+    return new ArrayList<T>(this.getPersistenceManager().makePersistentAll(entities));
+  }
+  
+  @Override
+  protected List<T> implementUpdateAll(final List<T> entities) {
+    this.getPersistenceManager().setCopyOnAttach(false);
+    return new ArrayList<T>(this.getPersistenceManager().makePersistentAll(entities));
+  }
+  
+  @Override
+  protected void implementDeleteAll(final List<T> entities) {
+    this.getPersistenceManager().deletePersistentAll(entities);
+  }
 }
\ No newline at end of file
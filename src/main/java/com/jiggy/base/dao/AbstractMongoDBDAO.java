@@ -1,11 +1,42 @@
 package com.jiggy.base.dao;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.regex.Pattern;
 
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mapping.PropertyHandler;
+import org.springframework.data.mongodb.core.CollectionCallback;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Order;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
 
 import com.jiggy.base.entity.Entity;
+import com.jiggy.base.entity.EntityVersion;
+import com.jiggy.base.exception.Error;
+import com.jiggy.base.exception.ValidationException;
+import com.jiggy.base.searchengine.FilterExpression;
+import com.jiggy.base.searchengine.FilterExpression.FilterTerm;
+import com.jiggy.base.searchengine.FilterGroup;
+import com.jiggy.base.searchengine.FilterGroup.Junction;
+import com.jiggy.base.searchengine.FilterNode;
+import com.jiggy.base.searchengine.FilterNot;
+import com.jiggy.base.searchengine.FilterVisitor;
+import com.jiggy.base.searchengine.PageCursor;
 import com.jiggy.base.searchengine.SearchCriteria;
+import com.jiggy.base.searchengine.SortKey;
 
 /**
  * <p>
@@ -16,17 +47,70 @@ import com.jiggy.base.searchengine.SearchCriteria;
  * @author jmalkan
  */
 public abstract class AbstractMongoDBDAO<T extends Entity> extends AbstractDBDAO<T> {
+  private static final String MONGO_ID_FIELD = "_id";
+  private static final String MONGO_AND = "$and";
+  private static final int MONGO_BATCH_SIZE = 1000;
+  
+  /**
+   * How insert and update produce the entity they return.
+   */
+  public enum WriteMode {
+    /**
+     * Returns the entity that was written, without reading it back. One round trip per write.
+     */
+    RETURN_WRITTEN,
+    /**
+     * Updates with a findAndModify that returns the new document, so the caller sees the state stored on the server. One round trip per write;
+     * inserts return the written entity.
+     */
+    FIND_AND_MODIFY,
+    /**
+     * Reads the entity back by id after every write. Two round trips per write.
+     */
+    READ_BACK
+  }
+  
   private MongoOperations mongoOperations;
+  private WriteMode writeMode;
   
   
   /**
-   * Creates a new instance of com.jiggy.base.dao.AbstractHibernateDBDAO.java and Performs Initialization
+   * Creates a new instance of com.jiggy.base.dao.AbstractMongoDBDAO.java and Performs Initialization
    * 
    * @param mongoOperations The Spring Data instance of mongoOperations this dao interacts with.
    */
   public AbstractMongoDBDAO(final MongoOperations mongoOperations) {
+    this(mongoOperations, WriteMode.RETURN_WRITTEN);
+  }
+  
+  /**
+   * Creates a new instance of com.jiggy.base.dao.AbstractMongoDBDAO.java and Performs Initialization
+   * 
+   * @param mongoOperations The Spring Data instance of mongoOperations this dao interacts with.
+   * @param writeMode How insert and update produce the entity they return.
+   */
+  public AbstractMongoDBDAO(final MongoOperations mongoOperations, final WriteMode writeMode) {
     super();
     this.mongoOperations = mongoOperations;
+    this.writeMode = writeMode;
+  }
+  
+  /**
+   * Getter of the property <tt>writeMode</tt>
+   * 
+   * @return Returns the writeMode.
+   */
+  public WriteMode getWriteMode() {
+    return this.writeMode;
+  }
+  
+  /**
+   * Setter of the property <tt>writeMode</tt>
+   * 
+   * @param writeMode The writeMode to set.
+   */
+  public void setWriteMode(final WriteMode writeMode) {
+    this.writeMode = writeMode;
   }
   
   /**
@@ -39,6 +123,39 @@ public abstract class AbstractMongoDBDAO<T extends Entity> extends AbstractDBDAO
     return (T) this.mongoOperations.findById(id, super.getPersistentClass());
   }
   
+  /**
+   * Implements logic to find the version of an entity for the given id, reading its version and dates only.
+   * 
+   * @param id The id of the entity being searched.
+   * @return The version of the entity, null if it does not exist.
+   */
+  @Override
+  protected EntityVersion implementFindVersion(final Long id) {
+    Query query = Query.query(Criteria.where(MONGO_ID_FIELD).is(id));
+    query.fields().include("version").include("lastModifiedDate").include("createDate");
+    
+    return EntityVersion.of(this.mongoOperations.findOne(query, super.getPersistentClass()));
+  }
+  
+  /**
+   * Implements logic to find the entities for the given ids with an $in query per chunk of ids.
+   * 
+   * @param ids The distinct ids of the entities being searched.
+   * @return List of the entities found.
+   */
+  @Override
+  protected List<T> implementFindByIds(final List<Long> ids) {
+    List<T> entities = new ArrayList<T>(ids.size());
+    
+    for (int fromIndex = 0; fromIndex < ids.size(); fromIndex += MONGO_BATCH_SIZE) {
+      List<Long> chunk = ids.subList(fromIndex, Math.min(fromIndex + MONGO_BATCH_SIZE, ids.size()));
+      
+      entities.addAll(this.mongoOperations.find(Query.query(Criteria.where(MONGO_ID_FIELD).in(chunk)), super.getPersistentClass()));
+    }
+    
+    return entities;
+  }
+  
   /**
    * Implements logic to find all the entities that matches the given search criteria.
    * 
@@ -47,23 +164,310 @@ public abstract class AbstractMongoDBDAO<T extends Entity> extends AbstractDBDAO
    * 
    * @see SearchCriteria
    */
-  protected List<T> implementFind(SearchCriteria searchCriteria) {
+  protected List<T> implementFind(final SearchCriteria searchCriteria) {
+    SearchCriteria securedCriteria = super.withSecurityFilter(searchCriteria);
     List<T> foundEntities = null;
     
-    if (searchCriteria == null)
+    if (securedCriteria == null)
       foundEntities = this.mongoOperations.findAll(super.getPersistentClass());
+    else if (securedCriteria.isKeysetPaginationEnabled()) {
+      logger.debug("Keyset pagination is enabled, seek past the cursor.");
+      Query query = this.buildQuery(securedCriteria);
+      SortKey sortKey = SortKey.parse(securedCriteria.getSortBy());
+      PageCursor pageCursor = super.getPageCursor(securedCriteria);
+      
+      if (pageCursor != null)
+        query.addCriteria(this.buildSeekCriteria(sortKey, pageCursor));
+      
+      query.sort().on(this.toMongoField(sortKey.getField()), this.toOrder(sortKey));
+      
+      if (!sortKey.isId())
+        query.sort().on(MONGO_ID_FIELD, this.toOrder(sortKey));
+      
+      query.limit(securedCriteria.getLimit() + 1);
+      super.profileQuery(query.getQueryObject());
+      foundEntities = this.mongoOperations.find(query, super.getPersistentClass());
+    } else {
+      Query query = this.buildQuery(securedCriteria);
+      
+      if (securedCriteria.isPaginationEnabled()) {
+        logger.debug("Pagination is enabled, count the matching documents the {} way and skip to the offset.", securedCriteria.getCountMode());
+        securedCriteria.setRowCount(super.getPageRowCount(securedCriteria));
+        query.skip(securedCriteria.getOffset());
+        query.limit(super.getPageFetchSize(securedCriteria));
+      }
+      
+      this.addSort(query, securedCriteria);
+      super.profileQuery(query.getQueryObject());
+      foundEntities = this.mongoOperations.find(query, super.getPersistentClass());
+    }
     
     return foundEntities;
   }
-
+  
+  @Override
+  protected long implementStream(final SearchCriteria searchCriteria, final EntityConsumer<T> consumer) {
+    final SearchCriteria securedCriteria = super.withSecurityFilter(searchCriteria);
+    final Query query = securedCriteria == null ? new Query() : this.buildQuery(securedCriteria);
+    final Class<T> persistentClass = super.getPersistentClass();
+    
+    if (securedCriteria != null)
+      this.addSort(query, securedCriteria);
+    
+    return this.mongoOperations.execute(persistentClass, new CollectionCallback<Long>() {
+      @Override
+      public Long doInCollection(final DBCollection collection) throws MongoException, DataAccessException {
+        long count = 0;
+        DBCursor cursor = collection.find(query.getQueryObject()).batchSize(STREAM_FETCH_SIZE);
+        
+        if (query.getSortObject() != null)
+          cursor.sort(query.getSortObject());
+        
+        try {
+          while (cursor.hasNext()) {
+            consumer.accept(AbstractMongoDBDAO.this.mongoOperations.getConverter().read(persistentClass, cursor.next()));
+            count++;
+          }
+        } finally {
+          cursor.close();
+        }
+        
+        return count;
+      }
+    });
+  }
+  
   @Override
   protected long implementRowCount(final SearchCriteria searchCriteria) {
-    long rowCout = 0;
+    SearchCriteria securedCriteria = super.withSecurityFilter(searchCriteria);
+    Query query = securedCriteria == null ? null : this.buildQuery(securedCriteria);
+    
+    if (query != null)
+      super.profileQuery(query.getQueryObject());
+    
+    return this.mongoOperations.count(query, super.getPersistentClass());
+  }
+  
+  /**
+   * Estimates the unfiltered row count from the document count the collection keeps in its metadata, which Mongo answers without a scan. A role
+   * with a row level read filter gets no estimate, as the size of the whole collection is not its to see.
+   */
+  @Override
+  protected long implementEstimatedRowCount(final SearchCriteria searchCriteria) {
+    if (super.isFiltered(searchCriteria) || super.getSecurityFilter() != null)
+      return -1;
+    
+    return this.mongoOperations.getCollection(this.mongoOperations.getCollectionName(super.getPersistentClass())).getCount();
+  }
+  
+  /**
+   * Explains the query of the search criteria with the explain of its cursor, which runs the query and reports the index it used and the documents it
+   * scanned. The keyset seek of a later page is left out.
+   */
+  @Override
+  protected List<String> implementExplain(final SearchCriteria searchCriteria) {
+    Query query = searchCriteria == null ? new Query() : this.buildQuery(searchCriteria);
+    DBCollection collection = this.mongoOperations.getCollection(this.mongoOperations.getCollectionName(super.getPersistentClass()));
+    DBCursor cursor = collection.find(query.getQueryObject());
+    
+    if (searchCriteria != null) {
+      this.addSort(query, searchCriteria);
+      
+      if (query.getSortObject() != null)
+        cursor.sort(query.getSortObject());
+    }
+    
+    try {
+      return Collections.singletonList(String.valueOf(cursor.explain()));
+    } finally {
+      cursor.close();
+    }
+  }
+  
+  /**
+   * Maps the filter of the search criteria to a mongo query, so the filter runs on the server against its indexes. Comma separated values map to $in
+   * for include terms and $nin for exclude terms, ranges to $lt, $lte, $gt and $gte, prefixes to an anchored regex, groups to $and and $or, and
+   * negations to $nor. Top level terms are merged into the query document, so terms on different fields and range bounds on the same field share one
+   * index scan; the rest is ANDed with $and. The row level security filter of the user's role is added to the filter first.
+   * 
+   * @param searchCriteria The SearchCriteria object with user input
+   * @return The mongo query.
+   */
+  private Query buildQuery(final SearchCriteria searchCriteria) {
+    Query query = new Query();
+    
+    super.applySecurityFilter(searchCriteria);
+    FilterExpression filter = searchCriteria.getFilter();
+    
+    if (filter != null && !filter.isEmpty()) {
+      DBObject queryObject = new BasicDBObject();
+      BasicDBList conjuncts = new BasicDBList();
+      MongoFilterVisitor visitor = new MongoFilterVisitor();
+      
+      for (FilterNode node : filter.nodes()) {
+        DBObject nodeObject = node.accept(visitor);
+        
+        if (!(node instanceof FilterTerm) || !this.merge(queryObject, nodeObject))
+          conjuncts.add(nodeObject);
+      }
+      
+      if (!conjuncts.isEmpty())
+        queryObject.put(MONGO_AND, conjuncts);
+      
+      for (String key : queryObject.keySet()) {
+        query.addCriteria(Criteria.where(key).is(queryObject.get(key)));
+      }
+    }
+    
+    return query;
+  }
+  
+  /**
+   * Merges the document of a term into the query document, unless it filters on a field already filtered with a clashing operator.
+   * 
+   * @return true if merged.
+   */
+  private boolean merge(final DBObject queryObject, final DBObject termObject) {
+    String field = termObject.keySet().iterator().next();
+    Object value = termObject.get(field);
+    Object existing = queryObject.get(field);
+    
+    if (existing == null && !queryObject.containsField(field)) {
+      queryObject.put(field, value);
+      return true;
+    }
+    
+    if (!(existing instanceof DBObject) || !(value instanceof DBObject))
+      return false;
+    
+    DBObject existingOperators = (DBObject) existing;
+    DBObject operators = (DBObject) value;
     
-    if (searchCriteria == null)
-      rowCout = this.mongoOperations.count(null, super.getPersistentClass());
+    for (String operator : operators.keySet()) {
+      if (!operator.startsWith("$") || existingOperators.containsField(operator))
+        return false;
+    }
     
-    return rowCout;
+    existingOperators.putAll(operators);
+    
+    return true;
+  }
+  
+  /**
+   * Renders the filter nodes to mongo query documents.
+   */
+  private final class MongoFilterVisitor implements FilterVisitor<DBObject> {
+    
+    @Override
+    public DBObject visitTerm(final FilterTerm term) {
+      List<Object> values = AbstractMongoDBDAO.this.getParamValues(term);
+      String field = AbstractMongoDBDAO.this.toMongoField(term.getKey());
+      
+      switch (term.getOperator()) {
+        case EXCLUDE:
+          return new BasicDBObject(field, values.size() > 1 ? new BasicDBObject("$nin", values) : new BasicDBObject("$ne", values.get(0)));
+        case LESS:
+          return new BasicDBObject(field, new BasicDBObject("$lt", values.get(0)));
+        case LESS_OR_EQUAL:
+          return new BasicDBObject(field, new BasicDBObject("$lte", values.get(0)));
+        case GREATER:
+          return new BasicDBObject(field, new BasicDBObject("$gt", values.get(0)));
+        case GREATER_OR_EQUAL:
+          return new BasicDBObject(field, new BasicDBObject("$gte", values.get(0)));
+        case BETWEEN:
+          return new BasicDBObject(field, new BasicDBObject("$gte", values.get(0)).append("$lte", values.get(1)));
+        case PREFIX:
+          return new BasicDBObject(field, Pattern.compile("^" + escapeRegex(String.valueOf(values.get(0)))));
+        default:
+          return new BasicDBObject(field, values.size() > 1 ? new BasicDBObject("$in", values) : values.get(0));
+      }
+    }
+    
+    @Override
+    public DBObject visitGroup(final FilterGroup group) {
+      BasicDBList children = new BasicDBList();
+      
+      for (FilterNode child : group.getChildren()) {
+        children.add(child.accept(this));
+      }
+      
+      return new BasicDBObject(group.getJunction() == Junction.AND ? MONGO_AND : "$or", children);
+    }
+    
+    @Override
+    public DBObject visitNot(final FilterNot not) {
+      BasicDBList children = new BasicDBList();
+      children.add(not.getChild().accept(this));
+      
+      return new BasicDBObject("$nor", children);
+    }
+  }
+  
+  /**
+   * Escapes every character of the prefix but letters and digits, so it matches literally and still reads as a plain prefix to the index.
+   */
+  private static String escapeRegex(final String prefix) {
+    StringBuilder escaped = new StringBuilder(prefix.length() * 2);
+    
+    for (int i = 0; i < prefix.length(); i++) {
+      char c = prefix.charAt(i);
+      
+      if (!Character.isLetterOrDigit(c))
+        escaped.append('\\');
+      
+      escaped.append(c);
+    }
+    
+    return escaped.toString();
+  }
+  
+  /**
+   * Adds the sort keys of the search criteria to the query.
+   * 
+   * @param query The mongo query.
+   * @param searchCriteria The SearchCriteria object with user input
+   */
+  private void addSort(final Query query, final SearchCriteria searchCriteria) {
+    for (SortKey sortKey : SortKey.parseAll(searchCriteria.getSortBy())) {
+      query.sort().on(this.toMongoField(sortKey.getField()), this.toOrder(sortKey));
+    }
+  }
+  
+  /**
+   * Builds the criteria that seeks past the cursor position on the sort key, using the id as the tie breaker. A missing or null field sorts before
+   * every value, so past a null only the nulls of greater ids follow ascending, then every value, and only the nulls of lesser ids follow
+   * descending; past a value descending, every null still follows.
+   * 
+   * @param sortKey The leading sort key.
+   * @param pageCursor The position of the last row of the previous page.
+   * @return The seek criteria.
+   */
+  private Criteria buildSeekCriteria(final SortKey sortKey, final PageCursor pageCursor) {
+    if (sortKey.isId())
+      return sortKey.isAscending() ? Criteria.where(MONGO_ID_FIELD).gt(pageCursor.getId()) : Criteria.where(MONGO_ID_FIELD).lt(pageCursor.getId());
+    
+    String field = this.toMongoField(sortKey.getField());
+    Object value = pageCursor.getValue();
+    
+    if (value == null && sortKey.isAscending())
+      return new Criteria().orOperator(Criteria.where(field).is(null).and(MONGO_ID_FIELD).gt(pageCursor.getId()), Criteria.where(field).ne(null));
+    
+    if (value == null)
+      return Criteria.where(field).is(null).and(MONGO_ID_FIELD).lt(pageCursor.getId());
+    
+    if (sortKey.isAscending())
+      return new Criteria().orOperator(Criteria.where(field).gt(value), Criteria.where(field).is(value).and(MONGO_ID_FIELD).gt(pageCursor.getId()));
+    
+    return new Criteria().orOperator(Criteria.where(field).lt(value), Criteria.where(field).is(value).and(MONGO_ID_FIELD).lt(pageCursor.getId()),
+                                     Criteria.where(field).is(null));
+  }
+  
+  private String toMongoField(final String field) {
+    return Entity.ID_COLUMN_NAME.equals(field) ? MONGO_ID_FIELD : field;
+  }
+  
+  private Order toOrder(final SortKey sortKey) {
+    return sortKey.isAscending() ? Order.ASCENDING : Order.DESCENDING;
   }
   
   /**
@@ -71,12 +475,15 @@ public abstract class AbstractMongoDBDAO<T extends Entity> extends AbstractDBDAO
    * 
    * @param entity An instance of the entity object.
    * 
-   * @return The Id of the newly created entity.
+   * @return The newly created entity.
    */
   protected T implementInsert(final T entity) {
     this.mongoOperations.insert(entity);
     
-    return this.findById(entity.getId());
+    if (this.writeMode == WriteMode.READ_BACK)
+      return this.implementFindById(entity.getId());
+    
+    return entity;
   }
   
   /**
@@ -86,9 +493,81 @@ public abstract class AbstractMongoDBDAO<T extends Entity> extends AbstractDBDAO
    * @return The modified entity.
    */
   protected T implementUpdate(final T entity) {
+    if (this.writeMode == WriteMode.FIND_AND_MODIFY)
+      return this.findAndModify(entity, null);
+    
     this.mongoOperations.save(entity);
     
-    return this.findById(entity.getId());
+    if (this.writeMode == WriteMode.READ_BACK)
+      return this.implementFindById(entity.getId());
+    
+    return entity;
+  }
+  
+  /**
+   * In the FIND_AND_MODIFY write mode the expected version is part of the query of the findAndModify; the other modes save by id whatever the stored
+   * version is.
+   * 
+   * @param entity An instance of the entity object, stamped with its next version.
+   * @param expectedVersion The version the entity was read with, null to write whatever the stored version is.
+   * @return The modified entity.
+   */
+  @Override
+  protected T implementUpdate(final T entity, final Long expectedVersion) {
+    if (this.writeMode == WriteMode.FIND_AND_MODIFY)
+      return this.findAndModify(entity, expectedVersion);
+    
+    return this.implementUpdate(entity);
+  }
+  
+  /**
+   * Sets every mapped field of the entity on its document and returns the document as it is after the update. Fields that are null on the entity
+   * are not written by the converter, so they are unset, leaving the document as save would. An entity that no longer exists is not created again.
+   * 
+   * @param entity An instance of the entity object.
+   * @param expectedVersion The version the document must still have to be modified, null for any.
+   * @return The modified entity, as stored.
+   * @throws ValidationException If there is no document of the id of the entity, or of the expected version.
+   */
+  private T findAndModify(final T entity, final Long expectedVersion) {
+    final DBObject document = new BasicDBObject();
+    final Update update = new Update();
+    
+    this.mongoOperations.getConverter().write(entity, document);
+    document.removeField(MONGO_ID_FIELD);
+    
+    for (String key : document.keySet()) {
+      update.set(key, document.get(key));
+    }
+    
+    this.mongoOperations.getConverter().getMappingContext().getPersistentEntity(super.getPersistentClass())
+        .doWithProperties(new PropertyHandler<MongoPersistentProperty>() {
+          @Override
+          public void doWithPersistentProperty(final MongoPersistentProperty property) {
+            if (!property.isIdProperty() && !document.containsField(property.getFieldName()))
+              update.unset(property.getFieldName());
+          }
+        });
+    
+    Criteria criteria = Criteria.where(MONGO_ID_FIELD).is(entity.getId());
+    
+    if (expectedVersion != null)
+      criteria.and("version").is(expectedVersion);
+    
+    T modifiedEntity = this.mongoOperations.findAndModify(Query.query(criteria), update, new FindAndModifyOptions().returnNew(true).upsert(false),
+                                                          super.getPersistentClass());
+    
+    if (modifiedEntity == null && expectedVersion != null) {
+      logger.debug("{} {} is no longer of version {}", super.getPersistentClass().getSimpleName(), entity.getId(), expectedVersion);
+      throw new ValidationException(Error.ERROR_VERSION);
+    }
+    
+    if (modifiedEntity == null) {
+      logger.debug("{} {} does not exist", super.getPersistentClass().getSimpleName(), entity.getId());
+      throw new ValidationException(Error.ERROR_NOT_FOUND);
+    }
+    
+    return modifiedEntity;
   }
   
   /**
@@ -99,4 +578,47 @@ public abstract class AbstractMongoDBDAO<T extends Entity> extends AbstractDBDAO
   protected void implementDelete(final T entity) {
     this.mongoOperations.remove(entity);
   }
+  
+  @Override
+  protected List<T> implementInsertAll(final List<T> entities) {
+    int batchSize = this.getBatchSize();
+    
+    for (int fromIndex = 0; fromIndex < entities.size(); fromIndex += batchSize) {
+      this.mongoOperations.insert(entities.subList(fromIndex, Math.min(fromIndex + batchSize, entities.size())), super.getPersistentClass());
+    }
+    
+    return entities;
+  }
+  
+  @Override
+  protected List<T> implementUpdateAll(final List<T> entities) {
+    for (final T entity : entities) {
+      this.mongoOperations.save(entity);
+    }
+    
+    return entities;
+  }
+  
+  @Override
+  protected void implementDeleteAll(final List<T> entities) {
+    int batchSize = this.getBatchSize();
+    List<Long> ids = new ArrayList<Long>(batchSize);
+    
+    for (final T entity : entities) {
+      ids.add(entity.getId());
+      
+      if (ids.size() == batchSize) {
+        this.mongoOperations.remove(Query.query(Criteria.where(MONGO_ID_FIELD).in(ids)), super.getPersistentClass());
+        ids.clear();
+      }
+    }
+    
+    if (!ids.isEmpty())
+      this.mongoOperations.remove(Query.query(Criteria.where(MONGO_ID_FIELD).in(ids)), super.getPersistentClass());
+  }
+  
+  @Override
+  protected int getBatchSize() {
+    return MONGO_BATCH_SIZE;
+  }
 }
\ No newline at end of file
@@ -1,8 +1,10 @@
 package com.jiggy.base.dao;
 
+import java.util.Collection;
 import java.util.List;
 
 import com.jiggy.base.entity.Entity;
+import com.jiggy.base.entity.EntityVersion;
 import com.jiggy.base.searchengine.SearchCriteria;
 
 /**
@@ -21,6 +23,24 @@ public interface DBDAO<T extends Entity> extends DAO {
    */
   T findById(final Long id);
   
+  /**
+   * Finds the entities for the given Ids in one round trip per chunk of ids. Ids that are not found, or whose entities the row level security filter
+   * of the current user's role hides, are skipped.
+   * 
+   * @param ids The ids of the entities to be searched for.
+   * @return List of the entity objects, in the order of the given ids.
+   */
+  List<T> findByIds(final Collection<Long> ids);
+  
+  /**
+   * Finds the version and last modification of the entity for the given Id, from the entity cache or by a projection of the data store, without
+   * loading the whole entity.
+   * 
+   * @param id The id for the entity to be searched for.
+   * @return The version of the entity, null if it does not exist.
+   */
+  EntityVersion findVersion(final Long id);
+  
   /**
    * Finds all the entity objects.
    * 
@@ -48,6 +68,19 @@ public interface DBDAO<T extends Entity> extends DAO {
    */
   T findOne(final SearchCriteria searchCriteria);
   
+  /**
+   * Streams all the entities that matches the given search criteria to the consumer, one at a time, through a forward-only cursor over the data
+   * store. Unlike find, the result set is never materialized so the memory used does not grow with the number of rows. The row level security
+   * filter of the current user's role applies. A search with a query streams its full-text matches, best match first.
+   * 
+   * @param searchCriteria The SearchCriteria object with user input, null for all the entities.
+   * @param consumer The consumer receiving each entity.
+   * @return The number of entities streamed.
+   * 
+   * @see SearchCriteria
+   */
+  long stream(final SearchCriteria searchCriteria, final EntityConsumer<T> consumer);
+  
   /**
    * Returns the count of such entities.
    * 
@@ -73,10 +106,12 @@ public interface DBDAO<T extends Entity> extends DAO {
   T insert(final T entity);
   
   /**
-   * Runs business logic and persists the entity object and its mapped associations to the underlying data store.
+   * Runs business logic and persists the entity object and its mapped associations to the underlying data store, as the next version of the version
+   * it carries. The Hibernate and find-and-modify Mongo DAOs write only if the stored entity is still of that version.
    * 
    * @param entity An instance of the entity object.
    * @return The modified entity.
+   * @throws com.jiggy.base.exception.ValidationException If the stored entity was modified since the version the entity carries.
    */
   T update(final T entity);
   
@@ -86,4 +121,29 @@ public interface DBDAO<T extends Entity> extends DAO {
    * @param entity An instance of the entity object that needs to be deleted.
    */
   void delete(final T entity);
+  
+  /**
+   * Runs business logic and persists the entity objects and their mapped associations to the underlying data store in batches, in the same
+   * transaction.
+   * 
+   * @param entities The list of entity objects.
+   * @return The list of the newly created entities.
+   */
+  List<T> insertAll(final List<T> entities);
+  
+  /**
+   * Runs business logic and persists the modified entity objects and their mapped associations to the underlying data store in batches, in the same
+   * transaction.
+   * 
+   * @param entities The list of entity objects.
+   * @return The list of the modified entities.
+   */
+  List<T> updateAll(final List<T> entities);
+  
+  /**
+   * Runs business logic and deletes the entities from the data store in batches, in the same transaction. Cascades if configured.
+   * 
+   * @param entities The list of entity objects that needs to be deleted.
+   */
+  void deleteAll(final List<T> entities);
 }
\ No newline at end of file
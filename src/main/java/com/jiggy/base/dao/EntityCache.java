@@ -0,0 +1,243 @@
+package com.jiggy.base.dao;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.jiggy.base.entity.Entity;
+
+/**
+ * EntityCache.java A bounded read-through cache of the entities of one persistent class, keyed by id. Entries are evicted least recently used first
+ * once the cache is full and expire after a fixed time to live.
+ * 
+ * <p>
+ * Writes invalidate the id and leave a tombstone stamped with the write and carrying the version of the written entity. An entity loaded by a read
+ * that started before the write, or whose version is older than the written one, is not cached, so a reader racing a writer can not put a stale
+ * entity back. The list of all entities is cached as one snapshot that every write drops.
+ * 
+ * <p>
+ * The cached instances are shared by all callers, so it should only be enabled for entities that are read far more often than written and are not
+ * modified in place by their readers. It does not suit Hibernate entities: a cached instance is detached from the session that loaded it, with its
+ * lazy associations left uninitialized, and the invalidation of a write runs before its transaction commits.
+ * 
+ * @param <T> An Object that implements Entity interface.
+ * 
+ * @author jmalkan
+ */
+public class EntityCache<T extends Entity> {
+  private final int maxSize;
+  private final long timeToLive;
+  private final Map<Long, Entry<T>> entries;
+  private final AtomicLong stamp = new AtomicLong();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private volatile Snapshot<T> all;
+  
+  /**
+   * Creates a new instance of com.jiggy.base.dao.EntityCache.java and Performs Initialization
+   * 
+   * @param maxSize The maximum number of entities cached.
+   * @param timeToLive The time in milliseconds an entity stays cached after it is loaded.
+   */
+  public EntityCache(final int maxSize, final long timeToLive) {
+    super();
+    this.maxSize = maxSize;
+    this.timeToLive = timeToLive;
+    this.entries = new LinkedHashMap<Long, Entry<T>>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+      
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<Long, Entry<T>> eldest) {
+        if (this.size() <= EntityCache.this.maxSize)
+          return false;
+        
+        if (eldest.getValue().entity != null)
+          EntityCache.this.evictions.incrementAndGet();
+        
+        return true;
+      }
+    };
+  }
+  
+  /**
+   * Marks the start of a read. The stamp is handed back to {@link #put(Entity, long)} once the entity is loaded.
+   * 
+   * @return The current write stamp.
+   */
+  public long begin() {
+    return this.stamp.get();
+  }
+  
+  /**
+   * @param id The id of the entity.
+   * @return The cached entity, or null if it is not cached or has expired.
+   */
+  public T get(final Long id) {
+    long now = System.currentTimeMillis();
+    
+    synchronized (this.entries) {
+      Entry<T> entry = this.entries.get(id);
+      
+      if (entry != null && entry.entity != null) {
+        if (entry.expiresAt > now) {
+          this.hits.incrementAndGet();
+          return entry.entity;
+        }
+        
+        this.entries.remove(id);
+        this.evictions.incrementAndGet();
+      }
+    }
+    
+    this.misses.incrementAndGet();
+    
+    return null;
+  }
+  
+  /**
+   * Caches the entity loaded by a read, unless a write of the same id happened since the read began or the cached version is newer.
+   * 
+   * @param entity The entity loaded from the data store, may be null.
+   * @param readStamp The stamp returned by {@link #begin()} before the entity was loaded.
+   */
+  public void put(final T entity, final long readStamp) {
+    if (entity == null || entity.getId() == null)
+      return;
+    
+    long now = System.currentTimeMillis();
+    
+    synchronized (this.entries) {
+      Entry<T> entry = this.entries.get(entity.getId());
+      
+      if (entry != null && entry.expiresAt > now && (entry.stamp > readStamp || isOlder(entity.getVersion(), entry.version)))
+        return;
+      
+      this.entries.put(entity.getId(), new Entry<T>(entity, entity.getVersion(), readStamp, now + this.timeToLive));
+    }
+  }
+  
+  /**
+   * @return A copy of the cached list of all entities, or null if it is not cached or has expired.
+   */
+  public List<T> getAll() {
+    Snapshot<T> snapshot = this.all;
+    
+    if (snapshot != null && snapshot.expiresAt > System.currentTimeMillis()) {
+      this.hits.incrementAndGet();
+      return new ArrayList<T>(snapshot.entities);
+    }
+    
+    this.misses.incrementAndGet();
+    
+    return null;
+  }
+  
+  /**
+   * Caches the list of all entities, unless a write happened since the read began.
+   * 
+   * @param entities The entities loaded from the data store, may be null.
+   * @param readStamp The stamp returned by {@link #begin()} before the entities were loaded.
+   */
+  public void putAll(final List<T> entities, final long readStamp) {
+    if (entities == null)
+      return;
+    
+    Snapshot<T> snapshot = new Snapshot<T>(new ArrayList<T>(entities), System.currentTimeMillis() + this.timeToLive);
+    
+    synchronized (this.entries) {
+      if (this.stamp.get() == readStamp)
+        this.all = snapshot;
+    }
+  }
+  
+  /**
+   * Drops the entity and the list of all entities after a write, leaving a tombstone that keeps older reads from caching the entity again.
+   * 
+   * @param entity The entity inserted, updated or deleted.
+   */
+  public void invalidate(final T entity) {
+    synchronized (this.entries) {
+      long writeStamp = this.stamp.incrementAndGet();
+      
+      this.all = null;
+      
+      if (entity != null && entity.getId() != null)
+        this.entries.put(entity.getId(), new Entry<T>(null, entity.getVersion(), writeStamp, System.currentTimeMillis() + this.timeToLive));
+    }
+  }
+  
+  /**
+   * Drops every cached entity.
+   */
+  public void clear() {
+    synchronized (this.entries) {
+      this.stamp.incrementAndGet();
+      this.all = null;
+      this.entries.clear();
+    }
+  }
+  
+  /**
+   * @return The number of reads served from the cache.
+   */
+  public long getHits() {
+    return this.hits.get();
+  }
+  
+  /**
+   * @return The number of reads that went to the data store.
+   */
+  public long getMisses() {
+    return this.misses.get();
+  }
+  
+  /**
+   * @return The number of entities dropped because the cache was full or they expired.
+   */
+  public long getEvictions() {
+    return this.evictions.get();
+  }
+  
+  /**
+   * @return The number of entries in the cache, tombstones included.
+   */
+  public int size() {
+    synchronized (this.entries) {
+      return this.entries.size();
+    }
+  }
+  
+  private static boolean isOlder(final Long version, final Long than) {
+    return version != null && than != null && version.longValue() < than.longValue();
+  }
+  
+  /**
+   * A cached entity, or a tombstone left by a write when the entity is null.
+   */
+  private static final class Entry<T> {
+    private final T entity;
+    private final Long version;
+    private final long stamp;
+    private final long expiresAt;
+    
+    Entry(final T entity, final Long version, final long stamp, final long expiresAt) {
+      this.entity = entity;
+      this.version = version;
+      this.stamp = stamp;
+      this.expiresAt = expiresAt;
+    }
+  }
+  
+  private static final class Snapshot<T> {
+    private final List<T> entities;
+    private final long expiresAt;
+    
+    Snapshot(final List<T> entities, final long expiresAt) {
+      this.entities = entities;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
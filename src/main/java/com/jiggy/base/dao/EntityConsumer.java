@@ -0,0 +1,20 @@
+package com.jiggy.base.dao;
+
+import com.jiggy.base.entity.Entity;
+
+/**
+ * Receives the entities of a streamed search one at a time, as they are read from the data store. Used by
+ * {@link DBDAO#stream(com.jiggy.base.searchengine.SearchCriteria, EntityConsumer)} to process unbounded result sets without materializing them.
+ * 
+ * @param <T> An Object that implements Entity interface.
+ * 
+ * @author jmalkan
+ */
+public interface EntityConsumer<T extends Entity> {
+  /**
+   * Consumes one entity of the result set. Any runtime exception thrown here stops the stream and closes the underlying cursor.
+   * 
+   * @param entity An instance of the Entity that is retrieved from the data store.
+   */
+  void accept(final T entity);
+}
@@ -0,0 +1,297 @@
+package com.jiggy.base.dao;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * FieldMetadata.java The filterable fields of a persistent class, resolved once per class from its declared fields and those of its superclasses.
+ * Each field carries its type and the converter that turns the text of a filter term into a value of that type, so terms are bound with the type the
+ * data store indexes on instead of a string. Transient fields are not persisted, so they are left out.
+ * 
+ * <p>
+ * Field names are matched ignoring case, as the filter keys come straight from the query string. Dotted paths such as <tt>user.id</tt> walk into
+ * the referenced class, or into the element class of a collection, and are resolved on first use.
+ * 
+ * @author jmalkan
+ */
+public final class FieldMetadata {
+  private static final ConcurrentMap<Class<?>, FieldMetadata> REGISTRY = new ConcurrentHashMap<Class<?>, FieldMetadata>();
+  
+  private final Class<?> type;
+  private final Map<String, FieldType> fields;
+  private final ConcurrentMap<String, FieldType> paths = new ConcurrentHashMap<String, FieldType>();
+  
+  private FieldMetadata(final Class<?> type) {
+    super();
+    this.type = type;
+    
+    Map<String, FieldType> fields = new HashMap<String, FieldType>();
+    
+    for (Class<?> declaring = type; declaring != null && declaring != Object.class; declaring = declaring.getSuperclass()) {
+      for (Field field : declaring.getDeclaredFields()) {
+        String name = field.getName().toUpperCase(Locale.ENGLISH);
+        
+        int modifiers = field.getModifiers();
+        
+        if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic() && !fields.containsKey(name))
+          fields.put(name, FieldType.of(field));
+      }
+    }
+    
+    this.fields = Collections.unmodifiableMap(fields);
+  }
+  
+  /**
+   * Gets the metadata of a persistent class, building it on first use.
+   * 
+   * @param type The persistent class.
+   * @return The metadata.
+   */
+  public static FieldMetadata of(final Class<?> type) {
+    FieldMetadata fieldMetadata = REGISTRY.get(type);
+    
+    if (fieldMetadata == null) {
+      FieldMetadata built = new FieldMetadata(type);
+      fieldMetadata = REGISTRY.putIfAbsent(type, built);
+      
+      if (fieldMetadata == null)
+        fieldMetadata = built;
+    }
+    
+    return fieldMetadata;
+  }
+  
+  /**
+   * Getter of the property <tt>type</tt>
+   * 
+   * @return Returns the persistent class.
+   */
+  public Class<?> getType() {
+    return type;
+  }
+  
+  /**
+   * @param path The field name or dotted path, in any case.
+   * @return The field, or null if the class has no such field.
+   */
+  public FieldType getField(final String path) {
+    if (path == null)
+      return null;
+    
+    String key = path.toUpperCase(Locale.ENGLISH);
+    FieldType field = this.fields.get(key);
+    
+    if (field != null || key.indexOf('.') < 0)
+      return field;
+    
+    field = this.paths.get(key);
+    
+    if (field == null) {
+      int separator = key.indexOf('.');
+      FieldType head = this.fields.get(key.substring(0, separator));
+      
+      if (head == null || head.getTargetType() == null)
+        return null;
+      
+      field = FieldMetadata.of(head.getTargetType()).getField(key.substring(separator + 1));
+      
+      if (field != null)
+        this.paths.putIfAbsent(key, field);
+    }
+    
+    return field;
+  }
+  
+  /**
+   * A filterable field: its name, value type and converter.
+   */
+  public static final class FieldType {
+    private final String name;
+    private final Class<?> valueType;
+    private final Class<?> targetType;
+    private final Converter converter;
+    
+    private FieldType(final String name, final Class<?> valueType, final Class<?> targetType, final Converter converter) {
+      this.name = name;
+      this.valueType = valueType;
+      this.targetType = targetType;
+      this.converter = converter;
+    }
+    
+    private static FieldType of(final Field field) {
+      Class<?> valueType = wrap(field.getType());
+      Class<?> targetType = null;
+      
+      if (Collection.class.isAssignableFrom(valueType)) {
+        Type genericType = field.getGenericType();
+        
+        if (genericType instanceof ParameterizedType) {
+          Type elementType = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+          
+          if (elementType instanceof Class)
+            targetType = (Class<?>) elementType;
+        }
+      } else if (!valueType.isPrimitive() && !valueType.isEnum() && !valueType.getName().startsWith("java."))
+        targetType = valueType;
+      
+      return new FieldType(field.getName(), valueType, targetType, Converter.of(valueType));
+    }
+    
+    public String getName() {
+      return name;
+    }
+    
+    public Class<?> getValueType() {
+      return valueType;
+    }
+    
+    /**
+     * @return The class a dotted path walks into from this field, or null if the field holds a simple value.
+     */
+    public Class<?> getTargetType() {
+      return targetType;
+    }
+    
+    /**
+     * Converts the text of one value of a filter term.
+     * 
+     * @param value The text, trimmed unless the field is a string.
+     * @return The value typed for this field.
+     * @throws IllegalArgumentException If the text is not a value of the field type.
+     */
+    public Object convert(final String value) {
+      return converter == Converter.STRING ? value : converter.convert(value.trim());
+    }
+    
+    @Override
+    public String toString() {
+      return name + ":" + valueType.getSimpleName();
+    }
+  }
+  
+  /**
+   * Converts the text of a filter value to a field type. Blank numbers convert to -1, which matches no id, and other blank values to null.
+   */
+  private abstract static class Converter {
+    private static final Converter STRING = new Converter() {
+      @Override
+      Object convert(final String value) {
+        return value;
+      }
+    };
+    private static final Converter LONG = new Converter() {
+      @Override
+      Object convert(final String value) {
+        return value.isEmpty() ? Long.valueOf(-1) : Long.valueOf(value);
+      }
+    };
+    private static final Converter INTEGER = new Converter() {
+      @Override
+      Object convert(final String value) {
+        return value.isEmpty() ? Integer.valueOf(-1) : Integer.valueOf(value);
+      }
+    };
+    private static final Converter SHORT = new Converter() {
+      @Override
+      Object convert(final String value) {
+        return value.isEmpty() ? Short.valueOf((short) -1) : Short.valueOf(value);
+      }
+    };
+    private static final Converter DOUBLE = new Converter() {
+      @Override
+      Object convert(final String value) {
+        return value.isEmpty() ? Double.valueOf(-1) : Double.valueOf(value);
+      }
+    };
+    private static final Converter FLOAT = new Converter() {
+      @Override
+      Object convert(final String value) {
+        return value.isEmpty() ? Float.valueOf(-1) : Float.valueOf(value);
+      }
+    };
+    private static final Converter BOOLEAN = new Converter() {
+      @Override
+      Object convert(final String value) {
+        if (value.isEmpty())
+          return null;
+        
+        if (!"true".equalsIgnoreCase(value) && !"false".equalsIgnoreCase(value))
+          throw new IllegalArgumentException("Invalid boolean " + value);
+        
+        return Boolean.valueOf(value);
+      }
+    };
+    private static final Converter DATE = new Converter() {
+      @Override
+      Object convert(final String value) {
+        return value.isEmpty() ? null : new Date(Long.parseLong(value));
+      }
+    };
+    
+    abstract Object convert(String value);
+    
+    static Converter of(final Class<?> valueType) {
+      if (valueType == Long.class)
+        return LONG;
+      else if (valueType == Integer.class)
+        return INTEGER;
+      else if (valueType == Short.class)
+        return SHORT;
+      else if (valueType == Double.class)
+        return DOUBLE;
+      else if (valueType == Float.class)
+        return FLOAT;
+      else if (valueType == Boolean.class)
+        return BOOLEAN;
+      else if (Date.class.isAssignableFrom(valueType))
+        return DATE;
+      else if (valueType.isEnum())
+        return new EnumConverter(valueType);
+      
+      return STRING;
+    }
+  }
+  
+  private static final class EnumConverter extends Converter {
+    private final Class<?> enumType;
+    
+    EnumConverter(final Class<?> enumType) {
+      this.enumType = enumType;
+    }
+    
+    @Override
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    Object convert(final String value) {
+      return value.isEmpty() ? null : Enum.valueOf((Class<Enum>) this.enumType, value);
+    }
+  }
+  
+  private static Class<?> wrap(final Class<?> type) {
+    if (!type.isPrimitive())
+      return type;
+    else if (type == long.class)
+      return Long.class;
+    else if (type == int.class)
+      return Integer.class;
+    else if (type == short.class)
+      return Short.class;
+    else if (type == double.class)
+      return Double.class;
+    else if (type == float.class)
+      return Float.class;
+    else if (type == boolean.class)
+      return Boolean.class;
+    
+    return type;
+  }
+}
@@ -0,0 +1,376 @@
+package com.jiggy.base.dao;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import com.jiggy.base.entity.Entity;
+import com.jiggy.base.exception.Error;
+import com.jiggy.base.exception.ValidationException;
+import com.jiggy.base.searchengine.FilterExpression;
+import com.jiggy.base.searchengine.FilterExpression.FilterTerm;
+import com.jiggy.base.searchengine.FilterExpression.Op;
+import com.jiggy.base.searchengine.FilterGroup;
+import com.jiggy.base.searchengine.FilterGroup.Junction;
+import com.jiggy.base.searchengine.FilterNode;
+import com.jiggy.base.searchengine.FilterNot;
+import com.jiggy.base.searchengine.FilterVisitor;
+import com.jiggy.base.searchengine.PageCursor;
+import com.jiggy.base.searchengine.SearchCriteria;
+import com.jiggy.base.searchengine.SortKey;
+
+/**
+ * HqlQueryCompiler.java Compiles a SearchCriteria into parameterized HQL for one entity. The HQL only depends on the shape of the criteria: the
+ * nesting of the filter nodes, the term keys, their operators, the arity of their values (null, single or multi valued), the sort keys and the paging
+ * mode. Values are always bound as parameters, so criteria of the same shape compile to the same statement. Compiled plans are kept in a bounded LRU
+ * cache keyed by that shape, which also lets Hibernate's own query plan cache reuse the parsed statement.
+ * 
+ * <p>
+ * The parameter of the term at index i, counting the terms within groups and negations in order, is named <tt>p</tt>i. Terms filtering on null bind no
+ * parameter, and the upper bound of a between term is named <tt>p</tt>i<tt>_to</tt>. Prefix terms bind a LIKE pattern escaped with <tt>!</tt>. Keyset seek parameters are named
+ * {@link #AFTER_VALUE_PARAM} and {@link #AFTER_ID_PARAM}. The seek follows the null ordering of MySQL, where null sorts before every value; a seek
+ * past a null sort value binds no {@link #AFTER_VALUE_PARAM}.
+ * 
+ * @author jmalkan
+ */
+class HqlQueryCompiler {
+  static final String ALIAS = "e";
+  static final String PARAM_PREFIX = "p";
+  static final String AFTER_VALUE_PARAM = "afterValue";
+  static final String AFTER_ID_PARAM = "afterId";
+  static final int DEFAULT_MAX_PLANS = 256;
+  
+  private static final Pattern PROPERTY_PATH = Pattern.compile("[A-Za-z_$][A-Za-z0-9_$]*(\\.[A-Za-z_$][A-Za-z0-9_$]*)*");
+  
+  private final String entityName;
+  private final Map<String, Plan> plans;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  
+  /**
+   * Creates a new instance of com.jiggy.base.dao.HqlQueryCompiler.java and Performs Initialization
+   * 
+   * @param entityName The mapped entity name used in the from clause.
+   * @param maxPlans The maximum number of compiled plans cached.
+   */
+  HqlQueryCompiler(final String entityName, final int maxPlans) {
+    super();
+    this.entityName = entityName;
+    this.plans = Collections.synchronizedMap(new LinkedHashMap<String, Plan>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+      
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, Plan> eldest) {
+        return this.size() > maxPlans;
+      }
+    });
+  }
+  
+  /**
+   * Returns the compiled plan for the shape of the given search criteria, compiling it on a cache miss.
+   * 
+   * @param searchCriteria The SearchCriteria object with user input, may be null.
+   * @param termValues The parameter values of each filter term, in the order of the terms.
+   * @param pageCursor The keyset cursor the page is fetched by seeking past, null if none.
+   * @return The compiled plan.
+   */
+  Plan compile(final SearchCriteria searchCriteria, final List<List<Object>> termValues, final PageCursor pageCursor) {
+    Seek seek = pageCursor == null ? Seek.NONE : pageCursor.getValue() == null ? Seek.PAST_NULL : Seek.PAST_VALUE;
+    String shape = this.shapeOf(searchCriteria, termValues, seek);
+    Plan plan = this.plans.get(shape);
+    
+    if (plan != null) {
+      this.hits.incrementAndGet();
+      return plan;
+    }
+    
+    this.misses.incrementAndGet();
+    plan = this.build(searchCriteria, termValues, seek);
+    this.plans.put(shape, plan);
+    
+    return plan;
+  }
+  
+  /**
+   * @return The number of compilations served from the plan cache.
+   */
+  long getHits() {
+    return this.hits.get();
+  }
+  
+  /**
+   * @return The number of compilations that built a new plan.
+   */
+  long getMisses() {
+    return this.misses.get();
+  }
+  
+  /**
+   * @return The number of plans in the cache.
+   */
+  int size() {
+    return this.plans.size();
+  }
+  
+  private String shapeOf(final SearchCriteria searchCriteria, final List<List<Object>> termValues, final Seek seek) {
+    if (searchCriteria == null)
+      return "";
+    
+    StringBuilder shape = new StringBuilder();
+    
+    if (searchCriteria.getFilter() != null) {
+      ShapeVisitor shapeVisitor = new ShapeVisitor(termValues.iterator());
+      
+      for (FilterNode node : searchCriteria.getFilter().nodes()) {
+        shape.append(node.accept(shapeVisitor)).append('&');
+      }
+    }
+    
+    shape.append('|');
+    
+    for (SortKey sortKey : SortKey.parseAll(searchCriteria.getSortBy())) {
+      shape.append(sortKey.getField()).append(sortKey.isAscending() ? '+' : '-');
+    }
+    
+    shape.append('|').append(searchCriteria.isKeysetPaginationEnabled() ? 'K' : 'O').append(seek);
+    
+    return shape.toString();
+  }
+  
+  private Plan build(final SearchCriteria searchCriteria, final List<List<Object>> termValues, final Seek seek) {
+    StringBuilder where = new StringBuilder();
+    StringBuilder orderBy = new StringBuilder();
+    BitSet ranges = new BitSet();
+    
+    if (searchCriteria != null) {
+      if (searchCriteria.getFilter() != null) {
+        HqlVisitor hqlVisitor = new HqlVisitor(termValues.iterator(), ranges);
+        
+        for (FilterNode node : searchCriteria.getFilter().nodes()) {
+          appendAnd(where).append(node.accept(hqlVisitor));
+        }
+      }
+      
+      if (searchCriteria.isKeysetPaginationEnabled()) {
+        SortKey sortKey = SortKey.parse(searchCriteria.getSortBy());
+        
+        if (seek != Seek.NONE)
+          appendAnd(where).append(this.seekToHql(sortKey, seek == Seek.PAST_NULL));
+        
+        this.appendOrder(orderBy, sortKey);
+        
+        if (!sortKey.isId())
+          this.appendOrder(orderBy, new SortKey(Entity.ID_COLUMN_NAME, sortKey.isAscending()));
+      } else {
+        for (SortKey sortKey : SortKey.parseAll(searchCriteria.getSortBy())) {
+          this.appendOrder(orderBy, sortKey);
+        }
+      }
+    }
+    
+    String from = "from " + this.entityName + " " + ALIAS + (where.length() > 0 ? " where " + where : "");
+    
+    return new Plan(from + (orderBy.length() > 0 ? " order by " + orderBy : ""), "select count(*) " + from, ranges);
+  }
+  
+  private String termToHql(final FilterTerm term, final int arity, final String paramName) {
+    String property = this.property(term.getKey());
+    boolean exclude = term.getOperator() == Op.EXCLUDE;
+    
+    switch (term.getOperator()) {
+      case BETWEEN:
+        return property + " between :" + paramName + " and :" + paramName + FilterExpression.UPPER_BOUND_SUFFIX;
+      case PREFIX:
+        return property + " like :" + paramName + " escape '" + FilterExpression.LIKE_ESCAPE + "'";
+      case LESS:
+      case LESS_OR_EQUAL:
+      case GREATER:
+      case GREATER_OR_EQUAL:
+        return property + " " + term.getOperator().getSymbol() + " :" + paramName;
+      default:
+        if (arity == 0)
+          return property + (exclude ? " is not null" : " is null");
+        
+        if (arity > 1)
+          return property + (exclude ? " not in (:" : " in (:") + paramName + ")";
+        
+        return property + (exclude ? " <> :" : " = :") + paramName;
+    }
+  }
+  
+  /**
+   * Nulls sort first ascending and last descending, so past a null only the nulls of greater ids follow ascending, then every value, and only the
+   * nulls of lesser ids follow descending; past a value descending, every null still follows.
+   */
+  private String seekToHql(final SortKey sortKey, final boolean pastNull) {
+    String operator = sortKey.isAscending() ? " > :" : " < :";
+    String id = this.property(Entity.ID_COLUMN_NAME);
+    
+    if (sortKey.isId())
+      return id + operator + AFTER_ID_PARAM;
+    
+    String property = this.property(sortKey.getField());
+    
+    if (pastNull) {
+      String nulls = "(" + property + " is null and " + id + operator + AFTER_ID_PARAM + ")";
+      
+      return sortKey.isAscending() ? "(" + nulls + " or " + property + " is not null)" : nulls;
+    }
+    
+    return "(" + property + operator + AFTER_VALUE_PARAM + " or (" + property + " = :" + AFTER_VALUE_PARAM + " and " + id + operator + AFTER_ID_PARAM
+        + ")" + (sortKey.isAscending() ? ")" : " or " + property + " is null)");
+  }
+  
+  private void appendOrder(final StringBuilder orderBy, final SortKey sortKey) {
+    if (orderBy.length() > 0)
+      orderBy.append(", ");
+    
+    orderBy.append(this.property(sortKey.getField())).append(sortKey.isAscending() ? " asc" : " desc");
+  }
+  
+  /**
+   * The keys and sort fields come from the client and are written into the statement, so anything that is not a plain property path is rejected.
+   */
+  private String property(final String path) {
+    if (path == null || !PROPERTY_PATH.matcher(path).matches())
+      throw new ValidationException(Error.ERROR_INVALID);
+    
+    return ALIAS + "." + path;
+  }
+  
+  private static StringBuilder appendAnd(final StringBuilder where) {
+    return where.length() > 0 ? where.append(" and ") : where;
+  }
+  
+  /**
+   * @return 0 when the term filters on null, 1 for a single value, 2 for a list of values.
+   */
+  static int arityOf(final Collection<Object> values) {
+    if (values.size() > 1)
+      return 2;
+    
+    return values.isEmpty() || values.iterator().next() == null ? 0 : 1;
+  }
+  
+  /**
+   * How a page is fetched: without seeking, or by seeking past a cursor whose sort value is a value or null.
+   */
+  private enum Seek {
+    NONE, PAST_VALUE, PAST_NULL
+  }
+  
+  /**
+   * Renders the shape of the filter nodes, consuming the values of the terms in order.
+   */
+  private static final class ShapeVisitor implements FilterVisitor<String> {
+    private final Iterator<List<Object>> values;
+    
+    ShapeVisitor(final Iterator<List<Object>> values) {
+      this.values = values;
+    }
+    
+    @Override
+    public String visitTerm(final FilterTerm term) {
+      return term.getKey() + term.getOperator().getSymbol() + arityOf(this.values.next());
+    }
+    
+    @Override
+    public String visitGroup(final FilterGroup group) {
+      StringBuilder shape = new StringBuilder("(");
+      
+      for (FilterNode child : group.getChildren()) {
+        shape.append(child.accept(this)).append(group.getJunction().getSymbol());
+      }
+      
+      return shape.append(')').toString();
+    }
+    
+    @Override
+    public String visitNot(final FilterNot not) {
+      return "!(" + not.getChild().accept(this) + ")";
+    }
+  }
+  
+  /**
+   * Renders the filter nodes to HQL, naming the parameter of each term by its position.
+   */
+  private final class HqlVisitor implements FilterVisitor<String> {
+    private final Iterator<List<Object>> values;
+    private final BitSet ranges;
+    private int index;
+    
+    HqlVisitor(final Iterator<List<Object>> values, final BitSet ranges) {
+      this.values = values;
+      this.ranges = ranges;
+    }
+    
+    @Override
+    public String visitTerm(final FilterTerm term) {
+      if (term.getOperator() == Op.BETWEEN)
+        this.ranges.set(this.index);
+      
+      return HqlQueryCompiler.this.termToHql(term, arityOf(this.values.next()), PARAM_PREFIX + this.index++);
+    }
+    
+    @Override
+    public String visitGroup(final FilterGroup group) {
+      StringBuilder hql = new StringBuilder("(");
+      
+      for (FilterNode child : group.getChildren()) {
+        if (hql.length() > 1)
+          hql.append(group.getJunction() == Junction.AND ? " and " : " or ");
+        
+        hql.append(child.accept(this));
+      }
+      
+      return hql.append(')').toString();
+    }
+    
+    @Override
+    public String visitNot(final FilterNot not) {
+      return "not (" + not.getChild().accept(this) + ")";
+    }
+  }
+  
+  /**
+   * A compiled query: the HQL selecting the entities and the HQL counting them.
+   */
+  static final class Plan {
+    private final String queryString;
+    private final String countQueryString;
+    private final BitSet ranges;
+    
+    Plan(final String queryString, final String countQueryString, final BitSet ranges) {
+      this.queryString = queryString;
+      this.countQueryString = countQueryString;
+      this.ranges = ranges;
+    }
+    
+    String getQueryString() {
+      return this.queryString;
+    }
+    
+    String getCountQueryString() {
+      return this.countQueryString;
+    }
+    
+    /**
+     * @param index The index of the term.
+     * @return true if the term is a between term, binding its two values to the parameter and its upper bound parameter.
+     */
+    boolean isRange(final int index) {
+      return this.ranges.get(index);
+    }
+    
+    @Override
+    public String toString() {
+      return this.queryString;
+    }
+  }
+}
@@ -0,0 +1,228 @@
+package com.jiggy.base.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.jiggy.base.entity.Entity;
+import com.jiggy.base.searchengine.FilterNode;
+import com.jiggy.base.searchengine.SearchCriteria;
+
+/**
+ * QueryCache.java A bounded cache of the results of the searches of one persistent class, keyed on the normalized search criteria and the row level
+ * security filter of the caller. Every write through the DAO bumps a generation counter, and results cached by an older generation are never served.
+ * Results also expire after a fixed time to live, which bounds how long writes made outside this DAO go unseen.
+ * 
+ * <p>
+ * The key is made of the filter terms in sorted order, the sort, the paging, the query variables and the security filter, so the same search from two
+ * clients of the same role shares one entry, while callers with different security filters never do. The DAO adds the security terms to the search
+ * before building the key, so a cached result is always the result of the filtered search. The row count, next page token and next page flag the
+ * search sets on its criteria are cached with the result and set again on a hit.
+ * 
+ * @param <T> An Object that implements Entity interface.
+ * 
+ * @author jmalkan
+ */
+public class QueryCache<T extends Entity> {
+  private final long timeToLive;
+  private final Map<List<Object>, Result<T>> results;
+  private final AtomicLong generation = new AtomicLong();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  
+  /**
+   * Creates a new instance of com.jiggy.base.dao.QueryCache.java and Performs Initialization
+   * 
+   * @param maxSize The maximum number of results cached.
+   * @param timeToLive The time in milliseconds a result stays cached.
+   */
+  public QueryCache(final int maxSize, final long timeToLive) {
+    super();
+    this.timeToLive = timeToLive;
+    this.results = Collections.synchronizedMap(new LinkedHashMap<List<Object>, Result<T>>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+      
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<List<Object>, Result<T>> eldest) {
+        return this.size() > maxSize;
+      }
+    });
+  }
+  
+  /**
+   * Builds the cache key of a search.
+   * 
+   * @param searchCriteria The SearchCriteria object with user input, may be null.
+   * @param securityFilter The row level security filter applied for the caller, may be null.
+   * @param count true for the key of the row count of the search.
+   * @return The key.
+   */
+  public static List<Object> keyOf(final SearchCriteria searchCriteria, final String securityFilter, final boolean count) {
+    if (searchCriteria == null)
+      return Arrays.<Object> asList(null, securityFilter, count);
+    
+    List<String> terms = new ArrayList<String>();
+    
+    if (searchCriteria.getFilter() != null) {
+      for (FilterNode node : searchCriteria.getFilter().nodes()) {
+        terms.add(node.toString());
+      }
+      
+      Collections.sort(terms);
+    }
+    
+    if (count)
+      return Arrays.<Object> asList(terms, securityFilter, count, searchCriteria.getQueryVariables());
+    
+    return Arrays.<Object> asList(terms, securityFilter, count, searchCriteria.getQueryVariables(), searchCriteria.getSortBy(), searchCriteria.getOffset(),
+                                  searchCriteria.getLimit(), searchCriteria.getAfter(), searchCriteria.getCountMode());
+  }
+  
+  /**
+   * Marks the start of a search. The generation is handed back to put once the search completes.
+   * 
+   * @return The current generation.
+   */
+  public long begin() {
+    return this.generation.get();
+  }
+  
+  /**
+   * Returns a copy of the cached entities of the search, and sets the cached row count and next page token on the search criteria.
+   * 
+   * @param key The key of the search.
+   * @param searchCriteria The SearchCriteria object with user input, may be null.
+   * @return The entities, or null if the search is not cached.
+   */
+  public List<T> get(final List<Object> key, final SearchCriteria searchCriteria) {
+    Result<T> result = this.lookup(key);
+    
+    if (result == null)
+      return null;
+    
+    if (searchCriteria != null) {
+      searchCriteria.setRowCount(result.rowCount);
+      searchCriteria.setNextPageToken(result.nextPageToken);
+      searchCriteria.setNextPageAvailable(result.nextPageAvailable);
+    }
+    
+    return result.entities == null ? null : new ArrayList<T>(result.entities);
+  }
+  
+  /**
+   * Caches the entities found by a search, unless a write happened since the search began.
+   * 
+   * @param key The key of the search.
+   * @param searchCriteria The SearchCriteria object with user input, may be null.
+   * @param entities The entities found.
+   * @param readGeneration The generation returned by {@link #begin()} before the search.
+   */
+  public void put(final List<Object> key, final SearchCriteria searchCriteria, final List<T> entities, final long readGeneration) {
+    long rowCount = searchCriteria == null ? -1 : searchCriteria.getRowCount();
+    String nextPageToken = searchCriteria == null ? null : searchCriteria.getNextPageToken();
+    boolean nextPageAvailable = searchCriteria != null && searchCriteria.isNextPageAvailable();
+    
+    this.store(key, new Result<T>(entities == null ? null : new ArrayList<T>(entities), rowCount, nextPageToken, nextPageAvailable, readGeneration,
+                                  System.currentTimeMillis() + this.timeToLive));
+  }
+  
+  /**
+   * @param key The count key of the search.
+   * @return The cached row count, or null if it is not cached.
+   */
+  public Long getCount(final List<Object> key) {
+    Result<T> result = this.lookup(key);
+    
+    return result == null ? null : Long.valueOf(result.rowCount);
+  }
+  
+  /**
+   * Caches the row count of a search, unless a write happened since the count began.
+   * 
+   * @param key The count key of the search.
+   * @param rowCount The row count.
+   * @param readGeneration The generation returned by {@link #begin()} before the count.
+   */
+  public void putCount(final List<Object> key, final long rowCount, final long readGeneration) {
+    this.store(key, new Result<T>(null, rowCount, null, false, readGeneration, System.currentTimeMillis() + this.timeToLive));
+  }
+  
+  /**
+   * Bumps the generation after a write, so every result cached so far is stale.
+   */
+  public void invalidate() {
+    this.generation.incrementAndGet();
+  }
+  
+  /**
+   * @return The number of searches served from the cache.
+   */
+  public long getHits() {
+    return this.hits.get();
+  }
+  
+  /**
+   * @return The number of searches that went to the data store.
+   */
+  public long getMisses() {
+    return this.misses.get();
+  }
+  
+  /**
+   * @return The current generation, the number of writes seen so far.
+   */
+  public long getGeneration() {
+    return this.generation.get();
+  }
+  
+  /**
+   * @return The number of results in the cache, stale ones included.
+   */
+  public int size() {
+    return this.results.size();
+  }
+  
+  private Result<T> lookup(final List<Object> key) {
+    Result<T> result = this.results.get(key);
+    
+    if (result != null && (result.generation != this.generation.get() || result.expiresAt <= System.currentTimeMillis())) {
+      this.results.remove(key);
+      result = null;
+    }
+    
+    if (result == null)
+      this.misses.incrementAndGet();
+    else
+      this.hits.incrementAndGet();
+    
+    return result;
+  }
+  
+  private void store(final List<Object> key, final Result<T> result) {
+    if (result.generation == this.generation.get())
+      this.results.put(key, result);
+  }
+  
+  private static final class Result<T> {
+    private final List<T> entities;
+    private final long rowCount;
+    private final String nextPageToken;
+    private final boolean nextPageAvailable;
+    private final long generation;
+    private final long expiresAt;
+    
+    Result(final List<T> entities, final long rowCount, final String nextPageToken, final boolean nextPageAvailable, final long generation,
+           final long expiresAt) {
+      this.entities = entities;
+      this.rowCount = rowCount;
+      this.nextPageToken = nextPageToken;
+      this.nextPageAvailable = nextPageAvailable;
+      this.generation = generation;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
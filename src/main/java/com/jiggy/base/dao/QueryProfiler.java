@@ -0,0 +1,389 @@
+package com.jiggy.base.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jiggy.base.interceptor.AuditInterceptor;
+import com.jiggy.base.monitor.Tracer;
+import com.jiggy.base.monitor.Tracer.Span;
+import com.jiggy.base.searchengine.FilterExpression.FilterTerm;
+import com.jiggy.base.searchengine.FilterGroup;
+import com.jiggy.base.searchengine.FilterNode;
+import com.jiggy.base.searchengine.FilterNot;
+import com.jiggy.base.searchengine.FilterVisitor;
+import com.jiggy.base.searchengine.SearchCriteria;
+import com.jiggy.base.searchengine.SortKey;
+
+/**
+ * QueryProfiler.java Times the queries and writes of the DAOs. The ones slower than the slow threshold are kept in a ring buffer of the latest slow
+ * queries with their rendered query, the shape of their filter without its values, their row count and the service method that ran them. Rendering
+ * is left to the slow queries, so profiling the others costs two clock reads and a thread local lookup.
+ * 
+ * <p>
+ * While a request is traced, each query is also recorded as a span of its trace, named "query.&lt;entity&gt;.&lt;operation&gt;".
+ * 
+ * <p>
+ * A slow query can be explained on demand by the DAO that ran it, against the data store, with the search criteria it ran with.
+ * 
+ * @author jmalkan
+ */
+public final class QueryProfiler {
+  public static final long DEFAULT_SLOW_THRESHOLD = 200;
+  public static final int DEFAULT_CAPACITY = 256;
+  public static final String FIND = "find";
+  public static final String COUNT = "count";
+  
+  private static final String SPAN_PREFIX = "query.";
+  private static final QueryProfiler SHARED = new QueryProfiler();
+  
+  private final Logger logger = LoggerFactory.getLogger(QueryProfiler.class);
+  private final ThreadLocal<Profile> current = new ThreadLocal<Profile>();
+  private final Tracer tracer = Tracer.getInstance();
+  private final AtomicLong sequence = new AtomicLong();
+  private volatile AtomicReferenceArray<SlowQuery> slowQueries = new AtomicReferenceArray<SlowQuery>(DEFAULT_CAPACITY);
+  private volatile long slowThreshold = DEFAULT_SLOW_THRESHOLD;
+  
+  /**
+   * @return The profiler shared by the DAOs.
+   */
+  public static QueryProfiler getInstance() {
+    return SHARED;
+  }
+  
+  /**
+   * Starts timing a query of the current thread. Queries started while it runs, such as the row count of a page, are timed on their own.
+   * 
+   * @param dao The DAO running the query.
+   * @param operation The operation: FIND, COUNT or the name of the write, such as "insert".
+   * @param searchCriteria The search criteria of the query, null for a write or an unfiltered query.
+   * @return The profile to end.
+   */
+  Profile start(final AbstractDBDAO<?> dao, final String operation, final SearchCriteria searchCriteria) {
+    Span span = this.tracer.isTracing() ? this.tracer.startSpan(SPAN_PREFIX + dao.getPersistentClass().getSimpleName() + "." + operation) : null;
+    Profile profile = new Profile(dao, operation, searchCriteria, this.current.get(), span);
+    this.current.set(profile);
+    
+    return profile;
+  }
+  
+  /**
+   * Sets the query the data store runs for the current profile. It is only rendered, through its toString, if the query is slow.
+   * 
+   * @param query The query.
+   */
+  void setQuery(final Object query) {
+    Profile profile = this.current.get();
+    
+    if (profile != null)
+      profile.query = query;
+  }
+  
+  /**
+   * Ends timing a query, keeping it if it is slow.
+   * 
+   * @param profile The profile returned by start.
+   * @param rows The number of rows found, counted or written.
+   */
+  void end(final Profile profile, final long rows) {
+    long elapsed = System.nanoTime() - profile.start;
+    
+    this.tracer.end(profile.span, false);
+    
+    if (profile.parent == null)
+      this.current.remove();
+    else
+      this.current.set(profile.parent);
+    
+    if (elapsed < TimeUnit.MILLISECONDS.toNanos(this.slowThreshold))
+      return;
+    
+    AtomicReferenceArray<SlowQuery> buffer = this.slowQueries;
+    long id = this.sequence.incrementAndGet();
+    SlowQuery slowQuery = new SlowQuery(id, profile, rows, elapsed);
+    
+    buffer.set((int) (id % buffer.length()), slowQuery);
+    logger.debug("Slow {} of {} took {} ms: {}", new Object[] {slowQuery.getOperation(), slowQuery.getEntity(),
+                                                                Double.valueOf(slowQuery.getElapsed()), slowQuery.getShape()});
+  }
+  
+  /**
+   * @return The slow queries still in the ring buffer, latest first.
+   */
+  public List<SlowQuery> getSlowQueries() {
+    AtomicReferenceArray<SlowQuery> buffer = this.slowQueries;
+    List<SlowQuery> slowQueries = new ArrayList<SlowQuery>();
+    long last = this.sequence.get();
+    
+    for (long id = last; id > 0 && id > last - buffer.length(); id--) {
+      SlowQuery slowQuery = buffer.get((int) (id % buffer.length()));
+      
+      if (slowQuery != null && slowQuery.getId() == id)
+        slowQueries.add(slowQuery);
+    }
+    
+    return slowQueries;
+  }
+  
+  /**
+   * @param id The id of the slow query.
+   * @return The slow query, or null if it was overwritten by later ones.
+   */
+  public SlowQuery getSlowQuery(final long id) {
+    AtomicReferenceArray<SlowQuery> buffer = this.slowQueries;
+    SlowQuery slowQuery = id > 0 ? buffer.get((int) (id % buffer.length())) : null;
+    
+    return slowQuery != null && slowQuery.getId() == id ? slowQuery : null;
+  }
+  
+  /**
+   * Getter of the property <tt>slowThreshold</tt>
+   * 
+   * @return The latency in milliseconds from which a query is kept as slow.
+   */
+  public long getSlowThreshold() {
+    return this.slowThreshold;
+  }
+  
+  /**
+   * Setter of the property <tt>slowThreshold</tt>
+   * 
+   * @param slowThreshold The latency in milliseconds from which a query is kept as slow.
+   */
+  public void setSlowThreshold(final long slowThreshold) {
+    this.slowThreshold = slowThreshold;
+  }
+  
+  /**
+   * Getter of the property <tt>capacity</tt>
+   * 
+   * @return The number of slow queries kept.
+   */
+  public int getCapacity() {
+    return this.slowQueries.length();
+  }
+  
+  /**
+   * Setter of the property <tt>capacity</tt>. Drops the slow queries kept so far.
+   * 
+   * @param capacity The number of slow queries kept.
+   */
+  public void setCapacity(final int capacity) {
+    this.slowQueries = new AtomicReferenceArray<SlowQuery>(Math.max(1, capacity));
+  }
+  
+  /**
+   * Renders the filter, the sort and the paging of the search criteria without the values of the terms, so the queries that differ by their values
+   * alone have the same shape.
+   * 
+   * @param searchCriteria The search criteria, may be null.
+   * @return The shape, such as "status=&(type=|type=); name+; offset".
+   */
+  static String shapeOf(final SearchCriteria searchCriteria) {
+    if (searchCriteria == null)
+      return "";
+    
+    StringBuilder shape = new StringBuilder();
+    
+    if (searchCriteria.getFilter() != null) {
+      ShapeVisitor shapeVisitor = new ShapeVisitor();
+      
+      for (FilterNode node : searchCriteria.getFilter().nodes()) {
+        if (shape.length() > 0)
+          shape.append('&');
+        
+        shape.append(node.accept(shapeVisitor));
+      }
+    }
+    
+    shape.append("; ");
+    
+    for (SortKey sortKey : SortKey.parseAll(searchCriteria.getSortBy())) {
+      shape.append(sortKey.getField()).append(sortKey.isAscending() ? '+' : '-');
+    }
+    
+    if (searchCriteria.isKeysetPaginationEnabled())
+      shape.append("; keyset");
+    else if (searchCriteria.isPaginationEnabled())
+      shape.append("; offset");
+    
+    return shape.toString();
+  }
+  
+  /**
+   * Renders the keys and operators of the filter nodes.
+   */
+  private static final class ShapeVisitor implements FilterVisitor<String> {
+    @Override
+    public String visitTerm(final FilterTerm term) {
+      return term.getKey() + term.getOperator().getSymbol();
+    }
+    
+    @Override
+    public String visitGroup(final FilterGroup group) {
+      StringBuilder shape = new StringBuilder("(");
+      
+      for (FilterNode child : group.getChildren()) {
+        if (shape.length() > 1)
+          shape.append(group.getJunction().getSymbol());
+        
+        shape.append(child.accept(this));
+      }
+      
+      return shape.append(')').toString();
+    }
+    
+    @Override
+    public String visitNot(final FilterNot not) {
+      return "!(" + not.getChild().accept(this) + ")";
+    }
+  }
+  
+  /**
+   * A query being timed.
+   */
+  static final class Profile {
+    private final AbstractDBDAO<?> dao;
+    private final String operation;
+    private final SearchCriteria searchCriteria;
+    private final Profile parent;
+    private final Span span;
+    private final String caller = AuditInterceptor.getCurrentOperation();
+    private final long start = System.nanoTime();
+    private Object query;
+    
+    Profile(final AbstractDBDAO<?> dao, final String operation, final SearchCriteria searchCriteria, final Profile parent, final Span span) {
+      this.dao = dao;
+      this.operation = operation;
+      this.searchCriteria = searchCriteria;
+      this.parent = parent;
+      this.span = span;
+    }
+  }
+  
+  /**
+   * A query slower than the slow threshold.
+   */
+  public static final class SlowQuery {
+    private final long id;
+    private final long time = System.currentTimeMillis();
+    private final AbstractDBDAO<?> dao;
+    private final SearchCriteria searchCriteria;
+    private final String entity;
+    private final String operation;
+    private final String query;
+    private final String shape;
+    private final String caller;
+    private final long rows;
+    private final long elapsed;
+    
+    SlowQuery(final long id, final Profile profile, final long rows, final long elapsed) {
+      this.id = id;
+      this.dao = profile.dao;
+      this.searchCriteria = profile.searchCriteria;
+      this.entity = profile.dao.getPersistentClass().getSimpleName();
+      this.operation = profile.operation;
+      this.query = profile.query == null ? null : profile.query.toString();
+      this.shape = shapeOf(profile.searchCriteria);
+      this.caller = profile.caller;
+      this.rows = rows;
+      this.elapsed = elapsed;
+    }
+    
+    /**
+     * Getter of the property <tt>id</tt>
+     * 
+     * @return The sequence number of the slow query.
+     */
+    public long getId() {
+      return this.id;
+    }
+    
+    /**
+     * Getter of the property <tt>time</tt>
+     * 
+     * @return The time the query ended, in milliseconds since the epoch.
+     */
+    public long getTime() {
+      return this.time;
+    }
+    
+    /**
+     * Getter of the property <tt>entity</tt>
+     * 
+     * @return The simple name of the persistent class queried.
+     */
+    public String getEntity() {
+      return this.entity;
+    }
+    
+    /**
+     * Getter of the property <tt>operation</tt>
+     * 
+     * @return The operation, such as "find", "count" or "insert".
+     */
+    public String getOperation() {
+      return this.operation;
+    }
+    
+    /**
+     * Getter of the property <tt>query</tt>
+     * 
+     * @return The query as rendered by the data store dialect, or null if the DAO did not set it.
+     */
+    public String getQuery() {
+      return this.query;
+    }
+    
+    /**
+     * Getter of the property <tt>shape</tt>
+     * 
+     * @return The filter, sort and paging of the query without the values.
+     */
+    public String getShape() {
+      return this.shape;
+    }
+    
+    /**
+     * Getter of the property <tt>caller</tt>
+     * 
+     * @return The service method that ran the query, or null if it did not run under a service.
+     */
+    public String getCaller() {
+      return this.caller;
+    }
+    
+    /**
+     * Getter of the property <tt>rows</tt>
+     * 
+     * @return The number of rows found, counted or written.
+     */
+    public long getRows() {
+      return this.rows;
+    }
+    
+    /**
+     * @return The elapsed time in milliseconds.
+     */
+    public double getElapsed() {
+      return this.elapsed / 1000000.0;
+    }
+    
+    /**
+     * Asks the data store for the plan of the query, running it again if the data store can only explain by running it.
+     * 
+     * @return The lines of the plan, or null if the query is a write or the data store of the DAO can not explain it.
+     */
+    public List<String> explain() {
+      if (!FIND.equals(this.operation) && !COUNT.equals(this.operation))
+        return null;
+      
+      return this.dao.implementExplain(this.searchCriteria);
+    }
+  }
+}
@@ -1,6 +1,5 @@
 package com.jiggy.base.entity;
 
-import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.springframework.data.annotation.Id;
 
 /**
@@ -124,6 +123,6 @@ public abstract class AbstractEntity implements Entity {
   
   @Override
   public String toString() {
-    return ToStringBuilder.reflectionToString(this);
+    return EntityCodec.describe(this);
   }
 }
\ No newline at end of file
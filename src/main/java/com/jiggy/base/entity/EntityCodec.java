@@ -0,0 +1,551 @@
+package com.jiggy.base.entity;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.io.SerializedString;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import com.jiggy.base.exception.Error;
+import com.jiggy.base.exception.SystemException;
+
+/**
+ * EntityCodec.java Writes and reads the JSON of an entity class. The bean properties of the class are looked up once, on first use, into a table of
+ * typed accessors with their field names pre-encoded, so writing an entity is a walk of the table straight to a Jackson generator and reading one
+ * a walk of the parser tokens, without building a tree or introspecting the class again.
+ * 
+ * <p>
+ * The JSON is the one of the Jackson bean mapping: every readable property is written, nulls included, enums by name and dates as epoch
+ * milliseconds. Reading ignores the properties the class cannot set. The values the table has no kind for are handed to the ObjectCodec of the
+ * generator or parser.
+ * 
+ * <p>
+ * The same table renders the toString of the entities, leaving out the collections so that logging an entity never loads a lazy association.
+ * 
+ * @author jmalkan
+ * 
+ * @param <T> An Object that implements Entity interface.
+ */
+public final class EntityCodec<T extends Entity> {
+  private static final ConcurrentMap<Class<?>, EntityCodec<?>> CODECS = new ConcurrentHashMap<Class<?>, EntityCodec<?>>();
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+  
+  private final Class<T> entityClass;
+  private final Property[] readable;
+  private final Map<String, Property> writable = new HashMap<String, Property>();
+  
+  /**
+   * Creates a new instance of com.jiggy.base.entity.EntityCodec.java and Performs Initialization
+   * 
+   * @param entityClass The entity class.
+   */
+  private EntityCodec(final Class<T> entityClass) {
+    this.entityClass = entityClass;
+    
+    BeanInfo beanInfo;
+    
+    try {
+      beanInfo = Introspector.getBeanInfo(entityClass, Object.class);
+    } catch (IntrospectionException ie) {
+      throw new SystemException(Error.DEFAULT, ie);
+    }
+    
+    List<Property> properties = new ArrayList<Property>();
+    
+    for (PropertyDescriptor descriptor : beanInfo.getPropertyDescriptors()) {
+      if (descriptor.getPropertyType() == null)
+        continue;
+      
+      Property property = new Property(descriptor);
+      
+      if (property.getter != null) {
+        if (Entity.ID_COLUMN_NAME.equals(property.name))
+          properties.add(0, property);
+        else
+          properties.add(property);
+      }
+      
+      if (property.setter != null)
+        this.writable.put(property.name, property);
+    }
+    
+    this.readable = properties.toArray(new Property[properties.size()]);
+  }
+  
+  /**
+   * @param entityClass The entity class.
+   * @return The codec of the entity class, compiled on first use.
+   */
+  @SuppressWarnings("unchecked")
+  public static <T extends Entity> EntityCodec<T> forClass(final Class<T> entityClass) {
+    EntityCodec<T> codec = (EntityCodec<T>) CODECS.get(entityClass);
+    
+    if (codec == null) {
+      codec = new EntityCodec<T>(entityClass);
+      EntityCodec<T> existing = (EntityCodec<T>) CODECS.putIfAbsent(entityClass, codec);
+      
+      if (existing != null)
+        codec = existing;
+    }
+    
+    return codec;
+  }
+  
+  /**
+   * Writes an entity with the codec of its runtime class.
+   * 
+   * @param entity The entity, may be null.
+   * @param generator The generator to write to.
+   * @throws IOException If the generator fails.
+   */
+  public static void writeEntity(final Entity entity, final JsonGenerator generator) throws IOException {
+    if (entity == null)
+      generator.writeNull();
+    else
+      codecOf(entity).write(entity, generator);
+  }
+  
+  /**
+   * Renders an entity with the codec of its runtime class, for its toString.
+   * 
+   * @param entity The entity.
+   * @return The simple name of the class and its properties other than the collections, such as "Todo[id=1,createDate=...,name=wake up,...]".
+   */
+  public static String describe(final Entity entity) {
+    return codecOf(entity).toString(entity);
+  }
+  
+  /**
+   * Writes an entity as a JSON string with the codec of its runtime class.
+   * 
+   * @param entity The entity.
+   * @return The JSON object of the entity.
+   */
+  public static String toJSON(final Entity entity) {
+    return codecOf(entity).writeValueAsString(entity);
+  }
+  
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static EntityCodec<Entity> codecOf(final Entity entity) {
+    return (EntityCodec) forClass(entity.getClass());
+  }
+  
+  /**
+   * Getter of the property <tt>entityClass</tt>
+   * 
+   * @return The entity class.
+   */
+  public Class<T> getEntityClass() {
+    return this.entityClass;
+  }
+  
+  /**
+   * @return A new instance of the entity class, created with its no argument constructor.
+   */
+  public T newInstance() {
+    try {
+      return this.entityClass.newInstance();
+    } catch (InstantiationException ie) {
+      throw new SystemException(Error.DEFAULT, ie);
+    } catch (IllegalAccessException iae) {
+      throw new SystemException(Error.DEFAULT, iae);
+    }
+  }
+  
+  /**
+   * Writes the entity as a JSON object.
+   * 
+   * @param entity The entity.
+   * @param generator The generator to write to.
+   * @throws IOException If the generator fails.
+   */
+  public void write(final T entity, final JsonGenerator generator) throws IOException {
+    generator.writeStartObject();
+    
+    for (Property property : this.readable) {
+      generator.writeFieldName(property.fieldName);
+      writeValue(property.get(entity), property.kind, generator);
+    }
+    
+    generator.writeEndObject();
+  }
+  
+  /**
+   * Writes the entity as a JSON string.
+   * 
+   * @param entity The entity.
+   * @return The JSON object of the entity.
+   */
+  public String writeValueAsString(final T entity) {
+    StringWriter writer = new StringWriter();
+    
+    try {
+      JsonGenerator generator = OBJECT_MAPPER.getJsonFactory().createJsonGenerator(writer);
+      this.write(entity, generator);
+      generator.close();
+    } catch (IOException ioe) {
+      throw new SystemException(Error.DEFAULT, ioe);
+    }
+    
+    return writer.toString();
+  }
+  
+  /**
+   * Reads an entity from the JSON object at the current token of the parser, or the next one if the parser has not started.
+   * 
+   * @param parser The parser to read from, left at the end of the object.
+   * @return The entity, or null for a JSON null.
+   * @throws IOException If the parser fails or the JSON does not fit the entity class.
+   */
+  public T read(final JsonParser parser) throws IOException {
+    JsonToken token = parser.getCurrentToken() == null ? parser.nextToken() : parser.getCurrentToken();
+    
+    if (token == JsonToken.VALUE_NULL)
+      return null;
+    
+    if (token != JsonToken.START_OBJECT)
+      throw new JsonParseException("Expected an object for " + this.entityClass.getSimpleName(), parser.getCurrentLocation());
+    
+    T entity = this.newInstance();
+    
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      Property property = this.writable.get(parser.getCurrentName());
+      parser.nextToken();
+      
+      if (property == null) {
+        parser.skipChildren();
+        continue;
+      }
+      
+      Object value = readValue(parser, property.kind, property.type, property.elementType);
+      
+      if (value != null || !property.type.isPrimitive())
+        property.set(entity, value);
+    }
+    
+    return entity;
+  }
+  
+  /**
+   * Sets a property of the entity from its text, such as a form field.
+   * 
+   * @param entity The entity.
+   * @param name The name of the property.
+   * @param text The text of the value, may be null.
+   * @return false if the class cannot set the property or its value from text.
+   */
+  public boolean setProperty(final T entity, final String name, final String text) {
+    Property property = this.writable.get(name);
+    
+    if (property == null || property.kind.ordinal() > Kind.DATE.ordinal())
+      return false;
+    
+    Object value;
+    
+    try {
+      value = text == null ? null : fromText(text, property.kind, property.type);
+    } catch (IllegalArgumentException iae) {
+      return false;
+    }
+    
+    if (value != null || !property.type.isPrimitive())
+      property.set(entity, value);
+    
+    return true;
+  }
+  
+  /**
+   * Renders the entity for its toString.
+   * 
+   * @param entity The entity.
+   * @return The simple name of the class and its properties other than the collections, the entities they refer to by id.
+   */
+  public String toString(final T entity) {
+    StringBuilder builder = new StringBuilder(this.entityClass.getSimpleName()).append('[');
+    boolean first = true;
+    
+    for (Property property : this.readable) {
+      if (property.kind == Kind.COLLECTION)
+        continue;
+      
+      if (!first)
+        builder.append(',');
+      
+      builder.append(property.name).append('=');
+      first = false;
+      
+      try {
+        Object value = property.get(entity);
+        
+        if (value instanceof Entity)
+          builder.append(value.getClass().getSimpleName()).append('#').append(((Entity) value).getId());
+        else
+          builder.append(value);
+      } catch (SystemException se) {
+        builder.append('?');
+      }
+    }
+    
+    return builder.append(']').toString();
+  }
+  
+  @SuppressWarnings("unchecked")
+  private static void writeValue(final Object value, final Kind kind, final JsonGenerator generator) throws IOException {
+    if (value == null) {
+      generator.writeNull();
+      return;
+    }
+    
+    switch (kind) {
+      case STRING:
+        generator.writeString((String) value);
+        break;
+      case LONG:
+        generator.writeNumber(((Long) value).longValue());
+        break;
+      case INTEGER:
+        generator.writeNumber(((Integer) value).intValue());
+        break;
+      case DOUBLE:
+        generator.writeNumber(((Double) value).doubleValue());
+        break;
+      case DECIMAL:
+        generator.writeNumber((BigDecimal) value);
+        break;
+      case BOOLEAN:
+        generator.writeBoolean(((Boolean) value).booleanValue());
+        break;
+      case ENUM:
+        generator.writeString(((Enum<?>) value).name());
+        break;
+      case DATE:
+        generator.writeNumber(((Date) value).getTime());
+        break;
+      case ENTITY:
+        writeEntity((Entity) value, generator);
+        break;
+      case COLLECTION:
+        generator.writeStartArray();
+        
+        for (Object element : (Collection<Object>) value) {
+          writeValue(element, element == null ? Kind.OTHER : Kind.of(element.getClass()), generator);
+        }
+        
+        generator.writeEndArray();
+        break;
+      default:
+        generator.writeObject(value);
+    }
+  }
+  
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static Object readValue(final JsonParser parser, final Kind kind, final Class<?> type, final Class<?> elementType) throws IOException {
+    JsonToken token = parser.getCurrentToken();
+    
+    if (token == JsonToken.VALUE_NULL)
+      return null;
+    
+    try {
+      switch (kind) {
+        case STRING:
+          return parser.getText();
+        case LONG:
+          return token == JsonToken.VALUE_NUMBER_INT ? Long.valueOf(parser.getLongValue()) : fromText(parser.getText(), kind, type);
+        case INTEGER:
+          return token == JsonToken.VALUE_NUMBER_INT ? Integer.valueOf(parser.getIntValue()) : fromText(parser.getText(), kind, type);
+        case DOUBLE:
+          return isNumber(token) ? Double.valueOf(parser.getDoubleValue()) : fromText(parser.getText(), kind, type);
+        case DECIMAL:
+          return isNumber(token) ? parser.getDecimalValue() : fromText(parser.getText(), kind, type);
+        case BOOLEAN:
+          return token == JsonToken.VALUE_TRUE || token == JsonToken.VALUE_FALSE ? Boolean.valueOf(token == JsonToken.VALUE_TRUE)
+                                                                                  : fromText(parser.getText(), kind, type);
+        case ENUM:
+          return fromText(parser.getText(), kind, type);
+        case DATE:
+          return token == JsonToken.VALUE_NUMBER_INT ? new Date(parser.getLongValue()) : fromText(parser.getText(), kind, type);
+        case ENTITY:
+          return forClass((Class<Entity>) type).read(parser);
+        case COLLECTION:
+          if (token != JsonToken.START_ARRAY)
+            throw new JsonParseException("Expected an array for " + type.getSimpleName(), parser.getCurrentLocation());
+          
+          Collection<Object> collection = newCollection(type);
+          Kind elementKind = Kind.of(elementType);
+          
+          while (parser.nextToken() != JsonToken.END_ARRAY) {
+            collection.add(readValue(parser, elementKind, elementType, Object.class));
+          }
+          
+          return collection;
+        default:
+          return parser.readValueAs(type);
+      }
+    } catch (IllegalArgumentException iae) {
+      throw new JsonParseException("Invalid " + type.getSimpleName() + ": " + iae.getMessage(), parser.getCurrentLocation());
+    }
+  }
+  
+  private static boolean isNumber(final JsonToken token) {
+    return token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT;
+  }
+  
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static Object fromText(final String text, final Kind kind, final Class<?> type) {
+    String trimmed = text.trim();
+    
+    switch (kind) {
+      case STRING:
+        return text;
+      case LONG:
+        return Long.valueOf(trimmed);
+      case INTEGER:
+        return Integer.valueOf(trimmed);
+      case DOUBLE:
+        return Double.valueOf(trimmed);
+      case DECIMAL:
+        return new BigDecimal(trimmed);
+      case BOOLEAN:
+        return Boolean.valueOf(trimmed);
+      case ENUM:
+        return Enum.valueOf((Class<Enum>) type, trimmed);
+      case DATE:
+        return new Date(Long.parseLong(trimmed));
+      default:
+        throw new IllegalArgumentException(text);
+    }
+  }
+  
+  private static Collection<Object> newCollection(final Class<?> type) {
+    if (SortedSet.class.isAssignableFrom(type))
+      return new TreeSet<Object>();
+    
+    if (Set.class.isAssignableFrom(type))
+      return new LinkedHashSet<Object>();
+    
+    return new ArrayList<Object>();
+  }
+  
+  /**
+   * The kinds of values the codec writes and reads itself, in the order of their checks. The ones up to DATE are also set from text.
+   */
+  private enum Kind {
+    STRING, LONG, INTEGER, DOUBLE, DECIMAL, BOOLEAN, ENUM, DATE, ENTITY, COLLECTION, OTHER;
+    
+    static Kind of(final Class<?> type) {
+      if (type == String.class)
+        return STRING;
+      else if (type == Long.class || type == long.class)
+        return LONG;
+      else if (type == Integer.class || type == int.class)
+        return INTEGER;
+      else if (type == Double.class || type == double.class)
+        return DOUBLE;
+      else if (type == BigDecimal.class)
+        return DECIMAL;
+      else if (type == Boolean.class || type == boolean.class)
+        return BOOLEAN;
+      else if (type.isEnum())
+        return ENUM;
+      else if (type == Date.class)
+        return DATE;
+      else if (Entity.class.isAssignableFrom(type))
+        return ENTITY;
+      else if (Collection.class.isAssignableFrom(type))
+        return COLLECTION;
+      
+      return OTHER;
+    }
+  }
+  
+  /**
+   * A bean property of the entity class, with its accessors resolved.
+   */
+  private static final class Property {
+    private final String name;
+    private final SerializedString fieldName;
+    private final Method getter;
+    private final Method setter;
+    private final Class<?> type;
+    private final Class<?> elementType;
+    private final Kind kind;
+    
+    Property(final PropertyDescriptor descriptor) {
+      this.name = descriptor.getName();
+      this.fieldName = new SerializedString(this.name);
+      this.getter = accessible(descriptor.getReadMethod());
+      this.setter = accessible(descriptor.getWriteMethod());
+      this.type = descriptor.getPropertyType();
+      this.kind = Kind.of(this.type);
+      this.elementType = elementTypeOf(this.getter != null ? this.getter.getGenericReturnType() : this.setter.getGenericParameterTypes()[0]);
+    }
+    
+    Object get(final Object entity) {
+      try {
+        return this.getter.invoke(entity);
+      } catch (IllegalAccessException iae) {
+        throw new SystemException(Error.DEFAULT, iae);
+      } catch (InvocationTargetException ite) {
+        throw new SystemException(Error.DEFAULT, ite.getCause());
+      }
+    }
+    
+    void set(final Object entity, final Object value) {
+      try {
+        this.setter.invoke(entity, value);
+      } catch (IllegalAccessException iae) {
+        throw new SystemException(Error.DEFAULT, iae);
+      } catch (InvocationTargetException ite) {
+        throw new SystemException(Error.DEFAULT, ite.getCause());
+      }
+    }
+    
+    private static Method accessible(final Method method) {
+      if (method != null && !method.isAccessible()) {
+        try {
+          method.setAccessible(true);
+        } catch (SecurityException se) {
+          return method;
+        }
+      }
+      
+      return method;
+    }
+    
+    private static Class<?> elementTypeOf(final Type type) {
+      if (type instanceof ParameterizedType) {
+        Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+        
+        if (arguments.length == 1 && arguments[0] instanceof Class)
+          return (Class<?>) arguments[0];
+      }
+      
+      return Object.class;
+    }
+  }
+}
@@ -0,0 +1,124 @@
+package com.jiggy.base.entity;
+
+import java.io.Serializable;
+import java.util.Collection;
+
+/**
+ * EntityVersion.java The version and last modification of an entity, which is all a conditional request compares, so that it can be read from the
+ * entity cache or by a projection of the data store without loading the whole entity. The entity tag of an entity is its quoted version, and the tag
+ * of a list of entities is a hash of the ids and versions of its entities in their order.
+ * 
+ * @author jmalkan
+ */
+public final class EntityVersion implements Serializable {
+  private static final long serialVersionUID = 4180137325816734205L;
+  
+  private final Long id;
+  private final Long version;
+  private final Long lastModifiedDate;
+  
+  /**
+   * Creates a new instance of com.jiggy.base.entity.EntityVersion.java and Performs Initialization
+   * 
+   * @param id The id of the entity.
+   * @param version The version of the entity, null if it was never versioned.
+   * @param lastModifiedDate The time of the last modification of the entity in milliseconds, null if unknown.
+   */
+  public EntityVersion(final Long id, final Long version, final Long lastModifiedDate) {
+    super();
+    this.id = id;
+    this.version = version;
+    this.lastModifiedDate = lastModifiedDate;
+  }
+  
+  /**
+   * @param entity The entity.
+   * @return The version of the entity, null if the entity is null.
+   */
+  public static EntityVersion of(final Entity entity) {
+    return entity == null ? null : new EntityVersion(entity.getId(), entity.getVersion(), lastModifiedOf(entity));
+  }
+  
+  /**
+   * @param entities The entities of a list response.
+   * @return The entity tag of the list, which changes when an entity is added, removed, reordered or modified.
+   */
+  public static String eTagOf(final Collection<? extends Entity> entities) {
+    long hash = 17;
+    
+    if (entities != null) {
+      for (Entity entity : entities) {
+        hash = 31 * hash + hashOf(entity.getId());
+        hash = 31 * hash + hashOf(entity.getVersion());
+      }
+    }
+    
+    return "\"" + Long.toHexString(hash) + "-" + (entities == null ? 0 : entities.size()) + "\"";
+  }
+  
+  /**
+   * @param entities The entities of a list response.
+   * @return The last modification of the most recently modified entity of the list, null if none is known.
+   */
+  public static Long lastModifiedOf(final Collection<? extends Entity> entities) {
+    Long lastModified = null;
+    
+    if (entities != null) {
+      for (Entity entity : entities) {
+        Long modified = lastModifiedOf(entity);
+        
+        if (modified != null && (lastModified == null || modified.longValue() > lastModified.longValue()))
+          lastModified = modified;
+      }
+    }
+    
+    return lastModified;
+  }
+  
+  private static Long lastModifiedOf(final Entity entity) {
+    return entity.getLastModifiedDate() != null ? entity.getLastModifiedDate() : entity.getCreateDate();
+  }
+  
+  private static long hashOf(final Long value) {
+    return value == null ? 0 : value.longValue();
+  }
+  
+  /**
+   * Getter of the property <tt>id</tt>
+   * 
+   * @return The id of the entity.
+   */
+  public Long getId() {
+    return this.id;
+  }
+  
+  /**
+   * Getter of the property <tt>version</tt>
+   * 
+   * @return The version of the entity, null if it was never versioned.
+   */
+  public Long getVersion() {
+    return this.version;
+  }
+  
+  /**
+   * Getter of the property <tt>lastModifiedDate</tt>
+   * 
+   * @return The time of the last modification of the entity in milliseconds, null if unknown.
+   */
+  public Long getLastModifiedDate() {
+    return this.lastModifiedDate;
+  }
+  
+  /**
+   * @return The strong entity tag of the entity, the quoted version, or null if the entity was never versioned.
+   */
+  public String getETag() {
+    return this.version == null ? null : "\"" + this.version + "\"";
+  }
+  
+  @Override
+  public String toString() {
+    return "EntityVersion[id=" + this.id + ",version=" + this.version + ",lastModifiedDate=" + this.lastModifiedDate + "]";
+  }
+}
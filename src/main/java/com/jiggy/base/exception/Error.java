@@ -7,7 +7,11 @@ package com.jiggy.base.exception;
  */
 public enum Error {
   DEFAULT("SYSTEM", "This is an unexpected error", ""),
-  ERROR_REQUIRED("ERROR_REQUIRED", "The %s field is required.", "");
+  ERROR_REQUIRED("ERROR_REQUIRED", "The %s field is required.", ""),
+  ERROR_INVALID("ERROR_INVALID", "The %s field is invalid.", ""),
+  ERROR_VERSION("ERROR_VERSION", "The %s was modified since the version the request applies to.", ""),
+  ERROR_NOT_FOUND("ERROR_NOT_FOUND", "The %s does not exist.", ""),
+  ERROR_BUSY("ERROR_BUSY", "The %s is busy, retry later.", "");
   
   
   private String errorCode;
@@ -0,0 +1,18 @@
+package com.jiggy.base.exception;
+
+/**
+ * Unavailable exception, when the server is too busy to serve the request in time. Answered with 503 Service Unavailable.
+ * 
+ * @author jmalkan
+ */
+public class UnavailableException extends AbstractException {
+  private static final long serialVersionUID = 1L;
+  
+  public UnavailableException(final Error error) {
+    super(error);
+  }
+  
+  public UnavailableException(final Error error, final Throwable cause) {
+    super(error, cause);
+  }
+}
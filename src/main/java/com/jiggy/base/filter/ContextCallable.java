@@ -0,0 +1,71 @@
+package com.jiggy.base.filter;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.util.ThreadContext;
+import org.slf4j.MDC;
+
+import com.jiggy.base.monitor.Tracer;
+import com.jiggy.base.monitor.Tracer.Span;
+
+/**
+ * ContextCallable.java Carries the context the filters bound to the request thread over to the thread that runs a piece of the work of the request:
+ * the Shiro subject the permissions are checked against, the diagnostic context of the logs registered by the LoggerFilter and the current span of
+ * the trace. The context is captured when the callable is created, on the request thread, and bound around the call on the worker thread, which is
+ * left as it was found.
+ * 
+ * @param <V> The result of the call.
+ * 
+ * @author jmalkan
+ */
+public class ContextCallable<V> implements Callable<V> {
+  private final Callable<V> callable;
+  private final String name;
+  private final Subject subject;
+  private final Map<?, ?> contextMap;
+  private final Span span;
+  
+  /**
+   * Creates a new instance of com.jiggy.base.filter.ContextCallable.java and Performs Initialization
+   * 
+   * @param callable The work handed over to another thread.
+   * @param name The name of the span of the work in the trace of the request.
+   */
+  public ContextCallable(final Callable<V> callable, final String name) {
+    super();
+    this.callable = callable;
+    this.name = name;
+    this.subject = ThreadContext.getSubject();
+    this.contextMap = MDC.getCopyOfContextMap();
+    this.span = Tracer.getInstance().getCurrentSpan();
+  }
+  
+  @Override
+  public V call() throws Exception {
+    Tracer tracer = Tracer.getInstance();
+    Map<?, ?> previousContextMap = MDC.getCopyOfContextMap();
+    
+    this.setContextMap(this.contextMap);
+    Span span = tracer.startSpan(this.span, this.name);
+    boolean error = true;
+    
+    try {
+      V result = this.subject == null ? this.callable.call() : this.subject.associateWith(this.callable).call();
+      error = false;
+      
+      return result;
+    } finally {
+      tracer.end(span, error);
+      this.setContextMap(previousContextMap);
+    }
+  }
+  
+  private void setContextMap(final Map<?, ?> contextMap) {
+    if (contextMap == null)
+      MDC.clear();
+    else
+      MDC.setContextMap(contextMap);
+  }
+}
@@ -2,7 +2,10 @@ package com.jiggy.base.filter;
 
 import java.io.IOException;
 import java.security.Principal;
+import java.util.concurrent.ThreadLocalRandom;
 
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -10,18 +13,23 @@ import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
+import com.jiggy.base.monitor.Tracer;
+import com.jiggy.base.monitor.Tracer.Span;
 import com.jiggy.security.SessionUtil;
 import com.jiggy.security.User;
 import com.jiggy.security.UserProfile;
 
 /**
- * This filter registers Diagnostic information to the Logger.
+ * This filter registers Diagnostic information to the Logger. It also opens the trace of the request, under the id passed in the X-Trace-Id header
+ * or a generated one, which is registered as the traceId of the logs and returned in the X-Trace-Id header of the response. The trace of a request
+ * that goes on asynchronously is ended when the request completes.
  * 
  * @author jmalkan
  */
@@ -30,6 +38,10 @@ public class LoggerFilter implements Filter {
 
   private static final String USER_KEY = "userName";
   private static final String SESSION_KEY = "sessionId";
+  private static final String TRACE_ID_KEY = "traceId";
+  private static final String TRACE_ID_HEADER = "X-Trace-Id";
+  private static final int MAX_TRACE_ID_LENGTH = 64;
+  private static final String TRACE_ID_CHARS = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ-_";
   private final static String REQUEST_USER_AGENT_KEY = "req.userAgent";
   private final static String REQUEST_REMOTE_HOST_KEY = "req.remoteHost";
   private final static String REQUEST_REQUEST_URI_KEY = "req.requestURI";
@@ -53,14 +65,58 @@ public class LoggerFilter implements Filter {
     
     insertIntoMDC(request);
     
+    Tracer tracer = Tracer.getInstance();
+    String traceId = this.getTraceId(request);
+    Span span = tracer.startTrace(traceId, this.getTraceName(request));
+    boolean error = true;
+    
+    this.register(TRACE_ID_KEY, traceId);
+    
+    if (response instanceof HttpServletResponse)
+      ((HttpServletResponse) response).setHeader(TRACE_ID_HEADER, traceId);
+    
     try {
       filterChain.doFilter(request, response);
+      error = false;
     } finally {
+      if (request.isAsyncStarted())
+        this.endOnComplete(request, span);
+      else
+        tracer.end(span, error);
+      
       logger.trace("************clearMDC************");
       clearMDC();
     }
   }
   
+  /**
+   * The request goes on on another thread once the filter returns: the trace is left off the thread and ended when the request completes.
+   */
+  private void endOnComplete(final ServletRequest request, final Span span) {
+    Tracer.getInstance().detach(span);
+    request.getAsyncContext().addListener(new TraceListener(span));
+  }
+  
+  /**
+   * @return The trace id passed by the caller in the X-Trace-Id header if it is made of letters, digits, '-' and '_', else a new random id.
+   */
+  private String getTraceId(final ServletRequest request) {
+    String traceId = request instanceof HttpServletRequest ? ((HttpServletRequest) request).getHeader(TRACE_ID_HEADER) : null;
+    
+    if (traceId != null && traceId.length() > 0 && traceId.length() <= MAX_TRACE_ID_LENGTH && StringUtils.containsOnly(traceId, TRACE_ID_CHARS))
+      return traceId;
+    
+    return StringUtils.leftPad(Long.toHexString(ThreadLocalRandom.current().nextLong()), 16, '0');
+  }
+  
+  private String getTraceName(final ServletRequest request) {
+    if (!(request instanceof HttpServletRequest))
+      return request.getRemoteHost();
+    
+    HttpServletRequest httpServletRequest = (HttpServletRequest) request;
+    return httpServletRequest.getMethod() + " " + httpServletRequest.getRequestURI();
+  }
+  
   protected void insertIntoMDC(final ServletRequest request) {
     this.register(REQUEST_REMOTE_HOST_KEY, request.getRemoteHost());
     
@@ -147,4 +203,36 @@ public class LoggerFilter implements Filter {
     
     return returnValue;
   }
+  
+  /**
+   * Ends the trace of an asynchronous request when it completes, as failed if it timed out or failed.
+   */
+  private static final class TraceListener implements AsyncListener {
+    private final Span span;
+    private volatile boolean error;
+    
+    TraceListener(final Span span) {
+      this.span = span;
+    }
+    
+    @Override
+    public void onComplete(final AsyncEvent event) {
+      Tracer.getInstance().end(this.span, this.error);
+    }
+    
+    @Override
+    public void onTimeout(final AsyncEvent event) {
+      this.error = true;
+    }
+    
+    @Override
+    public void onError(final AsyncEvent event) {
+      this.error = true;
+    }
+    
+    @Override
+    public void onStartAsync(final AsyncEvent event) {
+      event.getAsyncContext().addListener(this);
+    }
+  }
 }
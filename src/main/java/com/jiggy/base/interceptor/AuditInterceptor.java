@@ -1,47 +1,196 @@
 package com.jiggy.base.interceptor;
 
+import java.lang.reflect.Method;
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.jiggy.base.monitor.MetricsRegistry;
+import com.jiggy.base.monitor.OperationMetrics;
+import com.jiggy.base.monitor.Tracer;
+import com.jiggy.base.monitor.Tracer.Span;
+
 /**
- * Intercepts any method that extends AbstractResource and logs audit entry. This class does NOT handle exceptions thrown.
+ * Intercepts any method that extends AbstractResource and records its latency, call and error counts in the MetricsRegistry, under the name
+ * "&lt;metricsPrefix&gt;&lt;class&gt;.&lt;method&gt;", the prefix being "service." unless set. The parameters are only logged for the calls slower
+ * than the slow threshold, at warn level, and for one in sampleRate of the other calls, at debug level. Unless exposeOperation is false, the name of
+ * the operation is exposed to the code it calls, such as the query profiler of the DAOs, through getCurrentOperation(). Calls made while a request is
+ * traced are recorded as spans of its trace. This class does NOT handle exceptions thrown.
  * 
  * @author jmalkan
  */
 public class AuditInterceptor implements MethodInterceptor {
+  public static final String METRICS_PREFIX = "service.";
+  public static final long DEFAULT_SLOW_THRESHOLD = 1000;
+  public static final int DEFAULT_SAMPLE_RATE = 1000;
+  
+  private static final ThreadLocal<String> CURRENT_OPERATION = new ThreadLocal<String>();
+  
   protected final Logger logger = LoggerFactory.getLogger(this.getClass());
   
+  private final Tracer tracer = Tracer.getInstance();
+  private final ConcurrentMap<Class<?>, ConcurrentMap<Method, OperationMetrics>> metrics =
+      new ConcurrentHashMap<Class<?>, ConcurrentMap<Method, OperationMetrics>>();
+  private String metricsPrefix = METRICS_PREFIX;
+  private long slowThreshold = DEFAULT_SLOW_THRESHOLD;
+  private int sampleRate = DEFAULT_SAMPLE_RATE;
+  private boolean exposeOperation = true;
+  
+  /**
+   * @return The name of the innermost operation of the current thread intercepted with exposeOperation, or null if none is running.
+   */
+  public static String getCurrentOperation() {
+    return CURRENT_OPERATION.get();
+  }
+  
   @Override
   public Object invoke(final MethodInvocation mthodInvocation) throws Throwable {
-    String args = null;
-    String className = null;
-    String methodName = null;
-    double elapsed = 0;
+    boolean error = true;
     Object returnObject = null;
+    Object target = mthodInvocation.getThis();
+    Class<?> targetClass = target == null ? mthodInvocation.getMethod().getDeclaringClass() : target.getClass();
+    OperationMetrics operationMetrics = this.getMetrics(targetClass, mthodInvocation.getMethod());
+    String previousOperation = CURRENT_OPERATION.get();
+    
+    if (this.exposeOperation)
+      CURRENT_OPERATION.set(operationMetrics.getName());
     
+    Span span = this.tracer.startSpan(operationMetrics.getName());
     long start = System.nanoTime();
     
     try {
       returnObject = mthodInvocation.proceed();
+      error = false;
     } finally {
-      methodName = mthodInvocation.getMethod().getName();
-      elapsed = ((System.nanoTime() - start) / 1000000.0);
-      args = Arrays.toString(mthodInvocation.getArguments());
+      long elapsed = System.nanoTime() - start;
+      
+      this.tracer.end(span, error);
       
-      try {
-        className = mthodInvocation.getThis().getClass().getName();
-      } catch (final Exception ignored) {
-        // Smothered to prevent re entrancy
-      }
+      if (this.exposeOperation && previousOperation == null)
+        CURRENT_OPERATION.remove();
+      else if (this.exposeOperation)
+        CURRENT_OPERATION.set(previousOperation);
       
-      logger.warn("Method Invocation {} on Class {} with Parameters {} took {} ms.",
-                  new Object[] {methodName, className == null ? "UNKNOWN" : className, args, elapsed});
+      operationMetrics.record(elapsed, error);
+      this.log(mthodInvocation, targetClass, elapsed);
     }
     
     return returnObject;
   }
-}
\ No newline at end of file
+  
+  private void log(final MethodInvocation mthodInvocation, final Class<?> targetClass, final long elapsed) {
+    boolean slow = elapsed >= TimeUnit.MILLISECONDS.toNanos(this.slowThreshold) && logger.isWarnEnabled();
+    boolean sampled = !slow && this.sampleRate > 0 && logger.isDebugEnabled() && ThreadLocalRandom.current().nextInt(this.sampleRate) == 0;
+    
+    if (!slow && !sampled)
+      return;
+    
+    Object[] arguments = new Object[] {mthodInvocation.getMethod().getName(), targetClass.getName(), Arrays.toString(mthodInvocation.getArguments()),
+                                       Double.valueOf(elapsed / 1000000.0)};
+    
+    if (slow)
+      logger.warn("Slow Method Invocation {} on Class {} with Parameters {} took {} ms.", arguments);
+    else
+      logger.debug("Sampled Method Invocation {} on Class {} with Parameters {} took {} ms.", arguments);
+  }
+  
+  private OperationMetrics getMetrics(final Class<?> targetClass, final Method method) {
+    ConcurrentMap<Method, OperationMetrics> classMetrics = this.metrics.get(targetClass);
+    
+    if (classMetrics == null) {
+      ConcurrentMap<Method, OperationMetrics> newClassMetrics = new ConcurrentHashMap<Method, OperationMetrics>();
+      classMetrics = this.metrics.putIfAbsent(targetClass, newClassMetrics);
+      
+      if (classMetrics == null)
+        classMetrics = newClassMetrics;
+    }
+    
+    OperationMetrics operationMetrics = classMetrics.get(method);
+    
+    if (operationMetrics == null) {
+      operationMetrics = MetricsRegistry.getInstance().getOperation(this.metricsPrefix + targetClass.getSimpleName() + "." + method.getName());
+      classMetrics.putIfAbsent(method, operationMetrics);
+    }
+    
+    return operationMetrics;
+  }
+  
+  /**
+   * Getter of the property <tt>metricsPrefix</tt>
+   * 
+   * @return The prefix of the names of the operations intercepted, such as "service." or "dao.".
+   */
+  public String getMetricsPrefix() {
+    return this.metricsPrefix;
+  }
+  
+  /**
+   * Setter of the property <tt>metricsPrefix</tt>
+   * 
+   * @param metricsPrefix The prefix of the names of the operations intercepted, such as "service." or "dao.".
+   */
+  public void setMetricsPrefix(final String metricsPrefix) {
+    this.metricsPrefix = metricsPrefix;
+  }
+  
+  /**
+   * Getter of the property <tt>slowThreshold</tt>
+   * 
+   * @return The latency in milliseconds from which a call is logged with its parameters at warn level.
+   */
+  public long getSlowThreshold() {
+    return this.slowThreshold;
+  }
+  
+  /**
+   * Setter of the property <tt>slowThreshold</tt>
+   * 
+   * @param slowThreshold The latency in milliseconds from which a call is logged with its parameters at warn level.
+   */
+  public void setSlowThreshold(final long slowThreshold) {
+    this.slowThreshold = slowThreshold;
+  }
+  
+  /**
+   * Getter of the property <tt>sampleRate</tt>
+   * 
+   * @return One in how many of the calls under the slow threshold is logged with its parameters at debug level, 0 for none.
+   */
+  public int getSampleRate() {
+    return this.sampleRate;
+  }
+  
+  /**
+   * Setter of the property <tt>sampleRate</tt>
+   * 
+   * @param sampleRate One in how many of the calls under the slow threshold is logged with its parameters at debug level, 0 for none.
+   */
+  public void setSampleRate(final int sampleRate) {
+    this.sampleRate = sampleRate;
+  }
+  
+  /**
+   * Getter of the property <tt>exposeOperation</tt>
+   * 
+   * @return Whether the name of the intercepted operation is exposed to the code it calls through getCurrentOperation().
+   */
+  public boolean isExposeOperation() {
+    return this.exposeOperation;
+  }
+  
+  /**
+   * Setter of the property <tt>exposeOperation</tt>
+   * 
+   * @param exposeOperation Whether the name of the intercepted operation is exposed to the code it calls through getCurrentOperation().
+   */
+  public void setExposeOperation(final boolean exposeOperation) {
+    this.exposeOperation = exposeOperation;
+  }
+}
@@ -0,0 +1,101 @@
+package com.jiggy.base.monitor;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.DBConnector;
+import com.mongodb.DBPortPool;
+import com.mongodb.DBTCPConnector;
+import com.mongodb.Mongo;
+import com.mongodb.ServerAddress;
+
+/**
+ * DataStoreMetrics.java Reports the Hibernate statistics, the connections of the DBCP pool and the connections of the Mongo pool to the
+ * MetricsRegistry. Every value is read from counters the libraries already keep, so reporting does not touch the data stores. A data store that is
+ * not configured is left out.
+ * 
+ * @author jmalkan
+ */
+@Component
+public class DataStoreMetrics implements MetricsSource {
+  @Autowired(required = false) private SessionFactory sessionFactory;
+  @Autowired(required = false) private DataSource dataSource;
+  @Autowired(required = false) private Mongo mongo;
+  
+  /**
+   * Called by Spring once the bean is set up. Registers with the MetricsRegistry.
+   */
+  public void init() {
+    MetricsRegistry.getInstance().register(this);
+  }
+  
+  @Override
+  public void report(final MetricsReport report) {
+    if (this.sessionFactory != null && this.sessionFactory.getStatistics().isStatisticsEnabled())
+      this.reportHibernate(report, this.sessionFactory.getStatistics());
+    
+    if (this.dataSource instanceof BasicDataSource)
+      this.reportDataSource(report, (BasicDataSource) this.dataSource);
+    
+    if (this.mongo != null)
+      this.reportMongo(report);
+  }
+  
+  private void reportHibernate(final MetricsReport report, final Statistics statistics) {
+    String help = "Hibernate statistics since start.";
+    
+    report.add("backend_hibernate_queries_total", MetricsReport.COUNTER, help, Long.valueOf(statistics.getQueryExecutionCount()));
+    report.add("backend_hibernate_query_max_milliseconds", MetricsReport.GAUGE, help, Long.valueOf(statistics.getQueryExecutionMaxTime()));
+    report.add("backend_hibernate_statements_total", MetricsReport.COUNTER, help, Long.valueOf(statistics.getPrepareStatementCount()));
+    report.add("backend_hibernate_transactions_total", MetricsReport.COUNTER, help, Long.valueOf(statistics.getTransactionCount()));
+    report.add("backend_hibernate_sessions_total", MetricsReport.COUNTER, help, Long.valueOf(statistics.getSessionOpenCount()));
+    report.add("backend_hibernate_entities_total", MetricsReport.COUNTER, help, Long.valueOf(statistics.getEntityLoadCount()), "event", "load");
+    report.add("backend_hibernate_entities_total", MetricsReport.COUNTER, help, Long.valueOf(statistics.getEntityFetchCount()), "event", "fetch");
+    report.add("backend_hibernate_entities_total", MetricsReport.COUNTER, help, Long.valueOf(statistics.getEntityInsertCount()), "event", "insert");
+    report.add("backend_hibernate_entities_total", MetricsReport.COUNTER, help, Long.valueOf(statistics.getEntityUpdateCount()), "event", "update");
+    report.add("backend_hibernate_entities_total", MetricsReport.COUNTER, help, Long.valueOf(statistics.getEntityDeleteCount()), "event", "delete");
+    report.add("backend_hibernate_cache_total", MetricsReport.COUNTER, help, Long.valueOf(statistics.getSecondLevelCacheHitCount()), "cache",
+               "second-level", "event", "hit");
+    report.add("backend_hibernate_cache_total", MetricsReport.COUNTER, help, Long.valueOf(statistics.getSecondLevelCacheMissCount()), "cache",
+               "second-level", "event", "miss");
+    report.add("backend_hibernate_cache_total", MetricsReport.COUNTER, help, Long.valueOf(statistics.getSecondLevelCachePutCount()), "cache",
+               "second-level", "event", "put");
+    report.add("backend_hibernate_cache_total", MetricsReport.COUNTER, help, Long.valueOf(statistics.getQueryCacheHitCount()), "cache", "query",
+               "event", "hit");
+    report.add("backend_hibernate_cache_total", MetricsReport.COUNTER, help, Long.valueOf(statistics.getQueryCacheMissCount()), "cache", "query",
+               "event", "miss");
+  }
+  
+  /**
+   * DBCP 1.4 does not count the threads waiting for a connection; a pool at its maximum of active connections is where they wait.
+   */
+  private void reportDataSource(final MetricsReport report, final BasicDataSource basicDataSource) {
+    String help = "Connections of the DBCP pool.";
+    
+    report.add("backend_jdbc_connections", MetricsReport.GAUGE, help, Integer.valueOf(basicDataSource.getNumActive()), "state", "active");
+    report.add("backend_jdbc_connections", MetricsReport.GAUGE, help, Integer.valueOf(basicDataSource.getNumIdle()), "state", "idle");
+    report.add("backend_jdbc_connections", MetricsReport.GAUGE, help, Integer.valueOf(basicDataSource.getMaxActive()), "state", "max");
+    report.add("backend_jdbc_max_wait_milliseconds", MetricsReport.GAUGE, "Longest wait for a DBCP connection before failing.",
+               Long.valueOf(basicDataSource.getMaxWait()));
+  }
+  
+  private void reportMongo(final MetricsReport report) {
+    DBConnector connector = this.mongo.getConnector();
+    ServerAddress address = this.mongo.getAddress();
+    
+    if (!(connector instanceof DBTCPConnector) || address == null)
+      return;
+    
+    DBPortPool pool = ((DBTCPConnector) connector).getDBPortPool(address);
+    String help = "Connections of the Mongo pool of the primary.";
+    
+    report.add("backend_mongo_connections", MetricsReport.GAUGE, help, Integer.valueOf(pool.getInUse()), "state", "active");
+    report.add("backend_mongo_connections", MetricsReport.GAUGE, help, Integer.valueOf(pool.getAvailable()), "state", "idle");
+    report.add("backend_mongo_connections", MetricsReport.GAUGE, help, Integer.valueOf(pool.getMaxSize()), "state", "max");
+  }
+}
@@ -0,0 +1,209 @@
+package com.jiggy.base.monitor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * LatencyHistogram.java A lock free histogram of latencies in microseconds, with buckets in the style of an HDR histogram: linear below 32
+ * microseconds, then 16 buckets per power of two, so every recorded value is known to within about 6%. Latencies of 19 hours and more fall in the
+ * last bucket.
+ * 
+ * <p>
+ * Each recording thread increments the buckets of its own stripe, picked by its thread id, so threads seldom contend on a cache line. The stripes are
+ * merged into a Snapshot on read.
+ * 
+ * @author jmalkan
+ */
+public final class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int MAX_EXPONENT = 36;
+  private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+  private static final int COUNT = BUCKETS;
+  private static final int SUM = BUCKETS + 1;
+  private static final int MAX = BUCKETS + 2;
+  private static final int STRIPES = Math.min(16, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1);
+  
+  private final AtomicReferenceArray<AtomicLongArray> stripes = new AtomicReferenceArray<AtomicLongArray>(STRIPES);
+  
+  /**
+   * Records a latency.
+   * 
+   * @param nanos The latency in nanoseconds.
+   */
+  public void record(final long nanos) {
+    long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+    AtomicLongArray stripe = this.getStripe((int) Thread.currentThread().getId() & (STRIPES - 1));
+    
+    stripe.incrementAndGet(index(micros));
+    stripe.incrementAndGet(COUNT);
+    stripe.addAndGet(SUM, micros);
+    
+    for (long max = stripe.get(MAX); micros > max; max = stripe.get(MAX)) {
+      if (stripe.compareAndSet(MAX, max, micros))
+        break;
+    }
+  }
+  
+  /**
+   * @return The number of latencies recorded.
+   */
+  public long getCount() {
+    long count = 0;
+    
+    for (int i = 0; i < STRIPES; i++) {
+      AtomicLongArray stripe = this.stripes.get(i);
+      
+      if (stripe != null)
+        count += stripe.get(COUNT);
+    }
+    
+    return count;
+  }
+  
+  /**
+   * Merges the stripes. Recordings made while merging may be partly included.
+   * 
+   * @return The merged counts.
+   */
+  public Snapshot getSnapshot() {
+    long[] counts = new long[BUCKETS];
+    long count = 0;
+    long sum = 0;
+    long max = 0;
+    
+    for (int i = 0; i < STRIPES; i++) {
+      AtomicLongArray stripe = this.stripes.get(i);
+      
+      if (stripe == null)
+        continue;
+      
+      for (int j = 0; j < BUCKETS; j++) {
+        counts[j] += stripe.get(j);
+      }
+      
+      count += stripe.get(COUNT);
+      sum += stripe.get(SUM);
+      max = Math.max(max, stripe.get(MAX));
+    }
+    
+    return new Snapshot(counts, count, sum, max);
+  }
+  
+  private AtomicLongArray getStripe(final int index) {
+    AtomicLongArray stripe = this.stripes.get(index);
+    
+    if (stripe == null) {
+      this.stripes.compareAndSet(index, null, new AtomicLongArray(BUCKETS + 3));
+      stripe = this.stripes.get(index);
+    }
+    
+    return stripe;
+  }
+  
+  static int index(final long micros) {
+    if (micros < SUB_BUCKETS)
+      return (int) micros;
+    
+    int exponent = 63 - Long.numberOfLeadingZeros(micros);
+    
+    if (exponent > MAX_EXPONENT)
+      return BUCKETS - 1;
+    
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + (int) ((micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+  }
+  
+  /**
+   * @return The highest latency in microseconds of the bucket.
+   */
+  static long highestValue(final int index) {
+    int group = index / SUB_BUCKETS;
+    
+    if (group == 0)
+      return index;
+    
+    int shift = group - 1;
+    return ((long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift) + (1L << shift) - 1;
+  }
+  
+  /**
+   * The merged counts of a histogram at one time.
+   */
+  public static final class Snapshot {
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long max;
+    
+    Snapshot(final long[] counts, final long count, final long sum, final long max) {
+      this.counts = counts;
+      this.count = count;
+      this.sum = sum;
+      this.max = max;
+    }
+    
+    /**
+     * Getter of the property <tt>count</tt>
+     * 
+     * @return The number of latencies recorded.
+     */
+    public long getCount() {
+      return this.count;
+    }
+    
+    /**
+     * Getter of the property <tt>sum</tt>
+     * 
+     * @return The sum of the latencies in microseconds.
+     */
+    public long getSum() {
+      return this.sum;
+    }
+    
+    /**
+     * Getter of the property <tt>max</tt>
+     * 
+     * @return The highest latency in microseconds.
+     */
+    public long getMax() {
+      return this.max;
+    }
+    
+    /**
+     * @return The mean latency in microseconds, 0 if none was recorded.
+     */
+    public double getMean() {
+      return this.count == 0 ? 0 : (double) this.sum / this.count;
+    }
+    
+    /**
+     * The latency below which the given percentage of the latencies fall, to the precision of the buckets and never above the highest latency.
+     * 
+     * @param percentile The percentage, from 0 to 100.
+     * @return The latency in microseconds, 0 if none was recorded.
+     */
+    public long getPercentile(final double percentile) {
+      long total = 0;
+      
+      for (long bucketCount : this.counts) {
+        total += bucketCount;
+      }
+      
+      if (total == 0)
+        return 0;
+      
+      long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+      long seen = 0;
+      
+      for (int i = 0; i < this.counts.length; i++) {
+        seen += this.counts[i];
+        
+        if (seen >= rank)
+          return Math.min(highestValue(i), this.max);
+      }
+      
+      return this.max;
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package com.jiggy.base.monitor;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * MetricsRegistry.java The metrics of the operations of the application, by name, and the sources of the other metrics. The recorders keep the
+ * OperationMetrics they get, so looking an operation up by name happens once per operation rather than once per call.
+ * 
+ * @author jmalkan
+ */
+public final class MetricsRegistry {
+  private static final MetricsRegistry SHARED = new MetricsRegistry();
+  
+  private final ConcurrentMap<String, OperationMetrics> operations = new ConcurrentHashMap<String, OperationMetrics>();
+  private final List<MetricsSource> sources = new CopyOnWriteArrayList<MetricsSource>();
+  
+  /**
+   * @return The registry shared by the application.
+   */
+  public static MetricsRegistry getInstance() {
+    return SHARED;
+  }
+  
+  /**
+   * Gets the metrics of an operation, registering them on first use.
+   * 
+   * @param name The name of the operation.
+   * @return The metrics of the operation.
+   */
+  public OperationMetrics getOperation(final String name) {
+    OperationMetrics operation = this.operations.get(name);
+    
+    if (operation == null) {
+      OperationMetrics newOperation = new OperationMetrics(name);
+      operation = this.operations.putIfAbsent(name, newOperation);
+      
+      if (operation == null)
+        operation = newOperation;
+    }
+    
+    return operation;
+  }
+  
+  /**
+   * @return The metrics of every operation, sorted by name.
+   */
+  public Map<String, OperationMetrics> getOperations() {
+    return Collections.unmodifiableMap(new TreeMap<String, OperationMetrics>(this.operations));
+  }
+  
+  /**
+   * Registers a source of metrics, included in every report from then on.
+   * 
+   * @param source The source.
+   */
+  public void register(final MetricsSource source) {
+    this.sources.add(source);
+  }
+  
+  /**
+   * Reads the metrics of every operation, with the calls, errors, throughput and latencies of each labeled by its name, and the metrics of every
+   * source.
+   * 
+   * @return The report.
+   */
+  public MetricsReport report() {
+    MetricsReport report = new MetricsReport();
+    
+    for (OperationMetrics operation : this.getOperations().values()) {
+      String name = operation.getName();
+      
+      report.add("backend_operation_calls_total", MetricsReport.COUNTER, "Calls of the operation.", Long.valueOf(operation.getCalls()), "operation",
+                 name);
+      report.add("backend_operation_errors_total", MetricsReport.COUNTER, "Calls of the operation that threw.", Long.valueOf(operation.getErrors()),
+                 "operation", name);
+      report.add("backend_operation_throughput", MetricsReport.GAUGE, "Mean calls of the operation per second since its first call.",
+                 Double.valueOf(operation.getThroughput()), "operation", name);
+      report.addLatencies("backend_operation_latency_microseconds", "Latency of the calls of the operation.", operation.getLatencies(), "operation",
+                          name);
+    }
+    
+    for (MetricsSource source : this.sources) {
+      source.report(report);
+    }
+    
+    return report;
+  }
+}
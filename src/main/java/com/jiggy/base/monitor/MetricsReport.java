@@ -0,0 +1,161 @@
+package com.jiggy.base.monitor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MetricsReport.java The values of the metrics at one time, grouped in families of one name and type, written either as a map for JSON or in the
+ * Prometheus text format. Counters are totals since start; rates and deltas are left to the reader.
+ * 
+ * @author jmalkan
+ */
+public final class MetricsReport {
+  public static final String COUNTER = "counter";
+  public static final String GAUGE = "gauge";
+  public static final String SUMMARY = "summary";
+  public static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+  
+  private static final double[] PERCENTILES = new double[] {50, 95, 99, 100};
+  private static final String[] QUANTILES = new String[] {"0.5", "0.95", "0.99", "1"};
+  
+  private final Map<String, Family> families = new LinkedHashMap<String, Family>();
+  
+  /**
+   * Adds a value.
+   * 
+   * @param name The name of the family, such as "backend_operation_calls_total".
+   * @param type The type of the family: COUNTER, GAUGE or SUMMARY.
+   * @param help The description of the family.
+   * @param value The value.
+   * @param labels The labels of the value, as name and value pairs.
+   */
+  public void add(final String name, final String type, final String help, final Number value, final String... labels) {
+    this.addSample(name, type, help, name, value, labels);
+  }
+  
+  /**
+   * Adds a latency histogram as a summary in microseconds, with its 50th, 95th and 99th percentiles, maximum, sum and count.
+   * 
+   * @param name The name of the family.
+   * @param help The description of the family.
+   * @param latencies The latencies.
+   * @param labels The labels of the histogram, as name and value pairs.
+   */
+  public void addLatencies(final String name, final String help, final LatencyHistogram latencies, final String... labels) {
+    LatencyHistogram.Snapshot snapshot = latencies.getSnapshot();
+    
+    for (int i = 0; i < PERCENTILES.length; i++) {
+      this.addSample(name, SUMMARY, help, name, Long.valueOf(snapshot.getPercentile(PERCENTILES[i])), append(labels, "quantile", QUANTILES[i]));
+    }
+    
+    this.addSample(name, SUMMARY, help, name + "_sum", Long.valueOf(snapshot.getSum()), labels);
+    this.addSample(name, SUMMARY, help, name + "_count", Long.valueOf(snapshot.getCount()), labels);
+  }
+  
+  /**
+   * @return Every family by name, each a list of its samples, a sample being a map of its labels and its "value", and its "name" if it differs from
+   *         the name of the family.
+   */
+  public Map<String, Object> toMap() {
+    Map<String, Object> map = new LinkedHashMap<String, Object>();
+    
+    for (Map.Entry<String, Family> entry : this.families.entrySet()) {
+      List<Map<String, Object>> samples = new ArrayList<Map<String, Object>>();
+      
+      for (Sample sample : entry.getValue().samples) {
+        Map<String, Object> sampleMap = new LinkedHashMap<String, Object>();
+        
+        if (!sample.name.equals(entry.getKey()))
+          sampleMap.put("name", sample.name);
+        
+        for (int i = 0; i + 1 < sample.labels.length; i += 2) {
+          sampleMap.put(sample.labels[i], sample.labels[i + 1]);
+        }
+        
+        sampleMap.put("value", sample.value);
+        samples.add(sampleMap);
+      }
+      
+      map.put(entry.getKey(), samples);
+    }
+    
+    return map;
+  }
+  
+  /**
+   * Writes the report in the Prometheus text format.
+   * 
+   * @param out Where to write the report.
+   * @throws IOException If the report could not be written.
+   */
+  public void writePrometheus(final Appendable out) throws IOException {
+    for (Map.Entry<String, Family> entry : this.families.entrySet()) {
+      Family family = entry.getValue();
+      
+      out.append("# HELP ").append(entry.getKey()).append(' ').append(family.help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+      out.append("# TYPE ").append(entry.getKey()).append(' ').append(family.type).append('\n');
+      
+      for (Sample sample : family.samples) {
+        out.append(sample.name);
+        
+        for (int i = 0; i + 1 < sample.labels.length; i += 2) {
+          out.append(i == 0 ? '{' : ',').append(sample.labels[i]).append("=\"");
+          out.append(sample.labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n")).append('"');
+        }
+        
+        if (sample.labels.length > 1)
+          out.append('}');
+        
+        out.append(' ').append(String.valueOf(sample.value)).append('\n');
+      }
+    }
+  }
+  
+  private void addSample(final String familyName, final String type, final String help, final String name, final Number value,
+      final String[] labels) {
+    Family family = this.families.get(familyName);
+    
+    if (family == null) {
+      family = new Family(type, help);
+      this.families.put(familyName, family);
+    }
+    
+    family.samples.add(new Sample(name, labels, value));
+  }
+  
+  private static String[] append(final String[] labels, final String name, final String value) {
+    String[] appended = new String[labels.length + 2];
+    
+    System.arraycopy(labels, 0, appended, 0, labels.length);
+    appended[labels.length] = name;
+    appended[labels.length + 1] = value;
+    
+    return appended;
+  }
+  
+  private static final class Family {
+    private final String type;
+    private final String help;
+    private final List<Sample> samples = new ArrayList<Sample>();
+    
+    Family(final String type, final String help) {
+      this.type = type;
+      this.help = help;
+    }
+  }
+  
+  private static final class Sample {
+    private final String name;
+    private final String[] labels;
+    private final Number value;
+    
+    Sample(final String name, final String[] labels, final Number value) {
+      this.name = name;
+      this.labels = labels;
+      this.value = value;
+    }
+  }
+}
@@ -0,0 +1,15 @@
+package com.jiggy.base.monitor;
+
+/**
+ * MetricsSource.java A component that adds its metrics, such as the counters of its caches, to the reports of the MetricsRegistry.
+ * 
+ * @author jmalkan
+ */
+public interface MetricsSource {
+  /**
+   * Adds the current values of the metrics of this source to the report. Called on every read of the metrics, so it must only read counters.
+   * 
+   * @param report The report.
+   */
+  void report(MetricsReport report);
+}
@@ -0,0 +1,87 @@
+package com.jiggy.base.monitor;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * OperationMetrics.java The latencies, calls and errors of one operation, such as a service method.
+ * 
+ * @author jmalkan
+ */
+public final class OperationMetrics {
+  private final String name;
+  private final long startTime = System.currentTimeMillis();
+  private final LatencyHistogram latencies = new LatencyHistogram();
+  private final AtomicLong errors = new AtomicLong();
+  
+  /**
+   * Creates a new instance of com.jiggy.base.monitor.OperationMetrics.java and Performs Initialization
+   * 
+   * @param name The name of the operation.
+   */
+  public OperationMetrics(final String name) {
+    super();
+    this.name = name;
+  }
+  
+  /**
+   * Records a call.
+   * 
+   * @param nanos The latency of the call in nanoseconds.
+   * @param error true if the call threw.
+   */
+  public void record(final long nanos, final boolean error) {
+    this.latencies.record(nanos);
+    
+    if (error)
+      this.errors.incrementAndGet();
+  }
+  
+  /**
+   * Getter of the property <tt>name</tt>
+   * 
+   * @return The name of the operation.
+   */
+  public String getName() {
+    return this.name;
+  }
+  
+  /**
+   * Getter of the property <tt>startTime</tt>
+   * 
+   * @return The time in milliseconds the operation was first called, from which its throughput is measured.
+   */
+  public long getStartTime() {
+    return this.startTime;
+  }
+  
+  /**
+   * Getter of the property <tt>latencies</tt>
+   * 
+   * @return The histogram of the latencies of the calls.
+   */
+  public LatencyHistogram getLatencies() {
+    return this.latencies;
+  }
+  
+  /**
+   * @return The number of calls.
+   */
+  public long getCalls() {
+    return this.latencies.getCount();
+  }
+  
+  /**
+   * @return The number of calls that threw.
+   */
+  public long getErrors() {
+    return this.errors.get();
+  }
+  
+  /**
+   * @return The mean number of calls per second since the first call.
+   */
+  public double getThroughput() {
+    long elapsed = Math.max(1, System.currentTimeMillis() - this.startTime);
+    return this.getCalls() * 1000.0 / elapsed;
+  }
+}
@@ -0,0 +1,92 @@
+package com.jiggy.base.monitor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+
+/**
+ * SampledLogger.java Logs repeated events at info level without logging each one. The first event of every key is logged in full; the later ones are
+ * only counted, and the counts of all the keys are logged together at most once per interval. The number of keys is bounded, the events of the keys
+ * beyond the bound are counted under one overflow key.
+ * 
+ * <p>
+ * Counting is lock free, so the logger can be called on every request.
+ * 
+ * @author jmalkan
+ */
+public final class SampledLogger {
+  private static final int MAX_KEYS = 1024;
+  private static final String OVERFLOW_KEY = "(other)";
+  
+  private final Logger logger;
+  private final long interval;
+  private final ConcurrentMap<String, AtomicLong> counts = new ConcurrentHashMap<String, AtomicLong>();
+  private final AtomicLong nextFlush;
+  
+  /**
+   * Creates a new instance of com.jiggy.base.monitor.SampledLogger.java and Performs Initialization
+   * 
+   * @param logger The logger the events and their counts are written to.
+   * @param interval The minimum time in milliseconds between two logs of the counts.
+   */
+  public SampledLogger(final Logger logger, final long interval) {
+    super();
+    this.logger = logger;
+    this.interval = TimeUnit.MILLISECONDS.toNanos(interval);
+    this.nextFlush = new AtomicLong(System.nanoTime() + this.interval);
+  }
+  
+  /**
+   * Records an event, logging it if it is the first of its key.
+   * 
+   * @param key The key the event is counted by, of a bounded set such as a resource and an outcome, never an id.
+   * @param format The slf4j format of the message logged for the first event of the key.
+   * @param arguments The arguments of the message.
+   */
+  public void log(final String key, final String format, final Object... arguments) {
+    if (!this.logger.isInfoEnabled())
+      return;
+    
+    AtomicLong count = this.counts.get(key);
+    
+    if (count == null) {
+      boolean overflow = this.counts.size() >= MAX_KEYS;
+      AtomicLong newCount = new AtomicLong();
+      
+      count = this.counts.putIfAbsent(overflow ? OVERFLOW_KEY : key, newCount);
+      
+      if (count == null) {
+        count = newCount;
+        
+        if (!overflow)
+          this.logger.info(format, arguments);
+      }
+    }
+    
+    count.incrementAndGet();
+    
+    long now = System.nanoTime();
+    long next = this.nextFlush.get();
+    
+    if (now - next >= 0 && this.nextFlush.compareAndSet(next, now + this.interval))
+      this.flush();
+  }
+  
+  /**
+   * Logs the counts of the events of every key since the previous flush, and resets them.
+   */
+  public void flush() {
+    long seconds = TimeUnit.NANOSECONDS.toSeconds(this.interval);
+    
+    for (Map.Entry<String, AtomicLong> entry : this.counts.entrySet()) {
+      long count = entry.getValue().getAndSet(0);
+      
+      if (count > 0)
+        this.logger.info("{}: {} times in the last {}s", new Object[] {entry.getKey(), Long.valueOf(count), Long.valueOf(seconds)});
+    }
+  }
+}
@@ -0,0 +1,426 @@
+package com.jiggy.base.monitor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Tracer.java Traces the requests in process. A request opens the root span of its trace, and the layers it goes through open child spans on the
+ * same thread, so one trace shows where the time of a request went from the controller to the service and the data store. Without a trace opened,
+ * opening a span costs a thread local lookup.
+ * 
+ * <p>
+ * The sampling is decided once a trace is complete: the traces with an error or slower than the slow threshold are all kept, and one in sampleRate
+ * of the others. Kept traces go to a lock free ring buffer of the latest ones. A trace keeps at most MAX_SPANS spans; the later ones are only timed
+ * and counted as dropped.
+ * 
+ * @author jmalkan
+ */
+public final class Tracer {
+  public static final long DEFAULT_SLOW_THRESHOLD = 500;
+  public static final int DEFAULT_SAMPLE_RATE = 100;
+  public static final int DEFAULT_CAPACITY = 256;
+  public static final int MAX_SPANS = 256;
+  
+  private static final Tracer SHARED = new Tracer();
+  
+  private final ThreadLocal<Span> current = new ThreadLocal<Span>();
+  private final AtomicLong sequence = new AtomicLong();
+  private volatile AtomicReferenceArray<Trace> traces = new AtomicReferenceArray<Trace>(DEFAULT_CAPACITY);
+  private volatile long slowThreshold = DEFAULT_SLOW_THRESHOLD;
+  private volatile int sampleRate = DEFAULT_SAMPLE_RATE;
+  
+  /**
+   * @return The tracer shared by the application.
+   */
+  public static Tracer getInstance() {
+    return SHARED;
+  }
+  
+  /**
+   * Opens a trace on the current thread. A trace already open on the thread is left open, the new one nesting as a child span of it.
+   * 
+   * @param traceId The id of the trace, generated or passed by the caller of the request.
+   * @param name The name of the root span, such as the method and URI of the request.
+   * @return The root span, to end.
+   */
+  public Span startTrace(final String traceId, final String name) {
+    Span parent = this.current.get();
+    Span span = parent == null ? new Span(new Trace(traceId, name), null, null, name) : new Span(parent.trace, parent, parent, name);
+    
+    this.current.set(span);
+    
+    return span;
+  }
+  
+  /**
+   * Opens a child span of the current span of the current thread.
+   * 
+   * @param name The name of the span, such as the name of the operation.
+   * @return The span, to end, or null if no trace is open on the thread.
+   */
+  public Span startSpan(final String name) {
+    Span parent = this.current.get();
+    
+    if (parent == null)
+      return null;
+    
+    Span span = new Span(parent.trace, parent, parent, name);
+    this.current.set(span);
+    
+    return span;
+  }
+  
+  /**
+   * Opens a child span of a span of another thread on the current thread, for the work that thread handed over. Ending it leaves the current thread
+   * with the span it had before.
+   * 
+   * @param parent The span of the thread that handed the work over, may be null.
+   * @param name The name of the span, such as the name of the work.
+   * @return The span, to end on the current thread, or null if the parent is null.
+   */
+  public Span startSpan(final Span parent, final String name) {
+    if (parent == null)
+      return null;
+    
+    Span span = new Span(parent.trace, parent, this.current.get(), name);
+    this.current.set(span);
+    
+    return span;
+  }
+  
+  /**
+   * Leaves a span open but no longer current on the current thread, making the span that was current when it started the current span again. It is
+   * for a request that completes asynchronously: its span is ended when the request completes, by a thread with no trace open.
+   * 
+   * @param span The span returned by startTrace or startSpan, may be null.
+   */
+  public void detach(final Span span) {
+    if (span == null || this.current.get() != span)
+      return;
+    
+    if (span.previous == null)
+      this.current.remove();
+    else
+      this.current.set(span.previous);
+  }
+  
+  /**
+   * @return The current span of the current thread, to hand over with work to another thread, or null if no trace is open on the thread.
+   */
+  public Span getCurrentSpan() {
+    return this.current.get();
+  }
+  
+  /**
+   * @return Whether a trace is open on the current thread.
+   */
+  public boolean isTracing() {
+    return this.current.get() != null;
+  }
+  
+  /**
+   * @return The id of the trace open on the current thread, or null if none.
+   */
+  public String getCurrentTraceId() {
+    Span span = this.current.get();
+    
+    return span == null ? null : span.trace.getId();
+  }
+  
+  /**
+   * Ends a span, making the span that was current when it started the current span again. Ending the root span completes the trace, which is kept if
+   * it is sampled.
+   * 
+   * @param span The span returned by startTrace or startSpan, may be null.
+   * @param error Whether the work of the span failed.
+   */
+  public void end(final Span span, final boolean error) {
+    if (span == null)
+      return;
+    
+    span.end(error);
+    
+    if (span.previous == null)
+      this.current.remove();
+    else
+      this.current.set(span.previous);
+    
+    if (span.parent != null)
+      return;
+    
+    Trace trace = span.trace;
+    
+    if (trace.isError() || span.duration >= TimeUnit.MILLISECONDS.toNanos(this.slowThreshold)
+        || (this.sampleRate > 0 && ThreadLocalRandom.current().nextInt(this.sampleRate) == 0)) {
+      AtomicReferenceArray<Trace> buffer = this.traces;
+      long sequenceNumber = this.sequence.incrementAndGet();
+      
+      trace.sequenceNumber = sequenceNumber;
+      buffer.set((int) (sequenceNumber % buffer.length()), trace);
+    }
+  }
+  
+  /**
+   * @return The kept traces still in the ring buffer, latest first.
+   */
+  public List<Trace> getTraces() {
+    AtomicReferenceArray<Trace> buffer = this.traces;
+    List<Trace> traces = new ArrayList<Trace>();
+    long last = this.sequence.get();
+    
+    for (long sequenceNumber = last; sequenceNumber > 0 && sequenceNumber > last - buffer.length(); sequenceNumber--) {
+      Trace trace = buffer.get((int) (sequenceNumber % buffer.length()));
+      
+      if (trace != null && trace.sequenceNumber == sequenceNumber)
+        traces.add(trace);
+    }
+    
+    return traces;
+  }
+  
+  /**
+   * @param traceId The id of the trace.
+   * @return The latest kept trace of the id, or null if it was not kept or was overwritten by later ones.
+   */
+  public Trace getTrace(final String traceId) {
+    for (Trace trace : this.getTraces()) {
+      if (trace.getId().equals(traceId))
+        return trace;
+    }
+    
+    return null;
+  }
+  
+  /**
+   * Getter of the property <tt>slowThreshold</tt>
+   * 
+   * @return The duration in milliseconds from which a trace is always kept.
+   */
+  public long getSlowThreshold() {
+    return this.slowThreshold;
+  }
+  
+  /**
+   * Setter of the property <tt>slowThreshold</tt>
+   * 
+   * @param slowThreshold The duration in milliseconds from which a trace is always kept.
+   */
+  public void setSlowThreshold(final long slowThreshold) {
+    this.slowThreshold = slowThreshold;
+  }
+  
+  /**
+   * Getter of the property <tt>sampleRate</tt>
+   * 
+   * @return One in how many of the traces neither slow nor failed is kept, 0 for none.
+   */
+  public int getSampleRate() {
+    return this.sampleRate;
+  }
+  
+  /**
+   * Setter of the property <tt>sampleRate</tt>
+   * 
+   * @param sampleRate One in how many of the traces neither slow nor failed is kept, 0 for none.
+   */
+  public void setSampleRate(final int sampleRate) {
+    this.sampleRate = sampleRate;
+  }
+  
+  /**
+   * Getter of the property <tt>capacity</tt>
+   * 
+   * @return The number of traces kept.
+   */
+  public int getCapacity() {
+    return this.traces.length();
+  }
+  
+  /**
+   * Setter of the property <tt>capacity</tt>. Drops the traces kept so far.
+   * 
+   * @param capacity The number of traces kept.
+   */
+  public void setCapacity(final int capacity) {
+    this.traces = new AtomicReferenceArray<Trace>(Math.max(1, capacity));
+  }
+  
+  /**
+   * The spans of one request, in the order they were opened.
+   */
+  public static final class Trace {
+    private final String id;
+    private final String name;
+    private final long time = System.currentTimeMillis();
+    private final long start = System.nanoTime();
+    private final List<Span> spans = new ArrayList<Span>();
+    private int droppedSpans;
+    private boolean error;
+    private volatile long sequenceNumber;
+    
+    Trace(final String id, final String name) {
+      this.id = id;
+      this.name = name;
+    }
+    
+    /**
+     * @return The index of the span in the trace, or -1 if the trace is full.
+     */
+    synchronized int add(final Span span) {
+      if (this.spans.size() >= MAX_SPANS) {
+        this.droppedSpans++;
+        return -1;
+      }
+      
+      this.spans.add(span);
+      
+      return this.spans.size() - 1;
+    }
+    
+    synchronized void fail() {
+      this.error = true;
+    }
+    
+    /**
+     * Getter of the property <tt>id</tt>
+     * 
+     * @return The id of the trace.
+     */
+    public String getId() {
+      return this.id;
+    }
+    
+    /**
+     * Getter of the property <tt>name</tt>
+     * 
+     * @return The name of the root span.
+     */
+    public String getName() {
+      return this.name;
+    }
+    
+    /**
+     * Getter of the property <tt>time</tt>
+     * 
+     * @return The time the trace started, in milliseconds since the epoch.
+     */
+    public long getTime() {
+      return this.time;
+    }
+    
+    /**
+     * @return The duration of the root span in milliseconds, -1 while it runs.
+     */
+    public double getDuration() {
+      List<Span> spans = this.getSpans();
+      
+      return spans.isEmpty() ? -1 : spans.get(0).getDuration();
+    }
+    
+    /**
+     * @return Whether any span of the trace failed.
+     */
+    public synchronized boolean isError() {
+      return this.error;
+    }
+    
+    /**
+     * @return The spans kept, the root span first.
+     */
+    public synchronized List<Span> getSpans() {
+      return Collections.unmodifiableList(new ArrayList<Span>(this.spans));
+    }
+    
+    /**
+     * Getter of the property <tt>droppedSpans</tt>
+     * 
+     * @return The number of spans beyond MAX_SPANS, timed but not kept.
+     */
+    public synchronized int getDroppedSpans() {
+      return this.droppedSpans;
+    }
+  }
+  
+  /**
+   * A timed piece of work of a trace.
+   */
+  public static final class Span {
+    private final Trace trace;
+    private final Span parent;
+    private final Span previous;
+    private final String name;
+    private final long start = System.nanoTime();
+    private final int index;
+    private volatile long duration = -1;
+    private volatile boolean error;
+    
+    Span(final Trace trace, final Span parent, final Span previous, final String name) {
+      this.trace = trace;
+      this.parent = parent;
+      this.previous = previous;
+      this.name = name;
+      this.index = trace.add(this);
+    }
+    
+    void end(final boolean error) {
+      this.duration = System.nanoTime() - this.start;
+      this.error = error;
+      
+      if (error)
+        this.trace.fail();
+    }
+    
+    /**
+     * Getter of the property <tt>index</tt>
+     * 
+     * @return The index of the span in its trace.
+     */
+    public int getIndex() {
+      return this.index;
+    }
+    
+    /**
+     * @return The index of the parent span in the trace, -1 for the root span or a parent that was not kept.
+     */
+    public int getParentIndex() {
+      return this.parent == null ? -1 : this.parent.index;
+    }
+    
+    /**
+     * Getter of the property <tt>name</tt>
+     * 
+     * @return The name of the span.
+     */
+    public String getName() {
+      return this.name;
+    }
+    
+    /**
+     * @return The start of the span in milliseconds from the start of its trace.
+     */
+    public double getStart() {
+      return (this.start - this.trace.start) / 1000000.0;
+    }
+    
+    /**
+     * @return The duration of the span in milliseconds, -1 while it runs.
+     */
+    public double getDuration() {
+      return this.duration < 0 ? -1 : this.duration / 1000000.0;
+    }
+    
+    /**
+     * Getter of the property <tt>error</tt>
+     * 
+     * @return Whether the work of the span failed.
+     */
+    public boolean isError() {
+      return this.error;
+    }
+  }
+}
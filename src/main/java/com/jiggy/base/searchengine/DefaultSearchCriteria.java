@@ -22,6 +22,14 @@ public class DefaultSearchCriteria implements SearchCriteria {
   
   private String queryVariables = null;
   
+  private String after = null;
+  private String nextPageToken = null;
+  
+  private CountMode countMode = CountMode.EXACT;
+  private boolean nextPageAvailable = false;
+  
+  private String query = null;
+  
   @Override
   public String getSortBy() {
     return sortBy;
@@ -115,6 +123,9 @@ public class DefaultSearchCriteria implements SearchCriteria {
     result = (int) (prime * result + rowCount);
     result = prime * result + (sortBy == null ? 0 : sortBy.hashCode());
     result = prime * result + (queryVariables == null ? 0 : queryVariables.hashCode());
+    result = prime * result + (after == null ? 0 : after.hashCode());
+    result = prime * result + (countMode == null ? 0 : countMode.hashCode());
+    result = prime * result + (query == null ? 0 : query.hashCode());
     
     return result;
   }
@@ -150,6 +161,12 @@ public class DefaultSearchCriteria implements SearchCriteria {
         equal = false;
       } else if (queryVariables != null && !queryVariables.equals(other.queryVariables)) {
         equal = false;
+      } else if (after == null ? other.after != null : !after.equals(other.after)) {
+        equal = false;
+      } else if (countMode != other.countMode) {
+        equal = false;
+      } else if (query == null ? other.query != null : !query.equals(other.query)) {
+        equal = false;
       } else {
         equal = true;
       }
@@ -166,4 +183,59 @@ public class DefaultSearchCriteria implements SearchCriteria {
   public void setQueryVariables(final String queryVariables) {
     this.queryVariables = queryVariables;
   }
+  
+  @Override
+  public boolean isKeysetPaginationEnabled() {
+    return getAfter() != null && getLimit() > 0;
+  }
+  
+  @Override
+  public String getAfter() {
+    return after;
+  }
+  
+  @Override
+  public void setAfter(final String after) {
+    this.after = after;
+  }
+  
+  @Override
+  public String getNextPageToken() {
+    return nextPageToken;
+  }
+  
+  @Override
+  public void setNextPageToken(final String nextPageToken) {
+    this.nextPageToken = nextPageToken;
+  }
+  
+  @Override
+  public CountMode getCountMode() {
+    return countMode;
+  }
+  
+  @Override
+  public void setCountMode(final CountMode countMode) {
+    this.countMode = countMode == null ? CountMode.EXACT : countMode;
+  }
+  
+  @Override
+  public boolean isNextPageAvailable() {
+    return nextPageAvailable;
+  }
+  
+  @Override
+  public void setNextPageAvailable(final boolean nextPageAvailable) {
+    this.nextPageAvailable = nextPageAvailable;
+  }
+  
+  @Override
+  public String getQuery() {
+    return query;
+  }
+  
+  @Override
+  public void setQuery(final String query) {
+    this.query = query;
+  }
 }
\ No newline at end of file
@@ -2,44 +2,56 @@ package com.jiggy.base.searchengine;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
-import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 
+import com.jiggy.base.searchengine.FilterGroup.Junction;
+
 /**
- * This class holds a search expression used to filter JDO query results.
+ * This class holds a search expression used to filter JDO query results. The expression is the AND of its nodes: terms, and the OR groups and
+ * negations compiled from filter strings by the {@link FilterParser}. Terms of the equality operators replace an earlier term of the same key.
  * 
  * @author jmalkan
  */
 public class FilterExpression {
-  private Pattern QUERY_PARSER = Pattern.compile("([^!]*)(!?+=)(.*)");
+  /** The prefix of the positional parameters of the rendered query. */
+  public static final String PARAM_PREFIX = "p";
+  /** Appended to the parameter of the lower bound of a between term to name the parameter of its upper bound. */
+  public static final String UPPER_BOUND_SUFFIX = "_to";
+  /** The escape character of the LIKE patterns rendered for prefix terms. */
+  public static final char LIKE_ESCAPE = '!';
   
   public enum QueryMode {
-    JPA("AND", "="), JDO("&&", "=="), HQL("AND", "=");
+    JPA("AND", "=", "<>", "OR", "NOT "), JDO("&&", "==", "!=", "||", "!"), HQL("AND", "=", "<>", "OR", "NOT ");
     
     private final String andToken;
     private final String equalsToken;
+    private final String notEqualsToken;
+    private final String orToken;
+    private final String notToken;
     
-    QueryMode(String andToken, String equalsToken) {
+    QueryMode(String andToken, String equalsToken, String notEqualsToken, String orToken, String notToken) {
       this.andToken = andToken;
       this.equalsToken = equalsToken;
+      this.notEqualsToken = notEqualsToken;
+      this.orToken = orToken;
+      this.notToken = notToken;
     }
   }
   
   private final QueryMode mode;
-  private final Map<String, FilterTerm> terms;
+  private final Map<String, FilterNode> nodes;
   
   public FilterExpression(final QueryMode mode) {
     this.mode = mode;
-    this.terms = new LinkedHashMap<String, FilterTerm>();
+    this.nodes = new LinkedHashMap<String, FilterNode>();
   }
   
   public FilterExpression() {
@@ -49,89 +61,138 @@ public class FilterExpression {
   public FilterExpression(final Map<String, String> terms) {
     this(QueryMode.JDO);
     for (Entry<String, String> entry : terms.entrySet()) {
-      this.terms.put(entry.getKey(), new FilterTerm(entry.getKey(), entry.getValue()));
+      this.addTerm(new FilterTerm(entry.getKey(), entry.getValue()));
     }
   }
   
+  public QueryMode getMode() {
+    return mode;
+  }
+  
   public void addTerm(FilterTerm term) {
-    terms.put(term.getKey(), term);
+    nodes.put(term.getOperator().isEquality() ? term.getKey() : term.getKey() + term.getOperator().getSymbol(), term);
   }
   
+  /**
+   * Adds the nodes of the compiled filter string.
+   * 
+   * @param filterString The filter string.
+   * @throws IllegalArgumentException If the filter string is not valid.
+   * 
+   * @see FilterParser
+   */
   public void addTerms(final String filterString) {
-    if (filterString != null && !SearchCriteria.WILDCARD_TOKEN.equals(filterString.trim())) {
-      String[] filterPairs = filterString.trim().split("&");
+    for (FilterNode node : FilterParser.getInstance().parse(filterString, mode)) {
+      this.addNode(node);
+    }
+  }
+  
+  public void addNode(final FilterNode node) {
+    if (node instanceof FilterTerm)
+      this.addTerm((FilterTerm) node);
+    else
+      nodes.put(node.toString(), node);
+  }
+  
+  /**
+   * @return The nodes ANDed by this expression.
+   */
+  public Collection<FilterNode> nodes() {
+    return Collections.unmodifiableCollection(nodes.values());
+  }
+  
+  /**
+   * @return The top level terms of this expression, leaving out the groups and negations.
+   */
+  public Collection<FilterTerm> terms() {
+    List<FilterTerm> terms = new ArrayList<FilterTerm>(nodes.size());
+    for (FilterNode node : nodes.values()) {
+      if (node instanceof FilterTerm) terms.add((FilterTerm) node);
+    }
+    return terms;
+  }
+  
+  /**
+   * @return Every term of this expression, those within groups and negations included, in the order they are rendered.
+   */
+  public List<FilterTerm> leaves() {
+    final List<FilterTerm> leaves = new ArrayList<FilterTerm>(nodes.size());
+    FilterVisitor<Void> collector = new FilterVisitor<Void>() {
+      @Override
+      public Void visitTerm(final FilterTerm term) {
+        leaves.add(term);
+        return null;
+      }
       
-      for (String filterPair : filterPairs) {
-        Matcher matcher = QUERY_PARSER.matcher(filterPair);
-        if (matcher.matches() && matcher.groupCount() == 3) {
-          String key = matcher.group(1);
-          String operator = matcher.group(2);
-          String value = matcher.group(3);
-          FilterTerm term = null;
-          if ("!=".equals(operator)) {
-            term = new FilterTerm(Op.EXCLUDE, key, value, mode);
-          } else if ("=".equals(operator)) {
-            term = new FilterTerm(Op.INCLUDE, key, value, mode);
-          } else {
-            throw new IllegalArgumentException("Invalid operator  '" + operator + "' for term " + filterPair);
-          }
-          this.addTerm(term);
+      @Override
+      public Void visitGroup(final FilterGroup group) {
+        for (FilterNode child : group.getChildren()) {
+          child.accept(this);
         }
+        return null;
       }
+      
+      @Override
+      public Void visitNot(final FilterNot not) {
+        return not.getChild().accept(this);
+      }
+    };
+    
+    for (FilterNode node : nodes.values()) {
+      node.accept(collector);
     }
+    return leaves;
   }
   
-  public Collection<FilterTerm> terms() {
-    return terms.values();
+  public int numTerms() {
+    return nodes.size();
   }
   
-  public int numTerms() {
-    return terms.size();
+  public boolean isEmpty() {
+    return nodes.isEmpty();
   }
   
   public FilterTerm getTerm(final String key) {
-    return terms.get(key);
+    FilterNode node = nodes.get(key);
+    return node instanceof FilterTerm ? (FilterTerm) node : null;
   }
   
   public Map<String, String> toMap() {
-    Map<String, String> result = new HashMap<String, String>(terms.size());
-    for (Entry<String, FilterTerm> entry : terms.entrySet()) {
-      result.put(entry.getKey(), entry.getValue().getValue());
+    Map<String, String> result = new HashMap<String, String>(nodes.size());
+    for (FilterTerm term : terms()) {
+      result.put(term.getKey(), term.getValue());
     }
     return result;
   }
   
   public String toQueryString(final FilterAdvice handler) {
+    return toQueryString(handler, new HashMap<Object, Object>());
+  }
+  
+  /**
+   * Renders the expression in the query mode of this expression, binding the values of the terms to positional parameters in one pass.
+   * 
+   * @param handler The advice converting the values of the terms.
+   * @param queryParams The map the parameter values are put in.
+   * @return The query string, empty if there is no term.
+   */
+  public String toQueryString(final FilterAdvice handler, final Map<Object, Object> queryParams) {
+    QueryRenderer renderer = new QueryRenderer(mode, handler, queryParams);
     StringBuilder filterBuffer = new StringBuilder();
-    for (FilterTerm term : terms()) {
+    for (FilterNode node : nodes.values()) {
       if (filterBuffer.length() > 0) {
         filterBuffer.append(' ').append(mode.andToken).append(' ');
       }
-      filterBuffer.append(handler.getQueryString(term));
+      filterBuffer.append(node.accept(renderer));
     }
     return filterBuffer.toString();
   }
   
-  // public void appendToQuery(Query q, FilterAdvice advice) {
-  // if (numTerms() > 0) {
-  //
-  // StringBuilder whereClause = new StringBuilder();
-  // String sql = q.toString();
-  // int whereDelim = sql.indexOf("WHERE");
-  // if (whereDelim != -1) {
-  // whereClause.append(sql.substring(whereDelim + "WHERE".length()));
-  // }
-  // q.setFilter(whereClause + " " + mode.andToken + " " + toQueryString(advice));
-  // }
-  // }
-  
   public String toHttpString() {
     StringBuilder result = new StringBuilder();
-    Collection<FilterTerm> termValues = this.terms.values();
-    Iterator<FilterTerm> iter = termValues.iterator();
+    Iterator<FilterNode> iter = nodes.values().iterator();
     while (iter.hasNext()) {
-      FilterTerm term = iter.next();
-      term.toHttpString(result);
+      result.append(iter.next());
       if (iter.hasNext()) {
         result.append('&');
       }
@@ -140,20 +201,33 @@ public class FilterExpression {
   }
   
   public Map<Object, Object> getQueryParams(final FilterAdvice handler) {
-    
     Map<Object, Object> queryParams = new HashMap<Object, Object>();
-    for (FilterTerm entry : terms()) {
-      entry.toQueryParams(queryParams, handler);
-    }
+    toQueryString(handler, queryParams);
     return queryParams;
   }
   
+  /**
+   * Escapes the LIKE wildcards of the prefix with {@link #LIKE_ESCAPE} and appends the wildcard matching the rest.
+   * 
+   * @param prefix The prefix.
+   * @return The LIKE pattern.
+   */
+  public static String toLikePattern(final String prefix) {
+    StringBuilder pattern = new StringBuilder(prefix.length() + 2);
+    for (int i = 0; i < prefix.length(); i++) {
+      char c = prefix.charAt(i);
+      if (c == LIKE_ESCAPE || c == '%' || c == '_') pattern.append(LIKE_ESCAPE);
+      pattern.append(c);
+    }
+    return pattern.append('%').toString();
+  }
+  
   @Override
   public int hashCode() {
     final int prime = 31;
     int result = 1;
     result = prime * result + ((mode == null) ? 0 : mode.hashCode());
-    result = prime * result + ((terms == null) ? 0 : terms.hashCode());
+    result = prime * result + ((nodes == null) ? 0 : nodes.hashCode());
     return result;
   }
   
@@ -164,9 +238,9 @@ public class FilterExpression {
     if (getClass() != obj.getClass()) return false;
     FilterExpression other = (FilterExpression) obj;
     if (mode != other.mode) return false;
-    if (terms == null) {
-      if (other.terms != null) return false;
-    } else if (!terms.equals(other.terms)) return false;
+    if (nodes == null) {
+      if (other.nodes != null) return false;
+    } else if (!nodes.equals(other.nodes)) return false;
     return true;
   }
   
@@ -176,26 +250,48 @@ public class FilterExpression {
    */
   public interface FilterAdvice {
     List<Object> getParamValues(FilterTerm term);
-    
-    String getQueryString(FilterTerm term);
   }
   
   /**
    * FilterTerm Operator
    */
   public enum Op {
-    EXCLUDE, INCLUDE;
+    EXCLUDE("!="), INCLUDE("="), LESS("<"), LESS_OR_EQUAL("<="), GREATER(">"), GREATER_OR_EQUAL(">="), BETWEEN(" between "), PREFIX("^=");
+    
+    private final String symbol;
+    
+    Op(final String symbol) {
+      this.symbol = symbol;
+    }
+    
+    public String getSymbol() {
+      return symbol;
+    }
+    
+    /**
+     * @return true for the operators taking a list of comma separated values.
+     */
+    public boolean isMultiValued() {
+      return this == INCLUDE || this == EXCLUDE || this == BETWEEN;
+    }
+    
+    /**
+     * @return true for the operators of which a filter keeps one term per key.
+     */
+    public boolean isEquality() {
+      return this == INCLUDE || this == EXCLUDE;
+    }
   }
   
   /**
-   * This class holds a term within a filter expression. It is essentially just a name-value pair.
+   * This class holds a term within a filter expression. It is essentially just a name-value pair and an operator, and is immutable.
    */
-  public static class FilterTerm {
+  public static class FilterTerm implements FilterNode {
     
     private final QueryMode mode;
     private final String key;
     private final Op operator;
-    private String value;
+    private final String value;
     
     public FilterTerm(final String key, final String value) {
       this(Op.INCLUDE, key, value, QueryMode.JDO);
@@ -231,66 +327,68 @@ public class FilterExpression {
       return operator;
     }
     
-    public String toQueryString() {
-      StringBuilder result = new StringBuilder();
-      String paramName = getParameterizedKey();
-      
-      // If we are dealing with a set of values or the null set, use the "contains" operator,
-      // otherwise, use an "equals" operator
-      
-      if (StringUtils.contains(value, ',')) {
-        result.append(" :").append(paramName).append(".contains(").append(key).append(")");
-        if (operator == Op.EXCLUDE) {
-          result.append(" == false");
-        }
-      } else {
-        result.append(key);
-        if (operator == Op.EXCLUDE) {
-          result.append(" != :");
-        } else {
-          result.append(' ').append(mode.equalsToken).append(" :");
-        }
-        result.append(paramName);
-      }
-      return result.toString();
-    }
-    
-    private void toQueryParams(final Map<Object, Object> queryParams, final FilterAdvice handler) {
-      String paramName = getParameterizedKey();
-      List<Object> valuesList = handler.getParamValues(this);
-      if (valuesList.size() > 1) {
-        queryParams.put(paramName, valuesList);
-      } else if (valuesList.size() == 1) {
-        Object firstValue = valuesList.get(0);
-        queryParams.put(paramName, firstValue);
-      }
-    }
-    
-    public void addValue(final String toAdd) {
-      if (value == null || "".equals(value.trim())) {
-        value = toAdd;
-      } else {
-        String[] values = value.split(",");
-        if (!ArrayUtils.contains(values, toAdd)) {
-          value = value + "," + toAdd;
-        }
-      }
+    @Override
+    public <R> R accept(final FilterVisitor<R> visitor) {
+      return visitor.visitTerm(this);
     }
     
-    public void removeValue(final String toRemove) {
-      if (value != null) {
-        String[] values = value.split(",");
-        StringBuilder builder = new StringBuilder();
-        for (int i = 0; i < values.length; i++) {
-          if (!values[i].equals(toRemove)) {
-            if (builder.length() > 0) {
-              builder.append(',');
+    /**
+     * Renders this term and puts its parameter values in the map.
+     * 
+     * @param queryMode The query mode to render in.
+     * @param paramName The name of the parameter of this term.
+     * @param values The converted values of this term.
+     * @param queryParams The map the parameter values are put in.
+     * @return The rendered term.
+     */
+    public String toQueryString(final QueryMode queryMode, final String paramName, final List<Object> values, final Map<Object, Object> queryParams) {
+      StringBuilder result = new StringBuilder();
+      
+      switch (operator) {
+        case BETWEEN:
+          if (values.size() != 2) {
+            throw new IllegalArgumentException("Term " + this + " needs two bounds");
+          }
+          queryParams.put(paramName, values.get(0));
+          queryParams.put(paramName + UPPER_BOUND_SUFFIX, values.get(1));
+          result.append('(').append(key).append(" >= :").append(paramName).append(' ').append(queryMode.andToken).append(' ');
+          result.append(key).append(" <= :").append(paramName).append(UPPER_BOUND_SUFFIX).append(')');
+          break;
+        case PREFIX:
+          if (queryMode == QueryMode.JDO) {
+            queryParams.put(paramName, values.get(0));
+            result.append(key).append(".startsWith(:").append(paramName).append(')');
+          } else {
+            queryParams.put(paramName, toLikePattern(String.valueOf(values.get(0))));
+            result.append(key).append(" LIKE :").append(paramName).append(" ESCAPE '").append(LIKE_ESCAPE).append('\'');
+          }
+          break;
+        case LESS:
+        case LESS_OR_EQUAL:
+        case GREATER:
+        case GREATER_OR_EQUAL:
+          queryParams.put(paramName, values.get(0));
+          result.append(key).append(' ').append(operator.getSymbol()).append(" :").append(paramName);
+          break;
+        default:
+          // If we are dealing with a set of values, use the "contains" operator, otherwise, use an "equals" operator
+          if (values.size() > 1) {
+            queryParams.put(paramName, values);
+            if (queryMode == QueryMode.JDO) {
+              result.append(":").append(paramName).append(".contains(").append(key).append(")");
+              if (operator == Op.EXCLUDE) {
+                result.append(" == false");
+              }
+            } else {
+              result.append(key).append(operator == Op.EXCLUDE ? " NOT IN (:" : " IN (:").append(paramName).append(')');
             }
-            builder.append(values[i]);
+          } else {
+            queryParams.put(paramName, values.isEmpty() ? null : values.get(0));
+            result.append(key).append(' ').append(operator == Op.EXCLUDE ? queryMode.notEqualsToken : queryMode.equalsToken).append(" :");
+            result.append(paramName);
           }
-        }
-        value = builder.toString();
       }
+      return result.toString();
     }
     
     public List<Long> getLongValues() {
@@ -304,9 +402,12 @@ public class FilterExpression {
     
     public void toHttpString(final StringBuilder buffer) {
       buffer.append(key);
-      if (operator == Op.EXCLUDE) buffer.append("!");
-      buffer.append("=");
-      buffer.append(value);
+      buffer.append(operator.getSymbol());
+      if (value != null && StringUtils.containsAny(value, "&|()'\\")) {
+        buffer.append('\'').append(value.replace("\\", "\\\\").replace("'", "\\'")).append('\'');
+      } else {
+        buffer.append(value);
+      }
     }
     
     @Override
@@ -344,4 +445,42 @@ public class FilterExpression {
       return true;
     }
   }
-}
\ No newline at end of file
+  
+  /**
+   * Renders the nodes in a query mode, naming the parameter of each term by its position.
+   */
+  private static final class QueryRenderer implements FilterVisitor<String> {
+    private final QueryMode mode;
+    private final FilterAdvice handler;
+    private final Map<Object, Object> queryParams;
+    private int index;
+    
+    QueryRenderer(final QueryMode mode, final FilterAdvice handler, final Map<Object, Object> queryParams) {
+      this.mode = mode;
+      this.handler = handler;
+      this.queryParams = queryParams;
+    }
+    
+    @Override
+    public String visitTerm(final FilterTerm term) {
+      return term.toQueryString(mode, PARAM_PREFIX + index++, handler.getParamValues(term), queryParams);
+    }
+    
+    @Override
+    public String visitGroup(final FilterGroup group) {
+      StringBuilder result = new StringBuilder("(");
+      for (FilterNode child : group.getChildren()) {
+        if (result.length() > 1) {
+          result.append(' ').append(group.getJunction() == Junction.AND ? mode.andToken : mode.orToken).append(' ');
+        }
+        result.append(child.accept(this));
+      }
+      return result.append(')').toString();
+    }
+    
+    @Override
+    public String visitNot(final FilterNot not) {
+      return mode.notToken + "(" + not.getChild().accept(this) + ")";
+    }
+  }
+}
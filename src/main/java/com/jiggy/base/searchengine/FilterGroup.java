@@ -0,0 +1,91 @@
+package com.jiggy.base.searchengine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * FilterGroup.java An AND or OR group of filter nodes.
+ * 
+ * @author jmalkan
+ */
+public final class FilterGroup implements FilterNode {
+  
+  public enum Junction {
+    AND('&'), OR('|');
+    
+    private final char symbol;
+    
+    Junction(final char symbol) {
+      this.symbol = symbol;
+    }
+    
+    public char getSymbol() {
+      return symbol;
+    }
+  }
+  
+  private final Junction junction;
+  private final List<FilterNode> children;
+  
+  /**
+   * Creates a new instance of com.jiggy.base.searchengine.FilterGroup.java and Performs Initialization
+   * 
+   * @param junction How the children are joined.
+   * @param children The nodes of the group, at least two.
+   */
+  public FilterGroup(final Junction junction, final List<FilterNode> children) {
+    super();
+    
+    if (junction == null || children == null || children.size() < 2)
+      throw new IllegalArgumentException("A filter group needs a junction and at least two nodes");
+    
+    this.junction = junction;
+    this.children = Collections.unmodifiableList(new ArrayList<FilterNode>(children));
+  }
+  
+  public Junction getJunction() {
+    return junction;
+  }
+  
+  public List<FilterNode> getChildren() {
+    return children;
+  }
+  
+  @Override
+  public <R> R accept(final FilterVisitor<R> visitor) {
+    return visitor.visitGroup(this);
+  }
+  
+  @Override
+  public String toString() {
+    StringBuilder buffer = new StringBuilder("(");
+    
+    for (FilterNode child : children) {
+      if (buffer.length() > 1)
+        buffer.append(junction.getSymbol());
+      
+      buffer.append(child);
+    }
+    
+    return buffer.append(')').toString();
+  }
+  
+  @Override
+  public int hashCode() {
+    return 31 * junction.hashCode() + children.hashCode();
+  }
+  
+  @Override
+  public boolean equals(final Object obj) {
+    if (this == obj)
+      return true;
+    
+    if (!(obj instanceof FilterGroup))
+      return false;
+    
+    FilterGroup other = (FilterGroup) obj;
+    
+    return junction == other.junction && children.equals(other.children);
+  }
+}
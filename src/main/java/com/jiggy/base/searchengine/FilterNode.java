@@ -0,0 +1,20 @@
+package com.jiggy.base.searchengine;
+
+/**
+ * FilterNode.java A node of a compiled filter: a term, an AND or OR group of nodes, or the negation of a node. Nodes are immutable, so a compiled
+ * filter can be cached and shared by every search that uses the same filter string.
+ * 
+ * @author jmalkan
+ * 
+ * @see FilterParser
+ */
+public interface FilterNode {
+  
+  /**
+   * Dispatches to the visitor method of the type of this node.
+   * 
+   * @param visitor The visitor, typically rendering the node for a query dialect.
+   * @return The result of the visitor.
+   */
+  <R> R accept(FilterVisitor<R> visitor);
+}
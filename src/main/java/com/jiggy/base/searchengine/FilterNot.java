@@ -0,0 +1,48 @@
+package com.jiggy.base.searchengine;
+
+/**
+ * FilterNot.java The negation of a filter node.
+ * 
+ * @author jmalkan
+ */
+public final class FilterNot implements FilterNode {
+  private final FilterNode child;
+  
+  /**
+   * Creates a new instance of com.jiggy.base.searchengine.FilterNot.java and Performs Initialization
+   * 
+   * @param child The negated node.
+   */
+  public FilterNot(final FilterNode child) {
+    super();
+    
+    if (child == null)
+      throw new IllegalArgumentException("Cannot negate a null filter");
+    
+    this.child = child;
+  }
+  
+  public FilterNode getChild() {
+    return child;
+  }
+  
+  @Override
+  public <R> R accept(final FilterVisitor<R> visitor) {
+    return visitor.visitNot(this);
+  }
+  
+  @Override
+  public String toString() {
+    return "!(" + child + ")";
+  }
+  
+  @Override
+  public int hashCode() {
+    return 17 + child.hashCode();
+  }
+  
+  @Override
+  public boolean equals(final Object obj) {
+    return this == obj || (obj instanceof FilterNot && child.equals(((FilterNot) obj).child));
+  }
+}
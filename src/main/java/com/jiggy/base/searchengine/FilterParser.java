@@ -0,0 +1,381 @@
+package com.jiggy.base.searchengine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.jiggy.base.searchengine.FilterExpression.FilterTerm;
+import com.jiggy.base.searchengine.FilterExpression.Op;
+import com.jiggy.base.searchengine.FilterExpression.QueryMode;
+import com.jiggy.base.searchengine.FilterGroup.Junction;
+
+/**
+ * FilterParser.java Compiles a filter string into immutable filter nodes with a hand written scanner and recursive descent parser. Compiled filters
+ * are kept in a bounded LRU cache keyed by the filter string, so the security filters and the filters clients send again and again are parsed once.
+ * 
+ * <p>
+ * The grammar, from the lowest precedence up:
+ * 
+ * <pre>
+ * filter     := and ( '|' and )*
+ * and        := unary ( '&amp;' unary )*
+ * unary      := '!' unary | 'not' unary | '(' filter ')' | comparison
+ * comparison := key ( '=' | '!=' | '&lt;' | '&lt;=' | '&gt;' | '&gt;=' | '^=' ) value
+ *             | key ( 'in' | 'between' | 'prefix' ) value
+ * value      := '\'' quoted '\'' | '(' list ')' | bare
+ * </pre>
+ * 
+ * A bare value runs up to the next <tt>&amp;</tt> or <tt>|</tt>, or the closing parenthesis of a group, and is trimmed. Commas separate the values of
+ * <tt>=</tt>, <tt>!=</tt> and <tt>in</tt>, and the two bounds of <tt>between</tt>; <tt>^=</tt> is the same as <tt>prefix</tt>. So the filters
+ * <tt>name=a&amp;id!=1,2</tt> understood so far keep their meaning, and <tt>createDate between 1,5 &amp; (name prefix wa | !(status in (done,late)))</tt>
+ * is a valid filter.
+ * 
+ * @author jmalkan
+ */
+public final class FilterParser {
+  public static final int DEFAULT_MAX_FILTERS = 512;
+  
+  private static final FilterParser SHARED = new FilterParser(DEFAULT_MAX_FILTERS);
+  
+  private final Map<String, List<FilterNode>> filters;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  
+  /**
+   * Creates a new instance of com.jiggy.base.searchengine.FilterParser.java and Performs Initialization
+   * 
+   * @param maxFilters The maximum number of compiled filters cached.
+   */
+  public FilterParser(final int maxFilters) {
+    super();
+    this.filters = Collections.synchronizedMap(new LinkedHashMap<String, List<FilterNode>>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+      
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, List<FilterNode>> eldest) {
+        return this.size() > maxFilters;
+      }
+    });
+  }
+  
+  /**
+   * @return The parser shared by every FilterExpression.
+   */
+  public static FilterParser getInstance() {
+    return SHARED;
+  }
+  
+  /**
+   * Compiles the filter string, or returns the cached compilation.
+   * 
+   * @param filter The filter string.
+   * @param mode The query mode of the terms.
+   * @return The nodes joined by the top level <tt>&amp;</tt>, empty for a blank or wildcard filter.
+   * @throws IllegalArgumentException If the filter is not valid.
+   */
+  public List<FilterNode> parse(final String filter, final QueryMode mode) {
+    if (StringUtils.isBlank(filter) || SearchCriteria.WILDCARD_TOKEN.equals(filter.trim()))
+      return Collections.emptyList();
+    
+    String key = mode.name() + ':' + filter;
+    List<FilterNode> nodes = this.filters.get(key);
+    
+    if (nodes != null) {
+      this.hits.incrementAndGet();
+      return nodes;
+    }
+    
+    this.misses.incrementAndGet();
+    nodes = Collections.unmodifiableList(new Scanner(filter, mode).parseFilter());
+    this.filters.put(key, nodes);
+    
+    return nodes;
+  }
+  
+  /**
+   * @return The number of filters served from the cache.
+   */
+  public long getHits() {
+    return this.hits.get();
+  }
+  
+  /**
+   * @return The number of filters compiled.
+   */
+  public long getMisses() {
+    return this.misses.get();
+  }
+  
+  /**
+   * @return The number of compiled filters in the cache.
+   */
+  public int size() {
+    return this.filters.size();
+  }
+  
+  /**
+   * Scans and parses one filter string.
+   */
+  private static final class Scanner {
+    private final String input;
+    private final QueryMode mode;
+    private int position;
+    private int depth;
+    
+    Scanner(final String input, final QueryMode mode) {
+      this.input = input;
+      this.mode = mode;
+    }
+    
+    List<FilterNode> parseFilter() {
+      FilterNode node = this.parseOr();
+      
+      this.skipWhitespace();
+      
+      if (this.position < this.input.length())
+        throw this.error("Unexpected '" + this.input.charAt(this.position) + "'");
+      
+      if (node == null)
+        return new ArrayList<FilterNode>();
+      
+      if (node instanceof FilterGroup && ((FilterGroup) node).getJunction() == Junction.AND)
+        return new ArrayList<FilterNode>(((FilterGroup) node).getChildren());
+      
+      List<FilterNode> nodes = new ArrayList<FilterNode>(1);
+      nodes.add(node);
+      
+      return nodes;
+    }
+    
+    private FilterNode parseOr() {
+      List<FilterNode> children = new ArrayList<FilterNode>();
+      
+      do {
+        FilterNode child = this.parseAnd();
+        
+        if (child == null && children.isEmpty())
+          return null;
+        else if (child == null)
+          throw this.error("Missing filter");
+        
+        children.add(child);
+      } while (this.accept('|'));
+      
+      return children.size() == 1 ? children.get(0) : new FilterGroup(Junction.OR, children);
+    }
+    
+    /**
+     * @return The node, or null if there is none before the end of the group. Empty terms between <tt>&amp;</tt> are skipped, as they always were.
+     */
+    private FilterNode parseAnd() {
+      List<FilterNode> children = new ArrayList<FilterNode>();
+      
+      do {
+        this.skipWhitespace();
+        
+        if (this.atEnd() || this.peek() == '&' || this.peek() == '|' || this.peek() == ')')
+          continue;
+        
+        children.add(this.parseUnary());
+      } while (this.accept('&'));
+      
+      if (children.isEmpty())
+        return this.depth == 0 && this.atEnd() ? null : this.fail("Missing filter");
+      
+      return children.size() == 1 ? children.get(0) : new FilterGroup(Junction.AND, children);
+    }
+    
+    private FilterNode parseUnary() {
+      this.skipWhitespace();
+      
+      if (this.peek() == '!') {
+        this.position++;
+        return new FilterNot(this.parseUnary());
+      }
+      
+      if (this.acceptKeyword("not"))
+        return new FilterNot(this.parseUnary());
+      
+      if (this.peek() == '(') {
+        this.position++;
+        this.depth++;
+        FilterNode node = this.parseOr();
+        
+        if (!this.accept(')'))
+          throw this.error("Missing ')'");
+        
+        this.depth--;
+        
+        return node;
+      }
+      
+      return this.parseComparison();
+    }
+    
+    private FilterNode parseComparison() {
+      int start = this.position;
+      
+      while (!this.atEnd() && isKeyChar(this.peek()))
+        this.position++;
+      
+      if (start == this.position)
+        throw this.error("Missing field name");
+      
+      String key = this.input.substring(start, this.position);
+      Op operator = this.parseOperator();
+      String value = this.parseValue(operator);
+      
+      if (operator == Op.BETWEEN && (value.split(",").length != 2 || value.startsWith(",") || value.endsWith(",")))
+        throw this.error("between needs two bounds for " + key);
+      
+      return new FilterTerm(operator, key, value, this.mode);
+    }
+    
+    private Op parseOperator() {
+      this.skipWhitespace();
+      
+      if (this.acceptSymbol("!="))
+        return Op.EXCLUDE;
+      else if (this.acceptSymbol("<="))
+        return Op.LESS_OR_EQUAL;
+      else if (this.acceptSymbol(">="))
+        return Op.GREATER_OR_EQUAL;
+      else if (this.acceptSymbol("^="))
+        return Op.PREFIX;
+      else if (this.acceptSymbol("<"))
+        return Op.LESS;
+      else if (this.acceptSymbol(">"))
+        return Op.GREATER;
+      else if (this.acceptSymbol("="))
+        return Op.INCLUDE;
+      else if (this.acceptKeyword("in"))
+        return Op.INCLUDE;
+      else if (this.acceptKeyword("between"))
+        return Op.BETWEEN;
+      else if (this.acceptKeyword("prefix"))
+        return Op.PREFIX;
+      
+      throw this.error("Missing operator");
+    }
+    
+    private String parseValue(final Op operator) {
+      this.skipWhitespace();
+      String value;
+      
+      if (this.peek() == '\'') {
+        value = this.parseQuoted();
+      } else if (this.peek() == '(' && operator.isMultiValued()) {
+        int start = ++this.position;
+        int end = this.input.indexOf(')', start);
+        
+        if (end < 0)
+          throw this.error("Missing ')'");
+        
+        this.position = end + 1;
+        value = StringUtils.deleteWhitespace(this.input.substring(start, end));
+      } else {
+        int start = this.position;
+        
+        while (!this.atEnd() && this.peek() != '&' && this.peek() != '|' && (this.depth == 0 || this.peek() != ')'))
+          this.position++;
+        
+        return this.input.substring(start, this.position).trim();
+      }
+      
+      this.skipWhitespace();
+      
+      if (!this.atEnd() && this.peek() != '&' && this.peek() != '|' && this.peek() != ')')
+        throw this.error("Unexpected '" + this.peek() + "' after value");
+      
+      return value;
+    }
+    
+    private String parseQuoted() {
+      StringBuilder value = new StringBuilder();
+      
+      for (this.position++; !this.atEnd(); this.position++) {
+        char current = this.peek();
+        
+        if (current == '\\' && this.position + 1 < this.input.length()) {
+          value.append(this.input.charAt(++this.position));
+        } else if (current == '\'') {
+          this.position++;
+          return value.toString();
+        } else {
+          value.append(current);
+        }
+      }
+      
+      throw this.error("Missing closing quote");
+    }
+    
+    private boolean accept(final char expected) {
+      this.skipWhitespace();
+      
+      if (this.atEnd() || this.peek() != expected)
+        return false;
+      
+      this.position++;
+      
+      return true;
+    }
+    
+    private boolean acceptSymbol(final String symbol) {
+      if (!this.input.startsWith(symbol, this.position))
+        return false;
+      
+      this.position += symbol.length();
+      
+      return true;
+    }
+    
+    /**
+     * Accepts a keyword only if it stands alone, so fields such as <tt>notes</tt> or <tt>index</tt> are not taken for one.
+     */
+    private boolean acceptKeyword(final String keyword) {
+      int end = this.position + keyword.length();
+      
+      if (!this.input.regionMatches(true, this.position, keyword, 0, keyword.length()) || end >= this.input.length())
+        return false;
+      
+      char next = this.input.charAt(end);
+      
+      if (!Character.isWhitespace(next) && next != '(' && next != '\'')
+        return false;
+      
+      this.position = end;
+      
+      return true;
+    }
+    
+    private void skipWhitespace() {
+      while (!this.atEnd() && Character.isWhitespace(this.peek()))
+        this.position++;
+    }
+    
+    private boolean atEnd() {
+      return this.position >= this.input.length();
+    }
+    
+    private char peek() {
+      return this.atEnd() ? '\0' : this.input.charAt(this.position);
+    }
+    
+    private FilterNode fail(final String message) {
+      throw this.error(message);
+    }
+    
+    private IllegalArgumentException error(final String message) {
+      return new IllegalArgumentException(message + " at position " + this.position + " of filter " + this.input);
+    }
+    
+    private static boolean isKeyChar(final char c) {
+      return Character.isLetterOrDigit(c) || c == '_' || c == '.' || c == '$';
+    }
+  }
+}
@@ -0,0 +1,19 @@
+package com.jiggy.base.searchengine;
+
+import com.jiggy.base.searchengine.FilterExpression.FilterTerm;
+
+/**
+ * FilterVisitor.java Walks a compiled filter. Each data store dialect renders the filter by implementing a visitor.
+ * 
+ * @param <R> The result of visiting a node.
+ * 
+ * @author jmalkan
+ */
+public interface FilterVisitor<R> {
+  
+  R visitTerm(FilterTerm term);
+  
+  R visitGroup(FilterGroup group);
+  
+  R visitNot(FilterNot not);
+}
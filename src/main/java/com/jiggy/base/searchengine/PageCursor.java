@@ -0,0 +1,138 @@
+package com.jiggy.base.searchengine;
+
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.Date;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * PageCursor.java The position of the last row of a page for keyset (seek) pagination. It holds the value of the leading sort key and the id of the
+ * row, and is handed to the client as an opaque url-safe token. The next page is fetched by seeking past this position instead of skipping offset
+ * rows, so every page costs the same.
+ * 
+ * @author jmalkan
+ */
+public final class PageCursor implements Serializable {
+  private static final long serialVersionUID = 1L;
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final char SEPARATOR = '|';
+  
+  private final Object value;
+  private final Long id;
+  
+  /**
+   * Creates a new instance of com.jiggy.base.searchengine.PageCursor.java and Performs Initialization
+   * 
+   * @param value The value of the sort key of the last row.
+   * @param id The id of the last row.
+   */
+  public PageCursor(final Object value, final Long id) {
+    super();
+    this.value = value;
+    this.id = id;
+  }
+  
+  public Object getValue() {
+    return value;
+  }
+  
+  public Long getId() {
+    return id;
+  }
+  
+  /**
+   * Encodes this cursor into an opaque url-safe token.
+   * 
+   * @return The token.
+   */
+  public String encode() {
+    StringBuilder builder = new StringBuilder();
+    
+    if (value == null)
+      builder.append('N');
+    else if (value instanceof Long)
+      builder.append('L').append(value);
+    else if (value instanceof Integer)
+      builder.append('I').append(value);
+    else if (value instanceof Double)
+      builder.append('D').append(value);
+    else if (value instanceof Boolean)
+      builder.append('B').append(value);
+    else if (value instanceof Date)
+      builder.append('T').append(((Date) value).getTime());
+    else
+      builder.append('S').append(value);
+    
+    builder.append(SEPARATOR).append(id);
+    
+    String base64 = DatatypeConverter.printBase64Binary(builder.toString().getBytes(UTF_8));
+    
+    return StringUtils.stripEnd(base64, "=").replace('+', '-').replace('/', '_');
+  }
+  
+  /**
+   * Decodes the token produced by {@link #encode()}.
+   * 
+   * @param token The token.
+   * @return The cursor.
+   * @throws IllegalArgumentException If the token is not a valid cursor.
+   */
+  public static PageCursor decode(final String token) {
+    if (StringUtils.isBlank(token))
+      throw new IllegalArgumentException("Page cursor cannot be blank");
+    
+    String base64 = token.trim().replace('-', '+').replace('_', '/');
+    
+    while (base64.length() % 4 != 0)
+      base64 += "=";
+    
+    String cursor = new String(DatatypeConverter.parseBase64Binary(base64), UTF_8);
+    int separator = cursor.lastIndexOf(SEPARATOR);
+    
+    if (cursor.isEmpty() || separator < 1)
+      throw new IllegalArgumentException("Invalid page cursor " + token);
+    
+    String text = cursor.substring(1, separator);
+    Object value;
+    
+    try {
+      switch (cursor.charAt(0)) {
+        case 'N':
+          value = null;
+          break;
+        case 'L':
+          value = Long.valueOf(text);
+          break;
+        case 'I':
+          value = Integer.valueOf(text);
+          break;
+        case 'D':
+          value = Double.valueOf(text);
+          break;
+        case 'B':
+          value = Boolean.valueOf(text);
+          break;
+        case 'T':
+          value = new Date(Long.parseLong(text));
+          break;
+        case 'S':
+          value = text;
+          break;
+        default:
+          throw new IllegalArgumentException("Invalid page cursor " + token);
+      }
+      
+      return new PageCursor(value, Long.valueOf(cursor.substring(separator + 1)));
+    } catch (NumberFormatException nfe) {
+      throw new IllegalArgumentException("Invalid page cursor " + token, nfe);
+    }
+  }
+  
+  @Override
+  public String toString() {
+    return "PageCursor [value=" + value + ", id=" + id + "]";
+  }
+}
@@ -14,6 +14,20 @@ public interface SearchCriteria extends Serializable {
   /** Value for the Wildcared Token. */
   public static String WILDCARD_TOKEN = "*";
   
+  /**
+   * How the row count of a paginated search is obtained.
+   */
+  public enum CountMode {
+    /** Counts the matching rows with a count query before every page. */
+    EXACT,
+    /** Does not count. One row more than the limit is fetched to tell if there is a next page, and the row count is left at -1. */
+    NONE,
+    /** Uses the row count kept in the table statistics when neither the search nor the role's read permission filters, else falls back to CACHED. */
+    ESTIMATED,
+    /** Reuses an exact count of the same filter for a few seconds, until a write through the DAO. */
+    CACHED
+  }
+  
   /**
    * Getter of the property <tt>sortBy</tt>
    * 
@@ -136,4 +150,84 @@ public interface SearchCriteria extends Serializable {
    * @param queryVariables the queryVariables to set
    */
   public void setQueryVariables(final String queryVariables);
+  
+  /**
+   * Returns if keyset (seek) pagination is enabled. Keyset pagination is enabled when the <tt>after</tt> cursor is set (an empty cursor requests the
+   * first page) and a positive <tt>limit</tt> is given. The <tt>offset</tt> is ignored in this mode.
+   * 
+   * @return true if keyset pagination is enabled else false.
+   */
+  boolean isKeysetPaginationEnabled();
+  
+  /**
+   * Getter of the property <tt>after</tt>
+   * 
+   * @return the opaque cursor of the last row of the previous page
+   */
+  public String getAfter();
+  
+  /**
+   * Setter of the property <tt>after</tt>
+   * 
+   * @param after the opaque cursor returned as the next page token of the previous page, or an empty string for the first page
+   */
+  public void setAfter(final String after);
+  
+  /**
+   * Getter of the property <tt>nextPageToken</tt>
+   * 
+   * @return the cursor to pass as <tt>after</tt> to fetch the next page, or null if this is the last page
+   */
+  public String getNextPageToken();
+  
+  /**
+   * Setter of the property <tt>nextPageToken</tt>
+   * 
+   * @param nextPageToken the nextPageToken to set
+   */
+  public void setNextPageToken(final String nextPageToken);
+  
+  /**
+   * Getter of the property <tt>countMode</tt>
+   * 
+   * @return the countMode, EXACT unless set
+   */
+  public CountMode getCountMode();
+  
+  /**
+   * Setter of the property <tt>countMode</tt>
+   * 
+   * @param countMode the countMode to set
+   */
+  public void setCountMode(final CountMode countMode);
+  
+  /**
+   * Getter of the property <tt>nextPageAvailable</tt>
+   * 
+   * @return true if the search found more rows after the returned page
+   */
+  public boolean isNextPageAvailable();
+  
+  /**
+   * Setter of the property <tt>nextPageAvailable</tt>
+   * 
+   * @param nextPageAvailable the nextPageAvailable to set
+   */
+  public void setNextPageAvailable(final boolean nextPageAvailable);
+  
+  /**
+   * Getter of the property <tt>query</tt>
+   * 
+   * @return the words searched in the text index of the entity, ranked best match first, or null for no full-text search
+   * 
+   * @see TextIndex
+   */
+  public String getQuery();
+  
+  /**
+   * Setter of the property <tt>query</tt>
+   * 
+   * @param query the query to set
+   */
+  public void setQuery(final String query);
 }
\ No newline at end of file
@@ -0,0 +1,99 @@
+package com.jiggy.base.searchengine;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.jiggy.base.entity.Entity;
+
+/**
+ * SortKey.java A single field/direction pair parsed from the <tt>sortBy</tt> property of the search criteria. The sortBy value is a comma separated
+ * list of keys, each a field name optionally followed by a direction or prefixed with '-'. Example: name, name desc, -createDate, name asc, id desc
+ * 
+ * @author jmalkan
+ */
+public class SortKey implements Serializable {
+  private static final long serialVersionUID = 1L;
+  
+  private final String field;
+  private final boolean ascending;
+  
+  /**
+   * Creates a new instance of com.jiggy.base.searchengine.SortKey.java and Performs Initialization
+   * 
+   * @param field The name of the field to sort on.
+   * @param ascending true for ascending order, false for descending order.
+   */
+  public SortKey(final String field, final boolean ascending) {
+    super();
+    this.field = field;
+    this.ascending = ascending;
+  }
+  
+  /**
+   * Parses the leading sort key of the given sortBy. Defaults to the id in ascending order.
+   * 
+   * @param sortBy The sortBy property of the search criteria.
+   * @return The leading sort key.
+   */
+  public static SortKey parse(final String sortBy) {
+    List<SortKey> sortKeys = parseAll(sortBy);
+    
+    return sortKeys.isEmpty() ? new SortKey(Entity.ID_COLUMN_NAME, true) : sortKeys.get(0);
+  }
+  
+  /**
+   * Parses all the sort keys of the given sortBy.
+   * 
+   * @param sortBy The sortBy property of the search criteria.
+   * @return The list of sort keys in the given order, empty if none.
+   */
+  public static List<SortKey> parseAll(final String sortBy) {
+    List<SortKey> sortKeys = new ArrayList<SortKey>();
+    
+    if (StringUtils.isNotBlank(sortBy)) {
+      for (String key : StringUtils.split(sortBy, ',')) {
+        String[] tokens = StringUtils.split(key.trim());
+        
+        if (tokens.length == 0)
+          continue;
+        
+        String field = tokens[0];
+        boolean ascending = true;
+        
+        if (field.startsWith("-")) {
+          field = field.substring(1);
+          ascending = false;
+        } else if (tokens.length > 1 && tokens[1].toLowerCase().startsWith("desc")) {
+          ascending = false;
+        }
+        
+        sortKeys.add(new SortKey(field, ascending));
+      }
+    }
+    
+    return sortKeys;
+  }
+  
+  public String getField() {
+    return field;
+  }
+  
+  public boolean isAscending() {
+    return ascending;
+  }
+  
+  /**
+   * @return true if this key sorts on the entity id.
+   */
+  public boolean isId() {
+    return Entity.ID_COLUMN_NAME.equals(field);
+  }
+  
+  @Override
+  public String toString() {
+    return field + (ascending ? " ascending" : " descending");
+  }
+}
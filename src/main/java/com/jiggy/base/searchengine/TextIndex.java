@@ -0,0 +1,528 @@
+package com.jiggy.base.searchengine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * TextIndex.java An in-memory inverted index over text fields of the entities of one DAO, for ranked full-text search and term autocomplete. Each
+ * term maps to a posting list of the documents holding it and how often. The list is delta and variable-byte encoded in a byte array, so a posting
+ * takes two or three bytes instead of the object of a boxed entry. Searches rank the documents with BM25 and return entity ids, which the DAO then
+ * multi-fetches.
+ * 
+ * <p>
+ * The DAO updates the index as it writes entities, and rebuilds it from the data store at startup. A written entity gets a new document number. Its
+ * old one is only marked deleted, and is dropped from the posting lists once deleted documents outnumber the live ones. Searches share a read lock;
+ * writes take the write lock.
+ * 
+ * <p>
+ * The words of a query are ORed and the documents holding more, and rarer, of them rank first. A word ending with <tt>*</tt> matches the most frequent
+ * terms starting with it, so <tt>q=take ou*</tt> finds "take out trash".
+ * 
+ * @author jmalkan
+ */
+public final class TextIndex {
+  /** Splits the text on anything but letters and digits and lower cases the words. */
+  public static final Tokenizer WORD_TOKENIZER = new Tokenizer() {
+    @Override
+    public List<String> tokenize(final String text) {
+      List<String> tokens = new ArrayList<String>();
+      int start = -1;
+      
+      for (int i = 0; i <= text.length(); i++) {
+        boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+        
+        if (wordChar && start < 0)
+          start = i;
+        else if (!wordChar && start >= 0) {
+          tokens.add(text.substring(start, i).toLowerCase(Locale.ENGLISH));
+          start = -1;
+        }
+      }
+      
+      return tokens;
+    }
+  };
+  
+  /** The number of terms a prefix word of a query expands to at most. */
+  public static final int MAX_PREFIX_EXPANSIONS = 64;
+  
+  private static final char PREFIX_WILDCARD = '*';
+  private static final float K1 = 1.2f;
+  private static final float B = 0.75f;
+  
+  /** Deleted documents are only dropped from the posting lists past this many, so small indexes are not compacted on every write. */
+  private static final int MIN_DELETED_TO_COMPACT = 1024;
+  
+  private final List<String> fields;
+  private final Tokenizer tokenizer;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private Segment segment = new Segment();
+  
+  /**
+   * Creates a new instance of com.jiggy.base.searchengine.TextIndex.java and Performs Initialization
+   * 
+   * @param fields The names of the text fields indexed.
+   */
+  public TextIndex(final String... fields) {
+    this(WORD_TOKENIZER, fields);
+  }
+  
+  /**
+   * Creates a new instance of com.jiggy.base.searchengine.TextIndex.java and Performs Initialization
+   * 
+   * @param tokenizer The tokenizer of the indexed text and of the queries.
+   * @param fields The names of the text fields indexed.
+   */
+  public TextIndex(final Tokenizer tokenizer, final String... fields) {
+    super();
+    this.tokenizer = tokenizer;
+    this.fields = Collections.unmodifiableList(Arrays.asList(fields));
+  }
+  
+  /**
+   * Getter of the property <tt>fields</tt>
+   * 
+   * @return Returns the names of the text fields indexed.
+   */
+  public List<String> getFields() {
+    return fields;
+  }
+  
+  /**
+   * Getter of the property <tt>tokenizer</tt>
+   * 
+   * @return Returns the tokenizer.
+   */
+  public Tokenizer getTokenizer() {
+    return tokenizer;
+  }
+  
+  /**
+   * Indexes the text of an entity, replacing the text indexed for it before.
+   * 
+   * @param id The id of the entity.
+   * @param text The text of its indexed fields.
+   */
+  public void index(final Long id, final String text) {
+    List<String> tokens = this.tokenizer.tokenize(StringUtils.defaultString(text));
+    
+    this.lock.writeLock().lock();
+    try {
+      this.segment.remove(id);
+      this.segment.add(id, tokens);
+      this.segment.compactIfNeeded();
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+  
+  /**
+   * Removes an entity from the index.
+   * 
+   * @param id The id of the entity.
+   */
+  public void remove(final Long id) {
+    this.lock.writeLock().lock();
+    try {
+      this.segment.remove(id);
+      this.segment.compactIfNeeded();
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+  
+  /**
+   * Replaces the whole index. The new index is built aside, so searches keep using the old one until it is ready.
+   * 
+   * @param texts The text of the indexed fields of every entity, by id.
+   */
+  public void rebuild(final Map<Long, String> texts) {
+    Segment rebuilt = new Segment();
+    
+    for (Entry<Long, String> entry : texts.entrySet()) {
+      rebuilt.add(entry.getKey(), this.tokenizer.tokenize(StringUtils.defaultString(entry.getValue())));
+    }
+    
+    this.lock.writeLock().lock();
+    try {
+      this.segment = rebuilt;
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+  
+  /**
+   * Ranks the indexed entities against the query with BM25.
+   * 
+   * @param query The words searched.
+   * @param maxHits The maximum number of ids returned.
+   * @return The ids of the matching entities, best match first. Equal scores rank the entity indexed earlier first.
+   */
+  public List<Long> search(final String query, final int maxHits) {
+    List<Long> hits = new ArrayList<Long>();
+    
+    if (StringUtils.isBlank(query) || maxHits <= 0)
+      return hits;
+    
+    this.lock.readLock().lock();
+    try {
+      Segment segment = this.segment;
+      
+      if (segment.liveCount == 0)
+        return hits;
+      
+      final float[] scores = new float[segment.docCount];
+      float averageLength = Math.max(1f, (float) segment.totalLength / segment.liveCount);
+      
+      for (String term : this.parseQuery(query, segment)) {
+        Postings postings = segment.terms.get(term);
+        
+        if (postings == null)
+          continue;
+        
+        float idf = (float) Math.log(1 + (segment.liveCount - postings.liveCount + 0.5) / (postings.liveCount + 0.5));
+        PostingReader reader = new PostingReader(postings);
+        
+        while (reader.next()) {
+          if (segment.isLive(reader.doc)) {
+            float norm = K1 * (1 - B + B * segment.lengths[reader.doc] / averageLength);
+            scores[reader.doc] += idf * reader.frequency * (K1 + 1) / (reader.frequency + norm);
+          }
+        }
+      }
+      
+      Comparator<Integer> byScore = new Comparator<Integer>() {
+        @Override
+        public int compare(final Integer doc1, final Integer doc2) {
+          int compare = Float.compare(scores[doc1.intValue()], scores[doc2.intValue()]);
+          return compare != 0 ? compare : Integer.compare(doc2.intValue(), doc1.intValue());
+        }
+      };
+      PriorityQueue<Integer> top = new PriorityQueue<Integer>(Math.min(maxHits, segment.liveCount), byScore);
+      
+      for (int doc = 0; doc < scores.length; doc++) {
+        if (scores[doc] <= 0)
+          continue;
+        
+        if (top.size() < maxHits)
+          top.add(Integer.valueOf(doc));
+        else if (byScore.compare(Integer.valueOf(doc), top.peek()) > 0) {
+          top.poll();
+          top.add(Integer.valueOf(doc));
+        }
+      }
+      
+      while (!top.isEmpty()) {
+        hits.add(Long.valueOf(segment.ids[top.poll().intValue()]));
+      }
+    } finally {
+      this.lock.readLock().unlock();
+    }
+    
+    Collections.reverse(hits);
+    
+    return hits;
+  }
+  
+  /**
+   * Completes the last word of the text typed so far.
+   * 
+   * @param prefix The text typed so far.
+   * @param maxTerms The maximum number of terms returned.
+   * @return The indexed terms starting with the last word of the prefix, those in the most documents first.
+   */
+  public List<String> complete(final String prefix, final int maxTerms) {
+    List<String> tokens = this.tokenizer.tokenize(StringUtils.defaultString(prefix));
+    
+    if (tokens.isEmpty() || maxTerms <= 0)
+      return new ArrayList<String>();
+    
+    this.lock.readLock().lock();
+    try {
+      return this.segment.expand(tokens.get(tokens.size() - 1), maxTerms);
+    } finally {
+      this.lock.readLock().unlock();
+    }
+  }
+  
+  /**
+   * @return The number of entities indexed.
+   */
+  public int size() {
+    this.lock.readLock().lock();
+    try {
+      return this.segment.liveCount;
+    } finally {
+      this.lock.readLock().unlock();
+    }
+  }
+  
+  /**
+   * @return The number of distinct terms indexed.
+   */
+  public int getTermCount() {
+    this.lock.readLock().lock();
+    try {
+      return this.segment.terms.size();
+    } finally {
+      this.lock.readLock().unlock();
+    }
+  }
+  
+  private Set<String> parseQuery(final String query, final Segment segment) {
+    Set<String> terms = new LinkedHashSet<String>();
+    
+    for (String word : StringUtils.split(query)) {
+      boolean prefix = word.length() > 1 && word.charAt(word.length() - 1) == PREFIX_WILDCARD;
+      List<String> tokens = this.tokenizer.tokenize(prefix ? word.substring(0, word.length() - 1) : word);
+      
+      if (tokens.isEmpty())
+        continue;
+      
+      if (prefix) {
+        terms.addAll(tokens.subList(0, tokens.size() - 1));
+        terms.addAll(segment.expand(tokens.get(tokens.size() - 1), MAX_PREFIX_EXPANSIONS));
+      } else
+        terms.addAll(tokens);
+    }
+    
+    return terms;
+  }
+  
+  /**
+   * The documents and posting lists of the index. Document numbers are handed out in increasing order, so posting lists are only ever appended to.
+   */
+  private static final class Segment {
+    private final Map<Long, Integer> docs = new HashMap<Long, Integer>();
+    private final NavigableMap<String, Postings> terms = new TreeMap<String, Postings>();
+    private long[] ids = new long[16];
+    private int[] lengths = new int[16];
+    private String[][] docTerms = new String[16][];
+    private int docCount;
+    private int liveCount;
+    private long totalLength;
+    
+    void add(final Long id, final List<String> tokens) {
+      Map<String, int[]> frequencies = new LinkedHashMap<String, int[]>();
+      
+      for (String token : tokens) {
+        int[] frequency = frequencies.get(token);
+        
+        if (frequency == null)
+          frequencies.put(token, new int[] { 1 });
+        else
+          frequency[0]++;
+      }
+      
+      if (this.docCount == this.ids.length) {
+        int capacity = this.docCount * 2;
+        this.ids = Arrays.copyOf(this.ids, capacity);
+        this.lengths = Arrays.copyOf(this.lengths, capacity);
+        this.docTerms = Arrays.copyOf(this.docTerms, capacity);
+      }
+      
+      int doc = this.docCount++;
+      this.ids[doc] = id.longValue();
+      this.lengths[doc] = tokens.size();
+      this.docTerms[doc] = frequencies.keySet().toArray(new String[frequencies.size()]);
+      
+      for (Entry<String, int[]> entry : frequencies.entrySet()) {
+        Postings postings = this.terms.get(entry.getKey());
+        
+        if (postings == null) {
+          postings = new Postings();
+          this.terms.put(entry.getKey(), postings);
+        }
+        
+        postings.add(doc, entry.getValue()[0]);
+      }
+      
+      this.docs.put(id, Integer.valueOf(doc));
+      this.liveCount++;
+      this.totalLength += tokens.size();
+    }
+    
+    void remove(final Long id) {
+      Integer doc = this.docs.remove(id);
+      
+      if (doc == null)
+        return;
+      
+      for (String term : this.docTerms[doc.intValue()]) {
+        Postings postings = this.terms.get(term);
+        
+        if (--postings.liveCount == 0)
+          this.terms.remove(term);
+      }
+      
+      this.docTerms[doc.intValue()] = null;
+      this.liveCount--;
+      this.totalLength -= this.lengths[doc.intValue()];
+    }
+    
+    boolean isLive(final int doc) {
+      return this.docTerms[doc] != null;
+    }
+    
+    /**
+     * Renumbers the live documents and drops the deleted ones from the posting lists, once they outnumber the live ones.
+     */
+    void compactIfNeeded() {
+      int deleted = this.docCount - this.liveCount;
+      
+      if (deleted < MIN_DELETED_TO_COMPACT || deleted < this.liveCount)
+        return;
+      
+      int[] renumbered = new int[this.docCount];
+      int next = 0;
+      
+      for (int doc = 0; doc < this.docCount; doc++) {
+        if (!this.isLive(doc)) {
+          renumbered[doc] = -1;
+          continue;
+        }
+        
+        renumbered[doc] = next;
+        this.ids[next] = this.ids[doc];
+        this.lengths[next] = this.lengths[doc];
+        this.docTerms[next] = this.docTerms[doc];
+        this.docs.put(Long.valueOf(this.ids[next]), Integer.valueOf(next));
+        next++;
+      }
+      
+      Arrays.fill(this.docTerms, next, this.docCount, null);
+      this.docCount = next;
+      
+      for (Postings postings : this.terms.values()) {
+        postings.renumber(renumbered);
+      }
+    }
+    
+    List<String> expand(final String prefix, final int maxTerms) {
+      List<Entry<String, Postings>> matches = new ArrayList<Entry<String, Postings>>();
+      
+      for (Entry<String, Postings> entry : this.terms.tailMap(prefix, true).entrySet()) {
+        if (!entry.getKey().startsWith(prefix))
+          break;
+        
+        matches.add(entry);
+      }
+      
+      Collections.sort(matches, new Comparator<Entry<String, Postings>>() {
+        @Override
+        public int compare(final Entry<String, Postings> entry1, final Entry<String, Postings> entry2) {
+          int compare = Integer.compare(entry2.getValue().liveCount, entry1.getValue().liveCount);
+          return compare != 0 ? compare : entry1.getKey().compareTo(entry2.getKey());
+        }
+      });
+      
+      List<String> terms = new ArrayList<String>(Math.min(maxTerms, matches.size()));
+      
+      for (int i = 0; i < matches.size() && i < maxTerms; i++) {
+        terms.add(matches.get(i).getKey());
+      }
+      
+      return terms;
+    }
+  }
+  
+  /**
+   * The documents holding a term, as pairs of the gap from the previous document number and the term frequency, each variable-byte encoded.
+   */
+  private static final class Postings {
+    private byte[] data = new byte[8];
+    private int length;
+    private int lastDoc;
+    private int liveCount;
+    
+    void add(final int doc, final int frequency) {
+      this.write(doc - this.lastDoc);
+      this.write(frequency);
+      this.lastDoc = doc;
+      this.liveCount++;
+    }
+    
+    void renumber(final int[] renumbered) {
+      PostingReader reader = new PostingReader(this);
+      
+      this.data = new byte[Math.max(8, this.liveCount * 2)];
+      this.length = 0;
+      this.lastDoc = 0;
+      this.liveCount = 0;
+      
+      while (reader.next()) {
+        if (renumbered[reader.doc] >= 0)
+          this.add(renumbered[reader.doc], reader.frequency);
+      }
+    }
+    
+    private void write(final int value) {
+      if (this.length + 5 > this.data.length)
+        this.data = Arrays.copyOf(this.data, this.data.length * 2);
+      
+      int remaining = value;
+      
+      while ((remaining & ~0x7F) != 0) {
+        this.data[this.length++] = (byte) ((remaining & 0x7F) | 0x80);
+        remaining >>>= 7;
+      }
+      
+      this.data[this.length++] = (byte) remaining;
+    }
+  }
+  
+  /**
+   * Decodes a posting list front to back.
+   */
+  private static final class PostingReader {
+    private final byte[] data;
+    private final int length;
+    private int position;
+    private int doc;
+    private int frequency;
+    
+    PostingReader(final Postings postings) {
+      this.data = postings.data;
+      this.length = postings.length;
+    }
+    
+    boolean next() {
+      if (this.position >= this.length)
+        return false;
+      
+      this.doc += this.read();
+      this.frequency = this.read();
+      
+      return true;
+    }
+    
+    private int read() {
+      int value = 0;
+      
+      for (int shift = 0;; shift += 7) {
+        byte b = this.data[this.position++];
+        value |= (b & 0x7F) << shift;
+        
+        if ((b & 0x80) == 0)
+          return value;
+      }
+    }
+  }
+}
@@ -0,0 +1,18 @@
+package com.jiggy.base.searchengine;
+
+import java.util.List;
+
+/**
+ * Tokenizer.java Splits text into the terms a TextIndex indexes and searches. The same tokenizer must be used for indexing and searching.
+ * 
+ * @author jmalkan
+ */
+public interface Tokenizer {
+  /**
+   * Splits the text into terms.
+   * 
+   * @param text The text, not null.
+   * @return The terms, in the order they appear in the text, repeated terms included.
+   */
+  List<String> tokenize(String text);
+}
@@ -1,9 +1,12 @@
 package com.jiggy.base.service;
 
 import com.jiggy.base.dao.DBDAO;
+import com.jiggy.base.dao.EntityConsumer;
 import com.jiggy.base.entity.Entity;
+import com.jiggy.base.entity.EntityVersion;
 import com.jiggy.base.searchengine.SearchCriteria;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -71,6 +74,20 @@ public abstract class AbstractDBService<T extends Entity> implements DBService<T
     return validateAfterFindById(foundEntity);
   }
   
+  @Override
+  public EntityVersion findVersion(final Long id) {
+    this.validateBeforeFind(id);
+    
+    return this.implementFindVersion(id);
+  }
+  
+  @Override
+  public List<T> findByIds(final Collection<Long> ids) {
+    List<T> foundEntities = this.implementFindByIds(ids);
+    
+    return validateAfterFind(foundEntities);
+  }
+  
   @Override
   public List<T> findAll() {
     List<T> foundEntities = this.implementFindAll();
@@ -89,6 +106,11 @@ public abstract class AbstractDBService<T extends Entity> implements DBService<T
     return this.implementFindOne(searchCriteria);
   }
   
+  @Override
+  public long stream(final SearchCriteria searchCriteria, final EntityConsumer<T> consumer) {
+    return this.implementStream(searchCriteria, consumer);
+  }
+  
   @Override
   public int getRowCount() {
     return this.implementRowCount();
@@ -185,6 +207,26 @@ public abstract class AbstractDBService<T extends Entity> implements DBService<T
     return this.getDao().findById(id);
   }
   
+  /**
+   * Implements logic to find the version of the entity for the given id.
+   * 
+   * @param id The id of the entity being searched.
+   * @return The version of the entity, null if it does not exist.
+   */
+  protected EntityVersion implementFindVersion(final Long id) {
+    return this.getDao().findVersion(id);
+  }
+  
+  /**
+   * Implements logic to find the entities for the given ids.
+   * 
+   * @param ids The ids of the entities being searched.
+   * @return List of the entities retrieved from the data store, in the order of the given ids.
+   */
+  protected List<T> implementFindByIds(final Collection<Long> ids) {
+    return this.getDao().findByIds(ids);
+  }
+  
   /**
    * Implements business (non-data) validation logic after finding an entity by id.
    * 
@@ -227,6 +269,19 @@ public abstract class AbstractDBService<T extends Entity> implements DBService<T
     return this.getDao().findOne(searchCriteria);
   }
   
+  /**
+   * Implements logic to stream all the entities that matches the given search criteria.
+   * 
+   * @param searchCriteria The SearchCriteria object with user input
+   * @param consumer The consumer receiving each entity.
+   * @return The number of entities streamed.
+   * 
+   * @see SearchCriteria
+   */
+  protected long implementStream(final SearchCriteria searchCriteria, final EntityConsumer<T> consumer) {
+    return this.getDao().stream(searchCriteria, consumer);
+  }
+  
   /**
    * Implements logic to get the count of rows.
    */
@@ -405,14 +460,16 @@ public abstract class AbstractDBService<T extends Entity> implements DBService<T
   }
   
   /**
-   * Implements logic to persist the entities and its mapped associations to the underlying data store.
+   * Implements logic to persist the entities and its mapped associations to the underlying data store. By default the entities are expected to be of
+   * the type of this service and are inserted in batches by its DAO. Descendants spanning multiple DAOs must over-ride.
    * 
    * @param entities Instances of the entities object.
    * 
    * @return The list of the newly created entities.
    */
+  @SuppressWarnings("unchecked")
   protected List<? extends Entity> implementCreate(final List<? extends Entity> entities) {
-    return null;
+    return this.getDao().insertAll((List<T>) entities);
   }
   
   /**
@@ -452,14 +509,16 @@ public abstract class AbstractDBService<T extends Entity> implements DBService<T
   }
   
   /**
-   * Implements logic to persist the modified entities and its mapped associations to the underlying data store.
+   * Implements logic to persist the modified entities and its mapped associations to the underlying data store. By default the entities are expected
+   * to be of the type of this service and are updated in batches by its DAO. Descendants spanning multiple DAOs must over-ride.
    * 
    * @param entities List of entities of the domain/entity objects that are requested to be modified in the data store.
    * 
    * @return The list of the modified entities.
    */
+  @SuppressWarnings("unchecked")
   protected List<? extends Entity> implementModify(final List<? extends Entity> entities) {
-    return null;
+    return this.getDao().updateAll((List<T>) entities);
   }
   
   /**
@@ -499,12 +558,14 @@ public abstract class AbstractDBService<T extends Entity> implements DBService<T
   }
   
   /**
-   * Implements logic to remove persisted entities and its mapped associations to the underlying data store.
+   * Implements logic to remove persisted entities and its mapped associations to the underlying data store. By default the entities are expected to
+   * be of the type of this service and are deleted in batches by its DAO. Descendants spanning multiple DAOs must over-ride.
    * 
    * @param entities List of entities of the domain/entity objects that are about to be removed from the data store.
    */
+  @SuppressWarnings("unchecked")
   protected void implementRemove(final List<? extends Entity> entities) {
-    return;
+    this.getDao().deleteAll((List<T>) entities);
   }
   
   /**
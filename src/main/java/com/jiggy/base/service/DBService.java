@@ -1,8 +1,11 @@
 package com.jiggy.base.service;
 
+import com.jiggy.base.dao.EntityConsumer;
 import com.jiggy.base.entity.Entity;
+import com.jiggy.base.entity.EntityVersion;
 import com.jiggy.base.searchengine.SearchCriteria;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -23,6 +26,22 @@ public interface DBService<T extends Entity> extends Service {
    */
   T findById(final Long id);
   
+  /**
+   * Finds the entities for the given Ids. Ids that are not found are skipped.
+   * 
+   * @param ids The ids of the entities to be searched for.
+   * @return List of the entity objects, in the order of the given ids.
+   */
+  List<T> findByIds(final Collection<Long> ids);
+  
+  /**
+   * Finds the version and last modification of the entity for the given Id, without loading the whole entity. Answers the conditional requests.
+   * 
+   * @param id The id for the entity to be searched for.
+   * @return The version of the entity, null if it does not exist.
+   */
+  EntityVersion findVersion(final Long id);
+  
   /**
    * Finds all the entity objects.
    * 
@@ -48,6 +67,18 @@ public interface DBService<T extends Entity> extends Service {
    */
   T findOne(final SearchCriteria searchCriteria);
   
+  /**
+   * Streams all the entities that matches the given search criteria to the consumer, one at a time, without materializing the result set. The
+   * transaction spans the whole stream, so the consumer is expected to write the entities out as they arrive.
+   * 
+   * @param searchCriteria The SearchCriteria object with user input, null for all the entities.
+   * @param consumer The consumer receiving each entity.
+   * @return The number of entities streamed.
+   * 
+   * @see SearchCriteria
+   */
+  long stream(final SearchCriteria searchCriteria, final EntityConsumer<T> consumer);
+  
   /**
    * Returns the count of such entities.
    * 
@@ -1,16 +1,27 @@
 package com.jiggy.base.web;
 
 import com.jiggy.base.entity.Entity;
+import com.jiggy.base.entity.EntityVersion;
+import com.jiggy.base.exception.Error;
+import com.jiggy.base.exception.ValidationException;
 import com.jiggy.base.searchengine.DefaultSearchCriteria;
 import com.jiggy.base.searchengine.SearchCriteria;
+import com.jiggy.base.searchengine.SearchCriteria.CountMode;
 import com.jiggy.base.searchengine.FilterExpression.FilterTerm;
 import com.jiggy.base.service.DBService;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Iterator;
 import java.util.List;
 
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
+import org.apache.commons.lang3.StringUtils;
+import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jettison.json.JSONArray;
 import org.codehaus.jettison.json.JSONException;
 import org.codehaus.jettison.json.JSONObject;
@@ -37,6 +48,7 @@ import com.sun.jersey.core.util.MultivaluedMapImpl;
  */
 public abstract class AbstractResource<T extends Entity> extends BaseResource implements DBResource<T> {
   private final static Logger logger = LoggerFactory.getLogger(AbstractResource.class);
+  private final static String IDS_PARAM = "ids";
   
   private DBService<T> service = null;
   private Transformer<T> transformer = null;
@@ -63,6 +75,17 @@ public abstract class AbstractResource<T extends Entity> extends BaseResource im
     this.transformer = transformer;
   }
   
+  /**
+   * Creates a new instance of com.jiggy.base.web.AbstractResource.java and Performs Initialization, transforming the entities with their
+   * EntityCodec.
+   * 
+   * @param service The Service that DBResource interacts with.
+   * @param entityClass The class of the entities of the service.
+   */
+  public AbstractResource(final DBService<T> service, final Class<T> entityClass) {
+    this(service, new EntityCodecTransformer<T>(entityClass));
+  }
+  
   /**
    * Getter of the property <tt>service</tt>
    * 
@@ -84,6 +107,14 @@ public abstract class AbstractResource<T extends Entity> extends BaseResource im
   @Override
   public JSONObject findById(final Long id) throws JSONException {
     this.beforeFindById(id);
+    
+    if (ConditionalRequest.isConditionalGet(this.getRequest())) {
+      EntityVersion version = this.getService().findVersion(id);
+      
+      if (version != null)
+        this.checkNotModified(version.getETag(), version.getLastModifiedDate());
+    }
+    
     JSONObject foundEntity = this.implementFindById(id);
     this.afterFindById(id, foundEntity);
     
@@ -91,21 +122,48 @@ public abstract class AbstractResource<T extends Entity> extends BaseResource im
   }
   
   @Override
-  public JSONArray findAll() throws JSONException {
-    this.beforeFindAll();
-    JSONArray foundEntities = this.implementFindAll();
-    this.afterFindAll(foundEntities);
+  public JSONArray findByIds(final String ids) throws JSONException {
+    List<Long> idList = this.parseIds(ids);
+    
+    this.beforeFindByIds(idList);
+    JSONArray foundEntities = this.implementFindByIds(idList);
+    this.afterFindByIds(idList, foundEntities);
     
     return foundEntities;
   }
   
   @Override
-  public JSONObject find() throws JSONException {
+  public StreamingOutput findAll() throws JSONException {
+    String ids = this.getUriInfo() == null ? null : this.getUriInfo().getQueryParameters().getFirst(IDS_PARAM);
+    
+    if (ids != null) {
+      final JSONArray foundEntities = this.findByIds(ids);
+      
+      return new StreamingOutput() {
+        @Override
+        public void write(final OutputStream output) throws IOException {
+          output.write(foundEntities.toString().getBytes(JsonEntityWriter.ENCODING));
+        }
+      };
+    }
+    
+    this.beforeFindAll();
+    
+    return this.implementFindAll();
+  }
+  
+  @Override
+  public StreamingOutput find() {
     this.beforeFind();
-    JSONObject jsonObject = this.implementFind();
-    this.afterFind(jsonObject);
     
-    return jsonObject;
+    return this.implementFind();
+  }
+  
+  @Override
+  public StreamingOutput stream() {
+    this.beforeFind();
+    
+    return this.implementStream();
   }
   
   @Override
@@ -120,6 +178,7 @@ public abstract class AbstractResource<T extends Entity> extends BaseResource im
   @Override
   public JSONObject modify(final Long id, final Form form) throws JSONException {
     this.beforeModify(id, form);
+    this.checkVersion(id);
     JSONObject jsonObject = this.implementModify(id, form);
     this.afterModify(jsonObject);
     return jsonObject;
@@ -128,6 +187,7 @@ public abstract class AbstractResource<T extends Entity> extends BaseResource im
   @Override
   public void remove(Long id) {
     this.beforeRemove(id);
+    this.checkVersion(id);
     this.implementRemove(id);
     this.afterRemove(id);
   }
@@ -150,6 +210,8 @@ public abstract class AbstractResource<T extends Entity> extends BaseResource im
    */
   protected JSONObject implementFindById(final Long id) throws JSONException {
     T entity = this.getService().findById(id);
+    ConditionalRequest.setValidators(this.getResponse(), EntityVersion.of(entity));
+    
     return this.getTransformer().entityToJSON(entity);
   }
   
@@ -164,29 +226,146 @@ public abstract class AbstractResource<T extends Entity> extends BaseResource im
   }
   
   /**
-   * Implements non-business/non-data validation logic, typically a security access check before entity is accessed.
+   * Sets the ETag and Last-Modified of the representation on the response, and answers a conditional GET with 304 Not Modified when the copy of the
+   * client is current.
+   * 
+   * @param eTag The entity tag of the representation, null if it has none.
+   * @param lastModified The last modification of the representation in milliseconds, null if unknown.
+   * @throws WebApplicationException With 304 Not Modified, if the copy of the client is current.
    */
-  protected void beforeFindAll() {
+  protected void checkNotModified(final String eTag, final Long lastModified) {
+    ConditionalRequest.setValidators(this.getResponse(), eTag, lastModified);
+    
+    if (ConditionalRequest.isNotModified(this.getRequest(), eTag, lastModified))
+      throw new WebApplicationException(Response.notModified().build());
+  }
+  
+  /**
+   * Checks the If-Match of the request, if any, against the stored version of the entity, read from the entity cache or by a projection of the data
+   * store.
+   * 
+   * @param id The id of the entity about to be written.
+   * @throws WebApplicationException With 412 Precondition Failed, if the entity was modified since the version the request applies to.
+   */
+  protected void checkVersion(final Long id) {
+    if (!ConditionalRequest.isConditionalWrite(this.getRequest()))
+      return;
+    
+    if (!ConditionalRequest.isMatched(this.getRequest(), this.getService().findVersion(id)))
+      throw new WebApplicationException(Response.status(Response.Status.PRECONDITION_FAILED).build());
+  }
+  
+  /**
+   * Parses the comma separated ids received from the client, ignoring whitespace.
+   * 
+   * @param ids The comma separated ids.
+   * @return The ids.
+   */
+  protected List<Long> parseIds(final String ids) {
+    try {
+      return new FilterTerm(Entity.ID_COLUMN_NAME, StringUtils.deleteWhitespace(StringUtils.defaultString(ids))).getLongValues();
+    } catch (NumberFormatException nfe) {
+      throw new ValidationException(Error.ERROR_INVALID);
+    }
+  }
+  
+  /**
+   * Adds the filter string received from the client to the search criteria.
+   * 
+   * @param searchCriteria The search criteria.
+   * @param where The filter string, in the grammar of the FilterParser.
+   */
+  protected void addWhere(final SearchCriteria searchCriteria, final String where) {
+    try {
+      searchCriteria.addFilter(where);
+    } catch (IllegalArgumentException iae) {
+      logger.debug("Invalid filter {}", iae.getMessage());
+      throw new ValidationException(Error.ERROR_INVALID);
+    }
+  }
+  
+  /**
+   * Parses the count mode received from the client, ignoring case.
+   * 
+   * @param countMode The name of the count mode.
+   * @return The count mode.
+   */
+  protected CountMode parseCountMode(final String countMode) {
+    try {
+      return CountMode.valueOf(StringUtils.upperCase(StringUtils.trim(countMode)));
+    } catch (RuntimeException re) {
+      throw new ValidationException(Error.ERROR_INVALID);
+    }
+  }
+  
+  /**
+   * Implements non-business/non-data validation logic, typically a security access check before entities are accessed.
+   * 
+   * @param ids The ids of the Domain/Entities that are about to be accessed.
+   */
+  protected void beforeFindByIds(final List<Long> ids) {
     return;
   }
   
   /**
    * The extending class may provide the implementation.
    * 
-   * @return If found, a list of the JSONObject of the found entity object, else null.
-   * @throws JSONException
+   * @param ids The ids of the entities to be searched for
+   * @return A list of the JSONObject of the found entity objects, in the order of the given ids.
+   * @throws JSONException If the transformer fails
    */
-  protected JSONArray implementFindAll() throws JSONException {
-    List<T> entities = this.getService().findAll();
+  protected JSONArray implementFindByIds(final List<Long> ids) throws JSONException {
+    List<T> entities = this.getService().findByIds(ids);
+    this.checkNotModified(EntityVersion.eTagOf(entities), EntityVersion.lastModifiedOf(entities));
+    
     return this.getTransformer().entitiesToJSONArray(entities);
   }
   
   /**
-   * Implements business (non-data) validation logic after finding an entity by id.
+   * Implements business (non-data) validation logic after finding entities by ids.
    * 
-   * @param jsonNArray contains list of jsonObjects found.
+   * @param ids The ids received from the client.
+   * @param jsonArray found.
    */
-  protected void afterFindAll(final JSONArray jsonNArray) {
+  protected void afterFindByIds(final List<Long> ids, final JSONArray jsonArray) {
+    return;
+  }
+  
+  /**
+   * Implements non-business/non-data validation logic, typically a security access check before entity is accessed.
+   */
+  protected void beforeFindAll() {
+    return;
+  }
+  
+  /**
+   * The extending class may provide the implementation. The entities are streamed through the service from the cursor of the data store when Jersey
+   * writes the response, so no list or JSONArray of all of them is held.
+   * 
+   * @return The output that writes the JSON array of entities.
+   */
+  protected StreamingOutput implementFindAll() {
+    return new StreamingOutput() {
+      @Override
+      public void write(final OutputStream output) throws IOException {
+        JsonEntityWriter<T> writer = AbstractResource.this.newJsonWriter(output);
+        
+        writer.writeStartArray();
+        AbstractResource.this.getService().stream(null, writer);
+        writer.writeEndArray();
+        writer.close();
+        
+        AbstractResource.this.afterFindAll(writer.getWritten());
+      }
+    };
+  }
+  
+  /**
+   * Implements business (non-data) validation logic after all the entities are written to the response.
+   * 
+   * @param count The number of entities written.
+   */
+  protected void afterFindAll(final long count) {
     return;
   }
   
@@ -200,24 +379,87 @@ public abstract class AbstractResource<T extends Entity> extends BaseResource im
   }
   
   /**
-   * The extending class may over-ride the implementation.
+   * The extending class may over-ride the implementation. The search criteria is built while the request is in scope and the envelope with the
+   * count is written when Jersey writes the response, one entity at a time. The unpaged searches without a text query are streamed from the cursor
+   * of the data store like stream, the others write the page returned by the service.
    * 
-   * @return If found, a list of the JSONObject of the found entity object, else null.
-   * @throws JSONException any JSONException during transformation.
+   * @return The output that writes the JSON object with the count and the data of the found entities, empty without search criteria.
    */
-  protected JSONObject implementFind() throws JSONException {
-    JSONObject jsonObject = new JSONObject();
-    SearchCriteria searchCriteria = this.buildSearchCriteria();
+  protected StreamingOutput implementFind() {
+    final SearchCriteria searchCriteria = this.buildSearchCriteria();
     
-    if (searchCriteria != null) {
-      List<T> entities = this.getService().find(searchCriteria);
-      JSONArray jsonArray = this.getTransformer().entitiesToJSONArray(entities);
-      
-      jsonObject.put("count", (searchCriteria.getRowCount() < jsonArray.length() ? jsonArray.length() : searchCriteria.getRowCount()));
-      jsonObject.put("data", jsonArray);
-    }
+    return new StreamingOutput() {
+      @Override
+      public void write(final OutputStream output) throws IOException {
+        JsonEntityWriter<T> writer = AbstractResource.this.newJsonWriter(output);
+        
+        if (searchCriteria == null) {
+          writer.getGenerator().writeStartObject();
+          writer.getGenerator().writeEndObject();
+        } else if (AbstractResource.this.isStreamable(searchCriteria)) {
+          writer.writeStartFind();
+          searchCriteria.setRowCount(AbstractResource.this.getService().stream(searchCriteria, writer));
+          writer.writeEndFind(searchCriteria);
+        } else {
+          writer.writeStartFind();
+          writer.acceptAll(AbstractResource.this.getService().find(searchCriteria));
+          writer.writeEndFind(searchCriteria);
+        }
+        
+        writer.close();
+        AbstractResource.this.afterFind(searchCriteria, writer.getWritten());
+      }
+    };
+  }
+  
+  /**
+   * Whether the entities of the search can be streamed from the cursor of the data store rather than found as a page.
+   * 
+   * @param searchCriteria The search criteria.
+   * @return true if the search is neither paged nor a text query.
+   */
+  protected boolean isStreamable(final SearchCriteria searchCriteria) {
+    return !searchCriteria.isPaginationEnabled() && !searchCriteria.isKeysetPaginationEnabled() && StringUtils.isBlank(searchCriteria.getQuery());
+  }
+  
+  /**
+   * The extending class may over-ride the implementation. The search criteria is built while the request is in scope and the entities are streamed
+   * through the service when Jersey writes the response, flushing every few rows so the response is sent chunked.
+   * 
+   * @return The output that writes the JSON array of entities.
+   */
+  protected StreamingOutput implementStream() {
+    final SearchCriteria searchCriteria = this.buildSearchCriteria();
     
-    return jsonObject;
+    return new StreamingOutput() {
+      @Override
+      public void write(final OutputStream output) throws IOException {
+        JsonEntityWriter<T> writer = AbstractResource.this.newJsonWriter(output);
+        
+        writer.writeStartArray();
+        long count = AbstractResource.this.getService().stream(searchCriteria, writer);
+        writer.writeEndArray();
+        writer.close();
+        
+        logger.debug("Streamed {} entities.", count);
+      }
+    };
+  }
+  
+  /**
+   * Creates the writer of the entities of a response, writing the JSON of the transformer of each entity as it comes.
+   * 
+   * @param output The output stream of the response.
+   * @return The writer.
+   * @throws IOException If the writer cannot be created.
+   */
+  protected JsonEntityWriter<T> newJsonWriter(final OutputStream output) throws IOException {
+    return new JsonEntityWriter<T>(output) {
+      @Override
+      protected void writeEntity(final JsonGenerator generator, final T entity) throws IOException {
+        AbstractResource.this.getTransformer().writeJSON(entity, generator);
+      }
+    };
   }
   
   /**
@@ -242,6 +484,14 @@ public abstract class AbstractResource<T extends Entity> extends BaseResource im
         defaultSearchCriteria.setOffset(Integer.parseInt(vals.get(0)));
       else if ("limit".equalsIgnoreCase(key))
         defaultSearchCriteria.setLimit(Integer.parseInt(vals.get(0)));
+      else if ("after".equalsIgnoreCase(key))
+        defaultSearchCriteria.setAfter(vals.get(0));
+      else if ("count".equalsIgnoreCase(key))
+        defaultSearchCriteria.setCountMode(this.parseCountMode(vals.get(0)));
+      else if ("where".equalsIgnoreCase(key))
+        this.addWhere(defaultSearchCriteria, vals.get(0));
+      else if ("q".equalsIgnoreCase(key))
+        defaultSearchCriteria.setQuery(vals.get(0));
       else
         defaultSearchCriteria.addFilter(new FilterTerm(key, vals.get(0)));
     }
@@ -250,13 +500,12 @@ public abstract class AbstractResource<T extends Entity> extends BaseResource im
   }
   
   /**
-   * Implements business (non-data) validation logic after finding an entity by id.
-   * 
-   * @param entities capturing user input.
+   * Implements business (non-data) validation logic after the found entities are written to the response.
    * 
-   * @param list of jsonObjects found.
+   * @param searchCriteria The search criteria the entities were found with, null if none was given.
+   * @param count The number of entities written.
    */
-  protected void afterFind(final JSONObject entities) {
+  protected void afterFind(final SearchCriteria searchCriteria, final long count) {
     return;
   }
   
@@ -319,9 +568,19 @@ public abstract class AbstractResource<T extends Entity> extends BaseResource im
     logger.debug("Check if this is an update request");
     
     T entity = find(id, form);
+    Long version = entity == null ? null : entity.getVersion();
     entity = this.getTransformer().formToEntity(form, entity);
     
-    if (entity != null) return this.getTransformer().entityToJSON(this.getService().update(entity));
+    if (entity != null) {
+      if (version != null)
+        entity.setVersion(version);
+      
+      T updatedEntity = this.getService().update(entity);
+      ConditionalRequest.setValidators(this.getResponse(), EntityVersion.of(updatedEntity));
+      
+      return this.getTransformer().entityToJSON(updatedEntity);
+    }
+    
     logger.debug("Check if this is an modify request");
     
     List<? extends Entity> entities = this.getTransformer().formToEntities(form);
@@ -1,9 +1,13 @@
 package com.jiggy.base.web;
 
 import com.jiggy.base.entity.Entity;
+import com.jiggy.base.exception.Error;
+import com.jiggy.base.exception.SystemException;
 
+import java.io.IOException;
 import java.util.List;
 
+import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jettison.json.JSONArray;
 import org.codehaus.jettison.json.JSONException;
 
@@ -30,6 +34,15 @@ public abstract class AbstractTransformer<T extends Entity> implements Transform
     return jsonArray;
   }
   
+  @Override
+  public void writeJSON(final T entity, final JsonGenerator generator) throws IOException {
+    try {
+      generator.writeRawValue(this.entityToJSON(entity).toString());
+    } catch (JSONException je) {
+      throw new SystemException(Error.DEFAULT, je);
+    }
+  }
+  
   @Override
   public Object formToEntityId(final Form form) {
     if (form != null && form.getFirst(getEntityIdColumnName()) != null) {
@@ -0,0 +1,154 @@
+package com.jiggy.base.web;
+
+import com.jiggy.base.entity.EntityVersion;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * ConditionalRequest.java The validators of the HTTP conditional requests, shared by the Spring controllers and the Jersey resources. A GET whose
+ * If-None-Match, or else If-Modified-Since, matches the current entity is answered with 304 Not Modified; a PUT or DELETE whose If-Match does not
+ * match the current entity is refused, so that a client can not overwrite a modification it has not seen. If-None-Match compares the tags weakly and
+ * If-Match strongly, as in RFC 7232.
+ * 
+ * @author jmalkan
+ */
+public final class ConditionalRequest {
+  public static final String ETAG = "ETag";
+  public static final String LAST_MODIFIED = "Last-Modified";
+  public static final String IF_MATCH = "If-Match";
+  public static final String IF_NONE_MATCH = "If-None-Match";
+  public static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+  
+  private static final String ANY = "*";
+  private static final String WEAK_PREFIX = "W/";
+  
+  private ConditionalRequest() {
+    super();
+  }
+  
+  /**
+   * @param request The request.
+   * @return true if the request is a conditional GET, whose client already holds a copy of the response.
+   */
+  public static boolean isConditionalGet(final HttpServletRequest request) {
+    return request != null && (request.getHeader(IF_NONE_MATCH) != null || request.getHeader(IF_MODIFIED_SINCE) != null);
+  }
+  
+  /**
+   * @param request The request.
+   * @return true if the request is a conditional write, that applies to a given version of the entity only.
+   */
+  public static boolean isConditionalWrite(final HttpServletRequest request) {
+    return request != null && request.getHeader(IF_MATCH) != null;
+  }
+  
+  /**
+   * Checks If-None-Match, or If-Modified-Since when the request has no If-None-Match, against the current representation.
+   * 
+   * @param request The request.
+   * @param eTag The entity tag of the current representation, null if it has none.
+   * @param lastModified The last modification of the current representation in milliseconds, null if unknown.
+   * @return true if the copy of the client is current and the response is 304 Not Modified.
+   */
+  public static boolean isNotModified(final HttpServletRequest request, final String eTag, final Long lastModified) {
+    if (request == null)
+      return false;
+    
+    String ifNoneMatch = request.getHeader(IF_NONE_MATCH);
+    
+    if (ifNoneMatch != null)
+      return eTag != null && matches(ifNoneMatch, eTag, true);
+    
+    long ifModifiedSince = getDateHeader(request, IF_MODIFIED_SINCE);
+    
+    return ifModifiedSince > -1 && lastModified != null && lastModified.longValue() / 1000 <= ifModifiedSince / 1000;
+  }
+  
+  /**
+   * Checks If-Match against the current entity.
+   * 
+   * @param request The request.
+   * @param version The current version of the entity, null if it does not exist.
+   * @return true if the request has no If-Match, or it matches the current entity.
+   */
+  public static boolean isMatched(final HttpServletRequest request, final EntityVersion version) {
+    String ifMatch = request == null ? null : request.getHeader(IF_MATCH);
+    
+    if (ifMatch == null)
+      return true;
+    
+    if (version == null)
+      return false;
+    
+    return ANY.equals(ifMatch.trim()) || (version.getETag() != null && matches(ifMatch, version.getETag(), false));
+  }
+  
+  /**
+   * Sets the ETag and Last-Modified of the entity on the response.
+   * 
+   * @param response The response.
+   * @param version The version of the entity, null to set none.
+   */
+  public static void setValidators(final HttpServletResponse response, final EntityVersion version) {
+    if (version != null)
+      setValidators(response, version.getETag(), version.getLastModifiedDate());
+  }
+  
+  /**
+   * Sets the ETag and Last-Modified of a representation on the response.
+   * 
+   * @param response The response.
+   * @param eTag The entity tag, null to set none.
+   * @param lastModified The last modification in milliseconds, null to set none.
+   */
+  public static void setValidators(final HttpServletResponse response, final String eTag, final Long lastModified) {
+    if (response == null)
+      return;
+    
+    if (eTag != null)
+      response.setHeader(ETAG, eTag);
+    
+    if (lastModified != null)
+      response.setDateHeader(LAST_MODIFIED, lastModified.longValue());
+  }
+  
+  /**
+   * @return true if one of the comma separated tags of the header, or *, is the given tag.
+   */
+  private static boolean matches(final String header, final String eTag, final boolean weak) {
+    if (ANY.equals(header.trim()))
+      return true;
+    
+    String strongTag = StringUtils.removeStart(eTag, WEAK_PREFIX);
+    
+    for (String candidate : StringUtils.split(header, ',')) {
+      String tag = candidate.trim();
+      
+      if (tag.startsWith(WEAK_PREFIX)) {
+        if (!weak)
+          continue;
+        
+        tag = tag.substring(WEAK_PREFIX.length());
+      }
+      
+      if (tag.equals(strongTag))
+        return true;
+    }
+    
+    return false;
+  }
+  
+  /**
+   * @return The date of the header in milliseconds, -1 if it is missing or malformed.
+   */
+  private static long getDateHeader(final HttpServletRequest request, final String name) {
+    try {
+      return request.getDateHeader(name);
+    } catch (IllegalArgumentException iae) {
+      return -1;
+    }
+  }
+}
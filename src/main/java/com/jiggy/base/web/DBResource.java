@@ -11,6 +11,7 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.codehaus.jettison.json.JSONArray;
 import org.codehaus.jettison.json.JSONException;
@@ -27,7 +28,8 @@ import com.sun.jersey.api.representation.Form;
  */
 public interface DBResource<T extends Entity> extends Resource {
   /**
-   * Finds the entity for the given Id
+   * Finds the entity for the given Id, with its version in the ETag and Last-Modified response headers. The response is 304 Not Modified, without
+   * loading the entity, when the If-None-Match or If-Modified-Since of the request matches the current version.
    * 
    * @param id The id for the entity to be searched for
    * @return If found, an instance of the JSONObject of the found entity object, else null.
@@ -40,30 +42,51 @@ public interface DBResource<T extends Entity> extends Resource {
   JSONObject findById(@PathParam("id") final Long id) throws JSONException;
   
   /**
-   * Finds all the entity objects
+   * Finds the entities for the given comma separated Ids. Served by findAll when the ids query param is present, since JAX-RS does not dispatch on
+   * query params. Example http://localhost:8080/../todo?ids=1,2,3.
    * 
-   * @return If found, a list of the JSONObject of the found entity object, else null.
+   * @param ids The comma separated ids of the entities to be searched for.
+   * @return A list of the JSONObject of the found entity objects, in the order of the given ids.
+   * @throws JSONException error while converting to JSON.
+   */
+  JSONArray findByIds(final String ids) throws JSONException;
+  
+  /**
+   * Finds all the entity objects, or only the ones for the comma separated ids query param if it is present. The entities are written to the
+   * response as they are read from the data store.
+   * 
+   * @return The output that writes the JSON array of the found entities to the response.
    * @throws JSONException error while converting to JSON.
    */
   @GET
   @Produces(MediaType.APPLICATION_JSON)
-  JSONArray findAll() throws JSONException;
+  StreamingOutput findAll() throws JSONException;
   
   /**
    * Finds the entity for the given search criteria for the user input for sort, pagination, filter. This should come in as name=value pair. multiple
    * name=values be separated by '&'. Example http://localhost:8080/../find/name=CookBook&desc=CookBookDesc&sort=name&offset=1&limit=10.
    * 
-   * @return A JSONObject with 2 elements &lt;b&gt;count&lt;/b&gt; and &lt;b&gt;data&lt;/b&gt;. &lt;b&gt;count:&lt;/b&gt; is the total number of rows
-   *         the given filter provided to this operation after find?.... &lt;b&gt;data:&lt;/b&gt; If pagination attributes (offset & limit) are
-   *         provided data only returns subset of total row count. Else count will match the data size. Example: {count: 10, data: [{ item1s data }, {
-   *         item2s data }, ....]}
-   * @throws JSONException error while converting to JSON.
+   * @return The output that writes a JSONObject with 2 elements &lt;b&gt;count&lt;/b&gt; and &lt;b&gt;data&lt;/b&gt;. &lt;b&gt;count:&lt;/b&gt;
+   *         is the total number of rows the given filter provided to this operation after find?.... &lt;b&gt;data:&lt;/b&gt; If pagination attributes
+   *         (offset & limit) are provided data only returns subset of total row count. Else count will match the data size. Example: {count: 10,
+   *         data: [{ item1s data }, { item2s data }, ....]}. The entities are written to the response one at a time, the count after them.
    */
   @GET
   @Path("/find")
   @Produces(MediaType.APPLICATION_JSON)
   @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
-  JSONObject find() throws JSONException;
+  StreamingOutput find();
+  
+  /**
+   * Streams all the entities that matches the given search criteria as a JSON array, writing the rows as they are read from the data store. Accepts
+   * the same name=value filter and sort pairs as find. Example http://localhost:8080/../stream?name=CookBook&sort=name.
+   * 
+   * @return The output that writes the JSON array of entities to the response.
+   */
+  @GET
+  @Path("/stream")
+  @Produces(MediaType.APPLICATION_JSON)
+  StreamingOutput stream();
   
   /**
    * Runs business logic and persists the entity object and its mapped associations to the underlying data store.
@@ -79,7 +102,8 @@ public interface DBResource<T extends Entity> extends Resource {
   JSONObject create(final Form form) throws JSONException;
   
   /**
-   * Runs business logic and persists the entity object and its mapped associations to the underlying data store.
+   * Runs business logic and persists the entity object and its mapped associations to the underlying data store. Fails with 412 Precondition
+   * Failed when the If-Match of the request does not match the stored version of the entity.
    * 
    * @param id The id of the entity to be updated.
    * @param form user input.
@@ -94,7 +118,8 @@ public interface DBResource<T extends Entity> extends Resource {
   JSONObject modify(@PathParam("id") final Long id, final Form form) throws JSONException;
   
   /**
-   * Runs business logic and deletes the entity from the data store. Cascades if configured
+   * Runs business logic and deletes the entity from the data store. Cascades if configured. Fails with 412 Precondition Failed when the If-Match of
+   * the request does not match the stored version of the entity.
    * 
    * @param id the Id of the entity to be removed.
    */
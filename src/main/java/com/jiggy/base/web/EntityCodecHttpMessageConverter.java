@@ -0,0 +1,111 @@
+package com.jiggy.base.web;
+
+import com.jiggy.base.entity.Entity;
+import com.jiggy.base.entity.EntityCodec;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Collection;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonProcessingException;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+/**
+ * EntityCodecHttpMessageConverter.java The JSON message converter of the Spring controllers for the entities and the collections of them. The
+ * entities are written and read by their EntityCodec, in the JSON of the Jackson converter it is registered ahead of. The other elements of a
+ * collection are written by the ObjectMapper, which the Jackson converter keeps for every other type.
+ * 
+ * @author jmalkan
+ */
+public class EntityCodecHttpMessageConverter extends AbstractHttpMessageConverter<Object> {
+  public static final Charset DEFAULT_CHARSET = Charset.forName(JsonEntityWriter.ENCODING);
+  
+  private ObjectMapper objectMapper = new ObjectMapper();
+  
+  /**
+   * Creates a new instance of com.jiggy.base.web.EntityCodecHttpMessageConverter.java and Performs Initialization
+   */
+  public EntityCodecHttpMessageConverter() {
+    super(new MediaType("application", "json", DEFAULT_CHARSET));
+  }
+  
+  /**
+   * Getter of the property <tt>objectMapper</tt>
+   * 
+   * @return The mapper of the generators and parsers, and of the values that are not entities.
+   */
+  public ObjectMapper getObjectMapper() {
+    return this.objectMapper;
+  }
+  
+  /**
+   * Setter of the property <tt>objectMapper</tt>
+   * 
+   * @param objectMapper The mapper of the generators and parsers, and of the values that are not entities.
+   */
+  public void setObjectMapper(final ObjectMapper objectMapper) {
+    this.objectMapper = objectMapper;
+  }
+  
+  @Override
+  protected boolean supports(final Class<?> clazz) {
+    return Entity.class.isAssignableFrom(clazz) || Collection.class.isAssignableFrom(clazz);
+  }
+  
+  /**
+   * Reads the entities only, the element type of a collection being erased.
+   */
+  @Override
+  public boolean canRead(final Class<?> clazz, final MediaType mediaType) {
+    return Entity.class.isAssignableFrom(clazz) && super.canRead(clazz, mediaType);
+  }
+  
+  @Override
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  protected Object readInternal(final Class<? extends Object> clazz, final HttpInputMessage inputMessage) throws IOException {
+    JsonParser parser = this.objectMapper.getJsonFactory().createJsonParser(inputMessage.getBody());
+    
+    try {
+      return EntityCodec.forClass((Class<Entity>) (Class) clazz).read(parser);
+    } catch (JsonProcessingException jpe) {
+      throw new HttpMessageNotReadableException("Could not read JSON: " + jpe.getMessage(), jpe);
+    } finally {
+      parser.close();
+    }
+  }
+  
+  @Override
+  protected void writeInternal(final Object object, final HttpOutputMessage outputMessage) throws IOException {
+    JsonGenerator generator = this.objectMapper.getJsonFactory().createJsonGenerator(outputMessage.getBody(), JsonEncoding.UTF8);
+    
+    try {
+      if (object instanceof Entity) {
+        EntityCodec.writeEntity((Entity) object, generator);
+      } else {
+        generator.writeStartArray();
+        
+        for (Object element : (Collection<?>) object) {
+          if (element instanceof Entity)
+            EntityCodec.writeEntity((Entity) element, generator);
+          else
+            generator.writeObject(element);
+        }
+        
+        generator.writeEndArray();
+      }
+      
+      generator.flush();
+    } catch (JsonProcessingException jpe) {
+      throw new HttpMessageNotWritableException("Could not write JSON: " + jpe.getMessage(), jpe);
+    }
+  }
+}
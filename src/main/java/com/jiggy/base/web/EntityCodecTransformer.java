@@ -0,0 +1,125 @@
+package com.jiggy.base.web;
+
+import com.jiggy.base.entity.Entity;
+import com.jiggy.base.entity.EntityCodec;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+import com.sun.jersey.api.representation.Form;
+
+/**
+ * The default Transformer of the Resources, driven by the EntityCodec of the entity class rather than written by hand for each entity. The form
+ * fields are set on the entity properties of the same name, and the entities are written to the streamed responses by the codec without building
+ * their JSONObject.
+ * 
+ * @param <T> The core Entity object instance this class transforms.
+ * 
+ * @author jmalkan
+ */
+public class EntityCodecTransformer<T extends Entity> extends AbstractTransformer<T> {
+  private final EntityCodec<T> codec;
+  
+  /**
+   * Creates a new instance of com.jiggy.base.web.EntityCodecTransformer.java and Performs Initialization
+   * 
+   * @param entityClass The class of the entities transformed.
+   */
+  public EntityCodecTransformer(final Class<T> entityClass) {
+    super();
+    this.codec = EntityCodec.forClass(entityClass);
+  }
+  
+  /**
+   * Getter of the property <tt>codec</tt>
+   * 
+   * @return The codec of the entity class.
+   */
+  public EntityCodec<T> getCodec() {
+    return this.codec;
+  }
+  
+  /**
+   * Creates an entity from the form fields. An insert sets at least one property, so the form of a create of several entities gives null.
+   */
+  @Override
+  public T formToEntity(final Form form) {
+    if (form == null)
+      return null;
+    
+    T entity = this.codec.newInstance();
+    
+    return this.setProperties(form, entity) > 0 ? entity : null;
+  }
+  
+  @Override
+  public T formToEntity(final Form form, final T entity) {
+    if (form != null && entity != null)
+      this.setProperties(form, entity);
+    
+    return entity;
+  }
+  
+  @Override
+  public List<? extends Entity> formToEntities(final Form form) {
+    return Collections.emptyList();
+  }
+  
+  @Override
+  public JSONObject entityToJSON(final T entity) throws JSONException {
+    return entity == null ? null : new JSONObject(this.codec.writeValueAsString(entity));
+  }
+  
+  /**
+   * Groups the entities in arrays by the uncapitalized simple name of their class, such as {user: [...], org: [...]}.
+   */
+  @Override
+  public JSONObject entitiesToJSON(final List<? extends Entity> entities) throws JSONException {
+    JSONObject jsonObject = new JSONObject();
+    
+    for (Entity entity : entities) {
+      String key = StringUtils.uncapitalize(entity.getClass().getSimpleName());
+      JSONArray jsonArray = jsonObject.optJSONArray(key);
+      
+      if (jsonArray == null) {
+        jsonArray = new JSONArray();
+        jsonObject.put(key, jsonArray);
+      }
+      
+      jsonArray.put(new JSONObject(EntityCodec.toJSON(entity)));
+    }
+    
+    return jsonObject;
+  }
+  
+  @Override
+  public void writeJSON(final T entity, final JsonGenerator generator) throws IOException {
+    EntityCodec.writeEntity(entity, generator);
+  }
+  
+  @Override
+  public T createTransformableEntity() {
+    return this.codec.newInstance();
+  }
+  
+  /**
+   * @return The number of properties set from the form.
+   */
+  private int setProperties(final Form form, final T entity) {
+    int count = 0;
+    
+    for (String name : form.keySet()) {
+      if (this.codec.setProperty(entity, name, form.getFirst(name)))
+        count++;
+    }
+    
+    return count;
+  }
+}
@@ -0,0 +1,171 @@
+package com.jiggy.base.web;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import com.jiggy.base.dao.EntityConsumer;
+import com.jiggy.base.entity.Entity;
+import com.jiggy.base.entity.EntityCodec;
+import com.jiggy.base.exception.Error;
+import com.jiggy.base.exception.SystemException;
+import com.jiggy.base.searchengine.SearchCriteria;
+import com.jiggy.base.searchengine.SearchCriteria.CountMode;
+
+/**
+ * JsonEntityWriter.java Writes entities as JSON straight to the response with a Jackson generator, one at a time as they come from the service, so
+ * no tree of the result is built. It is the EntityConsumer of the streamed searches, and writes the pages the services return the same way, with
+ * or without the count envelope of find. The generator is flushed every FLUSH_SIZE entities so the container sends the response chunked.
+ * 
+ * <p>
+ * Entities are written by their EntityCodec, as the Spring controllers write them. The Jersey resources override writeEntity to write the JSON of
+ * their Transformer.
+ * 
+ * @author jmalkan
+ * 
+ * @param <T> An Object that implements Entity interface.
+ */
+public class JsonEntityWriter<T extends Entity> implements EntityConsumer<T> {
+  public static final String CONTENT_TYPE = "application/json";
+  public static final String ENCODING = "UTF-8";
+  public static final String COUNT_FIELD = "count";
+  public static final String DATA_FIELD = "data";
+  public static final String MORE_FIELD = "more";
+  public static final String NEXT_FIELD = "next";
+  public static final int FLUSH_SIZE = 100;
+  
+  private static final JsonFactory JSON_FACTORY = new ObjectMapper().getJsonFactory();
+  
+  private final JsonGenerator generator;
+  private long written = 0;
+  
+  /**
+   * Creates a new instance of com.jiggy.base.web.JsonEntityWriter.java and Performs Initialization
+   * 
+   * @param output The output stream of the response, left open on close for the container to complete the response.
+   * @throws IOException If the generator cannot be created.
+   */
+  public JsonEntityWriter(final OutputStream output) throws IOException {
+    super();
+    this.generator = JSON_FACTORY.createJsonGenerator(output, JsonEncoding.UTF8);
+    this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+  }
+  
+  /**
+   * Getter of the property <tt>generator</tt>
+   * 
+   * @return The generator, to write around the entities.
+   */
+  public JsonGenerator getGenerator() {
+    return this.generator;
+  }
+  
+  /**
+   * Getter of the property <tt>written</tt>
+   * 
+   * @return The number of entities written so far.
+   */
+  public long getWritten() {
+    return this.written;
+  }
+  
+  @Override
+  public void accept(final T entity) {
+    try {
+      this.writeEntity(this.generator, entity);
+      
+      if (++this.written % FLUSH_SIZE == 0)
+        this.generator.flush();
+    } catch (IOException ioe) {
+      throw new SystemException(Error.DEFAULT, ioe);
+    }
+  }
+  
+  /**
+   * Writes the entities of a list, such as a page returned by the service.
+   * 
+   * @param entities The entities, may be null.
+   */
+  public void acceptAll(final List<? extends T> entities) {
+    if (entities == null)
+      return;
+    
+    for (T entity : entities) {
+      this.accept(entity);
+    }
+  }
+  
+  /**
+   * Opens the JSON array of the entities.
+   * 
+   * @throws IOException If the response cannot be written.
+   */
+  public void writeStartArray() throws IOException {
+    this.generator.writeStartArray();
+  }
+  
+  /**
+   * Closes the JSON array of the entities.
+   * 
+   * @throws IOException If the response cannot be written.
+   */
+  public void writeEndArray() throws IOException {
+    this.generator.writeEndArray();
+  }
+  
+  /**
+   * Opens the envelope of a find, up to the JSON array of its data.
+   * 
+   * @throws IOException If the response cannot be written.
+   */
+  public void writeStartFind() throws IOException {
+    this.generator.writeStartObject();
+    this.generator.writeFieldName(DATA_FIELD);
+    this.generator.writeStartArray();
+  }
+  
+  /**
+   * Closes the envelope of a find, writing the count and the paging state of the search criteria after the data, once they are known.
+   * 
+   * @param searchCriteria The search criteria the entities were found with.
+   * @throws IOException If the response cannot be written.
+   */
+  public void writeEndFind(final SearchCriteria searchCriteria) throws IOException {
+    this.generator.writeEndArray();
+    
+    if (searchCriteria.getRowCount() > -1 || searchCriteria.getCountMode() != CountMode.NONE)
+      this.generator.writeNumberField(COUNT_FIELD, Math.max(searchCriteria.getRowCount(), this.written));
+    
+    this.generator.writeBooleanField(MORE_FIELD, searchCriteria.isNextPageAvailable());
+    
+    if (searchCriteria.getNextPageToken() != null)
+      this.generator.writeStringField(NEXT_FIELD, searchCriteria.getNextPageToken());
+    
+    this.generator.writeEndObject();
+  }
+  
+  /**
+   * Flushes what is left of the JSON to the response and closes the generator.
+   * 
+   * @throws IOException If the response cannot be written.
+   */
+  public void close() throws IOException {
+    this.generator.close();
+  }
+  
+  /**
+   * Writes one entity. The extending class may over-ride the implementation.
+   * 
+   * @param generator The generator of the response.
+   * @param entity The entity.
+   * @throws IOException If the response cannot be written.
+   */
+  protected void writeEntity(final JsonGenerator generator, final T entity) throws IOException {
+    EntityCodec.writeEntity(entity, generator);
+  }
+}
@@ -2,8 +2,10 @@ package com.jiggy.base.web;
 
 import com.jiggy.base.entity.Entity;
 
+import java.io.IOException;
 import java.util.List;
 
+import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jettison.json.JSONArray;
 import org.codehaus.jettison.json.JSONException;
 import org.codehaus.jettison.json.JSONObject;
@@ -61,6 +63,15 @@ public interface Transformer<T extends Entity> {
    */
   JSONObject entityToJSON(final T entity) throws JSONException;
   
+  /**
+   * This method writes the JSON of an entity straight to a response being streamed, without building its JSONObject where the implementation can.
+   * 
+   * @param entity The Entity <T>.
+   * @param generator The generator of the response.
+   * @throws IOException Thrown when the response cannot be written or the transformation fails.
+   */
+  void writeJSON(final T entity, final JsonGenerator generator) throws IOException;
+  
   /**
    * This method transforms list of entities of different type to JSONObject that could be passed to the Client Layer.
    * 
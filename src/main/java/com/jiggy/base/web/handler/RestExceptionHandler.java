@@ -29,6 +29,7 @@ import org.springframework.web.util.WebUtils;
 import com.jiggy.base.exception.AbstractException;
 import com.jiggy.base.exception.Error;
 import com.jiggy.base.exception.SystemException;
+import com.jiggy.base.exception.UnavailableException;
 import com.jiggy.base.exception.ValidationException;
 
 /**
@@ -125,6 +126,9 @@ public class RestExceptionHandler extends AbstractHandlerExceptionResolver imple
       if (ex instanceof ValidationException) {
         httpStatus = HttpStatus.PRECONDITION_FAILED;
         logger.debug("Data Validation Failed : ", ex);
+      } else if (ex instanceof UnavailableException) {
+        httpStatus = HttpStatus.SERVICE_UNAVAILABLE;
+        logger.warn("Service Unavailable : " + ex);
       } else {
         logger.error("Resolving view for the Exception : ", ex);
         
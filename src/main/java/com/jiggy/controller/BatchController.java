@@ -0,0 +1,37 @@
+package com.jiggy.controller;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+import com.jiggy.base.controller.BatchDispatcher;
+
+/**
+ * Handles the batches of requests, whose sub-requests are dispatched to the other controllers.
+ * 
+ * @author jmalkan
+ */
+@Controller
+@RequestMapping("batch")
+public class BatchController {
+  @Autowired private BatchDispatcher batchDispatcher;
+  
+  /**
+   * Method to dispatch a batch of sub-requests and answer them in one response.
+   * Example : POST http://localhost:8080/service/batch [{"method":"GET","path":"/todos/1"},{"method":"GET","path":"/todos/rowCount"}]
+   * 
+   * @param request The Http request, whose body is the JSON array of the sub-requests.
+   * @param response The Http response the JSON array of the responses of the sub-requests is written to.
+   * @throws IOException If the batch could not be read or written.
+   */
+  @RequestMapping(method = RequestMethod.POST)
+  public void batch(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+    this.batchDispatcher.dispatch(request, response);
+  }
+}
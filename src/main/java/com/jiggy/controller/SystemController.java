@@ -1,14 +1,30 @@
 package com.jiggy.controller;
 
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.ResponseBody;
 
+import com.jiggy.base.dao.QueryProfiler;
+import com.jiggy.base.dao.QueryProfiler.SlowQuery;
+import com.jiggy.base.exception.Error;
+import com.jiggy.base.exception.ValidationException;
+import com.jiggy.base.monitor.MetricsRegistry;
+import com.jiggy.base.monitor.MetricsReport;
+import com.jiggy.base.monitor.Tracer;
+import com.jiggy.base.monitor.Tracer.Trace;
+import com.jiggy.base.searchengine.FilterParser;
+
 /**
  * Handles requests for the application that are generic or don't fit in a CRUD type of controller.
  * 
@@ -41,4 +57,103 @@ public class SystemController {
     this.logger.warn("Invalidating current http session.");
     session.invalidate();
   }
+  
+  /**
+   * Method to read the metrics of the services, DAOs, caches and connection pools.
+   * 
+   * @return The metrics by name, each a list of its values with their labels.
+   */
+  @ResponseBody
+  @RequestMapping(value = "/metrics", method = RequestMethod.GET)
+  public Map<String, Object> metrics() {
+    return this.report().toMap();
+  }
+  
+  /**
+   * Method to read the metrics in the Prometheus text format.
+   * Example : http://localhost:8080/service/system/metrics?format=prometheus
+   * 
+   * @param response The Http response the metrics are written to.
+   * @throws IOException If the metrics could not be written.
+   */
+  @RequestMapping(value = "/metrics", method = RequestMethod.GET, params = "format=prometheus")
+  public void prometheusMetrics(final HttpServletResponse response) throws IOException {
+    response.setContentType(MetricsReport.PROMETHEUS_CONTENT_TYPE);
+    this.report().writePrometheus(response.getWriter());
+  }
+  
+  /**
+   * Method to read the latest queries slower than the slow threshold of the query profiler, latest first.
+   * 
+   * @return The slow queries with their rendered query, filter shape, row count, elapsed time and calling service method.
+   */
+  @ResponseBody
+  @RequestMapping(value = "/slowQueries", method = RequestMethod.GET)
+  public List<SlowQuery> slowQueries() {
+    return QueryProfiler.getInstance().getSlowQueries();
+  }
+  
+  /**
+   * Method to explain a slow query against its data store, with the search criteria it ran with.
+   * Example : http://localhost:8080/service/system/slowQueries/12/explain
+   * 
+   * @param id The id of the slow query.
+   * @return The lines of the plan, or nothing if the data store can not explain the query.
+   */
+  @ResponseBody
+  @RequestMapping(value = "/slowQueries/{id}/explain", method = RequestMethod.GET)
+  public List<String> explainSlowQuery(@PathVariable("id") final long id) {
+    SlowQuery slowQuery = QueryProfiler.getInstance().getSlowQuery(id);
+    
+    if (slowQuery == null) {
+      this.logger.debug("Slow query {} is not in the slow query log.", Long.valueOf(id));
+      throw new ValidationException(Error.ERROR_INVALID);
+    }
+    
+    return slowQuery.explain();
+  }
+  
+  /**
+   * Method to read the latest traces kept by the tail sampling of the tracer: the failed, the slow and a sample of the others, latest first.
+   * 
+   * @return The traces with their spans.
+   */
+  @ResponseBody
+  @RequestMapping(value = "/traces", method = RequestMethod.GET)
+  public List<Trace> traces() {
+    return Tracer.getInstance().getTraces();
+  }
+  
+  /**
+   * Method to read a trace by the id returned in the X-Trace-Id header of its response.
+   * Example : http://localhost:8080/service/system/traces/4f9c2a0b1d3e5f67
+   * 
+   * @param traceId The id of the trace.
+   * @return The trace with its spans.
+   */
+  @ResponseBody
+  @RequestMapping(value = "/traces/{traceId}", method = RequestMethod.GET)
+  public Trace trace(@PathVariable("traceId") final String traceId) {
+    Trace trace = Tracer.getInstance().getTrace(traceId);
+    
+    if (trace == null) {
+      this.logger.debug("Trace {} was not kept or is no longer in the buffer.", traceId);
+      throw new ValidationException(Error.ERROR_INVALID);
+    }
+    
+    return trace;
+  }
+  
+  private MetricsReport report() {
+    MetricsReport report = MetricsRegistry.getInstance().report();
+    FilterParser filterParser = FilterParser.getInstance();
+    
+    report.add("backend_filter_parser_total", MetricsReport.COUNTER, "Filters compiled or served from the cache of compiled filters.",
+               Long.valueOf(filterParser.getHits()), "event", "hit");
+    report.add("backend_filter_parser_total", MetricsReport.COUNTER, "Filters compiled or served from the cache of compiled filters.",
+               Long.valueOf(filterParser.getMisses()), "event", "miss");
+    report.add("backend_filter_parser_size", MetricsReport.GAUGE, "Compiled filters cached.", Integer.valueOf(filterParser.size()));
+    
+    return report;
+  }
 }
\ No newline at end of file
@@ -27,7 +27,7 @@ public class AuthenticationListener implements org.apache.shiro.authc.Authentica
     
     if (primaryPrincipal instanceof UserPrincipal) {
       UserPrincipal userPrincipal = (UserPrincipal) primaryPrincipal;
-      User user = this.userService.findById(userPrincipal.getId());
+      User user = this.userService.findAuthorizationGraph(userPrincipal.getId());
       UserProfile userProfile = new UserProfile(user);
       
       SessionUtil.setUserProfile(userProfile);
@@ -1,63 +1,98 @@
 package com.jiggy.security;
 
 import java.io.IOException;
-import java.util.List;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.shiro.subject.Subject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.stereotype.Controller;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.web.bind.annotation.RequestMapping;
 
-import com.jiggy.base.searchengine.DefaultSearchCriteria;
-import com.jiggy.base.searchengine.SearchCriteria;
-import com.jiggy.base.searchengine.FilterExpression.FilterTerm;
+import com.jiggy.base.controller.AbstractController;
+import com.jiggy.base.monitor.SampledLogger;
+import com.jiggy.security.RouteTable.Route;
 
 /**
- * Filter to handle permission.
+ * Filter to handle permission. The resource, operation and id of a request are resolved through a RouteTable built when the application context is
+ * refreshed from the request mappings of the controllers and the Permission rows, and rebuilt after a permission is written.
  * 
  * @author jmalkan
  */
-public class HttpMethodPermissionFilter extends org.apache.shiro.web.filter.authz.HttpMethodPermissionFilter {
-  private final static String FIND_ALL_ID = "-1";
-  private final static String FIND_PATH = "/find";
+public class HttpMethodPermissionFilter extends org.apache.shiro.web.filter.authz.HttpMethodPermissionFilter
+    implements ApplicationListener<ContextRefreshedEvent> {
   private final static String BASE_PATH = "/backend/service/";
+  private final static String ROUTE_ATTRIBUTE = HttpMethodPermissionFilter.class.getName() + ".route";
+  private final static String IDS_PARAMETER = "ids";
+  private final static long LOG_INTERVAL = TimeUnit.MINUTES.toMillis(1);
   private final static Logger logger = LoggerFactory.getLogger(HttpMethodPermissionFilter.class);
+  private final static SampledLogger decisionLogger = new SampledLogger(logger, LOG_INTERVAL);
   
-  // private PermissionService permissionService;
+  @Autowired private ApplicationContext context;
+  @Autowired private PermissionService permissionService;
   // private UserProfileService userProfileService;
   
+  private volatile RouteTable routeTable = new RouteTable(BASE_PATH);
+  private volatile long routeGeneration = -1;
+  
+  @Override
+  public void onApplicationEvent(final ContextRefreshedEvent event) {
+    if (event.getApplicationContext() == this.context)
+      this.refreshRoutes();
+  }
+  
   @Override
   protected String getHttpMethodAction(final ServletRequest request) {
-    String method = ((HttpServletRequest) request).getMethod();
-    String requestURI = ((HttpServletRequest) request).getRequestURI();
-    String requestURISuffix = this.getRequestURISuffix(requestURI);
-    String restMethodAction = super.getHttpMethodAction(method);
-    String id = this.getId(request, requestURI, restMethodAction, requestURISuffix);
-    String methodAction = getHttpMethodAction(id, restMethodAction, requestURI, requestURISuffix);
-    
-    if (!StringUtils.isBlank(id)) methodAction += ":" + id;
-    
-    return methodAction;
+    return this.getRoute(request).getMethodAction();
   }
   
   @Override
   public boolean isAccessAllowed(final ServletRequest request, final ServletResponse response, final Object mappedValue) throws IOException {
-    String requestURI = ((HttpServletRequest) request).getRequestURI();
-    String resourseName = this.getResourseName(requestURI);
-    
-    String[] perms = new String[] {resourseName};
+    Route route = this.getRoute(request);
+    String[] perms = new String[] {route.getResource()};
     
     refreshPermissionsIfNeeded();
-    boolean result = super.isAccessAllowed(request, response, perms);
-    logger.info("isAccessAllowed(): service={}, perms={}, mappedValue={}, RequestURI={} result={}",
-                new Object[] {resourseName, perms, mappedValue, requestURI, Boolean.valueOf(result)});
+    boolean result = super.isAccessAllowed(request, response, perms) && this.isReadOfEachIdAllowed(request, response, route);
+    decisionLogger.log(route.getResource() + ":" + route.getOperation() + (result ? " allowed" : " denied"),
+                       "isAccessAllowed(): service={}, action={}, mappedValue={}, RequestURI={} result={}",
+                       route.getResource(), route.getMethodAction(), mappedValue, ((HttpServletRequest) request).getRequestURI(), Boolean.valueOf(result));
     
     return result;
   }
   
+  /**
+   * A read of the whole collection with the ids parameter returns the entities of those ids, so the read of each of them must be permitted as if it
+   * was requested alone.
+   */
+  private boolean isReadOfEachIdAllowed(final ServletRequest request, final ServletResponse response, final Route route) {
+    String ids = request.getParameter(IDS_PARAMETER);
+    
+    if (ids == null || !RouteTable.FIND_ALL_ID.equals(route.getId()))
+      return true;
+    
+    Subject subject = super.getSubject(request, response);
+    
+    for (String id : StringUtils.split(StringUtils.deleteWhitespace(ids), ',')) {
+      if (!subject.isPermitted(route.getResource() + ":" + route.getOperation() + ":" + id))
+        return false;
+    }
+    
+    return true;
+  }
+  
   private void refreshPermissionsIfNeeded() {
     if (SessionUtil.isPermissionRefreshNeeded()) {
       SessionUtil.clearPermissionRefreshNeeded();
@@ -67,13 +102,10 @@ public class HttpMethodPermissionFilter extends org.apache.shiro.web.filter.auth
   
   @Override
   protected void postHandle(final ServletRequest request, final ServletResponse response) throws Exception {
-    HttpServletRequest httpServletRequest = (HttpServletRequest) request;
-    String method = httpServletRequest.getMethod();
-    String requestURI = httpServletRequest.getRequestURI();
-    String resourseName = this.getResourseName(requestURI);
+    String method = ((HttpServletRequest) request).getMethod();
     String restMethodAction = getHttpMethodAction(method);
     
-    if (shouldRefresh(resourseName, restMethodAction)) {
+    if (shouldRefresh(this.getRoute(request).getResource(), restMethodAction)) {
       SessionUtil.setRefreshPermission();
     }
   }
@@ -82,80 +114,76 @@ public class HttpMethodPermissionFilter extends org.apache.shiro.web.filter.auth
     return resource.equals("master") && !"read".equals(action);
   }
   
-  private String getHttpMethodAction(final String id, final String restMethodAction, final String requestURI, final String requestURISuffix) {
-    String resourseName = this.getResourseName(requestURI);
-    String operationName = resourseName;
-    
-    if (StringUtils.isBlank(id) || FIND_ALL_ID.equals(id)) {
-      if (!StringUtils.isBlank(requestURISuffix) && !requestURISuffix.contains(FIND_PATH.substring(1)))
-        operationName = requestURISuffix;
-    } else {
-      if (StringUtils.isBlank(requestURISuffix) || !requestURISuffix.contains(FIND_PATH.substring(1)))
-        operationName = this.getRequestURISuffix(requestURI.substring(0, requestURI.length() - (id.length() + 1)));
-    }
+  /**
+   * The route of the request, resolved once and kept on the request for the later calls of the filter.
+   */
+  private Route getRoute(final ServletRequest request) {
+    Route route = (Route) request.getAttribute(ROUTE_ATTRIBUTE);
     
-    if (resourseName.equals(operationName))
-      operationName = restMethodAction;
-    else {
-      SearchCriteria searchCriteria = new DefaultSearchCriteria();
-      searchCriteria.addFilter(new FilterTerm("resourceOperation.resource", resourseName));
-      searchCriteria.addFilter(new FilterTerm("resourceOperation.operation", operationName));
-      List<Permission> permissions = null; // this.permissionService.get().find(searchCriteria);
+    if (route == null) {
+      HttpServletRequest httpServletRequest = (HttpServletRequest) request;
       
-      if (permissions == null || permissions.isEmpty())
-        operationName = restMethodAction;
+      route = this.getRouteTable().resolve(httpServletRequest.getRequestURI(), super.getHttpMethodAction(httpServletRequest.getMethod()));
+      request.setAttribute(ROUTE_ATTRIBUTE, route);
     }
     
-    return operationName;
+    return route;
   }
   
-  private String getResourseName(final String requestURI) {
-    String resourseName;
-    int startIndx = BASE_PATH.length();
-    int finishIndx = requestURI.indexOf('/', startIndx);
+  private RouteTable getRouteTable() {
+    if (this.routeGeneration != PermissionMatcher.getGeneration())
+      this.refreshRoutes();
     
-    if (finishIndx == -1)
-      resourseName = requestURI.substring(startIndx);
-    else
-      resourseName = requestURI.substring(startIndx, finishIndx);
-    
-    return resourseName;
+    return this.routeTable;
   }
   
   /**
-   * @param request
-   * @return
+   * Rebuilds the route table from the request mappings of the controllers and the Permission rows. The table is shared by every user and is first
+   * built on the thread refreshing the context, where no user is logged in, so every Permission row is read without the read filter of a role.
    */
-  private String getId(final ServletRequest request, final String requestURI, final String methodAction, final String requestURISuffix) {
-    String id = null;
-    
-    if (!"create".equalsIgnoreCase(methodAction)) id = requestURISuffix;
-    
-    if (!StringUtils.isBlank(id)) {
-      try {
-        Long.valueOf(id); // Check if this is an id.
-      } catch (NumberFormatException nfe) {
-        id = null;
-        
-        if ("read".equalsIgnoreCase(methodAction)) {
-          StringBuilder builder = new StringBuilder(BASE_PATH).append(this.getResourseName(requestURI));
-          String findURL = builder.toString() + FIND_PATH;
-          
-          if (builder.toString().equals(requestURI) || (requestURI.indexOf(findURL) != -1 && requestURI.indexOf(findURL + "/") == -1)) {
-            id = FIND_ALL_ID;
-          }
+  private synchronized void refreshRoutes() {
+    long generation = PermissionMatcher.getGeneration();
+    
+    if (this.context == null || this.routeGeneration == generation)
+      return;
+    
+    RouteTable routeTable = new RouteTable(BASE_PATH);
+    
+    this.addRoutes(routeTable, null, AbstractController.class);
+    
+    for (Object controller : this.context.getBeansWithAnnotation(Controller.class).values()) {
+      Class<?> controllerClass = AopUtils.getTargetClass(controller);
+      RequestMapping requestMapping = AnnotationUtils.findAnnotation(controllerClass, RequestMapping.class);
+      
+      if (requestMapping != null) {
+        for (String path : requestMapping.value()) {
+          this.addRoutes(routeTable, StringUtils.strip(path, "/"), controllerClass);
         }
       }
     }
     
-    return id;
+    for (Permission permission : this.permissionService.findAllOperations()) {
+      routeTable.addOperation(permission.getResource(), permission.getOperation());
+    }
+    
+    this.routeTable = routeTable;
+    this.routeGeneration = generation;
+    logger.info("refreshRoutes(): generation={}", Long.valueOf(generation));
   }
   
-  /**
-   * @param request
-   * @return
-   */
-  private String getRequestURISuffix(final String requestURI) {
-    return requestURI.substring(requestURI.lastIndexOf('/') + 1);
+  private void addRoutes(final RouteTable routeTable, final String resource, final Class<?> controllerClass) {
+    for (Method method : ReflectionUtils.getUniqueDeclaredMethods(controllerClass)) {
+      RequestMapping requestMapping = AnnotationUtils.findAnnotation(method, RequestMapping.class);
+      
+      if (requestMapping == null)
+        continue;
+      
+      if (requestMapping.value().length == 0)
+        routeTable.addRoute(resource, StringUtils.EMPTY);
+      
+      for (String path : requestMapping.value()) {
+        routeTable.addRoute(resource, path);
+      }
+    }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,22 @@
+package com.jiggy.security;
+
+import java.util.List;
+
+import com.jiggy.base.dao.DBDAO;
+
+/**
+ * Data access interface for Permission.
+ * 
+ * @author jmalkan
+ */
+public interface PermissionDAO extends DBDAO<Permission> {
+  //Define non-standard CRUD methods.
+  
+  /**
+   * Finds every permission, without the row level security filter of the current user's role, for the routes shared by every user. It needs no
+   * logged in user.
+   * 
+   * @return The permissions.
+   */
+  List<Permission> findAllOperations();
+}
@@ -0,0 +1,83 @@
+package com.jiggy.security;
+
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.jiggy.base.dao.AbstractHibernateDBDAO;
+
+/**
+ * Data access implementation for Permission. A write of a permission drops the compiled permissions of every role once its transaction completes,
+ * so that a role read before the commit can not compile the old permissions back into the shared matchers.
+ * 
+ * @author jmalkan
+ */
+@Repository("permissionDAO")
+public class PermissionDAOImpl extends AbstractHibernateDBDAO<Permission> implements PermissionDAO {
+  /**
+   * Creates a new instance of com.jiggy.security.PermissionDAOImpl.java and Performs Initialization
+   * 
+   * @param sessionFactory The Hibernate's sessionFactory Object this dao interacts with.
+   */
+  @Autowired
+  public PermissionDAOImpl(final SessionFactory sessionFactory) {
+    super(sessionFactory);
+  }
+  
+  @Override
+  @SuppressWarnings("unchecked")
+  public List<Permission> findAllOperations() {
+    return this.getCurrentSession().createQuery("from " + Permission.class.getName()).list();
+  }
+  
+  @Override
+  protected void afterInsert(final Permission newEntity) {
+    this.invalidateMatchers();
+  }
+  
+  @Override
+  protected void afterUpdate(final Permission entity) {
+    this.invalidateMatchers();
+  }
+  
+  @Override
+  protected void afterDelete(final Permission entity) {
+    this.invalidateMatchers();
+  }
+  
+  @Override
+  protected void afterInsertAll(final List<Permission> newEntities) {
+    this.invalidateMatchers();
+  }
+  
+  @Override
+  protected void afterUpdateAll(final List<Permission> entities) {
+    this.invalidateMatchers();
+  }
+  
+  @Override
+  protected void afterDeleteAll(final List<Permission> entities) {
+    this.invalidateMatchers();
+  }
+  
+  /**
+   * Drops the compiled permissions of every role after the transaction completes, or right away outside of a transaction.
+   */
+  private void invalidateMatchers() {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      PermissionMatcher.invalidateAll();
+      return;
+    }
+    
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+      @Override
+      public void afterCompletion(final int status) {
+        PermissionMatcher.invalidateAll();
+      }
+    });
+  }
+}
\ No newline at end of file
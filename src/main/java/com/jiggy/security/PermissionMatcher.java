@@ -0,0 +1,229 @@
+package com.jiggy.security;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.shiro.authz.permission.WildcardPermission;
+
+import com.jiggy.base.searchengine.FilterExpression.QueryMode;
+import com.jiggy.base.searchengine.FilterNode;
+import com.jiggy.base.searchengine.FilterParser;
+
+/**
+ * PermissionMatcher.java The permissions of a role compiled once per role version into an immutable lookup structure, shared by every session
+ * holding the role. Resource and operation names are interned and indexed in a map of maps, so a lookup by the exact names is two hash probes and
+ * allocates nothing; other spellings fall back to their lower case. The row level filter of each permission is compiled once, and the Shiro
+ * permissions are built once.
+ * 
+ * <p>
+ * The matchers are kept by role id along with the version of the role and the permission generation, which is bumped after every write of a
+ * permission commits. Only a role loaded at the current generation is compiled into the shared matcher; a role loaded before the last write, such as
+ * the one a session kept, is compiled for its caller alone, so it never brings its stale permissions back for every session.
+ * 
+ * @author jmalkan
+ */
+public final class PermissionMatcher {
+  private static final ConcurrentMap<Long, PermissionMatcher> MATCHERS = new ConcurrentHashMap<Long, PermissionMatcher>();
+  private static final ConcurrentMap<String, String> NAMES = new ConcurrentHashMap<String, String>();
+  private static final AtomicLong GENERATION = new AtomicLong(1);
+  
+  private final Long version;
+  private final long generation;
+  private final Set<String> roleNames;
+  private final Set<org.apache.shiro.authz.Permission> shiroPermissions;
+  private final Map<String, Map<String, CompiledPermission>> permissions;
+  
+  private PermissionMatcher(final Role role) {
+    super();
+    this.version = role.getVersion();
+    this.generation = role.getPermissionGeneration();
+    this.roleNames = role.getName() == null ? Collections.<String> emptySet() : Collections.singleton(role.getName());
+    
+    Set<org.apache.shiro.authz.Permission> shiroPermissions = new HashSet<org.apache.shiro.authz.Permission>();
+    Map<String, Map<String, CompiledPermission>> permissions = new HashMap<String, Map<String, CompiledPermission>>();
+    
+    if (role.getPermissions() != null) {
+      for (Permission permission : role.getPermissions()) {
+        if (StringUtils.isBlank(permission.getResource()) || StringUtils.isBlank(permission.getOperation()))
+          continue;
+        
+        CompiledPermission compiledPermission = new CompiledPermission(permission);
+        
+        shiroPermissions.add(new WildcardPermission(permission.getPermissionValue()));
+        put(permissions, permission.getResource(), permission.getOperation(), compiledPermission);
+        put(permissions, lowerCase(permission.getResource()), lowerCase(permission.getOperation()), compiledPermission);
+      }
+    }
+    
+    this.shiroPermissions = Collections.unmodifiableSet(shiroPermissions);
+    this.permissions = permissions;
+  }
+  
+  /**
+   * Gets the matcher of the role. The shared matcher is used when it was compiled at the current generation from the same version of the role;
+   * otherwise the role is compiled, and shared only if it was loaded at the current generation and is not older than the shared one.
+   * 
+   * @param role The role.
+   * @return The matcher.
+   */
+  public static PermissionMatcher of(final Role role) {
+    if (role.getId() == null)
+      return new PermissionMatcher(role);
+    
+    long generation = GENERATION.get();
+    PermissionMatcher matcher = MATCHERS.get(role.getId());
+    
+    if (matcher != null && matcher.generation == generation && isSameVersion(matcher.version, role.getVersion()))
+      return matcher;
+    
+    PermissionMatcher roleMatcher = new PermissionMatcher(role);
+    
+    boolean shared = matcher == null || matcher.generation != generation || isNewer(roleMatcher.version, matcher.version);
+    
+    if (shared && roleMatcher.generation == generation)
+      MATCHERS.put(role.getId(), roleMatcher);
+    
+    return roleMatcher;
+  }
+  
+  /**
+   * Drops every matcher, after a permission shared by any number of roles was written. The roles loaded before are stale from then on.
+   */
+  public static void invalidateAll() {
+    GENERATION.incrementAndGet();
+    MATCHERS.clear();
+  }
+  
+  /**
+   * @return The permission generation, which changes whenever a permission was written.
+   */
+  public static long getGeneration() {
+    return GENERATION.get();
+  }
+  
+  /**
+   * @return The name of the role, as a singleton set.
+   */
+  public Set<String> getRoleNames() {
+    return roleNames;
+  }
+  
+  /**
+   * @return The Shiro permissions of the role, not to be modified.
+   */
+  public Set<org.apache.shiro.authz.Permission> getShiroPermissions() {
+    return shiroPermissions;
+  }
+  
+  /**
+   * The Permission that matches the given resource and operation combination, ignoring case.
+   * 
+   * @param resource The name of the resource.
+   * @param operation The name of the operation.
+   * @return If found, The Permission for the given resource and operation combination, else null.
+   */
+  public Permission getPermission(final String resource, final String operation) {
+    CompiledPermission compiledPermission = this.find(resource, operation);
+    return compiledPermission == null ? null : compiledPermission.permission;
+  }
+  
+  /**
+   * The row level filter of the given resource and operation combination.
+   * 
+   * @param resource The name of the resource.
+   * @param operation The name of the operation.
+   * @return If found, The filter string, else null.
+   */
+  public String getFilter(final String resource, final String operation) {
+    CompiledPermission compiledPermission = this.find(resource, operation);
+    return compiledPermission == null ? null : compiledPermission.filter;
+  }
+  
+  /**
+   * The compiled row level filter of the given resource and operation combination.
+   * 
+   * @param resource The name of the resource.
+   * @param operation The name of the operation.
+   * @return The nodes of the filter, empty if there is no permission or it has no filter.
+   */
+  public List<FilterNode> getFilterNodes(final String resource, final String operation) {
+    CompiledPermission compiledPermission = this.find(resource, operation);
+    return compiledPermission == null ? Collections.<FilterNode> emptyList() : compiledPermission.filterNodes;
+  }
+  
+  private CompiledPermission find(final String resource, final String operation) {
+    if (resource == null || operation == null)
+      return null;
+    
+    CompiledPermission compiledPermission = get(this.permissions, resource, operation);
+    
+    if (compiledPermission == null)
+      compiledPermission = get(this.permissions, resource.toLowerCase(Locale.ENGLISH), operation.toLowerCase(Locale.ENGLISH));
+    
+    return compiledPermission;
+  }
+  
+  private static CompiledPermission get(final Map<String, Map<String, CompiledPermission>> permissions, final String resource,
+      final String operation) {
+    Map<String, CompiledPermission> operations = permissions.get(resource);
+    return operations == null ? null : operations.get(operation);
+  }
+  
+  private static void put(final Map<String, Map<String, CompiledPermission>> permissions, final String resource, final String operation,
+      final CompiledPermission compiledPermission) {
+    String internedResource = intern(resource);
+    Map<String, CompiledPermission> operations = permissions.get(internedResource);
+    
+    if (operations == null) {
+      operations = new HashMap<String, CompiledPermission>();
+      permissions.put(internedResource, operations);
+    }
+    
+    if (!operations.containsKey(operation))
+      operations.put(intern(operation), compiledPermission);
+  }
+  
+  private static boolean isSameVersion(final Long version1, final Long version2) {
+    return version1 == null ? version2 == null : version1.equals(version2);
+  }
+  
+  private static boolean isNewer(final Long version, final Long sharedVersion) {
+    return version != null && (sharedVersion == null || version.longValue() > sharedVersion.longValue());
+  }
+  
+  private static String lowerCase(final String name) {
+    return name.toLowerCase(Locale.ENGLISH);
+  }
+  
+  /**
+   * Shares one instance of each resource and operation name across the matchers of all roles.
+   */
+  private static String intern(final String name) {
+    String interned = NAMES.putIfAbsent(name, name);
+    return interned == null ? name : interned;
+  }
+  
+  /**
+   * A permission with its row level filter compiled.
+   */
+  private static final class CompiledPermission {
+    private final Permission permission;
+    private final String filter;
+    private final List<FilterNode> filterNodes;
+    
+    CompiledPermission(final Permission permission) {
+      this.permission = permission;
+      this.filter = permission.getFilter();
+      this.filterNodes = FilterParser.getInstance().parse(this.filter, QueryMode.JDO);
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package com.jiggy.security;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.jiggy.base.entity.Entity;
+import com.jiggy.base.service.AbstractDBService;
+
+/**
+ * A concrete implementation of the PermissionService.
+ * 
+ * @author jmalkan
+ */
+@Service("permissionService")
+public class PermissionServiceImpl extends AbstractDBService<Permission> implements PermissionService {
+  /**
+   * Creates a new instance of com.jiggy.security.PermissionServiceImpl.java and Performs Initialization
+   *
+   * @param permissionDAO The PermissionDAO Data Access Object this service interacts with.
+   */
+  @Autowired
+  public PermissionServiceImpl(final PermissionDAO permissionDAO) {
+    super(permissionDAO);
+  }
+
+  @Override
+  public List<Permission> findAllOperations() {
+    return ((PermissionDAO) super.getDao()).findAllOperations();
+  }
+  
+  @Override
+  protected void validateBeforeInsert(final Permission entity) {
+    return;	
+  }
+
+  @Override
+  protected void validateBeforeUpdate(final Permission entity) {
+    return;	
+  }
+
+  @Override
+  protected void validateBeforeDelete(final Permission entity) {
+    return;	
+  }
+
+  @Override
+  protected void validateBeforeCreate(final List<? extends Entity> entities) {
+    return;	
+  }
+
+  @Override
+  protected void validateBeforeModify(final List<? extends Entity> entities) {
+    return;	
+  }
+  
+  @Override
+  protected void validateBeforeRemove(final List<? extends Entity> entities) {
+    return;	
+  }
+}
\ No newline at end of file
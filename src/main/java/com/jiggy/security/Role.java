@@ -2,8 +2,6 @@ package com.jiggy.security;
 
 import java.util.Set;
 
-import org.apache.commons.lang3.StringUtils;
-
 import com.jiggy.base.entity.AbstractEntity;
 
 /**
@@ -18,6 +16,9 @@ public class Role extends AbstractEntity {
   
   private Set<Permission> permissions;
   
+  /** The permission generation when this instance was loaded; not kept across serialization, as the generations are counted per JVM. */
+  private transient long permissionGeneration = PermissionMatcher.getGeneration();
+  
   /**
    * Creates a new instance of com.jiggy.security.Role.java and Performs Initialization
    */
@@ -54,6 +55,13 @@ public class Role extends AbstractEntity {
     this.description = description;
   }
   
+  /**
+   * @return The permission generation when this instance was loaded, 0 if it was deserialized.
+   */
+  long getPermissionGeneration() {
+    return this.permissionGeneration;
+  }
+  
   public Set<Permission> getPermissions() {
     return permissions;
   }
@@ -70,8 +78,7 @@ public class Role extends AbstractEntity {
    * @return If found, The filter for the given resource and operation combination, else null.
    */
   public String getPermissionFilter(final String resourse, final String operation) {
-    Permission permission = getPermission(resourse, operation);
-    return (permission == null ? null : permission.getFilter());
+    return PermissionMatcher.of(this).getFilter(resourse, operation);
   }
   
   /**
@@ -86,19 +93,15 @@ public class Role extends AbstractEntity {
   }
   
   /**
-   * The Permission that matches the given resource and operation combination.
+   * The Permission that matches the given resource and operation combination, looked up in the compiled permissions of this role version.
    * 
    * @param resourse The name of the resource.
    * @param operation The name of the operation.
    * @return If found, The Permission for the given resource and operation combination, else null.
+   * 
+   * @see PermissionMatcher
    */
   public Permission getPermission(final String resourse, final String operation) {
-    if (this.permissions != null && !this.permissions.isEmpty() && !StringUtils.isBlank(resourse) && !StringUtils.isBlank(operation)) {
-      for (Permission permission : this.permissions) {
-        if (resourse.equalsIgnoreCase(permission.getResource()) && operation.equalsIgnoreCase(permission.getOperation())) return permission;
-      }
-    }
-    
-    return null;
+    return PermissionMatcher.of(this).getPermission(resourse, operation);
   }
 }
\ No newline at end of file
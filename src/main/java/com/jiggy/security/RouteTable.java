@@ -0,0 +1,343 @@
+package com.jiggy.security;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * RouteTable.java The routes of the service resources compiled into a trie of path segments, built once from the request mappings of the controllers
+ * and the custom operations of the Permission rows. A request URI is resolved into its resource, operation and id in a single scan of its characters,
+ * without parsing ids through exceptions and without querying the permissions.
+ * 
+ * <p>
+ * The routes common to every controller are added without a resource and are copied into the node of every resource added afterwards; a resource
+ * that was never added resolves against them alone. The table is built by one thread and must not be modified once it is shared.
+ * 
+ * @author jmalkan
+ */
+public final class RouteTable {
+  /** The id of a read of the whole collection of a resource. */
+  public static final String FIND_ALL_ID = "-1";
+  
+  private static final char SEPARATOR = '/';
+  private static final char VARIABLE_PREFIX = '{';
+  private static final String FIND_PREFIX = "find";
+  private static final String CREATE_ACTION = "create";
+  private static final String READ_ACTION = "read";
+  private static final String MAX_ID = String.valueOf(Long.MAX_VALUE);
+  
+  private final String basePath;
+  private final Node defaultNode = new Node(true);
+  private final Map<String, Node> resources = new HashMap<String, Node>();
+  
+  /**
+   * Creates a new instance of com.jiggy.security.RouteTable.java and Performs Initialization
+   * 
+   * @param basePath The path every resource is mapped under, ending with a '/'.
+   */
+  public RouteTable(final String basePath) {
+    super();
+    this.basePath = basePath;
+  }
+  
+  /**
+   * Adds a request mapping. Variable segments such as "{id}" match any id; the literal segments starting with "find" right under the resource are the
+   * searches of its whole collection.
+   * 
+   * @param resource The resource the mapping belongs to, or null for a mapping common to every resource.
+   * @param path The path of the mapping relative to the resource, such as "/{id}" or "/find", empty for the resource itself.
+   */
+  public void addRoute(final String resource, final String path) {
+    Node resourceNode = resource == null ? this.defaultNode : this.getResourceNode(resource);
+    Node node = resourceNode;
+    boolean first = true;
+    
+    for (String segment : StringUtils.split(path, SEPARATOR)) {
+      if (segment.charAt(0) == VARIABLE_PREFIX)
+        node = node.getVariable();
+      else {
+        node = node.getChild(segment, first && segment.startsWith(FIND_PREFIX));
+        
+        if (node.operation == null)
+          node.operation = resourceNode.operations.get(segment);
+      }
+      
+      first = false;
+    }
+  }
+  
+  /**
+   * Adds a custom operation of a resource, declared by a Permission row. Requests on the path of the operation are authorized against it instead of
+   * the action of their Http method.
+   * 
+   * @param resource The name of the resource.
+   * @param operation The name of the operation, which is also the last path segment of its requests.
+   */
+  public void addOperation(final String resource, final String operation) {
+    if (StringUtils.isBlank(resource) || StringUtils.isBlank(operation) || resource.equals(operation))
+      return;
+    
+    Node resourceNode = this.getResourceNode(resource);
+    
+    resourceNode.operations.put(operation, operation);
+    resourceNode.getChild(operation, false);
+    resourceNode.setOperation(operation);
+  }
+  
+  /**
+   * Resolves a request.
+   * 
+   * @param requestURI The URI of the request.
+   * @param action The action of the Http method of the request: create, read, update or delete.
+   * @return The route of the request, with an empty resource if the URI is not under the base path.
+   */
+  public Route resolve(final String requestURI, final String action) {
+    if (!requestURI.startsWith(this.basePath))
+      return new Route(StringUtils.EMPTY, action, null);
+    
+    int length = requestURI.length();
+    int resourceStart = this.basePath.length();
+    int resourceEnd = segmentEnd(requestURI, resourceStart);
+    String resource = requestURI.substring(resourceStart, resourceEnd);
+    Node resourceNode = this.resources.get(resource);
+    
+    if (resourceNode == null)
+      resourceNode = this.defaultNode;
+    
+    Node node = resourceNode;
+    int segmentStart = resourceStart;
+    int segmentEnd = resourceEnd;
+    Node previousNode = null;
+    int previousStart = -1;
+    int previousEnd = -1;
+    boolean id = false;
+    
+    for (int start = resourceEnd + 1, end; start < length; start = end + 1) {
+      end = segmentEnd(requestURI, start);
+      
+      if (end == start)
+        continue;
+      
+      previousNode = node;
+      previousStart = segmentStart;
+      previousEnd = segmentEnd;
+      segmentStart = start;
+      segmentEnd = end;
+      id = isId(requestURI, start, end);
+      node = node == null ? null : node.next(requestURI, start, end, id);
+    }
+    
+    if (id && !CREATE_ACTION.equals(action)) {
+      String operation = previousStart == resourceStart ? null : resourceNode.getOperation(previousNode, requestURI, previousStart, previousEnd);
+      return new Route(resource, operation == null ? action : operation, requestURI.substring(segmentStart, segmentEnd));
+    }
+    
+    String operation = segmentStart == resourceStart ? null : resourceNode.getOperation(node, requestURI, segmentStart, segmentEnd);
+    String findAllId = READ_ACTION.equals(action) && node != null && node.collection ? FIND_ALL_ID : null;
+    
+    return new Route(resource, operation == null ? action : operation, findAllId);
+  }
+  
+  private Node getResourceNode(final String resource) {
+    Node resourceNode = this.resources.get(resource);
+    
+    if (resourceNode == null) {
+      resourceNode = this.defaultNode.copy();
+      this.resources.put(resource, resourceNode);
+    }
+    
+    return resourceNode;
+  }
+  
+  private static int segmentEnd(final String requestURI, final int start) {
+    int end = requestURI.indexOf(SEPARATOR, start);
+    return end == -1 ? requestURI.length() : end;
+  }
+  
+  /**
+   * Whether the segment is a number in the range of a Long, optionally signed.
+   */
+  private static boolean isId(final String requestURI, final int start, final int end) {
+    int digitsStart = start;
+    char sign = requestURI.charAt(start);
+    
+    if (sign == '-' || sign == '+')
+      digitsStart++;
+    
+    int digits = end - digitsStart;
+    
+    if (digits == 0 || digits > MAX_ID.length())
+      return false;
+    
+    for (int i = digitsStart; i < end; i++) {
+      char c = requestURI.charAt(i);
+      
+      if (c < '0' || c > '9')
+        return false;
+    }
+    
+    if (digits < MAX_ID.length())
+      return true;
+    
+    for (int i = 0; i < digits; i++) {
+      int difference = requestURI.charAt(digitsStart + i) - MAX_ID.charAt(i);
+      
+      if (difference != 0)
+        return difference < 0;
+    }
+    
+    return true;
+  }
+  
+  /**
+   * A path segment of the trie.
+   */
+  private static final class Node {
+    private final boolean collection;
+    private final Map<String, String> operations = new HashMap<String, String>();
+    private String[] segments = new String[0];
+    private Node[] children = new Node[0];
+    private Node variable;
+    private String operation;
+    
+    Node(final boolean collection) {
+      this.collection = collection;
+    }
+    
+    Node getChild(final String segment, final boolean collection) {
+      for (int i = 0; i < this.segments.length; i++) {
+        if (this.segments[i].equals(segment))
+          return this.children[i];
+      }
+      
+      Node child = new Node(collection);
+      int count = this.segments.length;
+      String[] segments = new String[count + 1];
+      Node[] children = new Node[count + 1];
+      
+      System.arraycopy(this.segments, 0, segments, 0, count);
+      System.arraycopy(this.children, 0, children, 0, count);
+      segments[count] = segment;
+      children[count] = child;
+      this.segments = segments;
+      this.children = children;
+      
+      return child;
+    }
+    
+    /**
+     * Sets the custom operation on every literal segment below this node named after it.
+     */
+    void setOperation(final String operation) {
+      for (int i = 0; i < this.segments.length; i++) {
+        if (this.segments[i].equals(operation))
+          this.children[i].operation = operation;
+        
+        this.children[i].setOperation(operation);
+      }
+      
+      if (this.variable != null)
+        this.variable.setOperation(operation);
+    }
+    
+    Node getVariable() {
+      if (this.variable == null)
+        this.variable = new Node(false);
+      
+      return this.variable;
+    }
+    
+    /**
+     * The child matching the segment of the URI between start and end: the literal child, else the variable child if the segment is an id.
+     */
+    Node next(final String requestURI, final int start, final int end, final boolean id) {
+      int length = end - start;
+      
+      for (int i = 0; i < this.segments.length; i++) {
+        String segment = this.segments[i];
+        
+        if (segment.length() == length && requestURI.regionMatches(start, segment, 0, length))
+          return this.children[i];
+      }
+      
+      return id ? this.variable : null;
+    }
+    
+    /**
+     * The custom operation of the node a segment resolved to, or if the segment is on no route, the custom operation of the resource of the same
+     * name. Called on the node of the resource.
+     */
+    String getOperation(final Node node, final String requestURI, final int start, final int end) {
+      if (node != null)
+        return node.operation;
+      
+      return this.operations.isEmpty() ? null : this.operations.get(requestURI.substring(start, end));
+    }
+    
+    Node copy() {
+      Node copy = new Node(this.collection);
+      
+      copy.operations.putAll(this.operations);
+      copy.segments = this.segments.clone();
+      copy.children = new Node[this.children.length];
+      copy.variable = this.variable == null ? null : this.variable.copy();
+      copy.operation = this.operation;
+      
+      for (int i = 0; i < this.children.length; i++) {
+        copy.children[i] = this.children[i].copy();
+      }
+      
+      return copy;
+    }
+  }
+  
+  /**
+   * The resource, operation and id a request resolved to.
+   */
+  public static final class Route {
+    private final String resource;
+    private final String operation;
+    private final String id;
+    
+    Route(final String resource, final String operation, final String id) {
+      this.resource = resource;
+      this.operation = operation;
+      this.id = id;
+    }
+    
+    /**
+     * Getter of the property <tt>resource</tt>
+     * 
+     * @return The name of the resource.
+     */
+    public String getResource() {
+      return this.resource;
+    }
+    
+    /**
+     * Getter of the property <tt>operation</tt>
+     * 
+     * @return The custom operation of the request, or the action of its Http method.
+     */
+    public String getOperation() {
+      return this.operation;
+    }
+    
+    /**
+     * Getter of the property <tt>id</tt>
+     * 
+     * @return The id of the entity of the request, {@link RouteTable#FIND_ALL_ID} for a read of the whole collection, else null.
+     */
+    public String getId() {
+      return this.id;
+    }
+    
+    /**
+     * @return The operation and the id of the request, in the "operation:id" form of the permissions.
+     */
+    public String getMethodAction() {
+      return this.id == null ? this.operation : this.operation + ":" + this.id;
+    }
+  }
+}
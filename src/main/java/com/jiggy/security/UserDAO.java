@@ -8,5 +8,11 @@ import com.jiggy.base.dao.DBDAO;
  * @author jmalkan
  */
 public interface UserDAO extends DBDAO<User> {
-  //Define non-standard CRUD methods.
+  /**
+   * Finds a user with its roles and their permissions, in a fixed number of queries however many roles the user has.
+   * 
+   * @param id The id of the user.
+   * @return The user with its roles and permissions loaded, or null if not found.
+   */
+  User findAuthorizationGraph(Long id);
 }
\ No newline at end of file
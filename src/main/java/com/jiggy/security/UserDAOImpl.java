@@ -1,5 +1,7 @@
 package com.jiggy.security;
 
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
@@ -13,6 +15,9 @@ import com.jiggy.base.dao.AbstractHibernateDBDAO;
  */
 @Repository("userDAO")
 public class UserDAOImpl extends AbstractHibernateDBDAO<User> implements UserDAO {
+  /** The fetch profile of security.hbm.xml joining the roles of the user and their permissions. */
+  private static final String AUTHORIZATION_FETCH_PROFILE = "user-authorization";
+  
   /**
    * Creates a new instance of com.jiggy.security.UserDAOImpl.java and Performs Initialization
    * 
@@ -22,4 +27,34 @@ public class UserDAOImpl extends AbstractHibernateDBDAO<User> implements UserDAO
   public UserDAOImpl(SessionFactory sessionFactory) {
     super(sessionFactory);
   }
+  
+  /**
+   * Loads the user, its roles and their permissions with one join through the authorization fetch profile. A user already loaded in the session is
+   * returned as is; its roles and permissions are then initialized in batches. The user goes through afterFind as any other user found.
+   */
+  @Override
+  public User findAuthorizationGraph(final Long id) {
+    if (id == null)
+      return null;
+    
+    Session session = super.getCurrentSession();
+    User user = null;
+    
+    session.enableFetchProfile(AUTHORIZATION_FETCH_PROFILE);
+    try {
+      user = (User) session.get(User.class, id);
+    } finally {
+      session.disableFetchProfile(AUTHORIZATION_FETCH_PROFILE);
+    }
+    
+    if (user != null && user.getRoles() != null) {
+      for (Role role : user.getRoles()) {
+        Hibernate.initialize(role.getPermissions());
+      }
+    }
+    
+    this.afterFind(user);
+    
+    return user;
+  }
 }
\ No newline at end of file
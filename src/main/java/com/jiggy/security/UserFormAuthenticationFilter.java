@@ -32,7 +32,7 @@ public class UserFormAuthenticationFilter extends FormAuthenticationFilter {
     
     if (primaryPrincipal instanceof UserPrincipal) {
       UserPrincipal userPrincipal = (UserPrincipal) primaryPrincipal;
-      User user = this.userService.findById(userPrincipal.getId());
+      User user = this.userService.findAuthorizationGraph(userPrincipal.getId());
       UserProfile userProfile = new UserProfile(user);
       
       SessionUtil.setUserProfile(userProfile);
@@ -10,7 +10,6 @@ import org.apache.shiro.authc.SimpleAuthenticationInfo;
 import org.apache.shiro.authc.UsernamePasswordToken;
 import org.apache.shiro.authz.AuthorizationInfo;
 import org.apache.shiro.authz.SimpleAuthorizationInfo;
-import org.apache.shiro.authz.permission.WildcardPermission;
 import org.apache.shiro.realm.AuthorizingRealm;
 import org.apache.shiro.subject.PrincipalCollection;
 import org.slf4j.Logger;
@@ -49,24 +48,32 @@ public class UserRealm extends AuthorizingRealm {
     UserPrincipal userPrincipal = (UserPrincipal) getAvailablePrincipal(principals);
     
     if (userProfile == null) {
-      User user = this.userService.findById(userPrincipal.getId());
+      User user = this.userService.findAuthorizationGraph(userPrincipal.getId());
       userProfile = new UserProfile(user);
     }
     
-    Set<String> roles = new HashSet<String>();
-    Set<Permission> permissions = new HashSet<Permission>();
-    Set<org.apache.shiro.authz.Permission> shiroPermissions = new HashSet<org.apache.shiro.authz.Permission>();
+    Set<Role> userRoles = userProfile.getUser().getRoles();
     
-    for (Role role : userProfile.getUser().getRoles()) {
-      roles.add(role.getName());
+    // The compiled permissions of a single role are shared as they are; those of several roles are merged.
+    if (userRoles != null && userRoles.size() == 1) {
+      PermissionMatcher matcher = PermissionMatcher.of(userRoles.iterator().next());
+      SimpleAuthorizationInfo authInfo = new SimpleAuthorizationInfo(matcher.getRoleNames());
       
-      for (Permission permission : role.getPermissions()) {
-        permissions.add(permission);
-      }
+      authInfo.setObjectPermissions(matcher.getShiroPermissions());
+      
+      return authInfo;
     }
     
-    for (Permission permission : permissions) {
-      shiroPermissions.add(new WildcardPermission(permission.getPermissionValue()));
+    Set<String> roles = new HashSet<String>();
+    Set<org.apache.shiro.authz.Permission> shiroPermissions = new HashSet<org.apache.shiro.authz.Permission>();
+    
+    if (userRoles != null) {
+      for (Role role : userRoles) {
+        PermissionMatcher matcher = PermissionMatcher.of(role);
+        
+        roles.addAll(matcher.getRoleNames());
+        shiroPermissions.addAll(matcher.getShiroPermissions());
+      }
     }
     
     SimpleAuthorizationInfo authInfo = new SimpleAuthorizationInfo(roles);
@@ -85,7 +92,7 @@ public class UserRealm extends AuthorizingRealm {
     UsernamePasswordToken usernamePasswordToken = (UsernamePasswordToken) authenticationToken;
     
     SearchCriteria userCredSearchCriteria = new DefaultSearchCriteria();
-    userCredSearchCriteria.addFilter("userName", usernamePasswordToken.getUsername());
+    userCredSearchCriteria.addFilter("user.userName", usernamePasswordToken.getUsername());
     UserCredentials userCredentials = userCredentialsService.findOne(userCredSearchCriteria);
     logger.info("userCredentials=", userCredentials);
     
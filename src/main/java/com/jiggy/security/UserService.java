@@ -8,5 +8,11 @@ import com.jiggy.base.service.DBService;
  * @author jmalkan
  */
 public interface UserService extends DBService<User> {
-  //Define non-standard Business methods.
+  /**
+   * Finds a user with its roles and their permissions loaded, to authorize it.
+   * 
+   * @param id The id of the user.
+   * @return The user, or null if not found.
+   */
+  User findAuthorizationGraph(Long id);
 }
\ No newline at end of file
@@ -15,6 +15,8 @@ import com.jiggy.base.service.AbstractDBService;
  */
 @Service(value = "userService")
 public class UserServiceImpl extends AbstractDBService<User> implements UserService {
+  private final UserDAO userDAO;
+
   /**
    * Creates a new instance of com.jiggy.security.UserServiceImpl.java and Performs Initialization
    *
@@ -23,6 +25,14 @@ public class UserServiceImpl extends AbstractDBService<User> implements UserServ
   @Autowired
   public UserServiceImpl(final UserDAO userDAO) {
     super(userDAO);
+    this.userDAO = userDAO;
+  }
+
+  @Override
+  public User findAuthorizationGraph(final Long id) {
+    this.validateBeforeFind(id);
+
+    return this.validateAfterFindById(this.userDAO.findAuthorizationGraph(id));
   }
 
   @Override
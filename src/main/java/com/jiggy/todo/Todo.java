@@ -1,5 +1,7 @@
 package com.jiggy.todo;
 
+import org.springframework.data.mongodb.core.index.Indexed;
+
 import com.jiggy.base.entity.AbstractEntity;
 
 /**
@@ -9,6 +11,7 @@ import com.jiggy.base.entity.AbstractEntity;
  */
 public class Todo extends AbstractEntity {
   private static final long serialVersionUID = 1L;
+  @Indexed
   private String name;
   
   
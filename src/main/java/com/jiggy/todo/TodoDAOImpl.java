@@ -1,10 +1,15 @@
 package com.jiggy.todo;
 
+import java.util.concurrent.TimeUnit;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.mongodb.core.MongoOperations;
 import org.springframework.stereotype.Repository;
 
 import com.jiggy.base.dao.AbstractMongoDBDAO;
+import com.jiggy.base.dao.EntityCache;
+import com.jiggy.base.dao.QueryCache;
+import com.jiggy.base.searchengine.TextIndex;
 
 /*
 [
@@ -57,6 +62,11 @@ import com.jiggy.base.dao.AbstractMongoDBDAO;
  */
 @Repository("todoDAO")
 public class TodoDAOImpl extends AbstractMongoDBDAO<Todo> implements TodoDAO {
+  private static final int CACHE_SIZE = 1000;
+  private static final long CACHE_TIME_TO_LIVE = TimeUnit.MINUTES.toMillis(5);
+  private static final int QUERY_CACHE_SIZE = 500;
+  private static final long QUERY_CACHE_TIME_TO_LIVE = TimeUnit.SECONDS.toMillis(30);
+  
   /**
    * Creates a new instance of com.jiggy.todo.TodoDAOImpl.java and Performs Initialization
    * 
@@ -65,5 +75,8 @@ public class TodoDAOImpl extends AbstractMongoDBDAO<Todo> implements TodoDAO {
   @Autowired
   public TodoDAOImpl(final MongoOperations mongoOperations) {
     super(mongoOperations);
+    super.setEntityCache(new EntityCache<Todo>(CACHE_SIZE, CACHE_TIME_TO_LIVE));
+    super.setQueryCache(new QueryCache<Todo>(QUERY_CACHE_SIZE, QUERY_CACHE_TIME_TO_LIVE));
+    super.setTextIndex(new TextIndex("name"));
   }
 }
\ No newline at end of file
@@ -0,0 +1,173 @@
+package com.jiggy.base.controller;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.jiggy.base.exception.Error;
+import com.jiggy.base.exception.UnavailableException;
+import com.jiggy.base.exception.ValidationException;
+import com.jiggy.base.web.ConditionalRequest;
+import com.jiggy.todo.Todo;
+
+@Test(singleThreaded = true)
+public class AbstractAsyncControllerTest {
+  private static final Long ID = Long.valueOf(1);
+  
+  private DBController<Todo> controller;
+  private AsyncTaskExecutor executor;
+  private Future<?> future;
+  private MockHttpServletRequest request;
+  private MockHttpServletResponse response;
+  private AbstractAsyncController<Todo> asyncController;
+  
+  @BeforeMethod
+  @SuppressWarnings("unchecked")
+  public void beforeMethod() {
+    this.controller = mock(DBController.class);
+    this.executor = mock(AsyncTaskExecutor.class);
+    this.future = mock(Future.class);
+    this.request = new MockHttpServletRequest("GET", "/backend/service/todos/1");
+    this.response = new MockHttpServletResponse();
+    this.asyncController = new AbstractAsyncController<Todo>(this.controller) {};
+    this.asyncController.setExecutor(this.executor);
+  }
+  
+  @Test
+  public void resultOfTheWorkIsSet() {
+    Todo todo = new Todo(ID, "wake up");
+    
+    this.runOnSubmit();
+    when(this.controller.findById(eq(ID), any(HttpServletRequest.class), any(HttpServletResponse.class))).thenReturn(todo);
+    
+    ResponseEntity<?> result = (ResponseEntity<?>) this.resultOf(this.asyncController.findById(ID, this.request, this.response));
+    
+    assertSame(result.getBody(), todo);
+    assertEquals(result.getStatusCode(), HttpStatus.OK);
+  }
+  
+  @Test
+  public void workReadsACopyOfTheRequestAndReturnsTheHeaders() {
+    this.request.addHeader(ConditionalRequest.IF_NONE_MATCH, "\"1\"");
+    this.request.setParameter("sort", "name");
+    this.runOnSubmit();
+    when(this.controller.findById(eq(ID), any(HttpServletRequest.class), any(HttpServletResponse.class))).thenAnswer(new Answer<Todo>() {
+      @Override
+      public Todo answer(final InvocationOnMock invocation) {
+        HttpServletRequest detachedRequest = (HttpServletRequest) invocation.getArguments()[1];
+        HttpServletResponse detachedResponse = (HttpServletResponse) invocation.getArguments()[2];
+        
+        assertNotSame(detachedRequest, AbstractAsyncControllerTest.this.request);
+        assertNotSame(detachedResponse, AbstractAsyncControllerTest.this.response);
+        assertEquals(detachedRequest.getHeader(ConditionalRequest.IF_NONE_MATCH), "\"1\"");
+        assertEquals(detachedRequest.getParameter("sort"), "name");
+        
+        detachedResponse.setHeader(ConditionalRequest.ETAG, "\"1\"");
+        detachedResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        
+        return null;
+      }
+    });
+    
+    ResponseEntity<?> result = (ResponseEntity<?>) this.resultOf(this.asyncController.findById(ID, this.request, this.response));
+    
+    assertNull(result.getBody());
+    assertEquals(result.getStatusCode(), HttpStatus.NOT_MODIFIED);
+    assertEquals(result.getHeaders().getFirst(ConditionalRequest.ETAG), "\"1\"");
+    assertNull(this.response.getHeader(ConditionalRequest.ETAG));
+    assertEquals(this.response.getStatus(), HttpServletResponse.SC_OK);
+  }
+  
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void copyOfTheRequestIsDetachedFromTheContainer() {
+    new DetachedServletRequest(this.request).getSession();
+  }
+  
+  @Test
+  public void failureOfTheWorkIsTheErrorResult() {
+    ValidationException failure = new ValidationException(Error.ERROR_INVALID);
+    
+    this.runOnSubmit();
+    when(this.controller.findById(eq(ID), any(HttpServletRequest.class), any(HttpServletResponse.class))).thenThrow(failure);
+    
+    assertSame(this.resultOf(this.asyncController.findById(ID, this.request, this.response)), failure);
+  }
+  
+  @Test(expectedExceptions = UnavailableException.class)
+  public void fullExecutorRejectsTheRequest() {
+    when(this.executor.submit(any(Runnable.class))).thenThrow(new RejectedExecutionException());
+    
+    this.asyncController.findById(ID, this.request, this.response);
+  }
+  
+  @Test
+  public void timeoutCancelsTheWaitingWork() {
+    this.queueOnSubmit();
+    
+    DeferredResult<ResponseEntity<Todo>> result = this.asyncController.findById(ID, this.request, this.response);
+    
+    ((Runnable) ReflectionTestUtils.getField(result, "timeoutCallback")).run();
+    
+    verify(this.future).cancel(false);
+    verify(this.controller, never()).findById(eq(ID), any(HttpServletRequest.class), any(HttpServletResponse.class));
+    assertTrue(this.resultOf(result) instanceof UnavailableException);
+    assertFalse(result.setResult(new ResponseEntity<Todo>(new Todo(ID, "late"), HttpStatus.OK)));
+  }
+  
+  /**
+   * Makes the executor run the work on the calling thread as it is submitted.
+   */
+  private void runOnSubmit() {
+    when(this.executor.submit(any(Runnable.class))).thenAnswer(new Answer<Future<?>>() {
+      @Override
+      public Future<?> answer(final InvocationOnMock invocation) {
+        ((Runnable) invocation.getArguments()[0]).run();
+        
+        return AbstractAsyncControllerTest.this.future;
+      }
+    });
+  }
+  
+  /**
+   * Makes the executor queue the work without running it, as a busy pool does.
+   */
+  private void queueOnSubmit() {
+    when(this.executor.submit(any(Runnable.class))).thenAnswer(new Answer<Future<?>>() {
+      @Override
+      public Future<?> answer(final InvocationOnMock invocation) {
+        return AbstractAsyncControllerTest.this.future;
+      }
+    });
+  }
+  
+  private Object resultOf(final DeferredResult<?> result) {
+    return ReflectionTestUtils.getField(result, "result");
+  }
+}
@@ -2,23 +2,41 @@ package com.jiggy.base.controller;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.testng.annotations.AfterTest;
 import org.testng.annotations.BeforeTest;
 import org.testng.annotations.Test;
 
+import com.jiggy.base.entity.EntityVersion;
+import com.jiggy.base.exception.ValidationException;
+import com.jiggy.base.searchengine.SearchCriteria;
+import com.jiggy.base.searchengine.SearchCriteria.CountMode;
+import com.jiggy.base.web.ConditionalRequest;
 import com.jiggy.controller.TodoController;
 import com.jiggy.todo.Todo;
 import com.jiggy.todo.TodoService;
@@ -60,6 +78,29 @@ public class AbstractControllerTest {
     inOrder.verify(this.spyTodoController).afterFindById(id, null);
   }
   
+  @Test
+  public void findByIdNotModified() {
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    HttpServletResponse response = mock(HttpServletResponse.class);
+    
+    when(request.getHeader(ConditionalRequest.IF_NONE_MATCH)).thenReturn("W/\"2\", \"3\"");
+    when(this.todoService.findVersion(id)).thenReturn(new EntityVersion(id, Long.valueOf(3), null));
+    
+    assertNull(this.todoController.findById(id, request, response));
+    verify(response).setHeader(ConditionalRequest.ETAG, "\"3\"");
+    verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+  }
+  
+  @Test(expectedExceptions = ValidationException.class)
+  public void modifyStaleVersion() {
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    
+    when(request.getHeader(ConditionalRequest.IF_MATCH)).thenReturn("\"2\"");
+    when(this.todoService.findVersion(id)).thenReturn(new EntityVersion(id, Long.valueOf(3), null));
+    
+    this.todoController.modify(id, new Todo(), request, mock(HttpServletResponse.class));
+  }
+  
   @Test
   public void beforeFindById() {
     this.spyTodoController.beforeFindById(id);
@@ -78,6 +119,24 @@ public class AbstractControllerTest {
     this.spyTodoController.afterFindById(id, null);
   }
   
+  @SuppressWarnings("unchecked")
+  @Test
+  public void findByIds() {
+    List<Long> ids = Arrays.asList(Long.valueOf(3), Long.valueOf(1));
+    this.spyTodoController.findByIds("3, 1");
+    
+    InOrder inOrder = inOrder(this.spyTodoController, this.todoService);
+    
+    inOrder.verify(this.spyTodoController).beforeFindByIds(ids);
+    inOrder.verify(this.spyTodoController).implementFindByIds(ids);
+    inOrder.verify(this.spyTodoController).afterFindByIds(eq(ids), anyList());
+  }
+  
+  @Test(expectedExceptions = ValidationException.class)
+  public void findByIdsInvalid() {
+    this.spyTodoController.findByIds("1,two");
+  }
+  
   @SuppressWarnings("unchecked")
   @Test
   public void findAll() {
@@ -110,6 +169,62 @@ public class AbstractControllerTest {
     inOrder.verify(this.spyTodoController).afterFind(anyList());
   }
   
+  @Test
+  public void findSetsTheNextPageAvailableHeader() {
+    HttpServletResponse response = mock(HttpServletResponse.class);
+    SearchCriteria searchCriteria = this.findPage(response, "offset", "0", "limit", "2", "count", "none");
+    
+    assertEquals(searchCriteria.getCountMode(), CountMode.NONE);
+    verify(response).setHeader(AbstractController.NEXT_PAGE_AVAILABLE_HEADER, "true");
+  }
+  
+  @Test
+  public void findWithoutPageSetsNoNextPageAvailableHeader() {
+    HttpServletResponse response = mock(HttpServletResponse.class);
+    
+    this.findPage(response, "name", "wake up");
+    
+    verify(response, never()).setHeader(eq(AbstractController.NEXT_PAGE_AVAILABLE_HEADER), anyString());
+  }
+  
+  /**
+   * Runs a find of the given request parameters on a service that finds a next page.
+   * 
+   * @return The search criteria the service was given.
+   */
+  private SearchCriteria findPage(final HttpServletResponse response, final String... parameters) {
+    TodoService todoService = mock(TodoService.class);
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    List<String> parameterNames = new ArrayList<String>();
+    final SearchCriteria[] searchCriteria = new SearchCriteria[1];
+    
+    for (int i = 0; i < parameters.length; i += 2) {
+      parameterNames.add(parameters[i]);
+      when(request.getParameterValues(parameters[i])).thenReturn(new String[] {parameters[i + 1]});
+    }
+    
+    when(request.getParameterNames()).thenReturn(Collections.enumeration(parameterNames));
+    when(request.getAttribute(anyString())).thenAnswer(new Answer<Object>() {
+      @Override
+      public Object answer(final InvocationOnMock invocation) {
+        return searchCriteria[0];
+      }
+    });
+    when(todoService.find(any(SearchCriteria.class))).thenAnswer(new Answer<List<Todo>>() {
+      @Override
+      public List<Todo> answer(final InvocationOnMock invocation) {
+        searchCriteria[0] = (SearchCriteria) invocation.getArguments()[0];
+        searchCriteria[0].setNextPageAvailable(true);
+        
+        return new ArrayList<Todo>();
+      }
+    });
+    
+    new TodoController(todoService).find(request, response);
+    
+    return searchCriteria[0];
+  }
+  
   @Test
   public void findOne() {
     HttpServletRequest request = mock(HttpServletRequest.class);
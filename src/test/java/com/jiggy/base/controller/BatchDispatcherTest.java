@@ -0,0 +1,198 @@
+package com.jiggy.base.controller;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.ObjectNode;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.HandlerAdapter;
+import org.springframework.web.servlet.HandlerExecutionChain;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.ModelAndView;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.jiggy.base.exception.ValidationException;
+import com.jiggy.security.HttpMethodPermissionFilter;
+
+@Test(singleThreaded = true)
+public class BatchDispatcherTest {
+  private static final long TIMEOUT = 500;
+  private static final int MAX_REQUESTS = 3;
+  private static final String TODO_PATH = "/todo";
+  private static final String SECRET_PATH = "/secret";
+  private static final String SLOW_PATH = "/slow";
+  
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private BatchDispatcher dispatcher;
+  private volatile String name;
+  
+  @BeforeMethod
+  public void beforeMethod() throws Exception {
+    HandlerMapping handlerMapping = mock(HandlerMapping.class);
+    HttpMethodPermissionFilter permissionFilter = mock(HttpMethodPermissionFilter.class);
+    
+    when(handlerMapping.getHandler(any(HttpServletRequest.class))).thenReturn(new HandlerExecutionChain(TODO_PATH));
+    when(Boolean.valueOf(permissionFilter.isAccessAllowed(any(ServletRequest.class), any(ServletResponse.class), any())))
+        .thenAnswer(new Answer<Boolean>() {
+          @Override
+          public Boolean answer(final InvocationOnMock invocation) {
+            return Boolean.valueOf(!((HttpServletRequest) invocation.getArguments()[0]).getPathInfo().equals(SECRET_PATH));
+          }
+        });
+    
+    this.name = "wake up";
+    this.dispatcher = new BatchDispatcher();
+    this.dispatcher.setTimeout(TIMEOUT);
+    this.dispatcher.setMaxRequests(MAX_REQUESTS);
+    ReflectionTestUtils.setField(this.dispatcher, "handlerMappings", new ArrayList<HandlerMapping>(Arrays.asList(handlerMapping)));
+    ReflectionTestUtils.setField(this.dispatcher, "handlerAdapters",
+                                 new ArrayList<HandlerAdapter>(Arrays.<HandlerAdapter> asList(new TodoAdapter())));
+    ReflectionTestUtils.setField(this.dispatcher, "permissionFilter", permissionFilter);
+    this.dispatcher.init();
+  }
+  
+  @AfterMethod
+  public void afterMethod() {
+    this.dispatcher.cleanUp();
+  }
+  
+  @Test
+  public void eachSubRequestIsAuthorized() throws Exception {
+    JsonNode responses = this.dispatch(this.subRequest("GET", SECRET_PATH, null), this.subRequest("GET", TODO_PATH, null));
+    
+    assertEquals(responses.size(), 2);
+    assertEquals(responses.get(0).get("status").getIntValue(), HttpServletResponse.SC_FORBIDDEN);
+    assertTrue(responses.get(0).get("body").isNull());
+    assertEquals(responses.get(1).get("status").getIntValue(), HttpServletResponse.SC_OK);
+    assertEquals(responses.get(1).get("body").getTextValue(), "wake up");
+  }
+  
+  @Test
+  public void readAfterWriteSeesTheWrite() throws Exception {
+    JsonNode responses = this.dispatch(this.subRequest("GET", TODO_PATH, null), this.subRequest("PUT", TODO_PATH, "sleep"),
+                                       this.subRequest("GET", TODO_PATH, null));
+    
+    assertEquals(responses.get(0).get("body").getTextValue(), "wake up");
+    assertEquals(responses.get(1).get("status").getIntValue(), HttpServletResponse.SC_NO_CONTENT);
+    assertEquals(responses.get(2).get("body").getTextValue(), "sleep");
+    assertEquals(this.name, "sleep");
+  }
+  
+  @Test
+  public void slowSubRequestTimesOut() throws Exception {
+    long start = System.currentTimeMillis();
+    JsonNode responses = this.dispatch(this.subRequest("GET", SLOW_PATH, null), this.subRequest("GET", TODO_PATH, null));
+    
+    assertTrue(System.currentTimeMillis() - start < TIMEOUT * 5);
+    assertEquals(responses.get(0).get("status").getIntValue(), HttpServletResponse.SC_GATEWAY_TIMEOUT);
+    assertEquals(responses.get(1).get("status").getIntValue(), HttpServletResponse.SC_OK);
+  }
+  
+  @Test
+  public void writeAfterATimeoutIsNotRun() throws Exception {
+    JsonNode responses = this.dispatch(this.subRequest("GET", SLOW_PATH, null), this.subRequest("PUT", TODO_PATH, "sleep"));
+    
+    assertEquals(responses.size(), 2);
+    assertEquals(responses.get(0).get("status").getIntValue(), HttpServletResponse.SC_GATEWAY_TIMEOUT);
+    assertEquals(responses.get(1).get("status").getIntValue(), HttpServletResponse.SC_GATEWAY_TIMEOUT);
+    assertEquals(this.name, "wake up");
+  }
+  
+  @Test(expectedExceptions = ValidationException.class)
+  public void tooManySubRequestsAreRejected() throws Exception {
+    ObjectNode[] subRequests = new ObjectNode[MAX_REQUESTS + 1];
+    
+    for (int i = 0; i < subRequests.length; i++) {
+      subRequests[i] = this.subRequest("GET", TODO_PATH, null);
+    }
+    
+    this.dispatch(subRequests);
+  }
+  
+  @Test(expectedExceptions = ValidationException.class)
+  public void nestedBatchIsRejected() throws Exception {
+    this.dispatch(this.subRequest("GET", TODO_PATH, null), this.subRequest("POST", "/batch", "[]"));
+  }
+  
+  private ObjectNode subRequest(final String method, final String path, final String body) {
+    ObjectNode subRequest = this.objectMapper.createObjectNode();
+    
+    subRequest.put("method", method);
+    subRequest.put("path", path);
+    
+    if (body != null)
+      subRequest.put("body", body);
+    
+    return subRequest;
+  }
+  
+  private JsonNode dispatch(final ObjectNode... subRequests) throws Exception {
+    ArrayNode batch = this.objectMapper.createArrayNode();
+    MockHttpServletRequest request = new MockHttpServletRequest("POST", "/backend/service/batch");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    
+    for (ObjectNode subRequest : subRequests) {
+      batch.add(subRequest);
+    }
+    
+    request.setContent(this.objectMapper.writeValueAsBytes(batch));
+    this.dispatcher.dispatch(request, response);
+    
+    return this.objectMapper.readTree(response.getContentAsString());
+  }
+  
+  /**
+   * Reads and writes the name of a todo. A write is slower than a read, so a read dispatched alongside it would read the name before the write. The
+   * slow path sleeps past the timeout of the batch.
+   */
+  private final class TodoAdapter implements HandlerAdapter {
+    @Override
+    public boolean supports(final Object handler) {
+      return true;
+    }
+    
+    @Override
+    public ModelAndView handle(final HttpServletRequest request, final HttpServletResponse response, final Object handler) throws Exception {
+      ObjectMapper objectMapper = BatchDispatcherTest.this.objectMapper;
+      
+      if (request.getPathInfo().equals(SLOW_PATH))
+        Thread.sleep(TIMEOUT * 10);
+      
+      if ("PUT".equals(request.getMethod())) {
+        Thread.sleep(TIMEOUT / 10);
+        BatchDispatcherTest.this.name = objectMapper.readValue(request.getInputStream(), String.class);
+        response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+      } else {
+        response.setContentType(BatchServletRequest.JSON_CONTENT_TYPE);
+        response.getWriter().write(objectMapper.writeValueAsString(BatchDispatcherTest.this.name));
+      }
+      
+      return null;
+    }
+    
+    @Override
+    public long getLastModified(final HttpServletRequest request, final Object handler) {
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,327 @@
+package com.jiggy.base.dao;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.shiro.session.Session;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.util.ThreadContext;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.jiggy.base.searchengine.DefaultSearchCriteria;
+import com.jiggy.base.searchengine.FilterExpression.FilterTerm;
+import com.jiggy.base.searchengine.FilterExpression.Op;
+import com.jiggy.base.searchengine.FilterNode;
+import com.jiggy.base.searchengine.SearchCriteria;
+import com.jiggy.base.searchengine.SearchCriteria.CountMode;
+import com.jiggy.base.searchengine.TextIndex;
+import com.jiggy.security.Permission;
+import com.jiggy.security.Role;
+import com.jiggy.security.SessionUtil;
+import com.jiggy.security.UserProfile;
+import com.jiggy.todo.Todo;
+
+@Test(singleThreaded = true)
+public class AbstractDBDAOTest {
+  private InMemoryTodoDAO todoDAO;
+  
+  @BeforeMethod
+  public void beforeMethod() {
+    this.todoDAO = new InMemoryTodoDAO();
+    this.todoDAO.put(new Todo(Long.valueOf(1), "mine"));
+    this.todoDAO.put(new Todo(Long.valueOf(2), "theirs"));
+    this.todoDAO.put(new Todo(Long.valueOf(3), "mine"));
+  }
+  
+  @AfterMethod
+  public void afterMethod() {
+    ThreadContext.unbindSubject();
+  }
+  
+  @Test
+  public void streamAppliesTheReadFilter() {
+    logIn("name=mine");
+    
+    DefaultSearchCriteria searchCriteria = new DefaultSearchCriteria();
+    searchCriteria.addFilter(new FilterTerm("id", "1,2"));
+    
+    assertEquals(this.stream(null), Arrays.asList(Long.valueOf(1), Long.valueOf(3)));
+    assertEquals(this.stream(searchCriteria), Arrays.asList(Long.valueOf(1)));
+  }
+  
+  @Test
+  public void streamWithoutReadFilter() {
+    logIn(null);
+    
+    assertEquals(this.stream(null), Arrays.asList(Long.valueOf(1), Long.valueOf(2), Long.valueOf(3)));
+    assertNull(this.todoDAO.searches.get(0));
+  }
+  
+  @Test
+  public void streamWithoutUser() {
+    logIn();
+    
+    assertEquals(this.stream(null).size(), 3);
+  }
+  
+  @Test
+  public void queryCacheKeepsTheRolesApart() {
+    this.todoDAO.setQueryCache(new QueryCache<Todo>(10, 60000));
+    
+    logIn("name=mine");
+    assertEquals(this.ids(this.todoDAO.find(null)), Arrays.asList(Long.valueOf(1), Long.valueOf(3)));
+    assertEquals(this.todoDAO.getRowCount(null), 2);
+    
+    logIn(null);
+    assertEquals(this.ids(this.todoDAO.find(null)), Arrays.asList(Long.valueOf(1), Long.valueOf(2), Long.valueOf(3)));
+    assertEquals(this.todoDAO.getRowCount(null), 3);
+    
+    logIn("name=mine");
+    assertEquals(this.ids(this.todoDAO.find(null)), Arrays.asList(Long.valueOf(1), Long.valueOf(3)));
+    assertEquals(this.todoDAO.getRowCount(null), 2);
+    assertEquals(this.todoDAO.getQueryCache().getHits(), 2);
+    assertEquals(this.todoDAO.searches.size(), 4);
+  }
+  
+  @Test
+  public void findByIdsAppliesTheReadFilter() {
+    List<Long> ids = Arrays.asList(Long.valueOf(3), Long.valueOf(2), Long.valueOf(1));
+    
+    logIn("name=mine");
+    assertEquals(this.ids(this.todoDAO.findByIds(ids)), Arrays.asList(Long.valueOf(3), Long.valueOf(1)));
+    assertEquals(this.todoDAO.searches.size(), 1);
+    
+    logIn(null);
+    assertEquals(this.ids(this.todoDAO.findByIds(ids)), ids);
+  }
+  
+  @Test
+  public void pageRowCountFollowsTheCountMode() {
+    logIn("name=mine");
+    
+    DefaultSearchCriteria searchCriteria = new DefaultSearchCriteria();
+    this.todoDAO.applySecurityFilter(searchCriteria);
+    
+    searchCriteria.setCountMode(CountMode.NONE);
+    assertEquals(this.todoDAO.getPageRowCount(searchCriteria), -1);
+    assertTrue(this.todoDAO.searches.isEmpty());
+    
+    searchCriteria.setCountMode(CountMode.EXACT);
+    assertEquals(this.todoDAO.getPageRowCount(searchCriteria), 2);
+    assertEquals(this.todoDAO.getPageRowCount(searchCriteria), 2);
+    assertEquals(this.todoDAO.searches.size(), 2);
+    
+    searchCriteria.setCountMode(CountMode.CACHED);
+    assertEquals(this.todoDAO.getPageRowCount(searchCriteria), 2);
+    assertEquals(this.todoDAO.getPageRowCount(searchCriteria), 2);
+    assertEquals(this.todoDAO.searches.size(), 3);
+    
+    searchCriteria.setCountMode(CountMode.ESTIMATED);
+    assertEquals(this.todoDAO.getPageRowCount(searchCriteria), 2);
+    assertEquals(this.todoDAO.searches.size(), 3);
+    
+    this.todoDAO.insert(new Todo(Long.valueOf(4), "mine"));
+    assertEquals(this.todoDAO.getPageRowCount(searchCriteria), 3);
+  }
+  
+  @Test
+  public void textRowCountDoesNotLoadTheMatches() {
+    DefaultSearchCriteria searchCriteria = new DefaultSearchCriteria();
+    searchCriteria.setQuery("todo");
+    
+    this.todoDAO.setTextIndex(new TextIndex("name"));
+    
+    for (long id = 1; id <= 3; id++) {
+      this.todoDAO.getTextIndex().index(Long.valueOf(id), "todo");
+    }
+    
+    logIn(null);
+    assertEquals(this.todoDAO.getRowCount(searchCriteria), 3);
+    
+    logIn("name=mine");
+    assertEquals(this.todoDAO.getRowCount(searchCriteria), 2);
+    
+    searchCriteria.addFilter(new FilterTerm("id", "2,3"));
+    assertEquals(this.todoDAO.getRowCount(searchCriteria), 1);
+    assertEquals(this.todoDAO.counts.size(), 3);
+    assertEquals(this.todoDAO.searches.size(), 3);
+  }
+  
+  @Test
+  public void streamFollowsTheTextQuery() {
+    DefaultSearchCriteria searchCriteria = new DefaultSearchCriteria();
+    searchCriteria.setQuery("todo");
+    
+    this.todoDAO.setTextIndex(new TextIndex("name"));
+    this.todoDAO.getTextIndex().index(Long.valueOf(3), "todo");
+    this.todoDAO.getTextIndex().index(Long.valueOf(2), "todo");
+    
+    logIn(null);
+    assertEquals(this.stream(searchCriteria), Arrays.asList(Long.valueOf(3), Long.valueOf(2)));
+    
+    logIn("name=mine");
+    assertEquals(this.stream(searchCriteria), Arrays.asList(Long.valueOf(3)));
+  }
+  
+  @Test
+  public void initIndexesTheTextWithoutSubject() {
+    ThreadContext.unbindSubject();
+    this.todoDAO.setTextIndex(new TextIndex("name"));
+    this.todoDAO.init();
+    
+    assertEquals(this.todoDAO.getTextIndex().size(), 3);
+    assertNull(this.todoDAO.searches.get(0));
+  }
+  
+  @Test
+  public void textIndexIsRebuiltWithoutTheReadFilter() {
+    this.todoDAO.setTextIndex(new TextIndex("name"));
+    
+    logIn("name=mine");
+    this.todoDAO.rebuildTextIndex();
+    
+    assertEquals(this.todoDAO.getTextIndex().size(), 3);
+    assertNull(this.todoDAO.searches.get(0));
+    assertNotNull(this.todoDAO.getSecurityFilter());
+  }
+  
+  private List<Long> ids(final List<Todo> todos) {
+    List<Long> ids = new ArrayList<Long>();
+    
+    for (Todo todo : todos) {
+      ids.add(todo.getId());
+    }
+    
+    return ids;
+  }
+  
+  private List<Long> stream(final SearchCriteria searchCriteria) {
+    final List<Long> ids = new ArrayList<Long>();
+    
+    this.todoDAO.stream(searchCriteria, new EntityConsumer<Todo>() {
+      @Override
+      public void accept(final Todo entity) {
+        ids.add(entity.getId());
+      }
+    });
+    
+    return ids;
+  }
+  
+  /**
+   * Binds a subject whose session holds no user to the current thread.
+   */
+  static void logIn() {
+    Subject subject = mock(Subject.class);
+    
+    when(subject.getSession()).thenReturn(mock(Session.class));
+    ThreadContext.bind(subject);
+  }
+  
+  /**
+   * Binds a subject to the current thread whose role may read the todos through the given row level filter.
+   * 
+   * @param readFilter The row level filter of the read permission, null for none.
+   */
+  static void logIn(final String readFilter) {
+    Permission permission = new Permission();
+    permission.setResource("Todo");
+    permission.setOperation("read");
+    permission.setFilter(readFilter);
+    
+    Role role = new Role();
+    role.setName("user");
+    role.setPermissions(Collections.singleton(permission));
+    
+    UserProfile userProfile = new UserProfile(null);
+    userProfile.setRole(role);
+    
+    Subject subject = mock(Subject.class);
+    Session session = mock(Session.class);
+    
+    when(subject.getSession()).thenReturn(session);
+    when(session.getAttribute(SessionUtil.USER_PROFILE_ATTRIBUTE)).thenReturn(userProfile);
+    ThreadContext.bind(subject);
+  }
+  
+  /**
+   * Keeps the todos in memory and runs the INCLUDE terms of the searches on them, recording the search criteria it is given.
+   */
+  static final class InMemoryTodoDAO extends AbstractDBDAO<Todo> {
+    private final Map<Long, Todo> todos = new LinkedHashMap<Long, Todo>();
+    private final List<SearchCriteria> searches = new ArrayList<SearchCriteria>();
+    private final List<SearchCriteria> counts = new ArrayList<SearchCriteria>();
+    
+    void put(final Todo todo) {
+      this.todos.put(todo.getId(), todo);
+    }
+    
+    @Override
+    protected Todo implementInsert(final Todo entity) {
+      this.put(entity);
+      
+      return entity;
+    }
+    
+    @Override
+    protected Todo implementFindById(final Long id) {
+      return this.todos.get(id);
+    }
+    
+    @Override
+    protected List<Todo> implementFind(final SearchCriteria searchCriteria) {
+      this.searches.add(searchCriteria);
+      
+      return this.match(searchCriteria);
+    }
+    
+    @Override
+    protected long implementRowCount(final SearchCriteria searchCriteria) {
+      this.searches.add(searchCriteria);
+      this.counts.add(searchCriteria);
+      
+      return this.match(searchCriteria).size();
+    }
+    
+    private List<Todo> match(final SearchCriteria searchCriteria) {
+      List<Todo> matches = new ArrayList<Todo>();
+      
+      for (Todo todo : this.todos.values()) {
+        if (this.matches(todo, searchCriteria))
+          matches.add(todo);
+      }
+      
+      return matches;
+    }
+    
+    private boolean matches(final Todo todo, final SearchCriteria searchCriteria) {
+      if (searchCriteria == null || searchCriteria.getFilter() == null)
+        return true;
+      
+      for (FilterNode node : searchCriteria.getFilter().nodes()) {
+        FilterTerm term = (FilterTerm) node;
+        
+        if (term.getOperator() != Op.INCLUDE)
+          throw new UnsupportedOperationException(term.toString());
+        
+        if (!Arrays.asList(term.getValue().split(",")).contains(String.valueOf(this.getPropertyValue(todo, term.getKey()))))
+          return false;
+      }
+      
+      return true;
+    }
+  }
+}
@@ -0,0 +1,241 @@
+package com.jiggy.base.dao;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.shiro.util.ThreadContext;
+import org.hibernate.Query;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.mockito.InOrder;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.jiggy.base.exception.ValidationException;
+import com.jiggy.base.searchengine.DefaultSearchCriteria;
+import com.jiggy.base.searchengine.FilterExpression.FilterTerm;
+import com.jiggy.todo.Todo;
+
+@Test(singleThreaded = true)
+public class AbstractHibernateDBDAOTest {
+  private Session session;
+  private Query query;
+  private HibernateTodoDAO todoDAO;
+  
+  @BeforeMethod
+  public void beforeMethod() {
+    SessionFactory sessionFactory = mock(SessionFactory.class);
+    
+    this.session = mock(Session.class);
+    this.query = mock(Query.class);
+    when(sessionFactory.getCurrentSession()).thenReturn(this.session);
+    when(this.session.createQuery(anyString())).thenReturn(this.query);
+    this.todoDAO = new HibernateTodoDAO(sessionFactory);
+  }
+  
+  @AfterMethod
+  public void afterMethod() {
+    ThreadContext.unbindSubject();
+  }
+  
+  @Test
+  public void findAppliesTheReadFilter() {
+    AbstractDBDAOTest.logIn("name=mine");
+    
+    DefaultSearchCriteria searchCriteria = new DefaultSearchCriteria();
+    searchCriteria.addFilter(new FilterTerm("id", "1,2"));
+    this.todoDAO.find(searchCriteria);
+    this.todoDAO.find(null);
+    
+    verify(this.session).createQuery("from " + Todo.class.getName() + " e where e.id in (:p0) and e.name = :p1");
+    verify(this.session).createQuery("from " + Todo.class.getName() + " e where e.name = :p0");
+    verify(this.query).setParameter("p1", "mine");
+    verify(this.query).setParameter("p0", "mine");
+  }
+  
+  @Test
+  public void rowCountAppliesTheReadFilter() {
+    AbstractDBDAOTest.logIn("name=mine");
+    
+    this.todoDAO.getRowCount(new DefaultSearchCriteria());
+    
+    verify(this.session).createQuery("select count(*) from " + Todo.class.getName() + " e where e.name = :p0");
+    verify(this.query).setParameter("p0", "mine");
+  }
+  
+  @Test
+  public void estimatedRowCountSkipsTheReadFilteredRoles() {
+    AbstractDBDAOTest.logIn("name=mine");
+    
+    assertEquals(this.todoDAO.implementEstimatedRowCount(new DefaultSearchCriteria()), -1);
+    verify(this.session, never()).createSQLQuery(anyString());
+  }
+  
+  @Test
+  public void findWithoutReadFilter() {
+    AbstractDBDAOTest.logIn(null);
+    
+    this.todoDAO.find(null);
+    
+    verify(this.session).createQuery("from " + Todo.class.getName() + " e");
+  }
+  
+  @Test
+  public void insertAllFlushesAndEvictsEachBatch() {
+    List<Todo> todos = this.newTodos(5);
+    
+    this.todoDAO.insertAll(todos);
+    
+    InOrder inOrder = inOrder(this.session);
+    
+    for (int fromIndex = 0; fromIndex < todos.size(); fromIndex += HibernateTodoDAO.BATCH_SIZE) {
+      List<Todo> batch = todos.subList(fromIndex, Math.min(fromIndex + HibernateTodoDAO.BATCH_SIZE, todos.size()));
+      
+      for (Todo todo : batch) {
+        inOrder.verify(this.session).save(todo);
+      }
+      
+      inOrder.verify(this.session).flush();
+      
+      for (Todo todo : batch) {
+        inOrder.verify(this.session).evict(todo);
+      }
+    }
+    
+    verify(this.session, times(3)).flush();
+    verify(this.session, never()).clear();
+  }
+  
+  @Test
+  public void updateAllKeepsTheOtherEntitiesAttached() {
+    List<Todo> todos = this.newTodos(4);
+    
+    this.todoDAO.updateAll(todos);
+    
+    verify(this.session, times(4)).update(any());
+    verify(this.session, times(2)).flush();
+    verify(this.session, times(4)).evict(any());
+    verify(this.session, never()).clear();
+  }
+  
+  @Test
+  public void updateIsConditionalOnTheExpectedVersion() {
+    Todo todo = new Todo(Long.valueOf(1), "wake up");
+    
+    todo.setVersion(Long.valueOf(3));
+    when(this.query.setParameter(anyString(), any())).thenReturn(this.query);
+    when(this.query.executeUpdate()).thenReturn(Integer.valueOf(1));
+    
+    this.todoDAO.update(todo);
+    
+    InOrder inOrder = inOrder(this.session, this.query);
+    
+    inOrder.verify(this.session).createQuery("update " + Todo.class.getName()
+                                             + " e set e.version = :version where e.id = :id and e.version = :expectedVersion");
+    inOrder.verify(this.query).setParameter("version", Long.valueOf(4));
+    inOrder.verify(this.query).setParameter("expectedVersion", Long.valueOf(3));
+    inOrder.verify(this.query).executeUpdate();
+    inOrder.verify(this.session).update(todo);
+  }
+  
+  @Test
+  public void updateOfAModifiedEntityIsNotWritten() {
+    Todo todo = new Todo(Long.valueOf(1), "wake up");
+    
+    todo.setVersion(Long.valueOf(3));
+    when(this.query.setParameter(anyString(), any())).thenReturn(this.query);
+    when(this.query.executeUpdate()).thenReturn(Integer.valueOf(0));
+    
+    try {
+      this.todoDAO.update(todo);
+      fail("A write of a modified entity must fail its precondition.");
+    } catch (ValidationException ve) {
+      verify(this.session, never()).update(any());
+    }
+  }
+  
+  @Test
+  public void updateOfAnUnversionedEntityIsNotConditional() {
+    this.todoDAO.update(new Todo(Long.valueOf(1), "wake up"));
+    
+    verify(this.session, never()).createQuery(anyString());
+    verify(this.session).update(any());
+  }
+  
+  @Test
+  public void deleteAllFlushesEachBatch() {
+    List<Todo> todos = this.newTodos(3);
+    
+    this.todoDAO.deleteAll(todos);
+    
+    verify(this.session, times(3)).delete(any());
+    verify(this.session, times(2)).flush();
+    verify(this.session, never()).evict(any());
+    verify(this.session, never()).clear();
+  }
+  
+  @Test
+  public void insertAllRunsTheBatchHooksOnce() {
+    List<Todo> todos = this.newTodos(3);
+    HibernateTodoDAO spyTodoDAO = spy(this.todoDAO);
+    
+    spyTodoDAO.insertAll(todos);
+    
+    InOrder inOrder = inOrder(spyTodoDAO, this.session);
+    
+    inOrder.verify(spyTodoDAO).validateBeforeInsertAll(todos);
+    inOrder.verify(spyTodoDAO).beforeInsertAll(todos);
+    inOrder.verify(spyTodoDAO).implementInsertAll(todos);
+    inOrder.verify(this.session, times(2)).flush();
+    inOrder.verify(spyTodoDAO).afterInsertAll(todos);
+    inOrder.verify(spyTodoDAO).validateAfterInsertAll(todos);
+    
+    for (Todo todo : todos) {
+      verify(spyTodoDAO).validateBeforeInsert(todo);
+      verify(spyTodoDAO).beforeInsert(todo);
+      verify(spyTodoDAO).afterInsert(todo);
+      verify(spyTodoDAO).validateAfterInsert(todo);
+    }
+    
+    verify(spyTodoDAO, never()).implementInsert(any(Todo.class));
+  }
+  
+  private List<Todo> newTodos(final int count) {
+    List<Todo> todos = new ArrayList<Todo>();
+    
+    for (int i = 1; i <= count; i++) {
+      todos.add(new Todo(Long.valueOf(i), "todo" + i));
+    }
+    
+    return todos;
+  }
+  
+  /**
+   * A Hibernate DAO of the todos writing in batches of two.
+   */
+  static class HibernateTodoDAO extends AbstractHibernateDBDAO<Todo> {
+    static final int BATCH_SIZE = 2;
+    
+    HibernateTodoDAO(final SessionFactory sessionFactory) {
+      super(sessionFactory);
+    }
+    
+    @Override
+    protected int getBatchSize() {
+      return BATCH_SIZE;
+    }
+  }
+}
@@ -0,0 +1,93 @@
+package com.jiggy.base.dao;
+
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Map;
+
+import javax.jdo.FetchPlan;
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+import org.apache.shiro.util.ThreadContext;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.jiggy.base.searchengine.DefaultSearchCriteria;
+import com.jiggy.base.searchengine.FilterExpression.FilterTerm;
+import com.jiggy.todo.Todo;
+
+@Test(singleThreaded = true)
+public class AbstractJDODDatanucleusBDAOTest {
+  private Query query;
+  private JdoTodoDAO todoDAO;
+  
+  @BeforeMethod
+  public void beforeMethod() {
+    PersistenceManager persistenceManager = mock(PersistenceManager.class);
+    
+    this.query = mock(Query.class);
+    when(persistenceManager.newQuery(Todo.class)).thenReturn(this.query);
+    when(this.query.getFetchPlan()).thenReturn(mock(FetchPlan.class));
+    when(this.query.execute()).thenReturn(Collections.emptyList());
+    when(this.query.executeWithMap(anyMap())).thenReturn(Collections.emptyList());
+    this.todoDAO = new JdoTodoDAO(persistenceManager);
+  }
+  
+  @AfterMethod
+  public void afterMethod() {
+    ThreadContext.unbindSubject();
+  }
+  
+  @Test
+  @SuppressWarnings("rawtypes")
+  public void streamAppliesTheReadFilter() {
+    AbstractDBDAOTest.logIn("name=mine");
+    
+    DefaultSearchCriteria searchCriteria = new DefaultSearchCriteria();
+    searchCriteria.addFilter(new FilterTerm("id", "1"));
+    
+    ArgumentCaptor<Map> paramMap = ArgumentCaptor.forClass(Map.class);
+    
+    this.todoDAO.implementStream(null, null);
+    this.todoDAO.implementStream(searchCriteria, null);
+    
+    verify(this.query, never()).execute();
+    verify(this.query, times(2)).setFilter(contains("name"));
+    verify(this.query, times(2)).executeWithMap(paramMap.capture());
+    
+    for (Map<?, ?> params : paramMap.getAllValues()) {
+      assertTrue(params.containsValue("mine"), params.toString());
+    }
+  }
+  
+  @Test
+  public void streamWithoutReadFilter() {
+    AbstractDBDAOTest.logIn(null);
+    
+    assertEquals(this.todoDAO.implementStream(null, null), 0);
+    
+    verify(this.query).execute();
+    verify(this.query, never()).setFilter(anyString());
+  }
+  
+  /**
+   * A JDO DAO of the todos.
+   */
+  static class JdoTodoDAO extends AbstractJDODDatanucleusBDAO<Todo> {
+    JdoTodoDAO(final PersistenceManager persistenceManager) {
+      super(persistenceManager);
+    }
+  }
+}
@@ -0,0 +1,320 @@
+package com.jiggy.base.dao;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+import org.apache.shiro.util.ThreadContext;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.data.mapping.PropertyHandler;
+import org.springframework.data.mapping.context.MappingContext;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.jiggy.base.dao.AbstractMongoDBDAO.WriteMode;
+import com.jiggy.base.exception.ValidationException;
+import com.jiggy.base.searchengine.DefaultSearchCriteria;
+import com.jiggy.base.searchengine.PageCursor;
+import com.jiggy.todo.Todo;
+import com.mongodb.BasicDBList;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+
+@Test(singleThreaded = true)
+public class AbstractMongoDBDAOTest {
+  private MongoOperations mongoOperations;
+  private MongoTodoDAO todoDAO;
+  
+  @BeforeMethod
+  public void beforeMethod() {
+    this.mongoOperations = mock(MongoOperations.class);
+    this.todoDAO = new MongoTodoDAO(this.mongoOperations);
+  }
+  
+  @AfterMethod
+  public void afterMethod() {
+    ThreadContext.unbindSubject();
+  }
+  
+  @Test
+  public void findAppliesTheReadFilter() {
+    AbstractDBDAOTest.logIn("name=mine");
+    
+    DBObject queryObject = this.find("id=1,2");
+    
+    assertEquals(queryObject.get("name"), "mine");
+    assertEquals(((DBObject) queryObject.get("_id")).get("$in"), Arrays.<Object> asList(Long.valueOf(1), Long.valueOf(2)));
+    
+    this.todoDAO.find(null);
+    
+    verify(this.mongoOperations, never()).findAll(Todo.class);
+  }
+  
+  @Test
+  public void rowCountAppliesTheReadFilter() {
+    AbstractDBDAOTest.logIn("name=mine");
+    
+    ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+    
+    this.todoDAO.getRowCount(null);
+    
+    verify(this.mongoOperations).count(query.capture(), eq(Todo.class));
+    assertEquals(query.getValue().getQueryObject().get("name"), "mine");
+  }
+  
+  @Test
+  public void estimatedRowCountSkipsTheReadFilteredRoles() {
+    DBCollection collection = mock(DBCollection.class);
+    
+    when(this.mongoOperations.getCollectionName(Todo.class)).thenReturn("todo");
+    when(this.mongoOperations.getCollection("todo")).thenReturn(collection);
+    when(Long.valueOf(collection.getCount())).thenReturn(Long.valueOf(4));
+    
+    AbstractDBDAOTest.logIn(null);
+    assertEquals(this.todoDAO.implementEstimatedRowCount(new DefaultSearchCriteria()), 4);
+    
+    AbstractDBDAOTest.logIn("name=mine");
+    assertEquals(this.todoDAO.implementEstimatedRowCount(new DefaultSearchCriteria()), -1);
+    verify(this.mongoOperations).getCollection("todo");
+  }
+  
+  @Test
+  public void findWithoutReadFilter() {
+    AbstractDBDAOTest.logIn(null);
+    
+    this.todoDAO.find(null);
+    
+    verify(this.mongoOperations).findAll(Todo.class);
+    assertNull(this.find("id=1").get("name"));
+  }
+  
+  @Test
+  public void seekPastANullSortValue() {
+    AbstractDBDAOTest.logIn();
+    
+    DefaultSearchCriteria searchCriteria = new DefaultSearchCriteria();
+    ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+    
+    searchCriteria.setSortBy("name");
+    searchCriteria.setLimit(10);
+    searchCriteria.setAfter(new PageCursor(null, Long.valueOf(5)).encode());
+    this.todoDAO.find(searchCriteria);
+    
+    verify(this.mongoOperations).find(query.capture(), eq(Todo.class));
+    
+    BasicDBList or = (BasicDBList) query.getValue().getQueryObject().get("$or");
+    DBObject nulls = (DBObject) or.get(0);
+    
+    assertEquals(or.size(), 2);
+    assertTrue(nulls.containsField("name"));
+    assertNull(nulls.get("name"));
+    assertEquals(((DBObject) nulls.get("_id")).get("$gt"), Long.valueOf(5));
+    assertTrue(((DBObject) ((DBObject) or.get(1)).get("name")).containsField("$ne"));
+  }
+  
+  @Test
+  public void mapExcludeAndRangeTerms() {
+    AbstractDBDAOTest.logIn();
+    
+    DBObject queryObject = this.find("id!=1,2 & createDate>1 & createDate<=5");
+    DBObject createDate = (DBObject) queryObject.get("createDate");
+    
+    assertEquals(((DBObject) queryObject.get("_id")).get("$nin"), Arrays.<Object> asList(Long.valueOf(1), Long.valueOf(2)));
+    assertEquals(createDate.get("$gt"), Long.valueOf(1));
+    assertEquals(createDate.get("$lte"), Long.valueOf(5));
+  }
+  
+  @Test
+  public void mapPrefixAndOrTerms() {
+    AbstractDBDAOTest.logIn();
+    
+    DBObject queryObject = this.find("name prefix 'a.b' & (id=1 | id=2)");
+    BasicDBList conjuncts = (BasicDBList) queryObject.get("$and");
+    BasicDBList disjuncts = (BasicDBList) ((DBObject) conjuncts.get(0)).get("$or");
+    
+    assertEquals(((Pattern) queryObject.get("name")).pattern(), "^a\\.b");
+    assertEquals(conjuncts.size(), 1);
+    assertEquals(disjuncts.size(), 2);
+    assertEquals(((DBObject) disjuncts.get(1)).get("_id"), Long.valueOf(2));
+  }
+  
+  @Test
+  public void returnWrittenWritesOnce() {
+    Todo todo = new Todo(Long.valueOf(1), "wake up");
+    
+    assertSame(this.todoDAO.insert(todo), todo);
+    assertSame(this.todoDAO.update(todo), todo);
+    verify(this.mongoOperations).insert(todo);
+    verify(this.mongoOperations).save(todo);
+    verify(this.mongoOperations, never()).findById(any(), eq(Todo.class));
+  }
+  
+  @Test
+  public void readBackReturnsTheStoredEntity() {
+    Todo todo = new Todo(Long.valueOf(1), "wake up");
+    Todo stored = new Todo(Long.valueOf(1), "stored");
+    
+    when(this.mongoOperations.findById(Long.valueOf(1), Todo.class)).thenReturn(stored);
+    this.todoDAO.setWriteMode(WriteMode.READ_BACK);
+    
+    assertSame(this.todoDAO.insert(todo), stored);
+    assertSame(this.todoDAO.update(todo), stored);
+    verify(this.mongoOperations).save(todo);
+  }
+  
+  @Test
+  public void findAndModifySetsTheWrittenFields() {
+    Todo stored = new Todo(Long.valueOf(1), "stored");
+    ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+    ArgumentCaptor<FindAndModifyOptions> options = ArgumentCaptor.forClass(FindAndModifyOptions.class);
+    
+    this.mapTodos();
+    when(this.mongoOperations.findAndModify(any(Query.class), update.capture(), options.capture(), eq(Todo.class))).thenReturn(stored);
+    
+    assertSame(this.todoDAO.update(new Todo(Long.valueOf(1), "wake up")), stored);
+    assertEquals(((DBObject) update.getValue().getUpdateObject().get("$set")).get("name"), "wake up");
+    assertNull(update.getValue().getUpdateObject().get("$unset"));
+    assertFalse(options.getValue().isUpsert());
+    assertTrue(options.getValue().isReturnNew());
+    verify(this.mongoOperations, never()).save(any());
+  }
+  
+  @Test
+  public void findAndModifyUnsetsTheClearedFields() {
+    ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+    
+    this.mapTodos();
+    when(this.mongoOperations.findAndModify(any(Query.class), update.capture(), any(FindAndModifyOptions.class), eq(Todo.class)))
+        .thenReturn(new Todo(Long.valueOf(1), null));
+    
+    this.todoDAO.update(new Todo(Long.valueOf(1), null));
+    
+    assertTrue(((DBObject) update.getValue().getUpdateObject().get("$unset")).containsField("name"));
+    assertFalse(((DBObject) update.getValue().getUpdateObject().get("$unset")).containsField("_id"));
+  }
+  
+  @Test
+  public void findAndModifyIsConditionalOnTheExpectedVersion() {
+    Todo todo = new Todo(Long.valueOf(1), "wake up");
+    ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+    
+    todo.setVersion(Long.valueOf(3));
+    this.mapTodos();
+    when(this.mongoOperations.findAndModify(query.capture(), any(Update.class), any(FindAndModifyOptions.class), eq(Todo.class))).thenReturn(todo);
+    
+    this.todoDAO.update(todo);
+    
+    assertEquals(query.getValue().getQueryObject().get("_id"), Long.valueOf(1));
+    assertEquals(query.getValue().getQueryObject().get("version"), Long.valueOf(3));
+    assertEquals(todo.getVersion(), Long.valueOf(4));
+  }
+  
+  @Test(expectedExceptions = ValidationException.class)
+  public void findAndModifyOfAModifiedEntityFails() {
+    Todo todo = new Todo(Long.valueOf(1), "wake up");
+    
+    todo.setVersion(Long.valueOf(3));
+    this.mapTodos();
+    
+    this.todoDAO.update(todo);
+  }
+  
+  @Test(expectedExceptions = ValidationException.class)
+  public void findAndModifyDoesNotCreateAMissingEntity() {
+    this.mapTodos();
+    
+    this.todoDAO.update(new Todo(Long.valueOf(1), "wake up"));
+  }
+  
+  /**
+   * Switches to the FIND_AND_MODIFY write mode, with a converter writing the id and the name of the todos when they are not null.
+   */
+  @SuppressWarnings("unchecked")
+  private void mapTodos() {
+    MongoConverter converter = mock(MongoConverter.class);
+    MappingContext<MongoPersistentEntity<?>, MongoPersistentProperty> mappingContext = mock(MappingContext.class);
+    MongoPersistentEntity<Todo> persistentEntity = mock(MongoPersistentEntity.class);
+    final MongoPersistentProperty idProperty = mock(MongoPersistentProperty.class);
+    final MongoPersistentProperty nameProperty = mock(MongoPersistentProperty.class);
+    
+    when(idProperty.isIdProperty()).thenReturn(true);
+    when(idProperty.getFieldName()).thenReturn("_id");
+    when(nameProperty.getFieldName()).thenReturn("name");
+    when(this.mongoOperations.getConverter()).thenReturn(converter);
+    doReturn(mappingContext).when(converter).getMappingContext();
+    doReturn(persistentEntity).when(mappingContext).getPersistentEntity(Todo.class);
+    
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(final InvocationOnMock invocation) {
+        Todo todo = (Todo) invocation.getArguments()[0];
+        DBObject document = (DBObject) invocation.getArguments()[1];
+        
+        document.put("_id", todo.getId());
+        
+        if (todo.getName() != null)
+          document.put("name", todo.getName());
+        
+        return null;
+      }
+    }).when(converter).write(any(), any(DBObject.class));
+    
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(final InvocationOnMock invocation) {
+        PropertyHandler<MongoPersistentProperty> handler = (PropertyHandler<MongoPersistentProperty>) invocation.getArguments()[0];
+        
+        handler.doWithPersistentProperty(idProperty);
+        handler.doWithPersistentProperty(nameProperty);
+        
+        return null;
+      }
+    }).when(persistentEntity).doWithProperties(any(PropertyHandler.class));
+    
+    this.todoDAO.setWriteMode(WriteMode.FIND_AND_MODIFY);
+  }
+  
+  private DBObject find(final String filter) {
+    DefaultSearchCriteria searchCriteria = new DefaultSearchCriteria();
+    ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+    
+    searchCriteria.addFilter(filter);
+    this.todoDAO.find(searchCriteria);
+    
+    verify(this.mongoOperations).find(query.capture(), eq(Todo.class));
+    
+    return query.getValue().getQueryObject();
+  }
+  
+  /**
+   * A Mongo DAO of the todos.
+   */
+  static class MongoTodoDAO extends AbstractMongoDBDAO<Todo> {
+    MongoTodoDAO(final MongoOperations mongoOperations) {
+      super(mongoOperations);
+    }
+  }
+}
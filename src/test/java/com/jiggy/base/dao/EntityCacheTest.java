@@ -0,0 +1,91 @@
+package com.jiggy.base.dao;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+import com.jiggy.todo.Todo;
+
+public class EntityCacheTest {
+  
+  @Test
+  public void readThrough() {
+    EntityCache<Todo> cache = new EntityCache<Todo>(10, 60000);
+    Todo todo = new Todo(Long.valueOf(1), "wake up");
+    
+    assertNull(cache.get(todo.getId()));
+    cache.put(todo, cache.begin());
+    
+    assertSame(cache.get(todo.getId()), todo);
+    assertEquals(cache.getHits(), 1);
+    assertEquals(cache.getMisses(), 1);
+  }
+  
+  @Test
+  public void rejectReadOlderThanWrite() {
+    EntityCache<Todo> cache = new EntityCache<Todo>(10, 60000);
+    Todo todo = new Todo(Long.valueOf(1), "wake up");
+    long readStamp = cache.begin();
+    
+    cache.invalidate(todo);
+    cache.put(todo, readStamp);
+    
+    assertNull(cache.get(todo.getId()));
+    
+    cache.put(todo, cache.begin());
+    assertSame(cache.get(todo.getId()), todo);
+  }
+  
+  @Test
+  public void rejectOlderVersion() {
+    EntityCache<Todo> cache = new EntityCache<Todo>(10, 60000);
+    Todo written = new Todo(Long.valueOf(1), "wake up");
+    Todo stale = new Todo(Long.valueOf(1), "sleep");
+    
+    written.setVersion(Long.valueOf(2));
+    stale.setVersion(Long.valueOf(1));
+    cache.invalidate(written);
+    cache.put(stale, cache.begin());
+    
+    assertNull(cache.get(stale.getId()));
+  }
+  
+  @Test
+  public void evictLeastRecentlyUsed() {
+    EntityCache<Todo> cache = new EntityCache<Todo>(2, 60000);
+    
+    for (long id = 1; id <= 3; id++) {
+      cache.put(new Todo(Long.valueOf(id), "todo"), cache.begin());
+    }
+    
+    assertNull(cache.get(Long.valueOf(1)));
+    assertEquals(cache.size(), 2);
+    assertEquals(cache.getEvictions(), 1);
+  }
+  
+  @Test
+  public void expire() {
+    EntityCache<Todo> cache = new EntityCache<Todo>(10, 0);
+    
+    cache.put(new Todo(Long.valueOf(1), "todo"), cache.begin());
+    
+    assertNull(cache.get(Long.valueOf(1)));
+    assertEquals(cache.getEvictions(), 1);
+  }
+  
+  @Test
+  public void dropAllOnWrite() {
+    EntityCache<Todo> cache = new EntityCache<Todo>(10, 60000);
+    Todo todo = new Todo(Long.valueOf(1), "todo");
+    
+    cache.putAll(Arrays.asList(todo), cache.begin());
+    assertEquals(cache.getAll().size(), 1);
+    
+    cache.invalidate(todo);
+    assertNull(cache.getAll());
+  }
+}
@@ -0,0 +1,43 @@
+package com.jiggy.base.dao;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import org.testng.annotations.Test;
+
+import com.jiggy.security.Role;
+import com.jiggy.security.UserCredentials;
+import com.jiggy.todo.Todo;
+
+public class FieldMetadataTest {
+  
+  @Test
+  public void resolveOnce() {
+    assertSame(FieldMetadata.of(Todo.class), FieldMetadata.of(Todo.class));
+    assertSame(FieldMetadata.of(Todo.class).getField("createdBy"), FieldMetadata.of(Todo.class).getField("CREATEDBY"));
+  }
+  
+  @Test
+  public void convertToFieldType() {
+    FieldMetadata fieldMetadata = FieldMetadata.of(UserCredentials.class);
+    
+    assertEquals(fieldMetadata.getField("id").convert(" 7"), Long.valueOf(7));
+    assertEquals(fieldMetadata.getField("id").convert(""), Long.valueOf(-1));
+    assertEquals(fieldMetadata.getField("changePassword").convert("TRUE"), Boolean.TRUE);
+    assertEquals(fieldMetadata.getField("password").convert(" secret"), " secret");
+    assertNull(fieldMetadata.getField("unknown"));
+  }
+  
+  @Test
+  public void walkDottedPaths() {
+    assertEquals(FieldMetadata.of(UserCredentials.class).getField("user.id").convert("3"), Long.valueOf(3));
+    assertEquals(FieldMetadata.of(Role.class).getField("permissions.resource").getValueType(), String.class);
+    assertNull(FieldMetadata.of(UserCredentials.class).getField("password.length"));
+  }
+  
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void rejectInvalidValue() {
+    FieldMetadata.of(UserCredentials.class).getField("changePassword").convert("maybe");
+  }
+}
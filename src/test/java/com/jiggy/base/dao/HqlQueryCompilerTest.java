@@ -0,0 +1,155 @@
+package com.jiggy.base.dao;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.jiggy.base.exception.ValidationException;
+import com.jiggy.base.searchengine.DefaultSearchCriteria;
+import com.jiggy.base.searchengine.FilterExpression.FilterTerm;
+import com.jiggy.base.searchengine.FilterExpression.Op;
+import com.jiggy.base.searchengine.FilterExpression.QueryMode;
+import com.jiggy.base.searchengine.PageCursor;
+
+public class HqlQueryCompilerTest {
+  
+  @Test
+  public void compileNull() {
+    HqlQueryCompiler compiler = new HqlQueryCompiler("Todo", 4);
+    HqlQueryCompiler.Plan plan = compiler.compile(null, new ArrayList<List<Object>>(), null);
+    
+    assertEquals(plan.getQueryString(), "from Todo e");
+    assertEquals(plan.getCountQueryString(), "select count(*) from Todo e");
+  }
+  
+  @Test
+  public void compileTerms() {
+    HqlQueryCompiler compiler = new HqlQueryCompiler("Todo", 4);
+    DefaultSearchCriteria searchCriteria = new DefaultSearchCriteria();
+    
+    searchCriteria.addFilter(new FilterTerm("name", "a"));
+    searchCriteria.addFilter(new FilterTerm(Op.EXCLUDE, "id", "1,2", QueryMode.HQL));
+    searchCriteria.addFilter(new FilterTerm("user.userName", null));
+    searchCriteria.setSortBy("name desc");
+    
+    HqlQueryCompiler.Plan plan = compiler.compile(searchCriteria, this.values("a", Arrays.<Object> asList(1L, 2L), null), null);
+    
+    assertEquals(plan.getQueryString(), "from Todo e where e.name = :p0 and e.id not in (:p1) and e.user.userName is null order by e.name desc");
+  }
+  
+  @Test
+  public void compileGroupsAndRanges() {
+    HqlQueryCompiler compiler = new HqlQueryCompiler("Todo", 4);
+    DefaultSearchCriteria searchCriteria = new DefaultSearchCriteria();
+    
+    searchCriteria.addFilter("createDate between 1,5 & (name prefix wa | !(id>3))");
+    
+    HqlQueryCompiler.Plan plan = compiler.compile(searchCriteria, this.values(Arrays.<Object> asList(1L, 5L), "wa%", 3L), null);
+    
+    assertEquals(plan.getQueryString(), "from Todo e where e.createDate between :p0 and :p0_to and (e.name like :p1 escape '!' or not (e.id > :p2))");
+    assertTrue(plan.isRange(0));
+  }
+  
+  @Test
+  public void compileKeyset() {
+    HqlQueryCompiler compiler = new HqlQueryCompiler("Todo", 4);
+    DefaultSearchCriteria searchCriteria = new DefaultSearchCriteria();
+    
+    searchCriteria.setSortBy("name");
+    searchCriteria.setLimit(10);
+    searchCriteria.setAfter("token");
+    
+    assertEquals(compiler.compile(searchCriteria, new ArrayList<List<Object>>(), new PageCursor("wake up", 1L)).getQueryString(),
+                 "from Todo e where (e.name > :afterValue or (e.name = :afterValue and e.id > :afterId)) order by e.name asc, e.id asc");
+  }
+  
+  @Test
+  public void compileKeysetPastANullSortValue() {
+    HqlQueryCompiler compiler = new HqlQueryCompiler("Todo", 4);
+    DefaultSearchCriteria searchCriteria = new DefaultSearchCriteria();
+    PageCursor pageCursor = new PageCursor(null, 1L);
+    
+    searchCriteria.setSortBy("name");
+    searchCriteria.setLimit(10);
+    searchCriteria.setAfter(pageCursor.encode());
+    
+    assertEquals(compiler.compile(searchCriteria, new ArrayList<List<Object>>(), pageCursor).getQueryString(),
+                 "from Todo e where ((e.name is null and e.id > :afterId) or e.name is not null) order by e.name asc, e.id asc");
+    
+    searchCriteria.setSortBy("-name");
+    
+    assertEquals(compiler.compile(searchCriteria, new ArrayList<List<Object>>(), pageCursor).getQueryString(),
+                 "from Todo e where (e.name is null and e.id < :afterId) order by e.name desc, e.id desc");
+  }
+  
+  @Test
+  public void compileKeysetDescendingKeepsTheNulls() {
+    HqlQueryCompiler compiler = new HqlQueryCompiler("Todo", 4);
+    DefaultSearchCriteria searchCriteria = new DefaultSearchCriteria();
+    
+    searchCriteria.setSortBy("-name");
+    searchCriteria.setLimit(10);
+    searchCriteria.setAfter("token");
+    
+    assertEquals(compiler.compile(searchCriteria, new ArrayList<List<Object>>(), new PageCursor("wake up", 1L)).getQueryString(),
+                 "from Todo e where (e.name < :afterValue or (e.name = :afterValue and e.id < :afterId) or e.name is null)"
+                     + " order by e.name desc, e.id desc");
+  }
+  
+  @Test
+  public void reusePlanOfSameShape() {
+    HqlQueryCompiler compiler = new HqlQueryCompiler("Todo", 4);
+    DefaultSearchCriteria first = new DefaultSearchCriteria();
+    DefaultSearchCriteria second = new DefaultSearchCriteria();
+    
+    first.addFilter("name", "a");
+    second.addFilter("name", "b");
+    
+    HqlQueryCompiler.Plan plan = compiler.compile(first, this.values("a"), null);
+    
+    assertSame(compiler.compile(second, this.values("b"), null), plan);
+    assertEquals(compiler.getHits(), 1);
+    assertEquals(compiler.getMisses(), 1);
+  }
+  
+  @Test
+  public void evictEldestPlan() {
+    HqlQueryCompiler compiler = new HqlQueryCompiler("Todo", 2);
+    
+    for (String sortBy : new String[] { "name", "id", "createDate" }) {
+      DefaultSearchCriteria searchCriteria = new DefaultSearchCriteria();
+      searchCriteria.setSortBy(sortBy);
+      compiler.compile(searchCriteria, new ArrayList<List<Object>>(), null);
+    }
+    
+    assertEquals(compiler.size(), 2);
+  }
+  
+  @Test(expectedExceptions = ValidationException.class)
+  public void rejectInvalidProperty() {
+    HqlQueryCompiler compiler = new HqlQueryCompiler("Todo", 4);
+    DefaultSearchCriteria searchCriteria = new DefaultSearchCriteria();
+    
+    searchCriteria.setSortBy("name; delete from User");
+    compiler.compile(searchCriteria, new ArrayList<List<Object>>(), null);
+  }
+  
+  private List<List<Object>> values(final Object... termValues) {
+    List<List<Object>> values = new ArrayList<List<Object>>();
+    
+    for (Object termValue : termValues) {
+      if (termValue instanceof List)
+        values.add(new ArrayList<Object>((List<?>) termValue));
+      else
+        values.add(new ArrayList<Object>(Arrays.asList(termValue)));
+    }
+    
+    return values;
+  }
+}
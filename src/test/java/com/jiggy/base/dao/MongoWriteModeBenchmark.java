@@ -0,0 +1,83 @@
+package com.jiggy.base.dao;
+
+import static org.mockito.Mockito.mock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.testng.annotations.Test;
+
+import com.jiggy.base.dao.AbstractMongoDBDAO.WriteMode;
+import com.jiggy.todo.Todo;
+import com.jiggy.todo.TodoDAOImpl;
+
+/**
+ * Compares the write throughput of the Mongo write modes against a stand-in for a local mongod that charges a fixed latency for every round trip.
+ * The rates are logged, not asserted, as they depend on the machine; the behavior of the write modes is tested by AbstractMongoDBDAOTest. Not
+ * picked up by the default surefire run; run it with <tt>mvn test -Dtest=MongoWriteModeBenchmark</tt>.
+ * 
+ * @author jmalkan
+ */
+public class MongoWriteModeBenchmark {
+  private static final long ROUND_TRIP_NANOS = TimeUnit.MICROSECONDS.toNanos(500);
+  private static final int WARMUP_WRITES = 200;
+  private static final int WRITES = 2000;
+  
+  private final Logger logger = LoggerFactory.getLogger(MongoWriteModeBenchmark.class);
+  
+  @Test(groups = "benchmark")
+  public void writeThroughput() {
+    double readBack = this.measure(WriteMode.READ_BACK);
+    double returnWritten = this.measure(WriteMode.RETURN_WRITTEN);
+    
+    this.logger.info(String.format("Mongo writes/s with %.1fms round trips: READ_BACK %.0f, RETURN_WRITTEN %.0f (x%.2f)", ROUND_TRIP_NANOS / 1000000d,
+                                   readBack, returnWritten, returnWritten / readBack));
+  }
+  
+  /**
+   * @return The insert and update operations per second of a todo DAO in the given write mode.
+   */
+  private double measure(final WriteMode writeMode) {
+    TodoDAOImpl todoDAO = new TodoDAOImpl(this.standIn());
+    todoDAO.setWriteMode(writeMode);
+    
+    this.write(todoDAO, WARMUP_WRITES);
+    
+    long start = System.nanoTime();
+    this.write(todoDAO, WRITES);
+    
+    return WRITES * 2 / ((System.nanoTime() - start) / 1000000000d);
+  }
+  
+  private void write(final TodoDAOImpl todoDAO, final int count) {
+    for (int i = 0; i < count; i++) {
+      Todo todo = new Todo(Long.valueOf(i), "todo " + i);
+      
+      todoDAO.insert(todo);
+      todo.setName("done " + i);
+      todoDAO.update(todo);
+    }
+  }
+  
+  /**
+   * @return A MongoOperations that parks for one round trip on every call and finds any id it is asked for.
+   */
+  private MongoOperations standIn() {
+    return mock(MongoOperations.class, new Answer<Object>() {
+      @Override
+      public Object answer(final InvocationOnMock invocation) throws Throwable {
+        LockSupport.parkNanos(ROUND_TRIP_NANOS);
+        
+        if ("findById".equals(invocation.getMethod().getName()))
+          return new Todo((Long) invocation.getArguments()[0], "found");
+        
+        return null;
+      }
+    });
+  }
+}
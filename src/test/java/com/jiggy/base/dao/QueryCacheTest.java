@@ -0,0 +1,69 @@
+package com.jiggy.base.dao;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.jiggy.base.searchengine.DefaultSearchCriteria;
+import com.jiggy.todo.Todo;
+
+public class QueryCacheTest {
+  
+  @Test
+  public void keyIgnoresTermOrderAndOutputs() {
+    DefaultSearchCriteria first = new DefaultSearchCriteria();
+    DefaultSearchCriteria second = new DefaultSearchCriteria();
+    
+    first.addFilter("name", "a");
+    first.addFilter("createdBy", "1");
+    first.setRowCount(10);
+    second.addFilter("createdBy", "1");
+    second.addFilter("name", "a");
+    
+    assertEquals(QueryCache.keyOf(first, null, false), QueryCache.keyOf(second, null, false));
+  }
+  
+  @Test
+  public void keySeparatesSecurityFilters() {
+    DefaultSearchCriteria searchCriteria = new DefaultSearchCriteria();
+    
+    assertFalse(QueryCache.keyOf(searchCriteria, "createdBy=1", false).equals(QueryCache.keyOf(searchCriteria, "createdBy=2", false)));
+    assertFalse(QueryCache.keyOf(searchCriteria, null, false).equals(QueryCache.keyOf(searchCriteria, null, true)));
+  }
+  
+  @Test
+  public void restoreRowCount() {
+    QueryCache<Todo> cache = new QueryCache<Todo>(10, 60000);
+    DefaultSearchCriteria searchCriteria = new DefaultSearchCriteria();
+    List<Object> key = QueryCache.keyOf(searchCriteria, null, false);
+    
+    searchCriteria.setRowCount(4);
+    cache.put(key, searchCriteria, Arrays.asList(new Todo(Long.valueOf(1), "todo")), cache.begin());
+    
+    DefaultSearchCriteria again = new DefaultSearchCriteria();
+    
+    assertEquals(cache.get(key, again).size(), 1);
+    assertEquals(again.getRowCount(), 4);
+  }
+  
+  @Test
+  public void invalidateOnWrite() {
+    QueryCache<Todo> cache = new QueryCache<Todo>(10, 60000);
+    List<Object> key = QueryCache.keyOf(null, null, true);
+    long readGeneration = cache.begin();
+    
+    cache.putCount(key, 4, readGeneration);
+    assertEquals(cache.getCount(key), Long.valueOf(4));
+    
+    cache.invalidate();
+    assertNull(cache.getCount(key));
+    
+    cache.putCount(key, 5, readGeneration);
+    assertNull(cache.getCount(key));
+  }
+}
@@ -0,0 +1,83 @@
+package com.jiggy.base.dao;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.jiggy.base.dao.QueryProfiler.SlowQuery;
+import com.jiggy.base.searchengine.DefaultSearchCriteria;
+import com.jiggy.todo.Todo;
+
+public class QueryProfilerTest {
+  private final AbstractDBDAO<Todo> dao = new AbstractDBDAO<Todo>() {
+  };
+  
+  @Test
+  public void shapeLeavesOutValues() {
+    DefaultSearchCriteria first = new DefaultSearchCriteria();
+    DefaultSearchCriteria second = new DefaultSearchCriteria();
+    
+    first.addFilter("name", "xyz");
+    first.setSortBy("name");
+    second.addFilter("name", "uvw");
+    second.setSortBy("name");
+    
+    assertEquals(QueryProfiler.shapeOf(first), QueryProfiler.shapeOf(second));
+    assertFalse(QueryProfiler.shapeOf(first).contains("xyz"));
+    assertEquals(QueryProfiler.shapeOf(null), "");
+  }
+  
+  @Test
+  public void keepLatestSlowQueries() {
+    QueryProfiler profiler = new QueryProfiler();
+    profiler.setSlowThreshold(0);
+    profiler.setCapacity(2);
+    
+    for (int i = 1; i <= 3; i++) {
+      QueryProfiler.Profile profile = profiler.start(this.dao, QueryProfiler.FIND, null);
+      profiler.setQuery("query" + i);
+      profiler.end(profile, i);
+    }
+    
+    List<SlowQuery> slowQueries = profiler.getSlowQueries();
+    
+    assertEquals(slowQueries.size(), 2);
+    assertEquals(slowQueries.get(0).getQuery(), "query3");
+    assertEquals(slowQueries.get(0).getRows(), 3);
+    assertEquals(slowQueries.get(0).getEntity(), "Todo");
+    assertEquals(slowQueries.get(1).getQuery(), "query2");
+    assertNull(profiler.getSlowQuery(1));
+    assertEquals(profiler.getSlowQuery(3).getId(), 3);
+  }
+  
+  @Test
+  public void nestedQueriesKeepTheirOwnQuery() {
+    QueryProfiler profiler = new QueryProfiler();
+    profiler.setSlowThreshold(0);
+    
+    QueryProfiler.Profile find = profiler.start(this.dao, QueryProfiler.FIND, null);
+    QueryProfiler.Profile count = profiler.start(this.dao, QueryProfiler.COUNT, null);
+    profiler.setQuery("count");
+    profiler.end(count, 10);
+    profiler.setQuery("find");
+    profiler.end(find, 5);
+    
+    assertEquals(profiler.getSlowQuery(1).getQuery(), "count");
+    assertEquals(profiler.getSlowQuery(2).getQuery(), "find");
+  }
+  
+  @Test
+  public void skipFastQueries() {
+    QueryProfiler profiler = new QueryProfiler();
+    profiler.setSlowThreshold(60000);
+    
+    profiler.end(profiler.start(this.dao, QueryProfiler.COUNT, null), 1);
+    
+    assertTrue(profiler.getSlowQueries().isEmpty());
+  }
+}
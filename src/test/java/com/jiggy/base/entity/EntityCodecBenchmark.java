@@ -0,0 +1,170 @@
+package com.jiggy.base.entity;
+
+import java.io.OutputStream;
+import java.util.Collections;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import com.jiggy.security.Permission;
+import com.jiggy.security.Role;
+import com.jiggy.security.User;
+
+/**
+ * Compares the JSON of a user with its role and permission written by the EntityCodec against the Jackson bean mapping and a hand-written Jettison
+ * transformer, and its toString against the reflective one it replaces. The rates are logged, not asserted, as they depend on the machine. Not
+ * picked up by the default surefire run; run it with <tt>mvn test -Dtest=EntityCodecBenchmark</tt>.
+ * 
+ * @author jmalkan
+ */
+public class EntityCodecBenchmark {
+  private static final int WARMUP_ROUNDS = 20000;
+  private static final int ROUNDS = 200000;
+  private static final OutputStream DISCARD = new OutputStream() {
+    @Override
+    public void write(final int b) {
+      return;
+    }
+    
+    @Override
+    public void write(final byte[] b, final int off, final int len) {
+      return;
+    }
+  };
+  
+  private final Logger logger = LoggerFactory.getLogger(EntityCodecBenchmark.class);
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final JsonFactory jsonFactory = this.objectMapper.getJsonFactory();
+  private final User user = this.newUser();
+  
+  @Test(groups = "benchmark")
+  public void writeThroughput() throws Exception {
+    double codec = this.measure(new Round() {
+      @Override
+      public void run() throws Exception {
+        JsonGenerator generator = EntityCodecBenchmark.this.jsonFactory.createJsonGenerator(DISCARD, JsonEncoding.UTF8);
+        EntityCodec.writeEntity(EntityCodecBenchmark.this.user, generator);
+        generator.close();
+      }
+    });
+    double jackson = this.measure(new Round() {
+      @Override
+      public void run() throws Exception {
+        EntityCodecBenchmark.this.objectMapper.writeValue(DISCARD, EntityCodecBenchmark.this.user);
+      }
+    });
+    double jettison = this.measure(new Round() {
+      @Override
+      public void run() throws Exception {
+        DISCARD.write(EntityCodecBenchmark.this.toJSONObject(EntityCodecBenchmark.this.user).toString().getBytes("UTF-8"));
+      }
+    });
+    
+    this.logger.info("User writes/s: EntityCodec {}, Jackson {}, Jettison {}",
+                     new Object[] { Long.valueOf(Math.round(codec)), Long.valueOf(Math.round(jackson)), Long.valueOf(Math.round(jettison)) });
+  }
+  
+  @Test(groups = "benchmark")
+  public void toStringThroughput() throws Exception {
+    double codec = this.measure(new Round() {
+      @Override
+      public void run() {
+        EntityCodec.describe(EntityCodecBenchmark.this.user);
+      }
+    });
+    double reflection = this.measure(new Round() {
+      @Override
+      public void run() {
+        ToStringBuilder.reflectionToString(EntityCodecBenchmark.this.user);
+      }
+    });
+    
+    this.logger.info("User toString/s: EntityCodec {}, reflectionToString {} (x{})", new Object[] { Long.valueOf(Math.round(codec)),
+        Long.valueOf(Math.round(reflection)), String.format("%.2f", Double.valueOf(codec / reflection)) });
+  }
+  
+  /**
+   * @return The rounds per second.
+   */
+  private double measure(final Round round) throws Exception {
+    for (int i = 0; i < WARMUP_ROUNDS; i++) {
+      round.run();
+    }
+    
+    long start = System.nanoTime();
+    
+    for (int i = 0; i < ROUNDS; i++) {
+      round.run();
+    }
+    
+    return ROUNDS / ((System.nanoTime() - start) / 1000000000d);
+  }
+  
+  /**
+   * The JSON a hand-written Transformer builds for the user.
+   */
+  private JSONObject toJSONObject(final User user) throws JSONException {
+    JSONArray roles = new JSONArray();
+    
+    for (Role role : user.getRoles()) {
+      JSONArray permissions = new JSONArray();
+      
+      for (Permission permission : role.getPermissions()) {
+        permissions.put(this.putAudit(new JSONObject(), permission).put("resource", permission.getResource())
+                                                                   .put("operation", permission.getOperation())
+                                                                   .put("filter", permission.getFilter())
+                                                                   .put("permissionValue", permission.getPermissionValue()));
+      }
+      
+      roles.put(this.putAudit(new JSONObject(), role).put("name", role.getName()).put("description", role.getDescription())
+                                                     .put("permissions", permissions));
+    }
+    
+    return this.putAudit(new JSONObject(), user).put("firstName", user.getFirstName()).put("lastName", user.getLastName())
+                                                .put("userName", user.getUserName()).put("email", user.getEmail()).put("roles", roles);
+  }
+  
+  private JSONObject putAudit(final JSONObject jsonObject, final Entity entity) throws JSONException {
+    return jsonObject.put("id", entity.getId()).put("version", entity.getVersion()).put("createdBy", entity.getCreatedBy())
+                     .put("createDate", entity.getCreateDate()).put("lastModifiedBy", entity.getLastModifiedBy())
+                     .put("lastModifiedDate", entity.getLastModifiedDate());
+  }
+  
+  private User newUser() {
+    Permission permission = new Permission();
+    permission.setId(Long.valueOf(1));
+    permission.setResource("todo");
+    permission.setOperation("GET");
+    
+    Role role = new Role();
+    role.setId(Long.valueOf(2));
+    role.setName("admin");
+    role.setDescription("Administrators");
+    role.setPermissions(Collections.singleton(permission));
+    
+    User user = new User();
+    user.setId(Long.valueOf(7));
+    user.setVersion(Long.valueOf(1));
+    user.setFirstName("John");
+    user.setLastName("Doe");
+    user.setUserName("jdoe");
+    user.setEmail("jdoe@example.com");
+    user.setCreateDate(Long.valueOf(System.currentTimeMillis()));
+    user.setRoles(Collections.singleton(role));
+    
+    return user;
+  }
+  
+  private interface Round {
+    void run() throws Exception;
+  }
+}
@@ -0,0 +1,93 @@
+package com.jiggy.base.entity;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.testng.annotations.Test;
+
+import com.jiggy.security.Permission;
+import com.jiggy.security.Role;
+import com.jiggy.security.User;
+import com.jiggy.todo.Todo;
+
+public class EntityCodecTest {
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  
+  @Test
+  public void writeTheJsonOfTheBeanMapping() throws Exception {
+    User user = this.newUser();
+    
+    assertEquals(this.objectMapper.readTree(EntityCodec.toJSON(user)), this.objectMapper.readTree(this.objectMapper.writeValueAsString(user)));
+  }
+  
+  @Test
+  public void readWhatIsWritten() throws Exception {
+    EntityCodec<User> codec = EntityCodec.forClass(User.class);
+    JsonParser parser = this.objectMapper.getJsonFactory().createJsonParser(codec.writeValueAsString(this.newUser()));
+    User user = codec.read(parser);
+    Role role = user.getRoles().iterator().next();
+    
+    assertEquals(user.getId(), Long.valueOf(7));
+    assertEquals(user.getUserName(), "jdoe");
+    assertNull(user.getEmail());
+    assertEquals(role.getName(), "admin");
+    assertEquals(role.getPermissions().iterator().next().getOperation(), "GET");
+  }
+  
+  @Test
+  public void skipUnknownAndReadOnlyProperties() throws Exception {
+    String json = "{\"id\":\"3\",\"permissionValue\":\"todo:GET\",\"extra\":{\"a\":[1,2]},\"resource\":\"todo\"}";
+    Permission permission = EntityCodec.forClass(Permission.class).read(this.objectMapper.getJsonFactory().createJsonParser(json));
+    
+    assertEquals(permission.getId(), Long.valueOf(3));
+    assertEquals(permission.getResource(), "todo");
+  }
+  
+  @Test
+  public void setPropertiesFromText() {
+    EntityCodec<Todo> codec = EntityCodec.forClass(Todo.class);
+    Todo todo = codec.newInstance();
+    
+    assertTrue(codec.setProperty(todo, "name", "wake up"));
+    assertTrue(codec.setProperty(todo, "version", "2"));
+    assertFalse(codec.setProperty(todo, "version", "two"));
+    assertFalse(codec.setProperty(todo, "unknown", "x"));
+    assertEquals(todo.getName(), "wake up");
+    assertEquals(todo.getVersion(), Long.valueOf(2));
+  }
+  
+  @Test
+  public void toStringLeavesOutCollections() {
+    String string = this.newUser().toString();
+    
+    assertTrue(string.startsWith("User[id=7,"));
+    assertTrue(string.contains("userName=jdoe"));
+    assertFalse(string.contains("roles"));
+  }
+  
+  private User newUser() {
+    Permission permission = new Permission();
+    permission.setId(Long.valueOf(1));
+    permission.setResource("todo");
+    permission.setOperation("GET");
+    
+    Role role = new Role();
+    role.setId(Long.valueOf(2));
+    role.setName("admin");
+    role.setPermissions(Collections.singleton(permission));
+    
+    User user = new User();
+    user.setId(Long.valueOf(7));
+    user.setFirstName("John");
+    user.setUserName("jdoe");
+    user.setRoles(Collections.singleton(role));
+    
+    return user;
+  }
+}
@@ -0,0 +1,103 @@
+package com.jiggy.base.filter;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.shiro.mgt.DefaultSecurityManager;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.subject.support.DelegatingSubject;
+import org.apache.shiro.util.ThreadContext;
+import org.slf4j.MDC;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.jiggy.base.monitor.Tracer;
+import com.jiggy.base.monitor.Tracer.Span;
+
+@Test(singleThreaded = true)
+public class ContextCallableTest {
+  private static final String REQUEST_KEY = "requestId";
+  private static final String WORKER_KEY = "worker";
+  
+  private ExecutorService executor;
+  
+  /**
+   * Starts the worker thread before the request thread has any context, and gives it a logging context of its own.
+   */
+  @BeforeMethod
+  public void beforeMethod() throws Exception {
+    this.executor = Executors.newSingleThreadExecutor();
+    this.executor.submit(new Runnable() {
+      @Override
+      public void run() {
+        MDC.clear();
+        MDC.put(WORKER_KEY, "idle");
+      }
+    }).get();
+    
+    MDC.put(REQUEST_KEY, "r1");
+  }
+  
+  @AfterMethod
+  public void afterMethod() {
+    this.executor.shutdownNow();
+    MDC.clear();
+    ThreadContext.unbindSubject();
+  }
+  
+  @Test
+  public void contextOfTheRequestIsBoundAroundTheCall() throws Exception {
+    Subject subject = new DelegatingSubject(new DefaultSecurityManager());
+    Tracer tracer = Tracer.getInstance();
+    Span span = tracer.startTrace("t1", "GET /todo");
+    
+    ThreadContext.bind(subject);
+    Callable<List<Object>> callable = new ContextCallable<List<Object>>(new ContextReader(), "work");
+    tracer.end(span, false);
+    
+    assertEquals(this.executor.submit(callable).get(), Arrays.<Object> asList(subject, "r1", null, "t1"));
+    this.assertWorkerContextRestored();
+  }
+  
+  @Test
+  public void workerContextIsRestoredAfterAFailure() throws Exception {
+    Callable<Void> callable = new ContextCallable<Void>(new Callable<Void>() {
+      @Override
+      public Void call() {
+        throw new IllegalStateException("failed");
+      }
+    }, "work");
+    
+    try {
+      this.executor.submit(callable).get();
+      fail("The failure of the call must reach the caller.");
+    } catch (ExecutionException ee) {
+      assertTrue(ee.getCause() instanceof IllegalStateException);
+    }
+    
+    this.assertWorkerContextRestored();
+  }
+  
+  private void assertWorkerContextRestored() throws Exception {
+    assertEquals(this.executor.submit(new ContextReader()).get(), Arrays.<Object> asList(null, null, "idle", null));
+  }
+  
+  /**
+   * Reads the subject, the logging context and the trace bound to the thread it is called on.
+   */
+  private static final class ContextReader implements Callable<List<Object>> {
+    @Override
+    public List<Object> call() {
+      return Arrays.<Object> asList(ThreadContext.getSubject(), MDC.get(REQUEST_KEY), MDC.get(WORKER_KEY), Tracer.getInstance().getCurrentTraceId());
+    }
+  }
+}
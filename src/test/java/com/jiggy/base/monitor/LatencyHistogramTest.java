@@ -0,0 +1,68 @@
+package com.jiggy.base.monitor;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import com.jiggy.base.monitor.LatencyHistogram.Snapshot;
+
+public class LatencyHistogramTest {
+  
+  @Test
+  public void bucketsCoverEveryValue() {
+    for (long micros = 0; micros < 100000; micros++) {
+      int index = LatencyHistogram.index(micros);
+      
+      assertTrue(LatencyHistogram.highestValue(index) >= micros);
+      assertTrue(index == 0 || LatencyHistogram.highestValue(index - 1) < micros);
+    }
+  }
+  
+  @Test
+  public void percentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+    }
+    
+    Snapshot snapshot = histogram.getSnapshot();
+    
+    assertEquals(snapshot.getCount(), 1000);
+    assertEquals(histogram.getCount(), 1000);
+    assertEquals(snapshot.getMax(), 1000000);
+    assertEquals(snapshot.getMean(), 500500.0, 0.001);
+    assertEquals(snapshot.getPercentile(50), 500000, 500000 / 16);
+    assertEquals(snapshot.getPercentile(99), 990000, 990000 / 16);
+    assertEquals(snapshot.getPercentile(100), 1000000);
+  }
+  
+  @Test
+  public void mergeThreads() throws InterruptedException {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    Thread[] threads = new Thread[8];
+    
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < 10000; j++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(j % 100));
+          }
+        }
+      };
+      threads[i].start();
+    }
+    
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    
+    assertEquals(histogram.getSnapshot().getCount(), 80000);
+    assertEquals(histogram.getSnapshot().getMax(), 99);
+    assertEquals(new LatencyHistogram().getSnapshot().getPercentile(99), 0);
+  }
+}
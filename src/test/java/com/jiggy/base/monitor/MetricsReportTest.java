@@ -0,0 +1,49 @@
+package com.jiggy.base.monitor;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+public class MetricsReportTest {
+  
+  @Test
+  public void writePrometheus() throws IOException {
+    MetricsReport report = new MetricsReport();
+    LatencyHistogram latencies = new LatencyHistogram();
+    StringBuilder out = new StringBuilder();
+    
+    latencies.record(TimeUnit.MICROSECONDS.toNanos(10));
+    report.add("calls_total", MetricsReport.COUNTER, "Calls.", Long.valueOf(3), "operation", "find \"all\"");
+    report.add("calls_total", MetricsReport.COUNTER, "Calls.", Long.valueOf(4), "operation", "insert");
+    report.add("size", MetricsReport.GAUGE, "Size.", Integer.valueOf(7));
+    report.addLatencies("latency", "Latency.", latencies, "operation", "find");
+    report.writePrometheus(out);
+    
+    assertEquals(out.toString(), "# HELP calls_total Calls.\n# TYPE calls_total counter\n"
+                                 + "calls_total{operation=\"find \\\"all\\\"\"} 3\ncalls_total{operation=\"insert\"} 4\n"
+                                 + "# HELP size Size.\n# TYPE size gauge\nsize 7\n"
+                                 + "# HELP latency Latency.\n# TYPE latency summary\n"
+                                 + "latency{operation=\"find\",quantile=\"0.5\"} 10\nlatency{operation=\"find\",quantile=\"0.95\"} 10\n"
+                                 + "latency{operation=\"find\",quantile=\"0.99\"} 10\nlatency{operation=\"find\",quantile=\"1\"} 10\n"
+                                 + "latency_sum{operation=\"find\"} 10\nlatency_count{operation=\"find\"} 1\n");
+  }
+  
+  @Test
+  @SuppressWarnings("unchecked")
+  public void toMap() {
+    MetricsReport report = new MetricsReport();
+    
+    report.add("calls_total", MetricsReport.COUNTER, "Calls.", Long.valueOf(3), "operation", "find");
+    
+    Map<String, Object> map = report.toMap();
+    Map<String, Object> sample = ((List<Map<String, Object>>) map.get("calls_total")).get(0);
+    
+    assertEquals(sample.get("operation"), "find");
+    assertEquals(sample.get("value"), Long.valueOf(3));
+  }
+}
@@ -0,0 +1,142 @@
+package com.jiggy.base.monitor;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.jiggy.base.monitor.Tracer.Span;
+import com.jiggy.base.monitor.Tracer.Trace;
+
+public class TracerTest {
+  
+  @Test
+  public void spansNestUnderTheirParent() {
+    Tracer tracer = this.newTracer(0, 0);
+    Span root = tracer.startTrace("trace1", "GET /service/todo/find");
+    Span service = tracer.startSpan("service.TodoServiceImpl.find");
+    Span query = tracer.startSpan("query.Todo.find");
+    
+    tracer.end(query, false);
+    tracer.end(service, false);
+    tracer.end(root, false);
+    
+    assertFalse(tracer.isTracing());
+    assertNull(tracer.startSpan("untraced"));
+    
+    List<Span> spans = tracer.getTrace("trace1").getSpans();
+    
+    assertEquals(spans.size(), 3);
+    assertEquals(spans.get(0).getParentIndex(), -1);
+    assertEquals(spans.get(1).getParentIndex(), 0);
+    assertEquals(spans.get(2).getParentIndex(), 1);
+    assertEquals(spans.get(2).getName(), "query.Todo.find");
+    assertTrue(spans.get(2).getDuration() >= 0);
+  }
+  
+  @Test
+  public void keepFailedAndSlowTraces() {
+    Tracer tracer = this.newTracer(60000, 0);
+    
+    tracer.end(tracer.startTrace("fast", "GET /fast"), false);
+    
+    Span root = tracer.startTrace("failed", "GET /failed");
+    tracer.end(tracer.startSpan("service.TodoServiceImpl.find"), true);
+    tracer.end(root, false);
+    
+    tracer.setSlowThreshold(0);
+    tracer.end(tracer.startTrace("slow", "GET /slow"), false);
+    
+    List<Trace> traces = tracer.getTraces();
+    
+    assertEquals(traces.size(), 2);
+    assertEquals(traces.get(0).getId(), "slow");
+    assertEquals(traces.get(1).getId(), "failed");
+    assertTrue(traces.get(1).isError());
+    assertNull(tracer.getTrace("fast"));
+  }
+  
+  @Test
+  public void boundSpansPerTrace() {
+    Tracer tracer = this.newTracer(0, 0);
+    Span root = tracer.startTrace("trace1", "GET /service/todo");
+    
+    for (int i = 0; i < Tracer.MAX_SPANS + 10; i++) {
+      tracer.end(tracer.startSpan("query.Todo.find"), false);
+    }
+    
+    tracer.end(root, false);
+    
+    Trace trace = tracer.getTrace("trace1");
+    
+    assertEquals(trace.getSpans().size(), Tracer.MAX_SPANS);
+    assertEquals(trace.getDroppedSpans(), 11);
+  }
+  
+  @Test
+  public void spansOfAnotherThreadNestUnderTheSpanHandedOver() throws InterruptedException {
+    final Tracer tracer = this.newTracer(0, 0);
+    Span root = tracer.startTrace("trace1", "POST /service/batch");
+    final Span parent = tracer.getCurrentSpan();
+    final boolean[] tracing = new boolean[2];
+    
+    Thread worker = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        Span span = tracer.startSpan(parent, "batch GET /todos/1");
+        tracing[0] = tracer.isTracing();
+        tracer.end(span, false);
+        tracing[1] = tracer.isTracing();
+      }
+    });
+    
+    worker.start();
+    worker.join();
+    
+    assertEquals(tracer.getCurrentSpan(), root);
+    tracer.end(root, false);
+    
+    List<Span> spans = tracer.getTrace("trace1").getSpans();
+    
+    assertTrue(tracing[0]);
+    assertFalse(tracing[1]);
+    assertEquals(spans.size(), 2);
+    assertEquals(spans.get(1).getParentIndex(), 0);
+    assertEquals(spans.get(1).getName(), "batch GET /todos/1");
+  }
+  
+  @Test
+  public void detachedTraceEndsOnAnotherThread() throws InterruptedException {
+    final Tracer tracer = this.newTracer(0, 0);
+    final Span root = tracer.startTrace("trace1", "GET /service/todos/1");
+    
+    tracer.detach(root);
+    assertFalse(tracer.isTracing());
+    assertNull(tracer.getTrace("trace1"));
+    
+    Thread container = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        tracer.end(root, false);
+      }
+    });
+    
+    container.start();
+    container.join();
+    
+    assertFalse(tracer.isTracing());
+    assertEquals(tracer.getTrace("trace1").getSpans().size(), 1);
+  }
+  
+  private Tracer newTracer(final long slowThreshold, final int sampleRate) {
+    Tracer tracer = new Tracer();
+    tracer.setSlowThreshold(slowThreshold);
+    tracer.setSampleRate(sampleRate);
+    
+    return tracer;
+  }
+}
@@ -0,0 +1,98 @@
+package com.jiggy.base.searchengine;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import com.jiggy.base.searchengine.FilterExpression.FilterAdvice;
+import com.jiggy.base.searchengine.FilterExpression.FilterTerm;
+import com.jiggy.base.searchengine.FilterExpression.Op;
+import com.jiggy.base.searchengine.FilterExpression.QueryMode;
+
+public class FilterParserTest {
+  private static final FilterAdvice SPLIT_ADVICE = new FilterAdvice() {
+    @Override
+    public List<Object> getParamValues(final FilterTerm term) {
+      return new ArrayList<Object>(term.getOperator().isMultiValued() ? Arrays.asList(term.getValue().split(",")) : Arrays.asList(term.getValue()));
+    }
+  };
+  
+  @Test
+  public void parseEqualityTerms() {
+    List<FilterNode> nodes = new FilterParser(4).parse("name=wake up&id!=1,2", QueryMode.JDO);
+    
+    assertEquals(nodes, Arrays.<FilterNode> asList(new FilterTerm(Op.INCLUDE, "name", "wake up", QueryMode.JDO),
+                                                   new FilterTerm(Op.EXCLUDE, "id", "1,2", QueryMode.JDO)));
+  }
+  
+  @Test
+  public void parseOperators() {
+    List<FilterNode> nodes = new FilterParser(4).parse("a<1 & b<=2 & c>3 & d>=4 & e between (1, 5) & f prefix 'x&y' & g^=z & h in (1,2)", QueryMode.JDO);
+    
+    assertEquals(nodes.toString(), "[a<1, b<=2, c>3, d>=4, e between 1,5, f^='x&y', g^=z, h=1,2]");
+  }
+  
+  @Test
+  public void parsePrecedence() {
+    List<FilterNode> nodes = new FilterParser(4).parse("a=1 | b=2 & !c=3 | not (d=4)", QueryMode.JDO);
+    
+    assertEquals(nodes.size(), 1);
+    assertEquals(nodes.get(0).toString(), "(a=1|(b=2&!(c=3))|!(d=4))");
+  }
+  
+  @Test
+  public void renderJdo() {
+    FilterExpression filter = new FilterExpression();
+    Map<Object, Object> queryParams = new HashMap<Object, Object>();
+    
+    filter.addTerms("name^=wa & (createDate between 1,5 | id!=1,2)");
+    
+    assertEquals(filter.toQueryString(SPLIT_ADVICE, queryParams),
+                 "name.startsWith(:p0) && ((createDate >= :p1 && createDate <= :p1_to) || :p2.contains(id) == false)");
+    assertEquals(queryParams.get("p1_to"), "5");
+    assertEquals(queryParams.get("p2"), Arrays.asList("1", "2"));
+  }
+  
+  @Test
+  public void renderJpa() {
+    FilterExpression filter = new FilterExpression(QueryMode.JPA);
+    Map<Object, Object> queryParams = new HashMap<Object, Object>();
+    
+    filter.addTerms("!(name prefix 50%)");
+    
+    assertEquals(filter.toQueryString(SPLIT_ADVICE, queryParams), "NOT (name LIKE :p0 ESCAPE '!')");
+    assertEquals(queryParams.get("p0"), "50!%%");
+  }
+  
+  @Test
+  public void cacheCompiledFilters() {
+    FilterParser parser = new FilterParser(1);
+    List<FilterNode> nodes = parser.parse("a=1", QueryMode.JDO);
+    
+    assertSame(parser.parse("a=1", QueryMode.JDO), nodes);
+    parser.parse("b=1", QueryMode.JDO);
+    
+    assertEquals(parser.size(), 1);
+    assertEquals(parser.getHits(), 1);
+    assertEquals(parser.getMisses(), 2);
+    assertTrue(parser.parse(" * ", QueryMode.JDO).isEmpty());
+  }
+  
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void rejectUnbalanced() {
+    new FilterParser(4).parse("(a=1 | b=2", QueryMode.JDO);
+  }
+  
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void rejectSingleBound() {
+    new FilterParser(4).parse("a between 1", QueryMode.JDO);
+  }
+}
@@ -0,0 +1,41 @@
+package com.jiggy.base.searchengine;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+
+import java.util.Date;
+
+import org.testng.annotations.Test;
+
+public class PageCursorTest {
+  
+  @Test
+  public void encodeDecodeString() {
+    PageCursor pageCursor = PageCursor.decode(new PageCursor("do|dishes?", Long.valueOf(2)).encode());
+    
+    assertEquals(pageCursor.getValue(), "do|dishes?");
+    assertEquals(pageCursor.getId(), Long.valueOf(2));
+  }
+  
+  @Test
+  public void encodeDecodeTypes() {
+    Date date = new Date();
+    
+    assertEquals(PageCursor.decode(new PageCursor(Long.valueOf(7), Long.valueOf(1)).encode()).getValue(), Long.valueOf(7));
+    assertEquals(PageCursor.decode(new PageCursor(date, Long.valueOf(1)).encode()).getValue(), date);
+    assertNull(PageCursor.decode(new PageCursor(null, Long.valueOf(1)).encode()).getValue());
+  }
+  
+  @Test
+  public void encodeIsUrlSafe() {
+    String token = new PageCursor("??>>??>>", Long.valueOf(123456789)).encode();
+    
+    assertFalse(token.contains("+") || token.contains("/") || token.contains("="));
+  }
+  
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void decodeInvalid() {
+    PageCursor.decode("not-a-cursor");
+  }
+}
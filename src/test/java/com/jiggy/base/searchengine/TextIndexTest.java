@@ -0,0 +1,90 @@
+package com.jiggy.base.searchengine;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+public class TextIndexTest {
+  
+  @Test
+  public void tokenizeWords() {
+    assertEquals(TextIndex.WORD_TOKENIZER.tokenize("Take out-the TRASH, 2x!"), Arrays.asList("take", "out", "the", "trash", "2x"));
+  }
+  
+  @Test
+  public void rankWithBm25() {
+    TextIndex textIndex = new TextIndex("name");
+    
+    textIndex.index(Long.valueOf(1), "wake up");
+    textIndex.index(Long.valueOf(2), "do dishes");
+    textIndex.index(Long.valueOf(3), "take out trash");
+    textIndex.index(Long.valueOf(4), "take out the dishes and the trash before the dishes pile up");
+    
+    assertEquals(textIndex.search("trash dishes", 10), Arrays.asList(Long.valueOf(4), Long.valueOf(2), Long.valueOf(3)));
+    assertEquals(textIndex.search("trash dishes", 1), Arrays.asList(Long.valueOf(4)));
+    assertEquals(textIndex.search("up", 10), Arrays.asList(Long.valueOf(1), Long.valueOf(4)));
+    assertTrue(textIndex.search("laundry", 10).isEmpty());
+  }
+  
+  @Test
+  public void searchAndCompletePrefixes() {
+    TextIndex textIndex = new TextIndex("name");
+    
+    textIndex.index(Long.valueOf(1), "wash dishes");
+    textIndex.index(Long.valueOf(2), "water plants");
+    textIndex.index(Long.valueOf(3), "wash car");
+    
+    assertEquals(textIndex.search("wa*", 10), Arrays.asList(Long.valueOf(2), Long.valueOf(1), Long.valueOf(3)));
+    assertEquals(textIndex.search("plant*", 10), Arrays.asList(Long.valueOf(2)));
+    assertEquals(textIndex.complete("go wa", 5), Arrays.asList("wash", "water"));
+    assertEquals(textIndex.complete("go wa", 1), Arrays.asList("wash"));
+  }
+  
+  @Test
+  public void updateAndRemove() {
+    TextIndex textIndex = new TextIndex("name");
+    
+    textIndex.index(Long.valueOf(1), "wake up");
+    textIndex.index(Long.valueOf(1), "go to bed");
+    textIndex.index(Long.valueOf(2), "wake up early");
+    textIndex.remove(Long.valueOf(2));
+    textIndex.remove(Long.valueOf(3));
+    
+    assertTrue(textIndex.search("wake", 10).isEmpty());
+    assertEquals(textIndex.search("bed", 10), Arrays.asList(Long.valueOf(1)));
+    assertEquals(textIndex.size(), 1);
+    assertEquals(textIndex.getTermCount(), 3);
+  }
+  
+  @Test
+  public void compactDeletedDocuments() {
+    TextIndex textIndex = new TextIndex("name");
+    
+    for (int i = 0; i < 5000; i++) {
+      textIndex.index(Long.valueOf(i % 10), "todo " + i);
+    }
+    
+    assertEquals(textIndex.size(), 10);
+    assertEquals(textIndex.search("todo", 100).size(), 10);
+    assertEquals(textIndex.search("4999", 10), Arrays.asList(Long.valueOf(9)));
+    assertEquals(textIndex.getTermCount(), 11);
+  }
+  
+  @Test
+  public void rebuild() {
+    TextIndex textIndex = new TextIndex("name");
+    Map<Long, String> texts = new HashMap<Long, String>();
+    
+    textIndex.index(Long.valueOf(1), "wake up");
+    texts.put(Long.valueOf(2), "do dishes");
+    textIndex.rebuild(texts);
+    
+    assertTrue(textIndex.search("wake", 10).isEmpty());
+    assertEquals(textIndex.search("dishes", 10), Arrays.asList(Long.valueOf(2)));
+  }
+}
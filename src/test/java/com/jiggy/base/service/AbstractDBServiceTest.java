@@ -0,0 +1,77 @@
+package com.jiggy.base.service;
+
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.mockito.InOrder;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.jiggy.base.entity.Entity;
+import com.jiggy.todo.Todo;
+import com.jiggy.todo.TodoDAO;
+import com.jiggy.todo.TodoServiceImpl;
+
+@Test(singleThreaded = true)
+public class AbstractDBServiceTest {
+  private final List<Todo> todos = Arrays.asList(new Todo(Long.valueOf(1), "first"), new Todo(Long.valueOf(2), "second"));
+  private TodoDAO todoDAO;
+  private AbstractDBService<Todo> todoService;
+  
+  @BeforeMethod
+  public void beforeMethod() {
+    this.todoDAO = mock(TodoDAO.class);
+    this.todoService = spy(new TodoServiceImpl(this.todoDAO));
+  }
+  
+  @Test
+  public void createInsertsTheBatch() {
+    when(this.todoDAO.insertAll(this.todos)).thenReturn(this.todos);
+    
+    List<? extends Entity> newEntities = this.todoService.create(this.todos);
+    
+    InOrder inOrder = inOrder(this.todoService, this.todoDAO);
+    
+    inOrder.verify(this.todoService).validateBeforeCreate(this.todos);
+    inOrder.verify(this.todoService).beforeCreate(this.todos);
+    inOrder.verify(this.todoDAO).insertAll(this.todos);
+    inOrder.verify(this.todoService).afterCreate(this.todos, this.todos);
+    inOrder.verify(this.todoService).validateAfterCreate(this.todos, this.todos);
+    assertEquals(newEntities, this.todos);
+  }
+  
+  @Test
+  public void modifyUpdatesTheBatch() {
+    when(this.todoDAO.updateAll(this.todos)).thenReturn(this.todos);
+    
+    List<? extends Entity> modifiedEntities = this.todoService.modify(this.todos);
+    
+    InOrder inOrder = inOrder(this.todoService, this.todoDAO);
+    
+    inOrder.verify(this.todoService).validateBeforeModify(this.todos);
+    inOrder.verify(this.todoService).beforeModify(this.todos);
+    inOrder.verify(this.todoDAO).updateAll(this.todos);
+    inOrder.verify(this.todoService).afterModify(this.todos, this.todos);
+    inOrder.verify(this.todoService).validateAfterModify(this.todos, this.todos);
+    assertEquals(modifiedEntities, this.todos);
+  }
+  
+  @Test
+  public void removeDeletesTheBatch() {
+    this.todoService.remove(this.todos);
+    
+    InOrder inOrder = inOrder(this.todoService, this.todoDAO);
+    
+    inOrder.verify(this.todoService).validateBeforeRemove(this.todos);
+    inOrder.verify(this.todoService).beforeRemove(this.todos);
+    inOrder.verify(this.todoDAO).deleteAll(this.todos);
+    inOrder.verify(this.todoService).afterRemove(this.todos);
+    inOrder.verify(this.todoService).validateAfterRemove(this.todos);
+  }
+}
@@ -0,0 +1,94 @@
+package com.jiggy.security;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Collections;
+
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.shiro.session.Session;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.util.ThreadContext;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.stereotype.Controller;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test(singleThreaded = true)
+public class HttpMethodPermissionFilterTest {
+  private HttpMethodPermissionFilter filter;
+  private Subject subject;
+  
+  @BeforeMethod
+  public void beforeMethod() {
+    RouteTable routeTable = new RouteTable("/backend/service/");
+    routeTable.addRoute(null, "");
+    routeTable.addRoute(null, "/{id}");
+    
+    this.filter = new HttpMethodPermissionFilter();
+    ReflectionTestUtils.setField(this.filter, "routeTable", routeTable);
+    
+    this.subject = mock(Subject.class);
+    when(this.subject.getSession()).thenReturn(mock(Session.class));
+    when(this.subject.isPermitted("todos:read:-1")).thenReturn(Boolean.TRUE);
+    when(this.subject.isPermitted("todos:read:1")).thenReturn(Boolean.TRUE);
+    when(this.subject.isPermitted("todos:read:2")).thenReturn(Boolean.TRUE);
+    ThreadContext.bind(this.subject);
+  }
+  
+  @AfterMethod
+  public void afterMethod() {
+    ThreadContext.unbindSubject();
+  }
+  
+  @Test
+  public void readOfEachIdIsChecked() throws Exception {
+    assertTrue(this.isAccessAllowed("todos/1", null));
+    assertFalse(this.isAccessAllowed("todos/7", null));
+    assertTrue(this.isAccessAllowed("todos", null));
+    assertTrue(this.isAccessAllowed("todos", "1, 2"));
+    assertFalse(this.isAccessAllowed("todos", "1,7"));
+  }
+  
+  @Test
+  public void routesRefreshWithoutSubject() {
+    ApplicationContext context = mock(ApplicationContext.class);
+    PermissionService permissionService = mock(PermissionService.class);
+    Permission permission = new Permission();
+    
+    permission.setResource("todos");
+    permission.setOperation("archive");
+    when(context.getBeansWithAnnotation(Controller.class)).thenReturn(Collections.<String, Object> emptyMap());
+    when(permissionService.findAllOperations()).thenReturn(Collections.singletonList(permission));
+    ReflectionTestUtils.setField(this.filter, "context", context);
+    ReflectionTestUtils.setField(this.filter, "permissionService", permissionService);
+    ThreadContext.unbindSubject();
+    
+    this.filter.onApplicationEvent(new ContextRefreshedEvent(context));
+    
+    RouteTable routeTable = (RouteTable) ReflectionTestUtils.getField(this.filter, "routeTable");
+    
+    assertEquals(routeTable.resolve("/backend/service/todos/archive", "update").getMethodAction(), "archive");
+    verify(permissionService, never()).findAll();
+  }
+  
+  private boolean isAccessAllowed(final String path, final String ids) throws Exception {
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    
+    when(request.getRequestURI()).thenReturn("/backend/service/" + path);
+    when(request.getMethod()).thenReturn("GET");
+    when(request.getParameter("ids")).thenReturn(ids);
+    
+    return this.filter.isAccessAllowed(request, mock(ServletResponse.class), null);
+  }
+}
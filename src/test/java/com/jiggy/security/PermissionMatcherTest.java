@@ -0,0 +1,146 @@
+package com.jiggy.security;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.shiro.authz.permission.WildcardPermission;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+/**
+ * The matchers and the permission generation are global, so the tests of the invalidation by the permission DAO are kept here, where they do not run
+ * next to the other tests of the matchers.
+ */
+@Test(singleThreaded = true)
+public class PermissionMatcherTest {
+  /** The matchers are shared by role id across the tests, so every test loads roles of its own ids. */
+  private static final AtomicLong ROLE_IDS = new AtomicLong(1000);
+  
+  @AfterMethod
+  public void afterMethod() {
+    if (TransactionSynchronizationManager.isSynchronizationActive())
+      TransactionSynchronizationManager.clearSynchronization();
+  }
+  
+  @Test
+  public void lookUpThePermissionsIgnoringCase() {
+    PermissionMatcher matcher = PermissionMatcher.of(this.newRole(ROLE_IDS.incrementAndGet(), 1, "name=mine"));
+    
+    assertEquals(matcher.getFilter("Todo", "read"), "name=mine");
+    assertEquals(matcher.getFilter("todo", "READ"), "name=mine");
+    assertEquals(matcher.getPermission("TODO", "Read").getResource(), "Todo");
+    assertEquals(matcher.getFilterNodes("Todo", "read").size(), 1);
+    assertNull(matcher.getPermission("Todo", "delete"));
+    assertTrue(matcher.getFilterNodes("Note", "read").isEmpty());
+    assertEquals(matcher.getRoleNames(), Collections.singleton("user"));
+    assertEquals(matcher.getShiroPermissions(), Collections.singleton(new WildcardPermission("Todo:read")));
+  }
+  
+  @Test
+  public void shareTheMatcherOfARoleVersion() {
+    long roleId = ROLE_IDS.incrementAndGet();
+    PermissionMatcher matcher = PermissionMatcher.of(this.newRole(roleId, 1, "name=mine"));
+    
+    assertSame(PermissionMatcher.of(this.newRole(roleId, 1, "name=mine")), matcher);
+    assertNotSame(PermissionMatcher.of(this.newRole(null, 1, "name=mine")), PermissionMatcher.of(this.newRole(null, 1, "name=mine")));
+  }
+  
+  @Test
+  public void keepTheNewestVersionShared() {
+    long roleId = ROLE_IDS.incrementAndGet();
+    Role oldRole = this.newRole(roleId, 1, "name=old");
+    
+    PermissionMatcher.of(oldRole);
+    PermissionMatcher newMatcher = PermissionMatcher.of(this.newRole(roleId, 2, "name=new"));
+    
+    assertEquals(newMatcher.getFilter("Todo", "read"), "name=new");
+    assertEquals(PermissionMatcher.of(oldRole).getFilter("Todo", "read"), "name=old");
+    assertSame(PermissionMatcher.of(this.newRole(roleId, 2, "name=new")), newMatcher);
+  }
+  
+  @Test
+  public void staleRoleIsNotShared() {
+    long roleId = ROLE_IDS.incrementAndGet();
+    long generation = PermissionMatcher.getGeneration();
+    Role staleRole = this.newRole(roleId, 1, "name=old");
+    
+    PermissionMatcher.of(staleRole);
+    PermissionMatcher.invalidateAll();
+    
+    assertEquals(PermissionMatcher.getGeneration(), generation + 1);
+    assertEquals(PermissionMatcher.of(staleRole).getFilter("Todo", "read"), "name=old");
+    assertNotSame(PermissionMatcher.of(staleRole), PermissionMatcher.of(staleRole));
+    
+    PermissionMatcher matcher = PermissionMatcher.of(this.newRole(roleId, 1, "name=new"));
+    
+    assertEquals(matcher.getFilter("Todo", "read"), "name=new");
+    assertSame(PermissionMatcher.of(staleRole), matcher);
+  }
+  
+  @Test
+  public void permissionWriteDropsTheMatchersAfterCompletion() {
+    PermissionDAOImpl permissionDAO = this.newPermissionDAO();
+    long generation = PermissionMatcher.getGeneration();
+    
+    TransactionSynchronizationManager.initSynchronization();
+    permissionDAO.insert(new Permission());
+    permissionDAO.updateAll(Arrays.asList(new Permission(), new Permission()));
+    
+    assertEquals(PermissionMatcher.getGeneration(), generation);
+    assertEquals(TransactionSynchronizationManager.getSynchronizations().size(), 2);
+    
+    for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+      synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+    }
+    
+    assertEquals(PermissionMatcher.getGeneration(), generation + 2);
+  }
+  
+  @Test
+  public void permissionWriteOutsideATransactionDropsTheMatchers() {
+    long generation = PermissionMatcher.getGeneration();
+    
+    this.newPermissionDAO().delete(new Permission());
+    
+    assertEquals(PermissionMatcher.getGeneration(), generation + 1);
+  }
+  
+  private PermissionDAOImpl newPermissionDAO() {
+    SessionFactory sessionFactory = mock(SessionFactory.class);
+    
+    when(sessionFactory.getCurrentSession()).thenReturn(mock(Session.class));
+    
+    return new PermissionDAOImpl(sessionFactory);
+  }
+  
+  /**
+   * A role loaded now, whose only permission reads the todos through the given row level filter.
+   */
+  private Role newRole(final Long roleId, final long version, final String readFilter) {
+    Permission permission = new Permission();
+    permission.setResource("Todo");
+    permission.setOperation("read");
+    permission.setFilter(readFilter);
+    
+    Role role = new Role();
+    role.setId(roleId);
+    role.setVersion(Long.valueOf(version));
+    role.setName("user");
+    role.setPermissions(Collections.singleton(permission));
+    
+    return role;
+  }
+}
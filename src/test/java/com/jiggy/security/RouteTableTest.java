@@ -0,0 +1,66 @@
+package com.jiggy.security;
+
+import static org.testng.Assert.assertEquals;
+
+import org.testng.annotations.Test;
+
+public class RouteTableTest {
+  private static final String BASE_PATH = "/backend/service/";
+  
+  private RouteTable newRouteTable() {
+    RouteTable routeTable = new RouteTable(BASE_PATH);
+    
+    routeTable.addRoute(null, "");
+    routeTable.addRoute(null, "/{id}");
+    routeTable.addRoute(null, "/find");
+    routeTable.addRoute(null, "/findOne");
+    routeTable.addRoute(null, "/stream");
+    routeTable.addRoute("todos", "/{id}/complete");
+    routeTable.addOperation("todos", "complete");
+    routeTable.addOperation("todos", "archive");
+    
+    return routeTable;
+  }
+  
+  private String resolve(final RouteTable routeTable, final String path, final String action) {
+    return routeTable.resolve(BASE_PATH + path, action).getMethodAction();
+  }
+  
+  @Test
+  public void resolveCrudRoutes() {
+    RouteTable routeTable = this.newRouteTable();
+    
+    assertEquals(routeTable.resolve(BASE_PATH + "todos/5", "read").getResource(), "todos");
+    assertEquals(this.resolve(routeTable, "todos/5", "read"), "read:5");
+    assertEquals(this.resolve(routeTable, "todos/5", "delete"), "delete:5");
+    assertEquals(this.resolve(routeTable, "todos", "read"), "read:-1");
+    assertEquals(this.resolve(routeTable, "todos/find", "read"), "read:-1");
+    assertEquals(this.resolve(routeTable, "todos/findOne", "read"), "read:-1");
+    assertEquals(this.resolve(routeTable, "todos/stream", "read"), "read");
+    assertEquals(this.resolve(routeTable, "todos", "create"), "create");
+    assertEquals(this.resolve(routeTable, "todos/5", "create"), "create");
+    assertEquals(this.resolve(routeTable, "notes/7", "update"), "update:7");
+    assertEquals(this.resolve(routeTable, "notes/find", "read"), "read:-1");
+  }
+  
+  @Test
+  public void resolveCustomOperations() {
+    RouteTable routeTable = this.newRouteTable();
+    
+    assertEquals(this.resolve(routeTable, "todos/complete/5", "update"), "complete:5");
+    assertEquals(this.resolve(routeTable, "todos/5/complete", "update"), "complete");
+    assertEquals(this.resolve(routeTable, "todos/archive", "update"), "archive");
+    assertEquals(this.resolve(routeTable, "todos/7/archive", "update"), "archive");
+    assertEquals(this.resolve(routeTable, "notes/complete/5", "update"), "update:5");
+  }
+  
+  @Test
+  public void resolveIdsWithoutExceptions() {
+    RouteTable routeTable = this.newRouteTable();
+    
+    assertEquals(this.resolve(routeTable, "todos/9223372036854775807", "read"), "read:9223372036854775807");
+    assertEquals(this.resolve(routeTable, "todos/9223372036854775808", "read"), "read");
+    assertEquals(this.resolve(routeTable, "todos/12a", "read"), "read");
+    assertEquals(routeTable.resolve("/backend/other/todos", "read").getResource(), "");
+  }
+}
@@ -0,0 +1,88 @@
+package com.jiggy.security;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.mockito.InOrder;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test(singleThreaded = true)
+public class UserDAOImplTest {
+  private static final Long USER_ID = Long.valueOf(1);
+  
+  private Session session;
+  private UserDAOImpl userDAO;
+  
+  @BeforeMethod
+  public void beforeMethod() {
+    SessionFactory sessionFactory = mock(SessionFactory.class);
+    
+    this.session = mock(Session.class);
+    when(sessionFactory.getCurrentSession()).thenReturn(this.session);
+    this.userDAO = new UserDAOImpl(sessionFactory);
+  }
+  
+  @Test
+  public void findAuthorizationGraphWithOneRole() {
+    this.findAuthorizationGraph(1);
+  }
+  
+  @Test
+  public void findAuthorizationGraphQueriesOnceWhateverTheRoles() {
+    this.findAuthorizationGraph(10);
+  }
+  
+  @Test
+  public void findAuthorizationGraphOfAMissingUser() {
+    assertNull(this.userDAO.findAuthorizationGraph(USER_ID));
+    assertNull(this.userDAO.findAuthorizationGraph(null));
+    verify(this.session).get(User.class, USER_ID);
+  }
+  
+  /**
+   * Finds the authorization graph of a user holding the given number of roles, and checks it is loaded by one get through the fetch profile.
+   */
+  private void findAuthorizationGraph(final int roleCount) {
+    User user = new User();
+    Set<Role> roles = new HashSet<Role>();
+    
+    for (int i = 1; i <= roleCount; i++) {
+      Role role = new Role();
+      role.setId(Long.valueOf(i));
+      role.setPermissions(Collections.singleton(new Permission()));
+      roles.add(role);
+    }
+    
+    user.setId(USER_ID);
+    user.setRoles(roles);
+    when(this.session.get(User.class, USER_ID)).thenReturn(user);
+    
+    assertSame(this.userDAO.findAuthorizationGraph(USER_ID), user);
+    assertEquals(user.getRoles().size(), roleCount);
+    
+    InOrder inOrder = inOrder(this.session);
+    
+    inOrder.verify(this.session).enableFetchProfile("user-authorization");
+    inOrder.verify(this.session).get(User.class, USER_ID);
+    inOrder.verify(this.session).disableFetchProfile("user-authorization");
+    verify(this.session).get(any(Class.class), any(Serializable.class));
+    verify(this.session, never()).createQuery(anyString());
+    verify(this.session, never()).createCriteria(any(Class.class));
+  }
+}